@@ -46,6 +46,7 @@ import com.ning.billing.util.globallocker.GlobalLock;
 import com.ning.billing.util.globallocker.GlobalLocker;
 import com.ning.billing.util.globallocker.GlobalLocker.LockerType;
 
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 
@@ -82,24 +83,28 @@ public class AnalyticsListener {
         this.internalCallContextFactory = internalCallContextFactory;
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleEffectiveSubscriptionTransitionChange(final EffectiveSubscriptionInternalEvent eventEffective) throws AccountApiException, EntitlementUserApiException {
         // The event is used as a trigger to rebuild all transitions for this bundle
         bstDao.rebuildTransitionsForBundle(eventEffective.getBundleId(), createCallContext(eventEffective));
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleRequestedSubscriptionTransitionChange(final RequestedSubscriptionInternalEvent eventRequested) throws AccountApiException, EntitlementUserApiException {
         // The event is used as a trigger to rebuild all transitions for this bundle
         bstDao.rebuildTransitionsForBundle(eventRequested.getBundleId(), createCallContext(eventRequested));
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleRepairEntitlement(final RepairEntitlementInternalEvent event) {
         // In case of repair, just rebuild all transitions
         bstDao.rebuildTransitionsForBundle(event.getBundleId(), createCallContext(event));
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleAccountCreation(final AccountCreationInternalEvent event) {
         GlobalLock lock = null;
@@ -113,6 +118,7 @@ public class AnalyticsListener {
         }
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleAccountChange(final AccountChangeInternalEvent event) {
         if (!event.hasChanges()) {
@@ -130,23 +136,27 @@ public class AnalyticsListener {
         }
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleInvoiceCreation(final InvoiceCreationInternalEvent event) {
         // The event is used as a trigger to rebuild all invoices and invoice items for this account
         invoiceDao.rebuildInvoicesForAccount(event.getAccountId(), createCallContext(event));
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleNullInvoice(final NullInvoiceInternalEvent event) {
         // Ignored for now
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleInvoiceAdjustment(final InvoiceAdjustmentInternalEvent event) {
         // The event is used as a trigger to rebuild all invoices and invoice items for this account
         invoiceDao.rebuildInvoicesForAccount(event.getAccountId(), createCallContext(event));
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handlePaymentInfo(final PaymentInfoInternalEvent paymentInfo) {
         bipDao.invoicePaymentPosted(paymentInfo.getAccountId(),
@@ -157,6 +167,7 @@ public class AnalyticsListener {
                                     createCallContext(paymentInfo));
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handlePaymentError(final PaymentErrorInternalEvent paymentError) {
         bipDao.invoicePaymentPosted(paymentError.getAccountId(),
@@ -167,46 +178,55 @@ public class AnalyticsListener {
                                     createCallContext(paymentError));
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleOverdueChange(final OverdueChangeInternalEvent changeEvent) {
         bosDao.overdueStatusChanged(changeEvent.getOverdueObjectType(), changeEvent.getOverdueObjectId(), createCallContext(changeEvent));
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleControlTagCreation(final ControlTagCreationInternalEvent event) {
         tagDao.tagAdded(event.getObjectType(), event.getObjectId(), event.getTagDefinition().getName(), createCallContext(event));
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleControlTagDeletion(final ControlTagDeletionInternalEvent event) {
         tagDao.tagRemoved(event.getObjectType(), event.getObjectId(), event.getTagDefinition().getName(), createCallContext(event));
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleUserTagCreation(final UserTagCreationInternalEvent event) {
         tagDao.tagAdded(event.getObjectType(), event.getObjectId(), event.getTagDefinition().getName(), createCallContext(event));
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleUserTagDeletion(final UserTagDeletionInternalEvent event) {
         tagDao.tagRemoved(event.getObjectType(), event.getObjectId(), event.getTagDefinition().getName(), createCallContext(event));
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleControlTagDefinitionCreation(final ControlTagDefinitionCreationInternalEvent event) {
         // Ignored for now
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleControlTagDefinitionDeletion(final ControlTagDefinitionDeletionInternalEvent event) {
         // Ignored for now
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleUserTagDefinitionCreation(final UserTagDefinitionCreationInternalEvent event) {
         // Ignored for now
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleUserTagDefinitionDeletion(final UserTagDefinitionDeletionInternalEvent event) {
         // Ignored for now
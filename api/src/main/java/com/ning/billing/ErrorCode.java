@@ -263,6 +263,7 @@ public enum ErrorCode {
 
     PAYMENT_PLUGIN_TIMEOUT(7100, "Plugin timeout for account %s and invoice %s"),
     PAYMENT_PLUGIN_ACCOUNT_INIT(7101, "Account initialization for account %s and plugin % s failed: %s"),
+    PAYMENT_PLUGIN_UNAVAILABLE(7102, "Plugin %s is unavailable"),
 
     /*
     *
@@ -18,10 +18,27 @@ package com.ning.billing.config;
 
 import org.skife.config.Config;
 import org.skife.config.Default;
+import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 public interface CatalogConfig extends KillbillConfig {
     @Config("killbill.catalog.uri")
     @Default("jar:///com/ning/billing/irs/catalog/Catalog.xml")
     String getCatalogURI();
 
+    @Config("killbill.catalog.reload.mode")
+    @Description("How the catalog is reloaded at runtime: NONE (on demand only) or POLL (when its files change)")
+    @Default("NONE")
+    String getCatalogReloadMode();
+
+    @Config("killbill.catalog.reload.pollingInterval")
+    @Description("How often to check for catalog files changes, in POLL mode")
+    @Default("1m")
+    TimeSpan getCatalogReloadPollingInterval();
+
+    @Config("killbill.catalog.snapshot.enabled")
+    @Description("Whether to keep a binary snapshot next to catalogs stored on the filesystem, to load them faster")
+    @Default("false")
+    boolean isCatalogSnapshotEnabled();
+
 }
@@ -29,4 +29,13 @@ public interface EntitlementConfig extends NotificationConfig, KillbillConfig {
     @Config("killbill.entitlement.engine.notifications.off")
     @Default("false")
     public boolean isNotificationProcessingOff();
+
+    @Override
+    @Config("killbill.entitlement.engine.notifications.claimed")
+    @Default("100")
+    public int getMaxClaimedNotifications();
+
+    @Config("killbill.entitlement.dao.subscriptionCache.size")
+    @Default("10000")
+    public long getSubscriptionCacheSize();
 }
@@ -30,6 +30,11 @@ public interface InvoiceConfig extends NotificationConfig, KillbillConfig {
     @Default("false")
     public boolean isNotificationProcessingOff();
 
+    @Override
+    @Config("killbill.invoice.engine.notifications.claimed")
+    @Default("100")
+    public int getMaxClaimedNotifications();
+
     @Config("killbill.invoice.maxNumberOfMonthsInFuture")
     @Default("36")
     public int getNumberOfMonthsInFuture();
@@ -37,4 +42,9 @@ public interface InvoiceConfig extends NotificationConfig, KillbillConfig {
     @Config("killbill.invoice.emailNotificationsEnabled")
     @Default("false")
     public boolean isEmailNotificationsEnabled();
+
+    // One of FULL, INCREMENTAL or VERIFY (incremental generation, checked against a full recompute)
+    @Config("killbill.invoice.generationMode")
+    @Default("INCREMENTAL")
+    public String getInvoiceGenerationMode();
 }
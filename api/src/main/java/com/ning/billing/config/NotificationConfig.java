@@ -19,4 +19,6 @@ package com.ning.billing.config;
 
 public interface NotificationConfig extends PersistentQueueConfig {
     public boolean isNotificationProcessingOff();
+
+    public int getMaxClaimedNotifications();
 }
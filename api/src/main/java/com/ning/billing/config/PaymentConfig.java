@@ -20,6 +20,8 @@ import java.util.List;
 
 import org.skife.config.Config;
 import org.skife.config.Default;
+import org.skife.config.Param;
+import org.skife.config.TimeSpan;
 
 
 public interface PaymentConfig extends NotificationConfig, KillbillConfig {
@@ -53,7 +55,37 @@ public interface PaymentConfig extends NotificationConfig, KillbillConfig {
     @Default("false")
     public boolean isNotificationProcessingOff();
 
+    @Override
+    @Config("killbill.payment.engine.notifications.claimed")
+    @Default("100")
+    public int getMaxClaimedNotifications();
+
     @Config("killbill.payment.off")
     @Default("false")
     public boolean isPaymentOff();
+
+    // The plugin settings can be overridden for each plugin, e.g. killbill.payment.plugin.<pluginName>.threads
+    @Config({"killbill.payment.plugin.${pluginName}.threads", "killbill.payment.plugin.threads"})
+    @Default("3")
+    public int getPluginThreads(@Param("pluginName") String pluginName);
+
+    @Config({"killbill.payment.plugin.${pluginName}.queue.size", "killbill.payment.plugin.queue.size"})
+    @Default("1000")
+    public int getPluginQueueSize(@Param("pluginName") String pluginName);
+
+    @Config({"killbill.payment.plugin.${pluginName}.timeout", "killbill.payment.plugin.timeout"})
+    @Default("30s")
+    public TimeSpan getPluginTimeout(@Param("pluginName") String pluginName);
+
+    @Config({"killbill.payment.plugin.${pluginName}.breaker.failures", "killbill.payment.plugin.breaker.failures"})
+    @Default("5")
+    public int getPluginBreakerFailureThreshold(@Param("pluginName") String pluginName);
+
+    @Config({"killbill.payment.plugin.${pluginName}.breaker.open.time", "killbill.payment.plugin.breaker.open.time"})
+    @Default("1m")
+    public TimeSpan getPluginBreakerOpenTime(@Param("pluginName") String pluginName);
+
+    @Config("killbill.payment.run.threads")
+    @Default("10")
+    public int getPaymentRunThreads();
 }
@@ -16,6 +16,7 @@
 
 package com.ning.billing.entitlement.api.timeline;
 
+import java.util.List;
 import java.util.UUID;
 
 import com.ning.billing.entitlement.api.user.SubscriptionBundle;
@@ -33,6 +34,9 @@ public interface EntitlementTimelineApi {
     public BundleTimeline getBundleTimeline(UUID bundleId, TenantContext context)
             throws EntitlementRepairException;
 
+    public List<BundleTimeline> getBundleTimelinesForAccount(UUID accountId, TenantContext context)
+            throws EntitlementRepairException;
+
     public BundleTimeline repairBundle(BundleTimeline input, boolean dryRun, CallContext context)
             throws EntitlementRepairException;
 }
@@ -22,6 +22,7 @@ import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 
 import com.ning.billing.catalog.api.Currency;
 import com.ning.billing.util.callcontext.CallContext;
@@ -35,6 +36,12 @@ public interface InvoicePaymentApi {
      */
     public List<Invoice> getAllInvoicesByAccount(UUID accountId, TenantContext context);
 
+    /**
+     * @param upToDate latest target date of the invoices
+     * @return the unpaid invoices of all accounts of the tenant, ordered by account and target date
+     */
+    public List<Invoice> getUnpaidInvoicesUpToDate(LocalDate upToDate, TenantContext context);
+
     public Invoice getInvoice(UUID invoiceId, TenantContext context) throws InvoiceApiException;
 
     public Invoice getInvoiceForPaymentId(UUID paymentId, TenantContext context) throws InvoiceApiException;
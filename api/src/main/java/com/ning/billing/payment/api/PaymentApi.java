@@ -22,6 +22,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import org.joda.time.LocalDate;
+
 import com.ning.billing.account.api.Account;
 import com.ning.billing.util.callcontext.CallContext;
 import com.ning.billing.util.callcontext.TenantContext;
@@ -34,6 +36,17 @@ public interface PaymentApi {
     public Payment createExternalPayment(Account account, UUID invoiceId, BigDecimal amount, CallContext context)
             throws PaymentApiException;
 
+    /**
+     * Pay all the unpaid invoices of the tenant, up to a given target date.
+     * <p/>
+     * Accounts are paid concurrently, but the invoices of a given account are paid one at a time.
+     *
+     * @param upToDate latest target date of the invoices to pay
+     * @param context  the call context
+     * @return the summary of the run
+     */
+    public PaymentRunSummary runPayments(LocalDate upToDate, CallContext context);
+
     public Refund getRefund(UUID refundId, TenantContext context)
             throws PaymentApiException;
 
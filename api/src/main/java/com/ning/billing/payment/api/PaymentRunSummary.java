@@ -0,0 +1,51 @@
+/*
+ * Copyright 2010-2011 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.api;
+
+import org.joda.time.LocalDate;
+
+/**
+ * Outcome of a payment run, which pays all the unpaid invoices of a tenant up to a given date.
+ */
+public interface PaymentRunSummary {
+
+    public LocalDate getUpToDate();
+
+    public int getNbAccounts();
+
+    public int getNbInvoices();
+
+    /**
+     * @return the number of payments which succeeded
+     */
+    public int getNbSuccessfulPayments();
+
+    /**
+     * @return the number of invoices which could not be paid (payment, plugin or account errors)
+     */
+    public int getNbFailedPayments();
+
+    /**
+     * @return the number of invoices which were not paid, because they were already paid, the account is AUTO_PAY_OFF or the plugin timed out
+     */
+    public int getNbSkippedInvoices();
+
+    /**
+     * @return duration of the run, in milliseconds
+     */
+    public long getDurationMs();
+}
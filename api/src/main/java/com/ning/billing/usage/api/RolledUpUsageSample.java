@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.usage.api;
+
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+
+/**
+ * Usage value rolled-up over a period, for a given bundle and metric.
+ */
+public class RolledUpUsageSample {
+
+    private final UUID bundleId;
+    private final String metricName;
+    private final DateTime startDate;
+    private final DateTime endDate;
+    private final long value;
+
+    public RolledUpUsageSample(final UUID bundleId, final String metricName, final DateTime startDate, final DateTime endDate, final long value) {
+        this.bundleId = bundleId;
+        this.metricName = metricName;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.value = value;
+    }
+
+    public UUID getBundleId() {
+        return bundleId;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+
+    public DateTime getStartDate() {
+        return startDate;
+    }
+
+    public DateTime getEndDate() {
+        return endDate;
+    }
+
+    public long getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.usage.api;
+
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+
+/**
+ * Usage value recorded at a given time, for a given bundle and metric.
+ */
+public class UsageSample {
+
+    private final UUID bundleId;
+    private final String metricName;
+    private final DateTime timestamp;
+    private final long value;
+
+    public UsageSample(final UUID bundleId, final String metricName, final DateTime timestamp, final long value) {
+        this.bundleId = bundleId;
+        this.metricName = metricName;
+        this.timestamp = timestamp;
+        this.value = value;
+    }
+
+    public UUID getBundleId() {
+        return bundleId;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+
+    public DateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public long getValue() {
+        return value;
+    }
+}
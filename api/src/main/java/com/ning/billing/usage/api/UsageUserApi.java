@@ -16,6 +16,7 @@
 
 package com.ning.billing.usage.api;
 
+import java.util.List;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -58,4 +59,22 @@ public interface UsageUserApi {
      * @param context    tenant context
      */
     public void recordRolledUpUsage(UUID bundleId, String metricName, DateTime startDate, DateTime endDate, long value, CallContext context) throws EntitlementUserApiException;
+
+    /**
+     * Batch version of {@link #recordUsage(UUID, String, DateTime, long, CallContext)}, for external systems sending their
+     * usage data in bulk.
+     *
+     * @param samples usage values to record
+     * @param context call context
+     */
+    public void recordUsage(List<UsageSample> samples, CallContext context) throws EntitlementUserApiException;
+
+    /**
+     * Batch version of {@link #recordRolledUpUsage(UUID, String, DateTime, DateTime, long, CallContext)}, for external
+     * systems sending their rolled-up usage data in bulk.
+     *
+     * @param samples rolled-up usage values to record
+     * @param context call context
+     */
+    public void recordRolledUpUsage(List<RolledUpUsageSample> samples, CallContext context) throws EntitlementUserApiException;
 }
@@ -39,6 +39,7 @@ import com.ning.billing.util.events.OverdueChangeInternalEvent;
 import com.ning.billing.util.events.SubscriptionInternalEvent;
 import com.ning.billing.util.svcsapi.bus.InternalBus.EventBusException;
 
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 
 public class BeatrixListener {
@@ -57,6 +58,7 @@ public class BeatrixListener {
         this.hostname = Hostname.get();
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleAllInternalKillbillEvents(final BusInternalEvent event) {
         switch(event.getBusEventType()) {
@@ -22,14 +22,16 @@ import com.ning.billing.overdue.OverdueProperties;
 import com.ning.billing.overdue.OverdueUserApi;
 import com.ning.billing.overdue.listener.OverdueListener;
 import com.ning.billing.overdue.service.DefaultOverdueService;
+import com.ning.billing.overdue.service.OverdueSweeper;
 import com.ning.billing.overdue.wrapper.OverdueWrapperFactory;
 import com.ning.billing.util.svcsapi.bus.BusService;
 
 public class MockOverdueService extends DefaultOverdueService {
     @Inject
     public MockOverdueService(final OverdueUserApi userApi, final OverdueProperties properties, final OverdueCheckNotifier notifier,
-                              final BusService busService, final OverdueListener listener, final OverdueWrapperFactory factory) {
-        super(userApi, properties, notifier, busService, listener, factory);
+                              final BusService busService, final OverdueListener listener, final OverdueWrapperFactory factory,
+                              final OverdueSweeper sweeper) {
+        super(userApi, properties, notifier, busService, listener, factory, sweeper);
     }
 
     public synchronized void loadConfig() throws ServiceException {
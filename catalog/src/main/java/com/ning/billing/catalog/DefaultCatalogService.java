@@ -16,6 +16,15 @@
 
 package com.ning.billing.catalog;
 
+import java.io.File;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.ning.billing.catalog.api.Catalog;
@@ -27,18 +36,34 @@ import com.ning.billing.lifecycle.KillbillService;
 import com.ning.billing.lifecycle.LifecycleHandlerType;
 import com.ning.billing.lifecycle.LifecycleHandlerType.LifecycleLevel;
 
+/**
+ * A catalog is never modified once published. Reloading it builds and validates a brand new catalog, which then replaces
+ * the previous one atomically: callers holding on to the catalog they got keep seeing a consistent snapshot.
+ */
 public class DefaultCatalogService implements KillbillService, Provider<Catalog>, CatalogService {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DefaultCatalogService.class);
 
     private static final String CATALOG_SERVICE_NAME = "catalog-service";
+    private static final String CATALOG_RELOAD_TH_NAME = "catalog-reload-th";
+    private static final String XML_EXTENSION = ".xml";
+    private static final long TERMINATION_TIMEOUT_SEC = 5;
 
-    private static VersionedCatalog catalog;
+    public enum ReloadMode {
+        // The catalog is only reloaded on demand, see reloadCatalog
+        NONE,
+        // A catalog stored on the filesystem is reloaded when its files change
+        POLL
+    }
+
+    private final AtomicLong lookupCount = new AtomicLong();
+    private volatile CatalogSnapshot catalogSnapshot;
 
     private final CatalogConfig config;
     private boolean isInitialized;
 
     private final VersionedCatalogLoader loader;
 
+    private ScheduledExecutorService reloadThread;
 
     @Inject
     public DefaultCatalogService(final CatalogConfig config, final VersionedCatalogLoader loader) {
@@ -51,9 +76,7 @@ public class DefaultCatalogService implements KillbillService, Provider<Catalog>
     public synchronized void loadCatalog() throws ServiceException {
         if (!isInitialized) {
             try {
-                final String url = config.getCatalogURI();
-                catalog = loader.load(url);
-
+                publish(loadSnapshot(config.getCatalogURI()));
                 isInitialized = true;
             } catch (Exception e) {
                 throw new ServiceException(e);
@@ -61,31 +84,253 @@ public class DefaultCatalogService implements KillbillService, Provider<Catalog>
         }
     }
 
+    @LifecycleHandlerType(LifecycleLevel.START_SERVICE)
+    public synchronized void startReloading() {
+        if (reloadThread != null || getReloadMode() != ReloadMode.POLL) {
+            return;
+        }
+
+        final long pollingIntervalMs = config.getCatalogReloadPollingInterval().getMillis();
+        reloadThread = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread th = new Thread(r, CATALOG_RELOAD_TH_NAME);
+                th.setDaemon(true);
+                return th;
+            }
+        });
+        reloadThread.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reloadModifiedCatalog();
+            }
+        }, pollingIntervalMs, pollingIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Polling catalog for changes every {} ms", pollingIntervalMs);
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
+    public synchronized void stopReloading() {
+        if (reloadThread == null) {
+            return;
+        }
+
+        reloadThread.shutdownNow();
+        try {
+            if (!reloadThread.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                log.warn("Catalog reload thread did not terminate");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Catalog reload stop sequence has been interrupted");
+        } finally {
+            reloadThread = null;
+        }
+    }
+
+    /**
+     * Reloads the catalog and publishes it, unless it fails to load or validate
+     *
+     * @throws ServiceException if the catalog could not be loaded, in which case the current one is kept
+     */
+    public synchronized void reloadCatalog() throws ServiceException {
+        publish(loadSnapshot(config.getCatalogURI()));
+    }
+
+    /**
+     * Reloads the catalog if its files changed since it was loaded
+     */
+    public synchronized void reloadModifiedCatalog() {
+        final String uri = config.getCatalogURI();
+        final CatalogSnapshot current = catalogSnapshot;
+        final long fingerprint = getFingerprint(uri);
+        if (fingerprint == 0 || (current != null && current.getFingerprint() == fingerprint)) {
+            return;
+        }
+
+        try {
+            publish(loadSnapshot(uri));
+        } catch (ServiceException e) {
+            log.warn("Failed to reload catalog " + uri + ", keeping the current one", e);
+        }
+    }
 
     @Override
     public String getName() {
         return CATALOG_SERVICE_NAME;
     }
 
-
     /* (non-Javadoc)
     * @see com.ning.billing.catalog.ICatlogService#getCatalog()
     */
     @Override
     public Catalog getFullCatalog() {
-        return catalog;
+        return getCatalog();
     }
 
-
     // Should be able to use bind(ICatalog.class).toProvider(CatalogService.class);
     @Override
     public Catalog get() {
-        return catalog;
+        return getCatalog();
     }
 
     @Override
     public StaticCatalog getCurrentCatalog() {
-        return catalog;
+        return getCatalog();
+    }
+
+    /**
+     * @return the catalog currently published, with its load metrics
+     */
+    public CatalogSnapshot getCatalogSnapshot() {
+        return catalogSnapshot;
+    }
+
+    /**
+     * @return the number of catalog lookups
+     */
+    public long getCatalogLookupCount() {
+        return lookupCount.get();
+    }
+
+    private VersionedCatalog getCatalog() {
+        lookupCount.incrementAndGet();
+
+        final CatalogSnapshot snapshot = catalogSnapshot;
+        return (snapshot == null) ? null : snapshot.getCatalog();
+    }
+
+    private void publish(final CatalogSnapshot snapshot) {
+        catalogSnapshot = snapshot;
+        log.info("Published catalog: {}", snapshot);
+    }
+
+    private CatalogSnapshot loadSnapshot(final String uri) throws ServiceException {
+        // Fingerprint before loading: a change made while we load will be picked up by the next poll
+        final long fingerprint = getFingerprint(uri);
+        final long startTime = System.currentTimeMillis();
+
+        // The loader validates each version of the catalog
+        final VersionedCatalog catalog = loader.load(uri);
+        if (catalog.size() == 0) {
+            throw new ServiceException("No catalog version found at " + uri);
+        }
+
+        final long endTime = System.currentTimeMillis();
+        return new CatalogSnapshot(catalog, uri, fingerprint, endTime, endTime - startTime);
     }
 
+    private ReloadMode getReloadMode() {
+        final String reloadMode = config.getCatalogReloadMode();
+        return (reloadMode == null) ? ReloadMode.NONE : ReloadMode.valueOf(reloadMode.trim().toUpperCase());
+    }
+
+    // Returns a value changing whenever the catalog files change, 0 if the catalog is not on the filesystem
+    private long getFingerprint(final String uriString) {
+        final File file;
+        try {
+            final URI uri = new URI(uriString);
+            if (!"file".equals(uri.getScheme())) {
+                return 0;
+            }
+            file = new File(uri.getSchemeSpecificPart());
+        } catch (Exception e) {
+            return 0;
+        }
+
+        if (!file.isDirectory()) {
+            return file.lastModified();
+        }
+
+        long fingerprint = file.lastModified();
+        final File[] versions = file.listFiles();
+        if (versions != null) {
+            for (final File version : versions) {
+                if (version.getName().endsWith(XML_EXTENSION)) {
+                    fingerprint = 31 * fingerprint + version.lastModified();
+                }
+            }
+        }
+        return fingerprint;
+    }
+
+    public static final class CatalogSnapshot {
+
+        private final VersionedCatalog catalog;
+        private final String uri;
+        private final long fingerprint;
+        private final long loadedTimeMillis;
+        private final long loadDurationMillis;
+        private final int nbVersions;
+        private final int nbPlans;
+        private final int nbProducts;
+
+        private CatalogSnapshot(final VersionedCatalog catalog, final String uri, final long fingerprint,
+                                final long loadedTimeMillis, final long loadDurationMillis) {
+            this.catalog = catalog;
+            this.uri = uri;
+            this.fingerprint = fingerprint;
+            this.loadedTimeMillis = loadedTimeMillis;
+            this.loadDurationMillis = loadDurationMillis;
+
+            int plans = 0;
+            int products = 0;
+            final Iterator<StandaloneCatalog> versions = catalog.iterator();
+            while (versions.hasNext()) {
+                final StandaloneCatalog version = versions.next();
+                plans += (version.getCurrentPlans() == null) ? 0 : version.getCurrentPlans().length;
+                products += (version.getCurrentProducts() == null) ? 0 : version.getCurrentProducts().length;
+            }
+            this.nbVersions = catalog.size();
+            this.nbPlans = plans;
+            this.nbProducts = products;
+        }
+
+        public VersionedCatalog getCatalog() {
+            return catalog;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public long getFingerprint() {
+            return fingerprint;
+        }
+
+        public long getLoadedTimeMillis() {
+            return loadedTimeMillis;
+        }
+
+        public long getLoadDurationMillis() {
+            return loadDurationMillis;
+        }
+
+        public int getNbVersions() {
+            return nbVersions;
+        }
+
+        // Summed across versions
+        public int getNbPlans() {
+            return nbPlans;
+        }
+
+        // Summed across versions
+        public int getNbProducts() {
+            return nbProducts;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("CatalogSnapshot");
+            sb.append("{uri='").append(uri).append('\'');
+            sb.append(", loadedTimeMillis=").append(loadedTimeMillis);
+            sb.append(", loadDurationMillis=").append(loadDurationMillis);
+            sb.append(", nbVersions=").append(nbVersions);
+            sb.append(", nbPlans=").append(nbPlans);
+            sb.append(", nbProducts=").append(nbProducts);
+            sb.append('}');
+            return sb.toString();
+        }
+    }
 }
@@ -31,6 +31,8 @@ import com.ning.billing.util.config.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultDuration extends ValidatingConfig<StandaloneCatalog> implements Duration {
+    private static final long serialVersionUID = 1L;
+
     @XmlElement(required = true)
     private TimeUnit unit;
 
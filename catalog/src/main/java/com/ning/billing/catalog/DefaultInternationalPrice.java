@@ -33,6 +33,7 @@ import com.ning.billing.util.config.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultInternationalPrice extends ValidatingConfig<StandaloneCatalog> implements InternationalPrice {
+    private static final long serialVersionUID = 1L;
 
     //TODO: Must have a price point for every configured currency
     //TODO: No prices is a zero cost plan
@@ -45,6 +45,7 @@ import com.ning.billing.util.config.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultPlan extends ValidatingConfig<StandaloneCatalog> implements Plan {
+    private static final long serialVersionUID = 1L;
 
     @XmlAttribute(required = true)
     @XmlID
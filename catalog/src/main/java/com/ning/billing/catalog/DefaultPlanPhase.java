@@ -36,6 +36,7 @@ import com.ning.billing.util.config.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultPlanPhase extends ValidatingConfig<StandaloneCatalog> implements PlanPhase {
+    private static final long serialVersionUID = 1L;
 
     @XmlAttribute(required = true)
     private PhaseType type;
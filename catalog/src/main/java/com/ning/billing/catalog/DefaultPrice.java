@@ -29,6 +29,8 @@ import com.ning.billing.util.config.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultPrice extends ValidatingConfig<StandaloneCatalog> implements Price {
+    private static final long serialVersionUID = 1L;
+
     @XmlElement(required = true)
     private Currency currency;
 
@@ -33,6 +33,7 @@ import com.ning.billing.util.config.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultPriceList extends ValidatingConfig<StandaloneCatalog> implements PriceList {
+    private static final long serialVersionUID = 1L;
 
     @XmlAttribute(required = true)
     @XmlID
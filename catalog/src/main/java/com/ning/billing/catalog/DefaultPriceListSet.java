@@ -20,7 +20,9 @@ import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.ning.billing.ErrorCode;
 import com.ning.billing.catalog.api.BillingPeriod;
@@ -32,14 +34,21 @@ import com.ning.billing.util.config.ValidatingConfig;
 import com.ning.billing.util.config.ValidationError;
 import com.ning.billing.util.config.ValidationErrors;
 
+import com.google.common.collect.ImmutableMap;
+
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultPriceListSet extends ValidatingConfig<StandaloneCatalog> {
+    private static final long serialVersionUID = 1L;
+
     @XmlElement(required = true, name = "defaultPriceList")
     private PriceListDefault defaultPricelist;
 
     @XmlElement(required = false, name = "childPriceList")
     private DefaultPriceList[] childPriceLists = new DefaultPriceList[0];
 
+    // Built on first use
+    private transient volatile Map<String, DefaultPriceList> priceListsByName;
+
     public DefaultPriceListSet() {
         if (childPriceLists == null) {
             childPriceLists = new DefaultPriceList[0];
@@ -69,15 +78,32 @@ public class DefaultPriceListSet extends ValidatingConfig<StandaloneCatalog> {
         if (priceListName == null) {
             throw new CatalogApiException(ErrorCode.CAT_NULL_PRICE_LIST_NAME);
         }
-        if (defaultPricelist.getName().equals(priceListName)) {
-            return defaultPricelist;
+        final DefaultPriceList result = findPriceListIfExists(priceListName);
+        if (result == null) {
+            throw new CatalogApiException(ErrorCode.CAT_PRICE_LIST_NOT_FOUND, priceListName);
         }
-        for (final DefaultPriceList pl : childPriceLists) {
-            if (pl.getName().equals(priceListName)) {
-                return pl;
+        return result;
+    }
+
+    public DefaultPriceList findPriceListIfExists(final String priceListName) {
+        return getPriceListsByName().get(priceListName);
+    }
+
+    private Map<String, DefaultPriceList> getPriceListsByName() {
+        Map<String, DefaultPriceList> result = priceListsByName;
+        if (result == null) {
+            // The default price list wins over a child with the same name (which fails validation anyway)
+            final Map<String, DefaultPriceList> index = new HashMap<String, DefaultPriceList>();
+            index.put(defaultPricelist.getName(), defaultPricelist);
+            for (final DefaultPriceList pl : childPriceLists) {
+                if (pl.getName() != null && !index.containsKey(pl.getName())) {
+                    index.put(pl.getName(), pl);
+                }
             }
+            result = ImmutableMap.copyOf(index);
+            priceListsByName = result;
         }
-        throw new CatalogApiException(ErrorCode.CAT_PRICE_LIST_NOT_FOUND, priceListName);
+        return result;
     }
 
     @Override
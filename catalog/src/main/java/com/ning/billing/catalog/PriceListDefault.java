@@ -25,6 +25,7 @@ import com.ning.billing.util.config.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
 public class PriceListDefault extends DefaultPriceList {
+    private static final long serialVersionUID = 1L;
 
     public PriceListDefault() {
     }
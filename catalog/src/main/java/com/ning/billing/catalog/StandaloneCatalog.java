@@ -20,7 +20,9 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -51,9 +53,13 @@ import com.ning.billing.util.config.ValidatingConfig;
 import com.ning.billing.util.config.ValidationError;
 import com.ning.billing.util.config.ValidationErrors;
 
+import com.google.common.collect.ImmutableMap;
+
 @XmlRootElement(name = "catalog")
 @XmlAccessorType(XmlAccessType.NONE)
 public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> implements StaticCatalog {
+    private static final long serialVersionUID = 1L;
+
     @XmlElement(required = true)
     private Date effectiveDate;
 
@@ -80,6 +86,10 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
     @XmlElement(name = "priceLists", required = true)
     private DefaultPriceListSet priceLists;
 
+    // Name indexes, built on first use and reset whenever the underlying arrays change
+    private transient volatile Map<String, DefaultPlan> plansByName;
+    private transient volatile Map<String, DefaultProduct> productsByName;
+
     public StandaloneCatalog() {
     }
 
@@ -131,6 +141,16 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
         return priceLists.findPriceListFrom(priceListName);
     }
 
+    /**
+     * @return the price list with that name, or null if there is none in this version
+     */
+    public DefaultPriceList findCurrentPriceListIfExists(final String priceListName) {
+        if (priceListName == null || priceLists == null) {
+            return null;
+        }
+        return priceLists.findPriceListIfExists(priceListName);
+    }
+
     public DefaultPriceListSet getPriceLists() {
         return this.priceLists;
     }
@@ -157,28 +177,75 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
     @Override
     public DefaultPlan findCurrentPlan(final String name) throws CatalogApiException {
-        if (name == null || plans == null) {
+        final DefaultPlan result = findCurrentPlanIfExists(name);
+        if (result == null) {
             throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PLAN, name);
         }
-        for (final DefaultPlan p : plans) {
-            if (p.getName().equals(name)) {
-                return p;
-            }
+        return result;
+    }
+
+    /**
+     * @return the plan with that name, or null if there is none in this version
+     */
+    public DefaultPlan findCurrentPlanIfExists(final String name) {
+        if (name == null) {
+            return null;
         }
-        throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PLAN, name);
+        return getPlansByName().get(name);
     }
 
     @Override
     public Product findCurrentProduct(final String name) throws CatalogApiException {
-        if (name == null || products == null) {
+        final DefaultProduct result = findCurrentProductIfExists(name);
+        if (result == null) {
             throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PRODUCT, name);
         }
-        for (final DefaultProduct p : products) {
-            if (p.getName().equals(name)) {
-                return p;
+        return result;
+    }
+
+    /**
+     * @return the product with that name, or null if there is none in this version
+     */
+    public DefaultProduct findCurrentProductIfExists(final String name) {
+        if (name == null) {
+            return null;
+        }
+        return getProductsByName().get(name);
+    }
+
+    private Map<String, DefaultPlan> getPlansByName() {
+        Map<String, DefaultPlan> result = plansByName;
+        if (result == null) {
+            final Map<String, DefaultPlan> index = new HashMap<String, DefaultPlan>();
+            if (plans != null) {
+                for (final DefaultPlan p : plans) {
+                    // Keep the first one, as the previous linear scan did
+                    if (p.getName() != null && !index.containsKey(p.getName())) {
+                        index.put(p.getName(), p);
+                    }
+                }
+            }
+            result = ImmutableMap.copyOf(index);
+            plansByName = result;
+        }
+        return result;
+    }
+
+    private Map<String, DefaultProduct> getProductsByName() {
+        Map<String, DefaultProduct> result = productsByName;
+        if (result == null) {
+            final Map<String, DefaultProduct> index = new HashMap<String, DefaultProduct>();
+            if (products != null) {
+                for (final DefaultProduct p : products) {
+                    if (p.getName() != null && !index.containsKey(p.getName())) {
+                        index.put(p.getName(), p);
+                    }
+                }
             }
+            result = ImmutableMap.copyOf(index);
+            productsByName = result;
         }
-        throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PRODUCT, name);
+        return result;
     }
 
     @Override
@@ -270,11 +337,15 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
             p.initialize(catalog, sourceURI);
         }
 
+        // Names are only known once the plans and products are initialized
+        plansByName = null;
+        productsByName = null;
     }
 
 
     protected StandaloneCatalog setProducts(final DefaultProduct[] products) {
         this.products = products;
+        this.productsByName = null;
         return this;
     }
 
@@ -290,6 +361,7 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
     protected StandaloneCatalog setPlans(final DefaultPlan[] plans) {
         this.plans = plans;
+        this.plansByName = null;
         return this;
     }
 
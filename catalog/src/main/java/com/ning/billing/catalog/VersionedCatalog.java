@@ -58,6 +58,8 @@ import com.ning.billing.util.config.ValidationErrors;
 @XmlRootElement(name = "catalog")
 @XmlAccessorType(XmlAccessType.NONE)
 public class VersionedCatalog extends ValidatingConfig<StandaloneCatalog> implements Catalog, StaticCatalog {
+    private static final long serialVersionUID = 1L;
+
     private static final Logger log = LoggerFactory.getLogger(VersionedCatalog.class);
 
     private final Clock clock;
@@ -66,6 +68,9 @@ public class VersionedCatalog extends ValidatingConfig<StandaloneCatalog> implem
     @XmlElement(name = "catalogVersion", required = true)
     private final List<StandaloneCatalog> versions = new ArrayList<StandaloneCatalog>();
 
+    // Effective dates of the versions above (same order), for binary searches
+    private volatile long[] effectiveDates = new long[0];
+
     public VersionedCatalog(final Clock clock) {
         this.clock = clock;
     }
@@ -74,26 +79,36 @@ public class VersionedCatalog extends ValidatingConfig<StandaloneCatalog> implem
     // Private methods
     //
     private StandaloneCatalog versionForDate(final DateTime date) throws CatalogApiException {
-        return versions.get(indexOfVersionForDate(date.toDate()));
-    }
-
-    private List<StandaloneCatalog> versionsBeforeDate(final Date date) throws CatalogApiException {
-        final List<StandaloneCatalog> result = new ArrayList<StandaloneCatalog>();
-        final int index = indexOfVersionForDate(date);
-        for (int i = 0; i <= index; i++) {
-            result.add(versions.get(i));
+        return versions.get(indexOfVersionForDate(date.getMillis()));
+    }
+
+    // Index of the last version effective strictly before the given time
+    private int indexOfVersionForDate(final long time) throws CatalogApiException {
+        final long[] dates = effectiveDates;
+        int low = 0;
+        int high = dates.length - 1;
+        int result = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (dates[mid] < time) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (result < 0) {
+            throw new CatalogApiException(ErrorCode.CAT_NO_CATALOG_FOR_GIVEN_DATE, new Date(time).toString());
         }
         return result;
     }
 
-    private int indexOfVersionForDate(final Date date) throws CatalogApiException {
-        for (int i = versions.size() - 1; i >= 0; i--) {
-            final StandaloneCatalog c = versions.get(i);
-            if (c.getEffectiveDate().getTime() < date.getTime()) {
-                return i;
-            }
+    private void indexEffectiveDates() {
+        final long[] dates = new long[versions.size()];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = versions.get(i).getEffectiveDate().getTime();
         }
-        throw new CatalogApiException(ErrorCode.CAT_NO_CATALOG_FOR_GIVEN_DATE, date.toString());
+        effectiveDates = dates;
     }
 
     private class PlanRequestWrapper {
@@ -115,9 +130,10 @@ public class VersionedCatalog extends ValidatingConfig<StandaloneCatalog> implem
             this.priceListName = priceListName;
         }
 
+        // Returns null if there is no plan with that name in this version
         public Plan findPlan(final StandaloneCatalog catalog) throws CatalogApiException {
             if (name != null) {
-                return catalog.findCurrentPlan(name);
+                return catalog.findCurrentPlanIfExists(name);
             } else {
                 return catalog.findCurrentPlan(productName, bp, priceListName);
             }
@@ -128,31 +144,21 @@ public class VersionedCatalog extends ValidatingConfig<StandaloneCatalog> implem
                           final DateTime requestedDate,
                           final DateTime subscriptionStartDate)
             throws CatalogApiException {
-        final List<StandaloneCatalog> catalogs = versionsBeforeDate(requestedDate.toDate());
-        if (catalogs.size() == 0) {
-            throw new CatalogApiException(ErrorCode.CAT_NO_CATALOG_FOR_GIVEN_DATE, requestedDate.toDate().toString());
-        }
+        final int index = indexOfVersionForDate(requestedDate.getMillis());
 
-        for (int i = catalogs.size() - 1; i >= 0; i--) { // Working backwards to find the latest applicable plan
-            final StandaloneCatalog c = catalogs.get(i);
-            Plan plan = null;
-            try {
-                plan = wrapper.findPlan(c);
-            } catch (CatalogApiException e) {
-                if (e.getCode() != ErrorCode.CAT_NO_SUCH_PLAN.getCode()) {
-                    throw e;
-                } else {
-                    break;
-                }
+        for (int i = index; i >= 0; i--) { // Working backwards to find the latest applicable plan
+            final StandaloneCatalog c = versions.get(i);
+            final Plan plan = wrapper.findPlan(c);
+            if (plan == null) {
+                break;
             }
 
-            final DateTime catalogEffectiveDate = new DateTime(c.getEffectiveDate());
-            if (subscriptionStartDate.isAfter(catalogEffectiveDate)) { // Its a new subscription this plan always applies
+            if (subscriptionStartDate.isAfter(c.getEffectiveDate().getTime())) { // Its a new subscription this plan always applies
                 return plan;
             } else { //Its an existing subscription
-                if (plan.getEffectiveDateForExistingSubscriptons() != null) { //if it is null any change to this does not apply to existing subscriptions
-                    final DateTime existingSubscriptionDate = new DateTime(plan.getEffectiveDateForExistingSubscriptons());
-                    if (requestedDate.isAfter(existingSubscriptionDate)) { // this plan is now applicable to existing subs
+                final Date existingSubscriptionDate = plan.getEffectiveDateForExistingSubscriptons();
+                if (existingSubscriptionDate != null) { //if it is null any change to this does not apply to existing subscriptions
+                    if (requestedDate.isAfter(existingSubscriptionDate.getTime())) { // this plan is now applicable to existing subs
                         return plan;
                     }
                 }
@@ -181,6 +187,7 @@ public class VersionedCatalog extends ValidatingConfig<StandaloneCatalog> implem
                 return c1.getEffectiveDate().compareTo(c2.getEffectiveDate());
             }
         });
+        indexEffectiveDates();
     }
 
     public Iterator<StandaloneCatalog> iterator() {
@@ -335,6 +342,7 @@ public class VersionedCatalog extends ValidatingConfig<StandaloneCatalog> implem
         for (final StandaloneCatalog c : versions) {
             c.initialize(catalog, sourceURI);
         }
+        indexEffectiveDates();
     }
 
     @Override
@@ -16,29 +16,53 @@
 
 package com.ning.billing.catalog.io;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 import com.google.inject.Inject;
 import com.ning.billing.catalog.StandaloneCatalog;
 import com.ning.billing.catalog.VersionedCatalog;
+import com.ning.billing.config.CatalogConfig;
 import com.ning.billing.lifecycle.KillbillService.ServiceException;
 import com.ning.billing.util.clock.Clock;
 import com.ning.billing.util.config.UriAccessor;
 import com.ning.billing.util.config.XMLLoader;
 
 public class VersionedCatalogLoader implements ICatalogLoader {
+    private static final Logger log = LoggerFactory.getLogger(VersionedCatalogLoader.class);
+
     private static final Object PROTOCOL_FOR_FILE = "file";
+    private static final String SNAPSHOT_EXTENSION = ".snapshot";
+    private static final String DIRECTORY_SNAPSHOT_NAME = "catalog" + SNAPSHOT_EXTENSION;
     private final String XML_EXTENSION = ".xml";
     private final Clock clock;
+    private final boolean snapshotEnabled;
 
-    @Inject
     public VersionedCatalogLoader(final Clock clock) {
+        this(clock, false);
+    }
+
+    @Inject
+    public VersionedCatalogLoader(final Clock clock, final CatalogConfig config) {
+        this(clock, config.isCatalogSnapshotEnabled());
+    }
+
+    public VersionedCatalogLoader(final Clock clock, final boolean snapshotEnabled) {
         this.clock = clock;
+        this.snapshotEnabled = snapshotEnabled;
     }
 
     /* (non-Javadoc)
@@ -70,6 +94,11 @@ public class VersionedCatalogLoader implements ICatalogLoader {
                 xmlURIs = findXmlReferences(directoryContents, new URL(uriString));
             }
 
+            final File snapshotFile = snapshotEnabled ? getSnapshotFile(uriString) : null;
+            if (snapshotFile != null) {
+                return loadWithSnapshot(xmlURIs, snapshotFile);
+            }
+
             final VersionedCatalog result = new VersionedCatalog(clock);
             for (final URI u : xmlURIs) {
                 final StandaloneCatalog catalog = XMLLoader.getObjectFromUri(u, StandaloneCatalog.class);
@@ -82,6 +111,71 @@ public class VersionedCatalogLoader implements ICatalogLoader {
         }
     }
 
+    private VersionedCatalog loadWithSnapshot(final List<URI> xmlURIs, final File snapshotFile) throws Exception {
+        // Read the sources upfront: they are needed to check the snapshot, and to parse them if it can't be used
+        final Map<URI, byte[]> sources = new LinkedHashMap<URI, byte[]>();
+        final Map<String, String> sourceChecksums = new LinkedHashMap<String, String>();
+        for (final URI u : xmlURIs) {
+            final InputStream in = UriAccessor.accessUri(u);
+            try {
+                final byte[] source = ByteStreams.toByteArray(in);
+                sources.put(u, source);
+                sourceChecksums.put(u.toString(), VersionedCatalogSnapshot.checksum(source));
+            } finally {
+                in.close();
+            }
+        }
+
+        final VersionedCatalog result = new VersionedCatalog(clock);
+        try {
+            final List<StandaloneCatalog> versions = VersionedCatalogSnapshot.read(snapshotFile, sourceChecksums);
+            if (versions != null) {
+                for (final StandaloneCatalog catalog : versions) {
+                    result.add(catalog);
+                }
+                log.info("Loaded catalog from snapshot {}", snapshotFile);
+                return result;
+            }
+            log.info("Catalog snapshot {} is missing or out of date, parsing the catalog", snapshotFile);
+        } catch (Exception e) {
+            log.warn("Unable to read catalog snapshot " + snapshotFile + ", parsing the catalog", e);
+        }
+
+        final List<StandaloneCatalog> versions = new ArrayList<StandaloneCatalog>();
+        for (final URI u : sources.keySet()) {
+            final StandaloneCatalog catalog = parseCatalog(u, sources.get(u));
+            result.add(catalog);
+            versions.add(catalog);
+        }
+
+        try {
+            VersionedCatalogSnapshot.write(snapshotFile, sourceChecksums, versions);
+        } catch (Exception e) {
+            // The snapshot is only an optimization
+            log.warn("Unable to write catalog snapshot " + snapshotFile, e);
+        }
+        return result;
+    }
+
+    protected StandaloneCatalog parseCatalog(final URI uri, final byte[] source) throws Exception {
+        return XMLLoader.getObjectFromStream(uri, new ByteArrayInputStream(source), StandaloneCatalog.class);
+    }
+
+    // Snapshots live next to the catalog, so they are only supported for catalogs on the filesystem
+    protected File getSnapshotFile(final String uriString) throws URISyntaxException {
+        final URI uri = new URI(uriString);
+        if (!PROTOCOL_FOR_FILE.equals(uri.getScheme())) {
+            return null;
+        }
+
+        final File source = new File(uri.getSchemeSpecificPart());
+        if (source.isDirectory()) {
+            return new File(source, DIRECTORY_SNAPSHOT_NAME);
+        } else {
+            return new File(source.getPath() + SNAPSHOT_EXTENSION);
+        }
+    }
+
     protected List<URI> findXmlReferences(final String directoryContents, final URL url) throws URISyntaxException {
         if (url.getProtocol().equals(PROTOCOL_FOR_FILE)) {
             return findXmlFileReferences(directoryContents, url);
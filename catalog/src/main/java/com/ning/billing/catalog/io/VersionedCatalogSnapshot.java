@@ -0,0 +1,201 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.catalog.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.ning.billing.catalog.StandaloneCatalog;
+import com.ning.billing.util.config.ValidatingConfig;
+
+/**
+ * Binary snapshot of the versions of a catalog, once loaded and validated.
+ * <p/>
+ * The snapshot records the checksum of each source XML it was built from, and is only used if none of them changed.
+ * The snapshot itself is checksummed, so that a truncated or corrupted file is detected and discarded. The checksum
+ * doesn't authenticate the file though, so only the catalog classes can be deserialized from it.
+ */
+class VersionedCatalogSnapshot {
+
+    private static final int MAGIC = 0x4B42434C;
+    // Bump whenever the layout below, or the serialized fields of the catalog classes, change: the catalog classes have
+    // a fixed serialVersionUID, so a snapshot missing a new field would otherwise be loaded with that field unset
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String CATALOG_PACKAGE_PREFIX = "com.ning.billing.catalog.";
+    private static final Set<String> ALLOWED_CLASS_NAMES = ImmutableSet.<String>of(ValidatingConfig.class.getName(),
+                                                                                   ArrayList.class.getName(),
+                                                                                   String.class.getName(),
+                                                                                   Boolean.class.getName(),
+                                                                                   Integer.class.getName(),
+                                                                                   Long.class.getName(),
+                                                                                   Number.class.getName(),
+                                                                                   Enum.class.getName(),
+                                                                                   BigDecimal.class.getName(),
+                                                                                   BigInteger.class.getName(),
+                                                                                   Date.class.getName(),
+                                                                                   URI.class.getName());
+
+    /**
+     * @param source the content of a catalog XML
+     * @return the checksum recorded in snapshots for that source
+     */
+    public static String checksum(final byte[] source) {
+        return Hashing.sha1().hashBytes(source).toString();
+    }
+
+    /**
+     * @param file            the snapshot file
+     * @param sourceChecksums the checksum of each source XML, keyed by URI
+     * @return the catalog versions, null if there is no snapshot or if it was built from different sources
+     * @throws IOException            if the snapshot cannot be read or is corrupted
+     * @throws ClassNotFoundException if the snapshot refers to classes which don't exist anymore
+     */
+    public static List<StandaloneCatalog> read(final File file, final Map<String, String> sourceChecksums) throws IOException, ClassNotFoundException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            final int nbSources = in.readInt();
+            final Map<String, String> snapshotChecksums = new LinkedHashMap<String, String>();
+            for (int i = 0; i < nbSources; i++) {
+                snapshotChecksums.put(in.readUTF(), in.readUTF());
+            }
+            if (!snapshotChecksums.equals(sourceChecksums)) {
+                return null;
+            }
+
+            final byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            if (!checksum(payload).equals(in.readUTF())) {
+                throw new IOException("Corrupted catalog snapshot " + file);
+            }
+
+            final ObjectInputStream objectIn = new CatalogObjectInputStream(new ByteArrayInputStream(payload));
+            try {
+                @SuppressWarnings("unchecked")
+                final List<StandaloneCatalog> versions = (List<StandaloneCatalog>) objectIn.readObject();
+                return versions;
+            } finally {
+                objectIn.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the snapshot to a temporary file first, so that readers never see a partial snapshot
+     *
+     * @param file            the snapshot file
+     * @param sourceChecksums the checksum of each source XML, keyed by URI
+     * @param versions        the catalog versions, loaded and validated
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void write(final File file, final Map<String, String> sourceChecksums, final List<StandaloneCatalog> versions) throws IOException {
+        final ByteArrayOutputStream payloadOut = new ByteArrayOutputStream();
+        final ObjectOutputStream objectOut = new ObjectOutputStream(payloadOut);
+        try {
+            objectOut.writeObject(new ArrayList<StandaloneCatalog>(versions));
+        } finally {
+            objectOut.close();
+        }
+        final byte[] payload = payloadOut.toByteArray();
+
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(sourceChecksums.size());
+            for (final Map.Entry<String, String> entry : sourceChecksums.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.writeUTF(checksum(payload));
+        } finally {
+            out.close();
+        }
+        Files.move(tmpFile, file);
+    }
+
+    // Only resolves the classes a catalog is made of
+    private static final class CatalogObjectInputStream extends ObjectInputStream {
+
+        private CatalogObjectInputStream(final InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "Unexpected class in catalog snapshot");
+            }
+            return super.resolveClass(desc);
+        }
+
+        private boolean isAllowed(final String className) {
+            // Arrays are named [I, [[Lcom.ning.billing.catalog.DefaultPlan; etc.
+            String componentName = className;
+            while (componentName.startsWith("[")) {
+                componentName = componentName.substring(1);
+            }
+            if (componentName.length() != className.length()) {
+                if (componentName.length() == 1) {
+                    // Array of primitives
+                    return true;
+                }
+                componentName = componentName.substring(1, componentName.length() - 1);
+            }
+
+            return componentName.startsWith(CATALOG_PACKAGE_PREFIX) || ALLOWED_CLASS_NAMES.contains(componentName);
+        }
+    }
+}
@@ -28,6 +28,7 @@ import com.ning.billing.util.config.ValidatingConfig;
 import com.ning.billing.util.config.ValidationErrors;
 
 public abstract class Case<T> extends ValidatingConfig<StandaloneCatalog> {
+    private static final long serialVersionUID = 1L;
 
     protected abstract T getResult();
 
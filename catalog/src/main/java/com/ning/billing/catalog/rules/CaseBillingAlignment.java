@@ -21,6 +21,7 @@ import javax.xml.bind.annotation.XmlElement;
 import com.ning.billing.catalog.api.BillingAlignment;
 
 public class CaseBillingAlignment extends CasePhase<BillingAlignment> {
+    private static final long serialVersionUID = 1L;
 
     @XmlElement(required = true)
     private BillingAlignment alignment;
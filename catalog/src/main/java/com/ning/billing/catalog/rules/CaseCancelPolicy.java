@@ -21,6 +21,7 @@ import javax.xml.bind.annotation.XmlElement;
 import com.ning.billing.catalog.api.ActionPolicy;
 
 public class CaseCancelPolicy extends CasePhase<ActionPolicy> {
+    private static final long serialVersionUID = 1L;
 
     @XmlElement(required = true)
     private ActionPolicy policy;
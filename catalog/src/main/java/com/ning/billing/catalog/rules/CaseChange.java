@@ -35,6 +35,7 @@ import com.ning.billing.util.config.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
 public abstract class CaseChange<T> extends ValidatingConfig<StandaloneCatalog> {
+    private static final long serialVersionUID = 1L;
 
     @XmlElement(required = false)
     private PhaseType phaseType;
@@ -101,6 +102,42 @@ public abstract class CaseChange<T> extends ValidatingConfig<StandaloneCatalog>
 
     }
 
+    public PhaseType getPhaseType() {
+        return phaseType;
+    }
+
+    public DefaultProduct getFromProduct() {
+        return fromProduct;
+    }
+
+    public ProductCategory getFromProductCategory() {
+        return fromProductCategory;
+    }
+
+    public BillingPeriod getFromBillingPeriod() {
+        return fromBillingPeriod;
+    }
+
+    public DefaultPriceList getFromPriceList() {
+        return fromPriceList;
+    }
+
+    public DefaultProduct getToProduct() {
+        return toProduct;
+    }
+
+    public ProductCategory getToProductCategory() {
+        return toProductCategory;
+    }
+
+    public BillingPeriod getToBillingPeriod() {
+        return toBillingPeriod;
+    }
+
+    public DefaultPriceList getToPriceList() {
+        return toPriceList;
+    }
+
     @Override
     public ValidationErrors validate(final StandaloneCatalog catalog, final ValidationErrors errors) {
         return errors;
@@ -21,6 +21,7 @@ import javax.xml.bind.annotation.XmlElement;
 import com.ning.billing.catalog.api.PlanAlignmentChange;
 
 public class CaseChangePlanAlignment extends CaseChange<PlanAlignmentChange> {
+    private static final long serialVersionUID = 1L;
 
     @XmlElement(required = true)
     private PlanAlignmentChange alignment;
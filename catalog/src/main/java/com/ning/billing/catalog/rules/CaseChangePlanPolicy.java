@@ -23,6 +23,7 @@ import com.ning.billing.catalog.api.ActionPolicy;
 
 @XmlSeeAlso(CaseChange.class)
 public class CaseChangePlanPolicy extends CaseChange<ActionPolicy> {
+    private static final long serialVersionUID = 1L;
 
     @XmlElement(required = true)
     private ActionPolicy policy;
@@ -21,6 +21,7 @@ import javax.xml.bind.annotation.XmlElement;
 import com.ning.billing.catalog.api.PlanAlignmentCreate;
 
 public class CaseCreateAlignment extends CaseStandardNaming<PlanAlignmentCreate> {
+    private static final long serialVersionUID = 1L;
 
     @XmlElement(required = true)
     private PlanAlignmentCreate alignment;
@@ -26,6 +26,7 @@ import com.ning.billing.catalog.api.PlanSpecifier;
 import com.ning.billing.util.config.ValidationErrors;
 
 public abstract class CasePhase<T> extends CaseStandardNaming<T> {
+    private static final long serialVersionUID = 1L;
 
     @XmlElement(required = false)
     private PhaseType phaseType;
@@ -52,6 +53,10 @@ public abstract class CasePhase<T> extends CaseStandardNaming<T> {
 
     }
 
+    public PhaseType getPhaseType() {
+        return phaseType;
+    }
+
     @Override
     public ValidationErrors validate(final StandaloneCatalog catalog, final ValidationErrors errors) {
         return errors;
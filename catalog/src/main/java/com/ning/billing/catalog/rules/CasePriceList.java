@@ -25,6 +25,8 @@ import com.ning.billing.catalog.api.BillingPeriod;
 import com.ning.billing.catalog.api.ProductCategory;
 
 public class CasePriceList extends Case<DefaultPriceList> {
+    private static final long serialVersionUID = 1L;
+
     @XmlElement(required = false, name = "fromProduct")
     @XmlIDREF
     private DefaultProduct fromProduct;
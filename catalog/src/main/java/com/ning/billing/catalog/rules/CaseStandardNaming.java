@@ -25,6 +25,8 @@ import com.ning.billing.catalog.api.BillingPeriod;
 import com.ning.billing.catalog.api.ProductCategory;
 
 public abstract class CaseStandardNaming<T> extends Case<T> {
+    private static final long serialVersionUID = 1L;
+
     @XmlElement(required = false, name = "product")
     @XmlIDREF
     private DefaultProduct product;
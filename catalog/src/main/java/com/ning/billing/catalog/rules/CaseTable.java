@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.catalog.rules;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decision table compiled from an ordered list of cases.
+ * <p/>
+ * Each case constrains a fixed number of dimensions (product, billing period, ...) to a value, or to any value (null).
+ * For each dimension, we precompute the set of cases matching each value. Resolving a request intersects these sets and
+ * returns the result of the first case matching on all dimensions, which is what walking the cases in order would return.
+ */
+class CaseTable<T> {
+
+    private final List<T> results;
+    private final Dimension[] dimensions;
+
+    private CaseTable(final List<T> results, final Dimension[] dimensions) {
+        this.results = results;
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * @param dimension the dimension index
+     * @return true if at least one case requires a specific value for that dimension
+     */
+    public boolean isConstrained(final int dimension) {
+        return dimensions[dimension].isConstrained();
+    }
+
+    /**
+     * @param values the value for each dimension, in the order used to build the table
+     * @return the result of the first matching case, null if none
+     */
+    public T getResult(final Object... values) {
+        int candidate = 0;
+        while (candidate < results.size()) {
+            // Leapfrog across the dimensions until they all agree on the same case
+            boolean agreed = true;
+            for (int i = 0; i < dimensions.length; i++) {
+                final int next = dimensions[i].getMatchingCases(values[i]).nextSetBit(candidate);
+                if (next < 0) {
+                    return null;
+                }
+                if (next != candidate) {
+                    candidate = next;
+                    agreed = false;
+                    break;
+                }
+            }
+            if (agreed) {
+                return results.get(candidate);
+            }
+        }
+        return null;
+    }
+
+    private static final class Dimension {
+
+        private final BitSet anyValueCases;
+        private final Map<Object, BitSet> matchingCasesPerValue;
+
+        private Dimension(final BitSet anyValueCases, final Map<Object, BitSet> matchingCasesPerValue) {
+            this.anyValueCases = anyValueCases;
+            this.matchingCasesPerValue = matchingCasesPerValue;
+        }
+
+        public boolean isConstrained() {
+            return !matchingCasesPerValue.isEmpty();
+        }
+
+        public BitSet getMatchingCases(final Object value) {
+            final BitSet result = (value == null) ? null : matchingCasesPerValue.get(value);
+            return (result == null) ? anyValueCases : result;
+        }
+    }
+
+    public static class Builder<T> {
+
+        private final int nbDimensions;
+        private final List<T> results = new ArrayList<T>();
+        private final List<Object[]> values = new ArrayList<Object[]>();
+
+        public Builder(final int nbDimensions) {
+            this.nbDimensions = nbDimensions;
+        }
+
+        /**
+         * @param result the result of the case, cases without result are skipped as they never match
+         * @param values the value required for each dimension, null for any value
+         * @return this builder
+         */
+        public Builder<T> addCase(final T result, final Object... values) {
+            if (values.length != nbDimensions) {
+                throw new IllegalArgumentException("Expected " + nbDimensions + " values, got " + values.length);
+            }
+            if (result != null) {
+                this.results.add(result);
+                this.values.add(values);
+            }
+            return this;
+        }
+
+        public CaseTable<T> build() {
+            final Dimension[] dimensions = new Dimension[nbDimensions];
+            for (int i = 0; i < nbDimensions; i++) {
+                final BitSet anyValueCases = new BitSet(values.size());
+                final Map<Object, BitSet> matchingCasesPerValue = new HashMap<Object, BitSet>();
+                for (int j = 0; j < values.size(); j++) {
+                    final Object value = values.get(j)[i];
+                    if (value == null) {
+                        anyValueCases.set(j);
+                    } else {
+                        if (matchingCasesPerValue.get(value) == null) {
+                            matchingCasesPerValue.put(value, new BitSet(values.size()));
+                        }
+                        matchingCasesPerValue.get(value).set(j);
+                    }
+                }
+                // Cases without constraint on that dimension match any value
+                for (final BitSet matchingCases : matchingCasesPerValue.values()) {
+                    matchingCases.or(anyValueCases);
+                }
+                dimensions[i] = new Dimension(anyValueCases, matchingCasesPerValue);
+            }
+            return new CaseTable<T>(new ArrayList<T>(results), dimensions);
+        }
+    }
+}
@@ -16,12 +16,15 @@
 
 package com.ning.billing.catalog.rules;
 
+import java.net.URI;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementWrapper;
 
 import com.ning.billing.catalog.DefaultPriceList;
+import com.ning.billing.catalog.DefaultProduct;
 import com.ning.billing.catalog.StandaloneCatalog;
 import com.ning.billing.catalog.api.ActionPolicy;
 import com.ning.billing.catalog.api.BillingAlignment;
@@ -37,6 +40,7 @@ import com.ning.billing.util.config.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
 public class PlanRules extends ValidatingConfig<StandaloneCatalog> {
+    private static final long serialVersionUID = 1L;
 
     @XmlElementWrapper(name = "changePolicy")
     @XmlElement(name = "changePolicyCase", required = false)
@@ -62,16 +66,19 @@ public class PlanRules extends ValidatingConfig<StandaloneCatalog> {
     @XmlElement(name = "priceListCase", required = false)
     private CasePriceList[] priceListCase;
 
+    // Decision tables compiled from the cases above, built on first use and reset whenever the cases change
+    private transient volatile CompiledPlanRules compiledPlanRules;
+
     public PlanAlignmentCreate getPlanCreateAlignment(final PlanSpecifier specifier, final StandaloneCatalog catalog) throws CatalogApiException {
-        return Case.getResult(createAlignmentCase, specifier, catalog);
+        return getResult(getCompiledPlanRules().createAlignment, createAlignmentCase, specifier, catalog);
     }
 
     public ActionPolicy getPlanCancelPolicy(final PlanPhaseSpecifier planPhase, final StandaloneCatalog catalog) throws CatalogApiException {
-        return CasePhase.getResult(cancelCase, planPhase, catalog);
+        return getResult(getCompiledPlanRules().cancelPolicy, cancelCase, planPhase, catalog);
     }
 
     public BillingAlignment getBillingAlignment(final PlanPhaseSpecifier planPhase, final StandaloneCatalog catalog) throws CatalogApiException {
-        return CasePhase.getResult(billingAlignmentCase, planPhase, catalog);
+        return getResult(getCompiledPlanRules().billingAlignment, billingAlignmentCase, planPhase, catalog);
     }
 
     public PlanChangeResult planChange(final PlanPhaseSpecifier from, PlanSpecifier to, final StandaloneCatalog catalog) throws CatalogApiException {
@@ -95,7 +102,7 @@ public class PlanRules extends ValidatingConfig<StandaloneCatalog> {
 
     public PlanAlignmentChange getPlanChangeAlignment(final PlanPhaseSpecifier from,
                                                       final PlanSpecifier to, final StandaloneCatalog catalog) throws CatalogApiException {
-        return CaseChange.getResult(changeAlignmentCase, from, to, catalog);
+        return getResult(getCompiledPlanRules().changeAlignment, changeAlignmentCase, from, to, catalog);
     }
 
     public ActionPolicy getPlanChangePolicy(final PlanPhaseSpecifier from,
@@ -107,17 +114,155 @@ public class PlanRules extends ValidatingConfig<StandaloneCatalog> {
         }
         //Plan toPlan = catalog.findPlan()
 
-        return CaseChange.getResult(changeCase, from, to, catalog);
+        return getResult(getCompiledPlanRules().changePolicy, changeCase, from, to, catalog);
     }
 
     private DefaultPriceList findPriceList(final PlanSpecifier specifier, final StandaloneCatalog catalog) throws CatalogApiException {
-        DefaultPriceList result = Case.getResult(priceListCase, specifier, catalog);
+        DefaultPriceList result = getResult(getCompiledPlanRules().priceList, priceListCase, specifier, catalog);
         if (result == null) {
             result = catalog.findCurrentPriceList(specifier.getPriceListName());
         }
         return result;
     }
 
+    //
+    // Compiled cases
+    //
+    // Dimensions of the tables, in order: (phase type), product, product category, billing period, price list
+    // for Case and CasePhase, and phase type, from and to product, product category, billing period and price list for CaseChange.
+    // When a product or price list name doesn't resolve in the catalog and a case depends on it, we walk the cases instead, so that
+    // unknown names keep being reported the same way.
+    //
+    private static final int CASE_PRODUCT = 0;
+    private static final int CASE_PRICE_LIST = 3;
+
+    private static final int CASE_PHASE_PRODUCT = 1;
+    private static final int CASE_PHASE_PRICE_LIST = 4;
+
+    private static final int CASE_CHANGE_FROM_PRODUCT = 1;
+    private static final int CASE_CHANGE_TO_PRODUCT = 4;
+    private static final int CASE_CHANGE_FROM_PRICE_LIST = 7;
+    private static final int CASE_CHANGE_TO_PRICE_LIST = 8;
+
+    private <T> T getResult(final CaseTable<T> table, final Case<T>[] cases, final PlanSpecifier specifier, final StandaloneCatalog catalog) throws CatalogApiException {
+        final DefaultProduct product = table.isConstrained(CASE_PRODUCT) ? catalog.findCurrentProductIfExists(specifier.getProductName()) : null;
+        final DefaultPriceList priceList = table.isConstrained(CASE_PRICE_LIST) ? catalog.findCurrentPriceListIfExists(specifier.getPriceListName()) : null;
+        if ((product == null && table.isConstrained(CASE_PRODUCT)) ||
+            (priceList == null && table.isConstrained(CASE_PRICE_LIST))) {
+            return Case.getResult(cases, specifier, catalog);
+        }
+
+        return table.getResult(product, specifier.getProductCategory(), specifier.getBillingPeriod(), priceList);
+    }
+
+    private <T> T getResult(final CaseTable<T> table, final CasePhase<T>[] cases, final PlanPhaseSpecifier specifier, final StandaloneCatalog catalog) throws CatalogApiException {
+        final DefaultProduct product = table.isConstrained(CASE_PHASE_PRODUCT) ? catalog.findCurrentProductIfExists(specifier.getProductName()) : null;
+        final DefaultPriceList priceList = table.isConstrained(CASE_PHASE_PRICE_LIST) ? catalog.findCurrentPriceListIfExists(specifier.getPriceListName()) : null;
+        if ((product == null && table.isConstrained(CASE_PHASE_PRODUCT)) ||
+            (priceList == null && table.isConstrained(CASE_PHASE_PRICE_LIST))) {
+            return CasePhase.getResult(cases, specifier, catalog);
+        }
+
+        return table.getResult(specifier.getPhaseType(), product, specifier.getProductCategory(), specifier.getBillingPeriod(), priceList);
+    }
+
+    private <T> T getResult(final CaseTable<T> table, final CaseChange<T>[] cases, final PlanPhaseSpecifier from, final PlanSpecifier to,
+                            final StandaloneCatalog catalog) throws CatalogApiException {
+        final DefaultProduct fromProduct = table.isConstrained(CASE_CHANGE_FROM_PRODUCT) ? catalog.findCurrentProductIfExists(from.getProductName()) : null;
+        final DefaultProduct toProduct = table.isConstrained(CASE_CHANGE_TO_PRODUCT) ? catalog.findCurrentProductIfExists(to.getProductName()) : null;
+        final DefaultPriceList fromPriceList = table.isConstrained(CASE_CHANGE_FROM_PRICE_LIST) ? catalog.findCurrentPriceListIfExists(from.getPriceListName()) : null;
+        final DefaultPriceList toPriceList = table.isConstrained(CASE_CHANGE_TO_PRICE_LIST) ? catalog.findCurrentPriceListIfExists(to.getPriceListName()) : null;
+        if ((fromProduct == null && table.isConstrained(CASE_CHANGE_FROM_PRODUCT)) ||
+            (toProduct == null && table.isConstrained(CASE_CHANGE_TO_PRODUCT)) ||
+            (fromPriceList == null && table.isConstrained(CASE_CHANGE_FROM_PRICE_LIST)) ||
+            (toPriceList == null && table.isConstrained(CASE_CHANGE_TO_PRICE_LIST))) {
+            return CaseChange.getResult(cases, from, to, catalog);
+        }
+
+        return table.getResult(from.getPhaseType(),
+                               fromProduct, from.getProductCategory(), from.getBillingPeriod(),
+                               toProduct, to.getProductCategory(), to.getBillingPeriod(),
+                               fromPriceList, toPriceList);
+    }
+
+    private static <T> CaseTable<T> compile(final Case<T>[] cases) {
+        final CaseTable.Builder<T> builder = new CaseTable.Builder<T>(4);
+        if (cases != null) {
+            for (final Case<T> c : cases) {
+                builder.addCase(c.getResult(), c.getProduct(), c.getProductCategory(), c.getBillingPeriod(), c.getPriceList());
+            }
+        }
+        return builder.build();
+    }
+
+    private static <T> CaseTable<T> compile(final CasePhase<T>[] cases) {
+        final CaseTable.Builder<T> builder = new CaseTable.Builder<T>(5);
+        if (cases != null) {
+            for (final CasePhase<T> c : cases) {
+                builder.addCase(c.getResult(), c.getPhaseType(), c.getProduct(), c.getProductCategory(), c.getBillingPeriod(), c.getPriceList());
+            }
+        }
+        return builder.build();
+    }
+
+    private static <T> CaseTable<T> compile(final CaseChange<T>[] cases) {
+        final CaseTable.Builder<T> builder = new CaseTable.Builder<T>(9);
+        if (cases != null) {
+            for (final CaseChange<T> c : cases) {
+                builder.addCase(c.getResult(), c.getPhaseType(),
+                                c.getFromProduct(), c.getFromProductCategory(), c.getFromBillingPeriod(),
+                                c.getToProduct(), c.getToProductCategory(), c.getToBillingPeriod(),
+                                c.getFromPriceList(), c.getToPriceList());
+            }
+        }
+        return builder.build();
+    }
+
+    private CompiledPlanRules getCompiledPlanRules() {
+        CompiledPlanRules result = compiledPlanRules;
+        if (result == null) {
+            result = new CompiledPlanRules(compile(changeCase),
+                                           compile(changeAlignmentCase),
+                                           compile(cancelCase),
+                                           compile(createAlignmentCase),
+                                           compile(billingAlignmentCase),
+                                           compile(priceListCase));
+            compiledPlanRules = result;
+        }
+        return result;
+    }
+
+    private static final class CompiledPlanRules {
+
+        private final CaseTable<ActionPolicy> changePolicy;
+        private final CaseTable<PlanAlignmentChange> changeAlignment;
+        private final CaseTable<ActionPolicy> cancelPolicy;
+        private final CaseTable<PlanAlignmentCreate> createAlignment;
+        private final CaseTable<BillingAlignment> billingAlignment;
+        private final CaseTable<DefaultPriceList> priceList;
+
+        private CompiledPlanRules(final CaseTable<ActionPolicy> changePolicy,
+                                  final CaseTable<PlanAlignmentChange> changeAlignment,
+                                  final CaseTable<ActionPolicy> cancelPolicy,
+                                  final CaseTable<PlanAlignmentCreate> createAlignment,
+                                  final CaseTable<BillingAlignment> billingAlignment,
+                                  final CaseTable<DefaultPriceList> priceList) {
+            this.changePolicy = changePolicy;
+            this.changeAlignment = changeAlignment;
+            this.cancelPolicy = cancelPolicy;
+            this.createAlignment = createAlignment;
+            this.billingAlignment = billingAlignment;
+            this.priceList = priceList;
+        }
+    }
+
+    @Override
+    public void initialize(final StandaloneCatalog catalog, final URI sourceURI) {
+        super.initialize(catalog, sourceURI);
+        // The cases reference products and price lists which are only complete once the catalog is loaded
+        compiledPlanRules = null;
+    }
+
 
     @Override
     public ValidationErrors validate(final StandaloneCatalog catalog, final ValidationErrors errors) {
@@ -131,38 +276,64 @@ public class PlanRules extends ValidatingConfig<StandaloneCatalog> {
 
 
     /////////////////////////////////////////////////////////////////////////////////////
-    // Setters for testing
+    // Getters and setters for testing
     /////////////////////////////////////////////////////////////////////////////////////
 
+    CaseChangePlanPolicy[] getChangeCase() {
+        return changeCase;
+    }
+
+    CaseChangePlanAlignment[] getChangeAlignmentCase() {
+        return changeAlignmentCase;
+    }
+
+    CaseCancelPolicy[] getCancelCase() {
+        return cancelCase;
+    }
+
+    CaseCreateAlignment[] getCreateAlignmentCase() {
+        return createAlignmentCase;
+    }
+
+    CaseBillingAlignment[] getBillingAlignmentCase() {
+        return billingAlignmentCase;
+    }
+
     protected PlanRules setChangeCase(final CaseChangePlanPolicy[] changeCase) {
         this.changeCase = changeCase;
+        this.compiledPlanRules = null;
         return this;
     }
 
     protected PlanRules setChangeAlignmentCase(
             final CaseChangePlanAlignment[] changeAlignmentCase) {
         this.changeAlignmentCase = changeAlignmentCase;
+        this.compiledPlanRules = null;
         return this;
     }
 
     protected PlanRules setCancelCase(final CaseCancelPolicy[] cancelCase) {
         this.cancelCase = cancelCase;
+        this.compiledPlanRules = null;
         return this;
     }
 
     protected PlanRules setCreateAlignmentCase(final CaseCreateAlignment[] createAlignmentCase) {
         this.createAlignmentCase = createAlignmentCase;
+        this.compiledPlanRules = null;
         return this;
     }
 
     protected PlanRules setBillingAlignmentCase(
             final CaseBillingAlignment[] billingAlignmentCase) {
         this.billingAlignmentCase = billingAlignmentCase;
+        this.compiledPlanRules = null;
         return this;
     }
 
     protected PlanRules setPriceListCase(final CasePriceList[] priceListCase) {
         this.priceListCase = priceListCase;
+        this.compiledPlanRules = null;
         return this;
     }
 
@@ -16,9 +16,11 @@
 
 package com.ning.billing.catalog;
 
+import org.skife.config.TimeSpan;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.io.VersionedCatalogLoader;
 import com.ning.billing.config.CatalogConfig;
 import com.ning.billing.lifecycle.KillbillService.ServiceException;
@@ -33,6 +35,21 @@ public class TestCatalogService extends CatalogTestSuite {
                 return "file:src/test/resources/versionedCatalog";
             }
 
+            @Override
+            public String getCatalogReloadMode() {
+                return "NONE";
+            }
+
+            @Override
+            public TimeSpan getCatalogReloadPollingInterval() {
+                return new TimeSpan("1m");
+            }
+
+            @Override
+            public boolean isCatalogSnapshotEnabled() {
+                return false;
+            }
+
         }, new VersionedCatalogLoader(new DefaultClock()));
         service.loadCatalog();
         Assert.assertNotNull(service.getFullCatalog());
@@ -47,9 +64,63 @@ public class TestCatalogService extends CatalogTestSuite {
                 return "file:src/test/resources/WeaponsHire.xml";
             }
 
+            @Override
+            public String getCatalogReloadMode() {
+                return "NONE";
+            }
+
+            @Override
+            public TimeSpan getCatalogReloadPollingInterval() {
+                return new TimeSpan("1m");
+            }
+
+            @Override
+            public boolean isCatalogSnapshotEnabled() {
+                return false;
+            }
+
         }, new VersionedCatalogLoader(new DefaultClock()));
         service.loadCatalog();
         Assert.assertNotNull(service.getFullCatalog());
         Assert.assertEquals(service.getFullCatalog().getCatalogName(), "Firearms");
     }
+
+    @Test(groups = "fast")
+    public void testReloadCatalog() throws ServiceException {
+        final DefaultCatalogService service = new DefaultCatalogService(new CatalogConfig() {
+            @Override
+            public String getCatalogURI() {
+                return "file:src/test/resources/WeaponsHire.xml";
+            }
+
+            @Override
+            public String getCatalogReloadMode() {
+                return "NONE";
+            }
+
+            @Override
+            public TimeSpan getCatalogReloadPollingInterval() {
+                return new TimeSpan("1m");
+            }
+
+            @Override
+            public boolean isCatalogSnapshotEnabled() {
+                return false;
+            }
+        }, new VersionedCatalogLoader(new DefaultClock()));
+        service.loadCatalog();
+
+        final Catalog catalog = service.getFullCatalog();
+        Assert.assertEquals(catalog.getCatalogName(), "Firearms");
+        Assert.assertSame(service.getCatalogSnapshot().getCatalog(), catalog);
+
+        // Reloading publishes a new catalog, without touching the one previously handed out
+        service.reloadCatalog();
+        final Catalog reloadedCatalog = service.getFullCatalog();
+        Assert.assertNotSame(reloadedCatalog, catalog);
+        Assert.assertEquals(reloadedCatalog.getCatalogName(), "Firearms");
+        Assert.assertEquals(catalog.getCatalogName(), "Firearms");
+
+        Assert.assertEquals(service.getCatalogLookupCount(), 2L);
+    }
 }
@@ -96,6 +96,21 @@ public class TestVersionedCatalog extends CatalogTestSuite {
 
     }
 
+    @Test(groups = "fast")
+    public void testFindPlanOnVersionBoundaries() throws Exception {
+        // A version only applies strictly after its effective date
+        final DateTime dt2 = new DateTime("2011-02-02T00:00:00+00:00");
+        Assert.assertEquals(vc.findPlan("pistol-monthly", dt2, dt2).getAllPhases()[1].getRecurringPrice().getPrice(Currency.USD), new BigDecimal("1.0"));
+        Assert.assertEquals(vc.findPlan("pistol-monthly", dt2.plusMillis(1), dt2.plusMillis(1)).getAllPhases()[1].getRecurringPrice().getPrice(Currency.USD), new BigDecimal("2.0"));
+
+        try {
+            vc.findPlan("foo", dt2, dt2);
+            Assert.fail("Exception should have been thrown, there is no such plan");
+        } catch (CatalogApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.CAT_NO_CATALOG_FOR_GIVEN_DATE.getCode());
+        }
+    }
+
     @Test(groups = "fast")
     public void testErrorOnDateTooEarly() {
         final DateTime dt0 = new DateTime("1977-01-01T00:00:00+00:00");
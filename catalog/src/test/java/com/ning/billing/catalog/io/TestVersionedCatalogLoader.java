@@ -18,19 +18,28 @@ package com.ning.billing.catalog.io;
 
 import javax.xml.bind.JAXBException;
 import javax.xml.transform.TransformerException;
+import java.io.File;
 import java.io.IOException;
+import java.io.InvalidClassException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.joda.time.DateTime;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.xml.sax.SAXException;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
 import com.google.common.io.Resources;
 import com.ning.billing.catalog.CatalogTestSuite;
 import com.ning.billing.catalog.StandaloneCatalog;
@@ -125,4 +134,75 @@ public class TestVersionedCatalogLoader extends CatalogTestSuite {
         dt = new DateTime("2011-03-03T00:00:00+00:00");
         Assert.assertEquals(it.next().getEffectiveDate(), dt.toDate());
     }
+
+    @Test(groups = "fast")
+    public void testSnapshotRoundTrip() throws Exception {
+        final VersionedCatalog c = loader.load(Resources.getResource("versionedCatalog").toString());
+        final List<StandaloneCatalog> versions = ImmutableList.<StandaloneCatalog>copyOf(c.iterator());
+        final Map<String, String> sourceChecksums = ImmutableMap.<String, String>of("file:/catalog.xml", VersionedCatalogSnapshot.checksum(new byte[]{1, 2, 3}));
+
+        final File snapshotFile = new File(Files.createTempDir(), "catalog.snapshot");
+        VersionedCatalogSnapshot.write(snapshotFile, sourceChecksums, versions);
+
+        final List<StandaloneCatalog> snapshotVersions = VersionedCatalogSnapshot.read(snapshotFile, sourceChecksums);
+        Assert.assertNotNull(snapshotVersions);
+        Assert.assertEquals(snapshotVersions.size(), versions.size());
+        for (int i = 0; i < versions.size(); i++) {
+            Assert.assertEquals(snapshotVersions.get(i).getEffectiveDate(), versions.get(i).getEffectiveDate());
+            Assert.assertEquals(snapshotVersions.get(i).getCurrentPlans().length, versions.get(i).getCurrentPlans().length);
+            Assert.assertEquals(snapshotVersions.get(i).findCurrentPlan("pistol-monthly").getName(), "pistol-monthly");
+        }
+
+        // A snapshot built from other sources is ignored
+        final Map<String, String> otherChecksums = ImmutableMap.<String, String>of("file:/catalog.xml", VersionedCatalogSnapshot.checksum(new byte[]{1, 2, 4}));
+        Assert.assertNull(VersionedCatalogSnapshot.read(snapshotFile, otherChecksums));
+    }
+
+    @Test(groups = "fast")
+    public void testLoadWithSnapshot() throws Exception {
+        final File catalogDirectory = Files.createTempDir();
+        final File catalogFile = new File(catalogDirectory, "SnapshotCatalog.xml");
+        Files.copy(new File(Resources.getResource("WeaponsHire.xml").toURI()), catalogFile);
+        final File snapshotFile = new File(catalogDirectory, "SnapshotCatalog.xml.snapshot");
+        final AtomicInteger nbParses = new AtomicInteger(0);
+        final VersionedCatalogLoader snapshotLoader = new VersionedCatalogLoader(new DefaultClock(), true) {
+            @Override
+            protected StandaloneCatalog parseCatalog(final URI uri, final byte[] source) throws Exception {
+                nbParses.incrementAndGet();
+                return super.parseCatalog(uri, source);
+            }
+        };
+
+        // First load parses the catalog and writes the snapshot, second one uses it
+        final VersionedCatalog parsed = snapshotLoader.load(catalogFile.toURI().toString());
+        Assert.assertEquals(nbParses.get(), 1);
+        Assert.assertTrue(snapshotFile.isFile());
+        final VersionedCatalog fromSnapshot = snapshotLoader.load(catalogFile.toURI().toString());
+        Assert.assertEquals(nbParses.get(), 1);
+        Assert.assertEquals(fromSnapshot.getCatalogName(), parsed.getCatalogName());
+        Assert.assertEquals(fromSnapshot.getCurrentPlans().length, parsed.getCurrentPlans().length);
+
+        // A corrupted snapshot is replaced
+        Files.write(new byte[]{1, 2, 3}, snapshotFile);
+        Assert.assertEquals(snapshotLoader.load(catalogFile.toURI().toString()).getCatalogName(), parsed.getCatalogName());
+        Assert.assertEquals(nbParses.get(), 2);
+        Assert.assertTrue(snapshotFile.length() > 3);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(groups = "fast")
+    public void testSnapshotRejectsUnexpectedClasses() throws Exception {
+        final Map<String, String> sourceChecksums = ImmutableMap.<String, String>of("file:/catalog.xml", VersionedCatalogSnapshot.checksum(new byte[]{1, 2, 3}));
+        final List<Object> versions = new ArrayList<Object>();
+        versions.add(new HashMap<String, String>());
+
+        final File snapshotFile = new File(Files.createTempDir(), "catalog.snapshot");
+        VersionedCatalogSnapshot.write(snapshotFile, sourceChecksums, (List<StandaloneCatalog>) (List<?>) versions);
+        try {
+            VersionedCatalogSnapshot.read(snapshotFile, sourceChecksums);
+            Assert.fail("Only the catalog classes should be deserialized");
+        } catch (InvalidClassException e) {
+            Assert.assertEquals(e.classname, HashMap.class.getName());
+        }
+    }
 }
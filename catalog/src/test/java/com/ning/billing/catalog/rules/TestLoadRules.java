@@ -22,11 +22,17 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.google.common.io.Resources;
+import com.ning.billing.ErrorCode;
 import com.ning.billing.catalog.CatalogTestSuite;
+import com.ning.billing.catalog.DefaultProduct;
 import com.ning.billing.catalog.StandaloneCatalog;
 import com.ning.billing.catalog.api.BillingPeriod;
+import com.ning.billing.catalog.api.CatalogApiException;
+import com.ning.billing.catalog.api.PhaseType;
 import com.ning.billing.catalog.api.PlanAlignmentCreate;
+import com.ning.billing.catalog.api.PlanPhaseSpecifier;
 import com.ning.billing.catalog.api.PlanSpecifier;
+import com.ning.billing.catalog.api.PriceList;
 import com.ning.billing.catalog.api.ProductCategory;
 import com.ning.billing.util.config.XMLLoader;
 
@@ -50,4 +56,52 @@ public class TestLoadRules extends CatalogTestSuite {
         final PlanAlignmentCreate alignment2 = rules.getPlanCreateAlignment(specifier2, catalog);
         Assert.assertEquals(alignment2, PlanAlignmentCreate.START_OF_BUNDLE);
     }
+
+    @Test(groups = "fast")
+    public void testCompiledRulesMatchCases() throws Exception {
+        final URI uri = new URI(Resources.getResource("WeaponsHire.xml").toExternalForm());
+        final StandaloneCatalog catalog = XMLLoader.getObjectFromUri(uri, StandaloneCatalog.class);
+        final PlanRules rules = catalog.getPlanRules();
+
+        // Billing periods and phase types include null, as specifiers may not have them
+        final BillingPeriod[] billingPeriods = new BillingPeriod[BillingPeriod.values().length + 1];
+        System.arraycopy(BillingPeriod.values(), 0, billingPeriods, 0, BillingPeriod.values().length);
+        final PhaseType[] phaseTypes = new PhaseType[PhaseType.values().length + 1];
+        System.arraycopy(PhaseType.values(), 0, phaseTypes, 0, PhaseType.values().length);
+
+        for (final DefaultProduct fromProduct : catalog.getCurrentProducts()) {
+            for (final BillingPeriod fromBillingPeriod : billingPeriods) {
+                for (final PriceList fromPriceList : catalog.getPriceLists().getAllPriceLists()) {
+                    final PlanSpecifier specifier = new PlanSpecifier(fromProduct.getName(), fromProduct.getCategory(), fromBillingPeriod, fromPriceList.getName());
+                    Assert.assertEquals(rules.getPlanCreateAlignment(specifier, catalog), Case.getResult(rules.getCreateAlignmentCase(), specifier, catalog));
+
+                    for (final PhaseType phaseType : phaseTypes) {
+                        final PlanPhaseSpecifier from = new PlanPhaseSpecifier(fromProduct.getName(), fromProduct.getCategory(), fromBillingPeriod, fromPriceList.getName(), phaseType);
+                        Assert.assertEquals(rules.getPlanCancelPolicy(from, catalog), CasePhase.getResult(rules.getCancelCase(), from, catalog));
+                        Assert.assertEquals(rules.getBillingAlignment(from, catalog), CasePhase.getResult(rules.getBillingAlignmentCase(), from, catalog));
+
+                        for (final DefaultProduct toProduct : catalog.getCurrentProducts()) {
+                            for (final BillingPeriod toBillingPeriod : billingPeriods) {
+                                for (final PriceList toPriceList : catalog.getPriceLists().getAllPriceLists()) {
+                                    final PlanSpecifier to = new PlanSpecifier(toProduct.getName(), toProduct.getCategory(), toBillingPeriod, toPriceList.getName());
+                                    Assert.assertEquals(rules.getPlanChangeAlignment(from, to, catalog), CaseChange.getResult(rules.getChangeAlignmentCase(), from, to, catalog));
+                                    if (!fromProduct.equals(toProduct) || fromBillingPeriod != toBillingPeriod || !fromPriceList.equals(toPriceList)) {
+                                        Assert.assertEquals(rules.getPlanChangePolicy(from, to, catalog), CaseChange.getResult(rules.getChangeCase(), from, to, catalog));
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // Unknown products are still reported by the first case looking at products
+        try {
+            rules.getPlanCreateAlignment(new PlanSpecifier("Foo", ProductCategory.ADD_ON, BillingPeriod.MONTHLY, "DEFAULT"), catalog);
+            Assert.fail("Exception should have been thrown, there is no such product");
+        } catch (CatalogApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.CAT_NO_SUCH_PRODUCT.getCode());
+        }
+    }
 }
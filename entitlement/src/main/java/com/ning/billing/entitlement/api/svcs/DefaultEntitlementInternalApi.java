@@ -16,6 +16,7 @@
 package com.ning.billing.entitlement.api.svcs;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -68,6 +69,11 @@ public class DefaultEntitlementInternalApi implements EntitlementInternalApi {
         return dao.getSubscriptions(subscriptionFactory, bundleId, context);
     }
 
+    @Override
+    public Map<UUID, List<Subscription>> getSubscriptionsForAccount(final UUID accountId, final InternalTenantContext context) {
+        return dao.getSubscriptionsForAccount(subscriptionFactory, accountId, context);
+    }
+
     @Override
     public Subscription getBaseSubscription(UUID bundleId,
             InternalTenantContext context) throws EntitlementUserApiException {
@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
@@ -96,12 +97,32 @@ public class DefaultEntitlementTimelineApi implements EntitlementTimelineApi {
         return getBundleTimelineInternal(bundle, bundleId.toString(), context);
     }
 
+    @Override
+    public List<BundleTimeline> getBundleTimelinesForAccount(final UUID accountId, final TenantContext context) throws EntitlementRepairException {
+        final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContext(context);
+        final Map<UUID, List<Subscription>> subscriptionsPerBundle = dao.getSubscriptionsForAccount(factory, accountId, internalTenantContext);
+
+        final List<BundleTimeline> result = new LinkedList<BundleTimeline>();
+        for (final SubscriptionBundle bundle : dao.getSubscriptionBundleForAccount(accountId, internalTenantContext)) {
+            // The bundle may have been created after the subscriptions were loaded
+            final List<Subscription> subscriptions = subscriptionsPerBundle.get(bundle.getId()) != null ?
+                                                     subscriptionsPerBundle.get(bundle.getId()) :
+                                                     dao.getSubscriptions(factory, bundle.getId(), internalTenantContext);
+            result.add(getBundleTimelineInternal(bundle, subscriptions));
+        }
+        return result;
+    }
+
     private BundleTimeline getBundleTimelineInternal(final SubscriptionBundle bundle, final String descBundle, final TenantContext context) throws EntitlementRepairException {
+        if (bundle == null) {
+            throw new EntitlementRepairException(ErrorCode.ENT_REPAIR_UNKNOWN_BUNDLE, descBundle);
+        }
+        final List<Subscription> subscriptions = dao.getSubscriptions(factory, bundle.getId(), internalCallContextFactory.createInternalTenantContext(context));
+        return getBundleTimelineInternal(bundle, subscriptions);
+    }
+
+    private BundleTimeline getBundleTimelineInternal(final SubscriptionBundle bundle, final List<Subscription> subscriptions) throws EntitlementRepairException {
         try {
-            if (bundle == null) {
-                throw new EntitlementRepairException(ErrorCode.ENT_REPAIR_UNKNOWN_BUNDLE, descBundle);
-            }
-            final List<Subscription> subscriptions = dao.getSubscriptions(factory, bundle.getId(), internalCallContextFactory.createInternalTenantContext(context));
             if (subscriptions.size() == 0) {
                 throw new EntitlementRepairException(ErrorCode.ENT_REPAIR_NO_ACTIVE_SUBSCRIPTIONS, bundle.getId());
             }
@@ -102,6 +102,12 @@ public class SubscriptionData extends EntityBase implements Subscription {
         this.paidThroughDate = builder.getPaidThroughDate();
     }
 
+    // Reuses the transitions of another instance of that subscription: they are never modified once rebuilt
+    public SubscriptionData(final SubscriptionBuilder builder, final SubscriptionData rebuilt) {
+        this(builder, rebuilt.apiService, rebuilt.clock);
+        this.transitions = rebuilt.transitions;
+    }
+
     @Override
     public UUID getBundleId() {
         return bundleId;
@@ -16,6 +16,9 @@
 
 package com.ning.billing.entitlement.engine.addon;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import org.joda.time.DateTime;
 
 import com.ning.billing.ErrorCode;
@@ -88,6 +91,20 @@ public class AddonUtils {
         return false;
     }
 
+    /**
+     * @return the names of the add-on products which can remain attached to the base product, i.e. available but not included
+     */
+    public Set<String> getCompatibleAddonProductNames(final Product baseProduct) {
+        final Set<String> result = new HashSet<String>();
+        for (final Product curAv : baseProduct.getAvailable()) {
+            result.add(curAv.getName());
+        }
+        for (final Product curInc : baseProduct.getIncluded()) {
+            result.remove(curInc.getName());
+        }
+        return result;
+    }
+
     public boolean isAddonIncludedFromProdName(final String baseProductName, final DateTime requestedDate, final Plan targetAddOnPlan) {
         try {
             final Product product = catalogService.getFullCatalog().findProduct(baseProductName, requestedDate);
@@ -16,9 +16,10 @@
 
 package com.ning.billing.entitlement.engine.core;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -144,6 +145,11 @@ public class Engine implements EventListener, EntitlementService {
                 public boolean isNotificationProcessingOff() {
                     return config.isNotificationProcessingOff();
                 }
+
+                @Override
+                public int getMaxClaimedNotifications() {
+                    return config.getMaxClaimedNotifications();
+                }
             };
 
             subscriptionEventQueue = notificationQueueService.createNotificationQueue(ENTITLEMENT_SERVICE_NAME,
@@ -223,11 +229,13 @@ public class Engine implements EventListener, EntitlementService {
     private int onBasePlanEvent(final SubscriptionData baseSubscription, final ApiEvent event, final InternalCallContext context) {
         final DateTime now = clock.getUTCNow();
         final Product baseProduct = (baseSubscription.getState() == SubscriptionState.CANCELLED) ? null : baseSubscription.getCurrentPlan().getProduct();
+        final Set<String> compatibleAddonProductNames = (baseProduct == null) ? Collections.<String>emptySet() :
+                                                        addonUtils.getCompatibleAddonProductNames(baseProduct);
 
         final List<Subscription> subscriptions = dao.getSubscriptions(subscriptionFactory, baseSubscription.getBundleId(), context);
 
-        final Map<UUID, EntitlementEvent> addOnCancellations = new HashMap<UUID, EntitlementEvent>();
-        final Map<UUID, SubscriptionData> addOnCancellationSubscriptions = new HashMap<UUID, SubscriptionData>();
+        final List<EntitlementEvent> addOnCancellations = new ArrayList<EntitlementEvent>();
+        final List<SubscriptionData> addOnCancellationSubscriptions = new ArrayList<SubscriptionData>();
         for (final Subscription subscription : subscriptions) {
             final SubscriptionData cur = (SubscriptionData) subscription;
             if (cur.getState() == SubscriptionState.CANCELLED ||
@@ -236,9 +244,7 @@ public class Engine implements EventListener, EntitlementService {
             }
 
             final Plan addonCurrentPlan = cur.getCurrentPlan();
-            if (baseProduct == null ||
-                addonUtils.isAddonIncluded(baseProduct, addonCurrentPlan) ||
-                !addonUtils.isAddonAvailable(baseProduct, addonCurrentPlan)) {
+            if (!compatibleAddonProductNames.contains(addonCurrentPlan.getProduct().getName())) {
                 //
                 // Perform AO cancellation using the effectiveDate of the BP
                 //
@@ -251,17 +257,14 @@ public class Engine implements EventListener, EntitlementService {
                                                                                 .setUserToken(context.getUserToken())
                                                                                 .setFromDisk(true));
 
-                addOnCancellations.put(cur.getId(), cancelEvent);
-                addOnCancellationSubscriptions.put(cur.getId(), cur);
+                addOnCancellations.add(cancelEvent);
+                addOnCancellationSubscriptions.add(cur);
             }
         }
 
-        final int addOnSize = addOnCancellations.size();
-        int cancelSeq = addOnSize - 1;
-        for (final UUID key : addOnCancellations.keySet()) {
-            dao.cancelSubscription(addOnCancellationSubscriptions.get(key), addOnCancellations.get(key), context, cancelSeq);
-            cancelSeq--;
-        }
-        return addOnSize;
+        // Persist all the AO cancellations in a single transaction
+        dao.cancelSubscriptions(addOnCancellationSubscriptions, addOnCancellations, context);
+
+        return addOnCancellations.size();
     }
 }
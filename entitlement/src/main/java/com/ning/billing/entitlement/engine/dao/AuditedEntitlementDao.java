@@ -23,6 +23,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -38,9 +39,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ning.billing.ErrorCode;
+import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.catalog.api.Plan;
 import com.ning.billing.catalog.api.ProductCategory;
+import com.ning.billing.config.EntitlementConfig;
 import com.ning.billing.entitlement.api.SubscriptionFactory;
 import com.ning.billing.entitlement.api.migration.AccountMigrationData;
 import com.ning.billing.entitlement.api.migration.AccountMigrationData.BundleMigrationData;
@@ -57,6 +60,7 @@ import com.ning.billing.entitlement.api.user.SubscriptionData;
 import com.ning.billing.entitlement.engine.addon.AddonUtils;
 import com.ning.billing.entitlement.engine.core.Engine;
 import com.ning.billing.entitlement.engine.core.EntitlementNotificationKey;
+import com.ning.billing.entitlement.engine.dao.SubscriptionCache.CachedSubscription;
 import com.ning.billing.entitlement.events.EntitlementEvent;
 import com.ning.billing.entitlement.events.EntitlementEvent.EventType;
 import com.ning.billing.entitlement.events.user.ApiEvent;
@@ -94,10 +98,12 @@ public class AuditedEntitlementDao implements EntitlementDao {
     private final NotificationQueueService notificationQueueService;
     private final AddonUtils addonUtils;
     private final InternalBus eventBus;
+    private final CatalogService catalogService;
+    private final SubscriptionCache subscriptionCache;
 
     @Inject
-    public AuditedEntitlementDao(final IDBI dbi, final Clock clock, final AddonUtils addonUtils,
-                                 final NotificationQueueService notificationQueueService, final InternalBus eventBus, final CatalogService catalogService) {
+    public AuditedEntitlementDao(final IDBI dbi, final Clock clock, final AddonUtils addonUtils, final NotificationQueueService notificationQueueService,
+                                 final InternalBus eventBus, final CatalogService catalogService, final EntitlementConfig config) {
         this.clock = clock;
         this.subscriptionsDao = dbi.onDemand(SubscriptionSqlDao.class);
         this.eventsDao = dbi.onDemand(EntitlementEventSqlDao.class);
@@ -105,6 +111,8 @@ public class AuditedEntitlementDao implements EntitlementDao {
         this.notificationQueueService = notificationQueueService;
         this.addonUtils = addonUtils;
         this.eventBus = eventBus;
+        this.catalogService = catalogService;
+        this.subscriptionCache = new SubscriptionCache(config.getSubscriptionCacheSize());
     }
 
     @Override
@@ -178,7 +186,7 @@ public class AuditedEntitlementDao implements EntitlementDao {
 
     @Override
     public List<Subscription> getSubscriptions(final SubscriptionFactory factory, final UUID bundleId, final InternalTenantContext context) {
-        return buildBundleSubscriptions(bundleId, factory, subscriptionsDao.getSubscriptionsFromBundleId(bundleId.toString(), context), context);
+        return buildBundleSubscriptions(bundleId, factory, subscriptionsDao.getSubscriptionsFromBundleId(bundleId.toString(), context), null, context);
     }
 
     @Override
@@ -192,6 +200,35 @@ public class AuditedEntitlementDao implements EntitlementDao {
         return getSubscriptions(factory, bundle.getId(), context);
     }
 
+    @Override
+    public Map<UUID, List<Subscription>> getSubscriptionsForAccount(final SubscriptionFactory factory, final UUID accountId, final InternalTenantContext context) {
+        // Load the bundles, then all their subscriptions, then all their events: the number of queries doesn't depend
+        // on the number of bundles of the account
+        final Map<UUID, List<Subscription>> subscriptionsPerBundle = new LinkedHashMap<UUID, List<Subscription>>();
+        for (final SubscriptionBundle bundle : bundlesDao.getBundleFromAccount(accountId.toString(), context)) {
+            subscriptionsPerBundle.put(bundle.getId(), new ArrayList<Subscription>());
+        }
+        if (subscriptionsPerBundle.size() == 0) {
+            return subscriptionsPerBundle;
+        }
+
+        final List<String> bundleIds = new ArrayList<String>(subscriptionsPerBundle.size());
+        for (final UUID bundleId : subscriptionsPerBundle.keySet()) {
+            bundleIds.add(bundleId.toString());
+        }
+        final List<Subscription> subscriptions = subscriptionsDao.getSubscriptionsFromBundleIds(bundleIds, context);
+        for (final Subscription cur : subscriptions) {
+            subscriptionsPerBundle.get(cur.getBundleId()).add(cur);
+        }
+
+        final Map<UUID, List<EntitlementEvent>> eventsPerSubscription = getEventsPerSubscription(subscriptions, context);
+        final Map<UUID, List<Subscription>> result = new LinkedHashMap<UUID, List<Subscription>>();
+        for (final UUID bundleId : subscriptionsPerBundle.keySet()) {
+            result.put(bundleId, buildBundleSubscriptions(bundleId, factory, subscriptionsPerBundle.get(bundleId), eventsPerSubscription, context));
+        }
+        return result;
+    }
+
     @Override
     public void updateChargedThroughDate(final SubscriptionData subscription, final InternalCallContext context) {
         final Date ctd = (subscription.getChargedThroughDate() != null) ? subscription.getChargedThroughDate().toDate() : null;
@@ -242,6 +279,7 @@ public class AuditedEntitlementDao implements EntitlementDao {
                 return null;
             }
         });
+        subscriptionCache.invalidate(subscription.getId());
     }
 
     @Override
@@ -346,6 +384,7 @@ public class AuditedEntitlementDao implements EntitlementDao {
                 return null;
             }
         });
+        subscriptionCache.invalidate(subscription.getId());
     }
 
     @Override
@@ -357,6 +396,52 @@ public class AuditedEntitlementDao implements EntitlementDao {
                 return null;
             }
         });
+        subscriptionCache.invalidate(subscription.getId());
+    }
+
+    @Override
+    public void cancelSubscriptions(final List<SubscriptionData> subscriptions, final List<EntitlementEvent> cancelEvents, final InternalCallContext context) {
+        if (subscriptions.size() == 0) {
+            return;
+        }
+
+        eventsDao.inTransaction(new Transaction<Void, EntitlementEventSqlDao>() {
+            @Override
+            public Void inTransaction(final EntitlementEventSqlDao transactional, final TransactionStatus status) throws Exception {
+                for (final SubscriptionData cur : subscriptions) {
+                    cancelFutureEventsFromTransaction(cur.getId(), transactional, context);
+                }
+                transactional.insertEvent(cancelEvents, context);
+
+                final List<EntityAudit> audits = new ArrayList<EntityAudit>(cancelEvents.size());
+                final Map<DateTime, List<NotificationKey>> notificationKeysPerEffectiveDate = new LinkedHashMap<DateTime, List<NotificationKey>>();
+                for (int i = 0; i < cancelEvents.size(); i++) {
+                    final EntitlementEvent cancelEvent = cancelEvents.get(i);
+                    final Long recordId = transactional.getRecordId(cancelEvent.getId().toString(), context);
+                    audits.add(new EntityAudit(TableName.SUBSCRIPTION_EVENTS, recordId, ChangeType.INSERT));
+
+                    // Same sequence ids as when cancelling the subscriptions one by one
+                    if (notificationKeysPerEffectiveDate.get(cancelEvent.getEffectiveDate()) == null) {
+                        notificationKeysPerEffectiveDate.put(cancelEvent.getEffectiveDate(), new ArrayList<NotificationKey>());
+                    }
+                    notificationKeysPerEffectiveDate.get(cancelEvent.getEffectiveDate()).add(new EntitlementNotificationKey(cancelEvent.getId(), cancelEvents.size() - 1 - i));
+                }
+                transactional.insertAuditFromTransaction(audits, context);
+
+                for (final DateTime effectiveDate : notificationKeysPerEffectiveDate.keySet()) {
+                    recordFutureNotificationsFromTransaction(transactional, effectiveDate, notificationKeysPerEffectiveDate.get(effectiveDate), context);
+                }
+
+                // Notify the Bus of the requested changes
+                for (int i = 0; i < subscriptions.size(); i++) {
+                    notifyBusOfRequestedChange(transactional, subscriptions.get(i), cancelEvents.get(i), context);
+                }
+                return null;
+            }
+        });
+        for (final SubscriptionData cur : subscriptions) {
+            subscriptionCache.invalidate(cur.getId());
+        }
     }
 
     @Override
@@ -405,6 +490,7 @@ public class AuditedEntitlementDao implements EntitlementDao {
                 return null;
             }
         });
+        subscriptionCache.invalidate(subscription.getId());
     }
 
     @Override
@@ -436,6 +522,7 @@ public class AuditedEntitlementDao implements EntitlementDao {
                 return null;
             }
         });
+        subscriptionCache.invalidate(subscription.getId());
     }
 
     private void cancelSubscriptionFromTransaction(final SubscriptionData subscription, final EntitlementEvent cancelEvent, final EntitlementEventSqlDao transactional, final InternalCallContext context, final int seqId) {
@@ -515,7 +602,7 @@ public class AuditedEntitlementDao implements EntitlementDao {
             bundleInput.add(input);
         }
 
-        final List<Subscription> reloadedSubscriptions = buildBundleSubscriptions(input.getBundleId(), factory, bundleInput, context);
+        final List<Subscription> reloadedSubscriptions = buildBundleSubscriptions(input.getBundleId(), factory, bundleInput, null, context);
         for (final Subscription cur : reloadedSubscriptions) {
             if (cur.getId().equals(input.getId())) {
                 return cur;
@@ -525,7 +612,11 @@ public class AuditedEntitlementDao implements EntitlementDao {
         throw new EntitlementError("Unexpected code path in buildSubscription");
     }
 
-    private List<Subscription> buildBundleSubscriptions(final UUID bundleId, final SubscriptionFactory factory, final List<Subscription> input, final InternalTenantContext context) {
+    /**
+     * @param preloadedEvents the events of the subscriptions, if they were already loaded (they are then not looked up in the cache)
+     */
+    private List<Subscription> buildBundleSubscriptions(final UUID bundleId, final SubscriptionFactory factory, final List<Subscription> input,
+                                                        @Nullable final Map<UUID, List<EntitlementEvent>> preloadedEvents, final InternalTenantContext context) {
         if (input == null || input.size() == 0) {
             return Collections.emptyList();
         }
@@ -544,25 +635,62 @@ public class AuditedEntitlementDao implements EntitlementDao {
             }
         });
 
+        // Check the cached subscriptions against the current version of their events, in a single query
+        final Map<UUID, SubscriptionEventsVersion> eventsVersions = (preloadedEvents == null) ? getEventsVersions(input, context) :
+                                                                    Collections.<UUID, SubscriptionEventsVersion>emptyMap();
+        final Catalog catalog = catalogService.getFullCatalog();
+        final DateTime now = clock.getUTCNow();
+
         EntitlementEvent futureBaseEvent = null;
+        SubscriptionEventsVersion baseEventsVersion = null;
+        DateTime baseValidUntil = null;
         final List<Subscription> result = new ArrayList<Subscription>(input.size());
         for (final Subscription cur : input) {
-            final List<EntitlementEvent> events = eventsDao.getEventsForSubscription(cur.getId().toString(), context);
+            final SubscriptionEventsVersion eventsVersion = eventsVersions.get(cur.getId());
+            final SubscriptionEventsVersion dependentEventsVersion = (cur.getCategory() == ProductCategory.ADD_ON) ? baseEventsVersion : null;
+            final CachedSubscription cached = subscriptionCache.get((SubscriptionData) cur, factory, catalog, eventsVersion, dependentEventsVersion, now);
+            if (cached != null) {
+                if (cur.getCategory() == ProductCategory.BASE) {
+                    futureBaseEvent = cached.getFutureBaseEvent();
+                    baseEventsVersion = eventsVersion;
+                    baseValidUntil = cached.getValidUntil();
+                }
+                result.add(cached.copy((SubscriptionData) cur));
+                continue;
+            }
+
+            final List<EntitlementEvent> events;
+            if (preloadedEvents == null) {
+                events = eventsDao.getEventsForSubscription(cur.getId().toString(), context);
+            } else if (preloadedEvents.get(cur.getId()) == null) {
+                events = new ArrayList<EntitlementEvent>();
+            } else {
+                events = preloadedEvents.get(cur.getId());
+            }
             Subscription reloaded = factory.createSubscription(new SubscriptionBuilder((SubscriptionData) cur), events);
 
+            // The subscription is rebuilt differently once one of its events (or of its base subscription) becomes effective
+            DateTime validUntil = getNextEffectiveDate(events, now);
+
             switch (cur.getCategory()) {
                 case BASE:
                     final Collection<EntitlementEvent> futureApiEvents = Collections2.filter(events, new Predicate<EntitlementEvent>() {
                         @Override
                         public boolean apply(final EntitlementEvent input) {
-                            return (input.getEffectiveDate().isAfter(clock.getUTCNow()) &&
+                            return (input.getEffectiveDate().isAfter(now) &&
                                     ((input instanceof ApiEventCancel) || (input instanceof ApiEventChange)));
                         }
                     });
                     futureBaseEvent = (futureApiEvents.size() == 0) ? null : futureApiEvents.iterator().next();
+                    baseEventsVersion = eventsVersion;
+                    baseValidUntil = validUntil;
                     break;
 
                 case ADD_ON:
+                    if (baseValidUntil != null && (validUntil == null || baseValidUntil.isBefore(validUntil))) {
+                        validUntil = baseValidUntil;
+                    }
+
                     final Plan targetAddOnPlan = reloaded.getCurrentPlan();
                     final String baseProductName = (futureBaseEvent instanceof ApiEventChange) ?
                                                    ((ApiEventChange) futureBaseEvent).getEventPlan() : null;
@@ -573,7 +701,6 @@ public class AuditedEntitlementDao implements EntitlementDao {
                                                         (addonUtils.isAddonIncludedFromPlanName(baseProductName, futureBaseEvent.getEffectiveDate(), targetAddOnPlan))));
 
                     if (createCancelEvent) {
-                        final DateTime now = clock.getUTCNow();
                         final EntitlementEvent addOnCancelEvent = new ApiEventCancel(new ApiEventBuilder()
                                                                                              .setSubscriptionId(reloaded.getId())
                                                                                              .setActiveVersion(((SubscriptionData) reloaded).getActiveVersion())
@@ -593,12 +720,62 @@ public class AuditedEntitlementDao implements EntitlementDao {
                     break;
             }
 
+            subscriptionCache.put((SubscriptionData) reloaded, factory, catalog, eventsVersion, dependentEventsVersion, validUntil,
+                                  (cur.getCategory() == ProductCategory.BASE) ? futureBaseEvent : null);
             result.add(reloaded);
         }
 
         return result;
     }
 
+    private Map<UUID, SubscriptionEventsVersion> getEventsVersions(final List<Subscription> subscriptions, final InternalTenantContext context) {
+        if (!subscriptionCache.isEnabled()) {
+            return Collections.emptyMap();
+        }
+
+        final List<String> subscriptionIds = new ArrayList<String>(subscriptions.size());
+        for (final Subscription cur : subscriptions) {
+            subscriptionIds.add(cur.getId().toString());
+        }
+
+        final Map<UUID, SubscriptionEventsVersion> result = new HashMap<UUID, SubscriptionEventsVersion>();
+        for (final SubscriptionEventsVersion cur : eventsDao.getEventsVersions(subscriptionIds, context)) {
+            result.put(cur.getSubscriptionId(), cur);
+        }
+        return result;
+    }
+
+    private Map<UUID, List<EntitlementEvent>> getEventsPerSubscription(final List<Subscription> subscriptions, final InternalTenantContext context) {
+        if (subscriptions.size() == 0) {
+            return Collections.emptyMap();
+        }
+
+        final List<String> subscriptionIds = new ArrayList<String>(subscriptions.size());
+        for (final Subscription cur : subscriptions) {
+            subscriptionIds.add(cur.getId().toString());
+        }
+
+        // Events are ordered by effective date across all subscriptions, hence for each subscription as well
+        final Map<UUID, List<EntitlementEvent>> result = new HashMap<UUID, List<EntitlementEvent>>();
+        for (final EntitlementEvent cur : eventsDao.getEventsForSubscriptions(subscriptionIds, context)) {
+            if (result.get(cur.getSubscriptionId()) == null) {
+                result.put(cur.getSubscriptionId(), new ArrayList<EntitlementEvent>());
+            }
+            result.get(cur.getSubscriptionId()).add(cur);
+        }
+        return result;
+    }
+
+    private DateTime getNextEffectiveDate(final List<EntitlementEvent> events, final DateTime now) {
+        DateTime result = null;
+        for (final EntitlementEvent cur : events) {
+            if (cur.getEffectiveDate().isAfter(now) && (result == null || cur.getEffectiveDate().isBefore(result))) {
+                result = cur.getEffectiveDate();
+            }
+        }
+        return result;
+    }
+
     @Override
     public void migrate(final UUID accountId, final AccountMigrationData accountData, final InternalCallContext context) {
         eventsDao.inTransaction(new Transaction<Void, EntitlementEventSqlDao>() {
@@ -646,6 +823,9 @@ public class AuditedEntitlementDao implements EntitlementDao {
                 return null;
             }
         });
+        for (final SubscriptionDataRepair cur : inRepair) {
+            subscriptionCache.invalidate(cur.getId());
+        }
     }
 
     @Override
@@ -665,6 +845,9 @@ public class AuditedEntitlementDao implements EntitlementDao {
                 return null;
             }
         });
+        for (final TransferCancelData cancel : transferCancelData) {
+            subscriptionCache.invalidate(cancel.getSubscription().getId());
+        }
     }
 
     private Subscription getBaseSubscription(final SubscriptionFactory factory, final UUID bundleId, final boolean rebuildSubscription, final InternalTenantContext context) {
@@ -691,6 +874,19 @@ public class AuditedEntitlementDao implements EntitlementDao {
         }
     }
 
+    private void recordFutureNotificationsFromTransaction(final Transmogrifier transactionalDao, final DateTime effectiveDate,
+                                                          final List<NotificationKey> notificationKeys, final InternalCallContext context) {
+        try {
+            final NotificationQueue subscriptionEventQueue = notificationQueueService.getNotificationQueue(Engine.ENTITLEMENT_SERVICE_NAME,
+                                                                                                           Engine.NOTIFICATION_QUEUE_NAME);
+            subscriptionEventQueue.recordFutureNotificationsFromTransaction(transactionalDao, effectiveDate, null, notificationKeys, context);
+        } catch (NoSuchNotificationQueue e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private void notifyBusOfRequestedChange(final EntitlementEventSqlDao transactional, final SubscriptionData subscription,
                                             final EntitlementEvent nextEvent, final InternalCallContext context) {
         try {
@@ -58,6 +58,8 @@ public interface EntitlementDao {
 
     public List<Subscription> getSubscriptionsForAccountAndKey(SubscriptionFactory factory, UUID accountId, String bundleKey, InternalTenantContext context);
 
+    public Map<UUID, List<Subscription>> getSubscriptionsForAccount(SubscriptionFactory factory, UUID accountId, InternalTenantContext context);
+
     // Update
     public void updateChargedThroughDate(SubscriptionData subscription, InternalCallContext context);
 
@@ -79,6 +81,8 @@ public interface EntitlementDao {
 
     public void cancelSubscription(SubscriptionData subscription, EntitlementEvent cancelEvent, InternalCallContext context, int cancelSeq);
 
+    public void cancelSubscriptions(List<SubscriptionData> subscriptions, List<EntitlementEvent> cancelEvents, InternalCallContext context);
+
     public void uncancelSubscription(SubscriptionData subscription, List<EntitlementEvent> uncancelEvents, InternalCallContext context);
 
     public void changePlan(SubscriptionData subscription, List<EntitlementEvent> changeEvents, InternalCallContext context);
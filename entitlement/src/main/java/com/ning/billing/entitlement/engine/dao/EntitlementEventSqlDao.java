@@ -18,6 +18,7 @@ package com.ning.billing.entitlement.engine.dao;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -27,6 +28,7 @@ import org.skife.jdbi.v2.SQLStatement;
 import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.Binder;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
@@ -35,6 +37,7 @@ import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 import org.skife.jdbi.v2.sqlobject.mixins.Transmogrifier;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.ExternalizedSqlViaStringTemplate3;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 import com.ning.billing.entitlement.events.EntitlementEvent;
 import com.ning.billing.entitlement.events.EntitlementEvent.EventType;
@@ -75,6 +78,10 @@ public interface EntitlementEventSqlDao extends Transactional<EntitlementEventSq
     public void insertEvent(@Bind(binder = EventSqlDaoBinder.class) EntitlementEvent evt,
                             @InternalTenantContextBinder final InternalCallContext context);
 
+    @SqlBatch(transactional = false)
+    public void insertEvent(@Bind(binder = EventSqlDaoBinder.class) List<EntitlementEvent> evts,
+                            @InternalTenantContextBinder final InternalCallContext context);
+
     @SqlUpdate
     public void unactiveEvent(@Bind("id") String id,
                               @InternalTenantContextBinder final InternalCallContext context);
@@ -99,6 +106,16 @@ public interface EntitlementEventSqlDao extends Transactional<EntitlementEventSq
     public List<EntitlementEvent> getEventsForSubscription(@Bind("subscriptionId") String subscriptionId,
                                                            @InternalTenantContextBinder final InternalTenantContext context);
 
+    @SqlQuery
+    @Mapper(EventSqlMapper.class)
+    public List<EntitlementEvent> getEventsForSubscriptions(@BindIn("subscriptionIds") Collection<String> subscriptionIds,
+                                                            @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlQuery
+    @Mapper(EventsVersionSqlMapper.class)
+    public List<SubscriptionEventsVersion> getEventsVersions(@BindIn("subscriptionIds") Collection<String> subscriptionIds,
+                                                             @InternalTenantContextBinder final InternalTenantContext context);
+
     public static class EventSqlDaoBinder extends BinderBase implements Binder<Bind, EntitlementEvent> {
 
         @Override
@@ -204,4 +221,17 @@ public interface EntitlementEventSqlDao extends Transactional<EntitlementEventSq
             return result;
         }
     }
+
+    public static class EventsVersionSqlMapper implements ResultSetMapper<SubscriptionEventsVersion> {
+
+        @Override
+        public SubscriptionEventsVersion map(final int index, final ResultSet r, final StatementContext ctx)
+                throws SQLException {
+            return new SubscriptionEventsVersion(UUID.fromString(r.getString("subscription_id")),
+                                                 r.getLong("nb_events"),
+                                                 r.getLong("nb_active_events"),
+                                                 r.getLong("sum_versions"),
+                                                 r.getLong("last_record_id"));
+        }
+    }
 }
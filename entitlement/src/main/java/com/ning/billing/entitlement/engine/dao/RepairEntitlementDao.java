@@ -175,6 +175,13 @@ public class RepairEntitlementDao implements EntitlementDao, RepairEntitlementLi
         }
     }
 
+    @Override
+    public void cancelSubscriptions(final List<SubscriptionData> subscriptions, final List<EntitlementEvent> cancelEvents, final InternalCallContext context) {
+        for (int i = 0; i < subscriptions.size(); i++) {
+            cancelSubscription(subscriptions.get(i), cancelEvents.get(i), context, subscriptions.size() - 1 - i);
+        }
+    }
+
     @Override
     public void changePlan(final SubscriptionData subscription, final List<EntitlementEvent> changeEvents, final InternalCallContext context) {
         addEvents(subscription.getId(), changeEvents);
@@ -253,6 +260,11 @@ public class RepairEntitlementDao implements EntitlementDao, RepairEntitlementLi
         throw new EntitlementError(NOT_IMPLEMENTED);
     }
 
+    @Override
+    public Map<UUID, List<Subscription>> getSubscriptionsForAccount(final SubscriptionFactory factory, final UUID accountId, final InternalTenantContext context) {
+        throw new EntitlementError(NOT_IMPLEMENTED);
+    }
+
     @Override
     public void updateChargedThroughDate(final SubscriptionData subscription, final InternalCallContext context) {
         throw new EntitlementError(NOT_IMPLEMENTED);
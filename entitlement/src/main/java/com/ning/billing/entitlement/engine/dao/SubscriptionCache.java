@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.entitlement.engine.dao;
+
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+
+import com.ning.billing.catalog.api.Catalog;
+import com.ning.billing.entitlement.api.SubscriptionFactory;
+import com.ning.billing.entitlement.api.user.DefaultSubscriptionFactory.SubscriptionBuilder;
+import com.ning.billing.entitlement.api.user.SubscriptionData;
+import com.ning.billing.entitlement.events.EntitlementEvent;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded cache of rebuilt subscriptions, to avoid reloading and replaying their events on each read.
+ * <p/>
+ * An entry is only used if it was built from the same events (see SubscriptionEventsVersion), for the same active
+ * version and catalog, and if none of its events became effective since: the version of the events being read from
+ * the database, this also holds when the subscription was modified by another node.
+ */
+class SubscriptionCache {
+
+    private final Cache<UUID, CachedSubscription> cachedSubscriptions;
+
+    public SubscriptionCache(final long maxSize) {
+        this.cachedSubscriptions = (maxSize > 0) ? CacheBuilder.newBuilder().maximumSize(maxSize).<UUID, CachedSubscription>build() : null;
+    }
+
+    public boolean isEnabled() {
+        return cachedSubscriptions != null;
+    }
+
+    /**
+     * @param subscription      the subscription, as read from the subscriptions table
+     * @param factory           the factory the subscription should be built with
+     * @param catalog           the current catalog
+     * @param eventsVersion     the current version of the subscription events
+     * @param baseEventsVersion for an add-on, the current version of the events of its base subscription
+     * @param now               the current time
+     * @return the cached subscription, null if there is none or if it is out of date
+     */
+    public CachedSubscription get(final SubscriptionData subscription, final SubscriptionFactory factory, final Catalog catalog,
+                                  @Nullable final SubscriptionEventsVersion eventsVersion, @Nullable final SubscriptionEventsVersion baseEventsVersion,
+                                  final DateTime now) {
+        if (cachedSubscriptions == null || eventsVersion == null) {
+            return null;
+        }
+
+        final CachedSubscription cached = cachedSubscriptions.getIfPresent(subscription.getId());
+        if (cached == null) {
+            return null;
+        }
+
+        if (cached.factory != factory ||
+            cached.catalog != catalog ||
+            cached.activeVersion != subscription.getActiveVersion() ||
+            !eventsVersion.equals(cached.eventsVersion) ||
+            !(baseEventsVersion == null ? cached.baseEventsVersion == null : baseEventsVersion.equals(cached.baseEventsVersion)) ||
+            (cached.validUntil != null && !now.isBefore(cached.validUntil))) {
+            cachedSubscriptions.invalidate(subscription.getId());
+            return null;
+        }
+        return cached;
+    }
+
+    public void put(final SubscriptionData rebuilt, final SubscriptionFactory factory, final Catalog catalog,
+                    @Nullable final SubscriptionEventsVersion eventsVersion, @Nullable final SubscriptionEventsVersion baseEventsVersion,
+                    @Nullable final DateTime validUntil, @Nullable final EntitlementEvent futureBaseEvent) {
+        // Only plain subscriptions can be copied safely (e.g. not the ones built for repair)
+        if (cachedSubscriptions == null || eventsVersion == null || rebuilt.getClass() != SubscriptionData.class) {
+            return;
+        }
+
+        // Keep our own copy, callers are free to rebuild the transitions of the instance they got
+        final SubscriptionData copy = new SubscriptionData(new SubscriptionBuilder(rebuilt), rebuilt);
+        cachedSubscriptions.put(rebuilt.getId(), new CachedSubscription(copy, factory, catalog, rebuilt.getActiveVersion(), eventsVersion,
+                                                                        baseEventsVersion, validUntil, futureBaseEvent));
+    }
+
+    public void invalidate(final UUID subscriptionId) {
+        if (cachedSubscriptions != null) {
+            cachedSubscriptions.invalidate(subscriptionId);
+        }
+    }
+
+    public static class CachedSubscription {
+
+        private final SubscriptionData subscription;
+        private final SubscriptionFactory factory;
+        private final Catalog catalog;
+        private final long activeVersion;
+        private final SubscriptionEventsVersion eventsVersion;
+        private final SubscriptionEventsVersion baseEventsVersion;
+        private final DateTime validUntil;
+        private final EntitlementEvent futureBaseEvent;
+
+        private CachedSubscription(final SubscriptionData subscription, final SubscriptionFactory factory, final Catalog catalog,
+                                   final long activeVersion, final SubscriptionEventsVersion eventsVersion,
+                                   final SubscriptionEventsVersion baseEventsVersion, final DateTime validUntil,
+                                   final EntitlementEvent futureBaseEvent) {
+            this.subscription = subscription;
+            this.factory = factory;
+            this.catalog = catalog;
+            this.activeVersion = activeVersion;
+            this.eventsVersion = eventsVersion;
+            this.baseEventsVersion = baseEventsVersion;
+            this.validUntil = validUntil;
+            this.futureBaseEvent = futureBaseEvent;
+        }
+
+        /**
+         * @param subscription the subscription, as read from the subscriptions table
+         * @return a new instance of the subscription, sharing the cached transitions
+         */
+        public SubscriptionData copy(final SubscriptionData subscription) {
+            return new SubscriptionData(new SubscriptionBuilder(subscription), this.subscription);
+        }
+
+        // For base subscriptions, the first future cancel or change, if any
+        public EntitlementEvent getFutureBaseEvent() {
+            return futureBaseEvent;
+        }
+
+        public DateTime getValidUntil() {
+            return validUntil;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.entitlement.engine.dao;
+
+import java.util.UUID;
+
+/**
+ * Summary of the events of a subscription, which changes whenever an event is inserted, deactivated or moved to
+ * another version: two identical versions mean the subscription would be rebuilt from the same events.
+ */
+public class SubscriptionEventsVersion {
+
+    private final UUID subscriptionId;
+    private final long nbEvents;
+    private final long nbActiveEvents;
+    private final long sumVersions;
+    private final long lastRecordId;
+
+    public SubscriptionEventsVersion(final UUID subscriptionId, final long nbEvents, final long nbActiveEvents,
+                                     final long sumVersions, final long lastRecordId) {
+        this.subscriptionId = subscriptionId;
+        this.nbEvents = nbEvents;
+        this.nbActiveEvents = nbActiveEvents;
+        this.sumVersions = sumVersions;
+        this.lastRecordId = lastRecordId;
+    }
+
+    public UUID getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public long getNbEvents() {
+        return nbEvents;
+    }
+
+    public long getNbActiveEvents() {
+        return nbActiveEvents;
+    }
+
+    public long getSumVersions() {
+        return sumVersions;
+    }
+
+    public long getLastRecordId() {
+        return lastRecordId;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("SubscriptionEventsVersion");
+        sb.append("{subscriptionId=").append(subscriptionId);
+        sb.append(", nbEvents=").append(nbEvents);
+        sb.append(", nbActiveEvents=").append(nbActiveEvents);
+        sb.append(", sumVersions=").append(sumVersions);
+        sb.append(", lastRecordId=").append(lastRecordId);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final SubscriptionEventsVersion that = (SubscriptionEventsVersion) o;
+
+        if (lastRecordId != that.lastRecordId) {
+            return false;
+        }
+        if (nbActiveEvents != that.nbActiveEvents) {
+            return false;
+        }
+        if (nbEvents != that.nbEvents) {
+            return false;
+        }
+        if (sumVersions != that.sumVersions) {
+            return false;
+        }
+        if (subscriptionId != null ? !subscriptionId.equals(that.subscriptionId) : that.subscriptionId != null) {
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = subscriptionId != null ? subscriptionId.hashCode() : 0;
+        result = 31 * result + (int) (nbEvents ^ (nbEvents >>> 32));
+        result = 31 * result + (int) (nbActiveEvents ^ (nbActiveEvents >>> 32));
+        result = 31 * result + (int) (sumVersions ^ (sumVersions >>> 32));
+        result = 31 * result + (int) (lastRecordId ^ (lastRecordId >>> 32));
+        return result;
+    }
+}
@@ -18,6 +18,7 @@ package com.ning.billing.entitlement.engine.dao;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -35,6 +36,7 @@ import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 import org.skife.jdbi.v2.sqlobject.mixins.Transmogrifier;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.ExternalizedSqlViaStringTemplate3;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 import com.ning.billing.catalog.api.ProductCategory;
 import com.ning.billing.entitlement.api.user.DefaultSubscriptionFactory.SubscriptionBuilder;
@@ -64,6 +66,11 @@ public interface SubscriptionSqlDao extends Transactional<SubscriptionSqlDao>, A
     public List<Subscription> getSubscriptionsFromBundleId(@Bind("bundleId") String bundleId,
                                                            @InternalTenantContextBinder final InternalTenantContext context);
 
+    @SqlQuery
+    @Mapper(SubscriptionMapper.class)
+    public List<Subscription> getSubscriptionsFromBundleIds(@BindIn("bundleIds") Collection<String> bundleIds,
+                                                            @InternalTenantContextBinder final InternalTenantContext context);
+
     @SqlUpdate
     public void updateChargedThroughDate(@Bind("id") String id, @Bind("chargedThroughDate") Date chargedThroughDate,
                                          @InternalTenantContextBinder final InternalCallContext context);
@@ -22,6 +22,8 @@ import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
@@ -147,6 +149,43 @@ public class TestUserApiAddOn extends TestApiBase {
         }
     }
 
+    @Test(groups = "slow")
+    public void testGetSubscriptionsForAccountWithFutureCancelledBP() {
+        try {
+            // CREATE BP AND AO
+            SubscriptionData baseSubscription = createSubscription("Shotgun", BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME);
+            final SubscriptionData aoSubscription = createSubscription("Telescopic-Scope", BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME);
+
+            // FUTURE CANCELLATION OF THE BP
+            final DateTime now = clock.getUTCNow();
+            entitlementInternalApi.setChargedThroughDate(baseSubscription.getId(), now.plusMonths(1).toLocalDate(), internalCallContext);
+            baseSubscription = (SubscriptionData) entitlementApi.getSubscriptionFromId(baseSubscription.getId(), callContext);
+            baseSubscription.cancel(now, callContext);
+
+            // THE BULK LOAD SHOULD REBUILD THE SAME SUBSCRIPTIONS AS THE BUNDLE LOAD
+            final Map<UUID, List<Subscription>> subscriptionsPerBundle = entitlementInternalApi.getSubscriptionsForAccount(bundle.getAccountId(), internalCallContext);
+            assertEquals(subscriptionsPerBundle.size(), 1);
+            final List<Subscription> subscriptions = subscriptionsPerBundle.get(bundle.getId());
+            final List<Subscription> expectedSubscriptions = entitlementInternalApi.getSubscriptionsForBundle(bundle.getId(), internalCallContext);
+            assertEquals(subscriptions.size(), 2);
+            assertEquals(subscriptions.size(), expectedSubscriptions.size());
+            for (int i = 0; i < subscriptions.size(); i++) {
+                assertEquals(subscriptions.get(i).getId(), expectedSubscriptions.get(i).getId());
+                assertEquals(subscriptions.get(i).getState(), expectedSubscriptions.get(i).getState());
+                assertEquals(subscriptions.get(i).getEndDate(), expectedSubscriptions.get(i).getEndDate());
+                assertEquals(subscriptions.get(i).getFutureEndDate(), expectedSubscriptions.get(i).getFutureEndDate());
+            }
+
+            // THE AO IS FUTURE CANCELLED AS WELL
+            assertEquals(subscriptions.get(1).getId(), aoSubscription.getId());
+            assertTrue(((SubscriptionData) subscriptions.get(1)).isSubscriptionFutureCancelled());
+
+            assertListenerStatus();
+        } catch (Exception e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
     @Test(groups = "slow")
     public void testChangeBPWithAddonIncluded() {
         try {
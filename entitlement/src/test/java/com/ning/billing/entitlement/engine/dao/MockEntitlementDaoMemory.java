@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -165,6 +166,15 @@ public class MockEntitlementDaoMemory implements EntitlementDao {
         return Collections.emptyList();
     }
 
+    @Override
+    public Map<UUID, List<Subscription>> getSubscriptionsForAccount(final SubscriptionFactory factory, final UUID accountId, final InternalTenantContext context) {
+        final Map<UUID, List<Subscription>> results = new LinkedHashMap<UUID, List<Subscription>>();
+        for (final SubscriptionBundle cur : getSubscriptionBundleForAccount(accountId, context)) {
+            results.put(cur.getId(), getSubscriptions(factory, cur.getId(), context));
+        }
+        return results;
+    }
+
     @Override
     public void createSubscription(final SubscriptionData subscription, final List<EntitlementEvent> initialEvents,
                                    final InternalCallContext context) {
@@ -282,6 +292,16 @@ public class MockEntitlementDaoMemory implements EntitlementDao {
         }
     }
 
+    @Override
+    public void cancelSubscriptions(final List<SubscriptionData> subscriptions, final List<EntitlementEvent> cancelEvents,
+                                    final InternalCallContext context) {
+        synchronized (events) {
+            for (int i = 0; i < subscriptions.size(); i++) {
+                cancelSubscription(subscriptions.get(i), cancelEvents.get(i), context, subscriptions.size() - 1 - i);
+            }
+        }
+    }
+
     @Override
     public void changePlan(final SubscriptionData subscription, final List<EntitlementEvent> changeEvents, final InternalCallContext context) {
         synchronized (events) {
@@ -19,6 +19,7 @@ package com.ning.billing.entitlement.engine.dao;
 import org.skife.jdbi.v2.IDBI;
 
 import com.ning.billing.catalog.api.CatalogService;
+import com.ning.billing.config.EntitlementConfig;
 import com.ning.billing.entitlement.engine.addon.AddonUtils;
 import com.ning.billing.util.svcsapi.bus.InternalBus;
 import com.ning.billing.util.clock.Clock;
@@ -29,7 +30,7 @@ import com.google.inject.Inject;
 public class MockEntitlementDaoSql extends AuditedEntitlementDao {
     @Inject
     public MockEntitlementDaoSql(final IDBI dbi, final Clock clock, final AddonUtils addonUtils, final NotificationQueueService notificationQueueService,
-                                 final InternalBus eventBus, final CatalogService catalogService) {
-        super(dbi, clock, addonUtils, notificationQueueService, eventBus, catalogService);
+                                 final InternalBus eventBus, final CatalogService catalogService, final EntitlementConfig config) {
+        super(dbi, clock, addonUtils, notificationQueueService, eventBus, catalogService, config);
     }
 }
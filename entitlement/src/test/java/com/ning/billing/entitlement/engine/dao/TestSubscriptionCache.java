@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.entitlement.engine.dao;
+
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.catalog.api.Catalog;
+import com.ning.billing.catalog.api.ProductCategory;
+import com.ning.billing.entitlement.EntitlementTestSuite;
+import com.ning.billing.entitlement.api.SubscriptionFactory;
+import com.ning.billing.entitlement.api.user.DefaultSubscriptionFactory.SubscriptionBuilder;
+import com.ning.billing.entitlement.api.user.SubscriptionData;
+
+public class TestSubscriptionCache extends EntitlementTestSuite {
+
+    private final SubscriptionFactory factory = Mockito.mock(SubscriptionFactory.class);
+    private final Catalog catalog = Mockito.mock(Catalog.class);
+    private final DateTime now = new DateTime(2012, 10, 1, 0, 0, 0, 0);
+
+    @Test(groups = "fast")
+    public void testEntryIsCheckedAgainstEventsVersion() {
+        final SubscriptionCache cache = new SubscriptionCache(10);
+        final SubscriptionData subscription = createSubscription(UUID.randomUUID(), 1L);
+        final SubscriptionEventsVersion eventsVersion = new SubscriptionEventsVersion(subscription.getId(), 3, 3, 3, 12);
+        cache.put(subscription, factory, catalog, eventsVersion, null, now.plusDays(30), null);
+
+        Assert.assertNotNull(cache.get(subscription, factory, catalog, eventsVersion, null, now));
+        Assert.assertNotNull(cache.get(subscription, factory, catalog, eventsVersion, null, now.plusDays(29)));
+
+        // New event
+        Assert.assertNull(cache.get(subscription, factory, catalog, new SubscriptionEventsVersion(subscription.getId(), 4, 4, 4, 13), null, now));
+        // The mismatch evicted the entry
+        Assert.assertNull(cache.get(subscription, factory, catalog, eventsVersion, null, now));
+    }
+
+    @Test(groups = "fast")
+    public void testEntryIsCheckedAgainstContext() {
+        final SubscriptionCache cache = new SubscriptionCache(10);
+        final SubscriptionData subscription = createSubscription(UUID.randomUUID(), 1L);
+        final SubscriptionEventsVersion eventsVersion = new SubscriptionEventsVersion(subscription.getId(), 3, 2, 3, 12);
+        final SubscriptionEventsVersion baseEventsVersion = new SubscriptionEventsVersion(UUID.randomUUID(), 1, 1, 1, 10);
+
+        cache.put(subscription, factory, catalog, eventsVersion, baseEventsVersion, now.plusDays(30), null);
+        Assert.assertNull(cache.get(subscription, factory, catalog, eventsVersion, baseEventsVersion, now.plusDays(30)));
+
+        cache.put(subscription, factory, catalog, eventsVersion, baseEventsVersion, now.plusDays(30), null);
+        Assert.assertNull(cache.get(subscription, factory, Mockito.mock(Catalog.class), eventsVersion, baseEventsVersion, now));
+
+        cache.put(subscription, factory, catalog, eventsVersion, baseEventsVersion, now.plusDays(30), null);
+        Assert.assertNull(cache.get(createSubscription(subscription.getId(), 2L), factory, catalog, eventsVersion, baseEventsVersion, now));
+
+        cache.put(subscription, factory, catalog, eventsVersion, baseEventsVersion, now.plusDays(30), null);
+        Assert.assertNull(cache.get(subscription, factory, catalog, eventsVersion, new SubscriptionEventsVersion(baseEventsVersion.getSubscriptionId(), 2, 2, 2, 14), now));
+
+        cache.put(subscription, factory, catalog, eventsVersion, baseEventsVersion, now.plusDays(30), null);
+        Assert.assertNull(cache.get(subscription, Mockito.mock(SubscriptionFactory.class), catalog, eventsVersion, baseEventsVersion, now));
+
+        cache.put(subscription, factory, catalog, eventsVersion, baseEventsVersion, now.plusDays(30), null);
+        cache.invalidate(subscription.getId());
+        Assert.assertNull(cache.get(subscription, factory, catalog, eventsVersion, baseEventsVersion, now));
+    }
+
+    @Test(groups = "fast")
+    public void testCopiesUseLatestRow() {
+        final SubscriptionCache cache = new SubscriptionCache(10);
+        final SubscriptionData subscription = createSubscription(UUID.randomUUID(), 1L);
+        final SubscriptionEventsVersion eventsVersion = new SubscriptionEventsVersion(subscription.getId(), 1, 1, 1, 1);
+        cache.put(subscription, factory, catalog, eventsVersion, null, null, null);
+
+        final DateTime chargedThroughDate = now.plusMonths(1);
+        final SubscriptionData updated = new SubscriptionData(new SubscriptionBuilder(subscription).setChargedThroughDate(chargedThroughDate));
+        final SubscriptionData copy = cache.get(updated, factory, catalog, eventsVersion, null, now).copy(updated);
+        Assert.assertNotSame(copy, subscription);
+        Assert.assertEquals(copy.getChargedThroughDate(), chargedThroughDate);
+    }
+
+    @Test(groups = "fast")
+    public void testDisabledCache() {
+        final SubscriptionCache cache = new SubscriptionCache(0);
+        final SubscriptionData subscription = createSubscription(UUID.randomUUID(), 1L);
+        final SubscriptionEventsVersion eventsVersion = new SubscriptionEventsVersion(subscription.getId(), 1, 1, 1, 1);
+        cache.put(subscription, factory, catalog, eventsVersion, null, null, null);
+
+        Assert.assertFalse(cache.isEnabled());
+        Assert.assertNull(cache.get(subscription, factory, catalog, eventsVersion, null, now));
+    }
+
+    private SubscriptionData createSubscription(final UUID id, final long activeVersion) {
+        return new SubscriptionData(new SubscriptionBuilder().setId(id)
+                                                             .setBundleId(UUID.randomUUID())
+                                                             .setCategory(ProductCategory.BASE)
+                                                             .setActiveVersion(activeVersion)
+                                                             .setAlignStartDate(now)
+                                                             .setBundleStartDate(now));
+    }
+}
@@ -44,6 +44,7 @@ import com.ning.billing.invoice.api.user.DefaultNullInvoiceEvent;
 import com.ning.billing.invoice.dao.InvoiceDao;
 import com.ning.billing.invoice.generator.InvoiceDateUtils;
 import com.ning.billing.invoice.generator.InvoiceGenerator;
+import com.ning.billing.invoice.model.BilledThroughWatermark;
 import com.ning.billing.invoice.model.FixedPriceInvoiceItem;
 import com.ning.billing.invoice.model.RecurringInvoiceItem;
 import com.ning.billing.util.callcontext.InternalCallContext;
@@ -133,7 +134,7 @@ public class InvoiceDispatcher {
         try {
             lock = locker.lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, accountId.toString(), NB_LOCK_TRY);
 
-            return processAccountWithLock(accountId, targetDate, dryRun, context);
+            return processAccountWithLock(lock, accountId, targetDate, dryRun, context);
         } catch (LockFailedException e) {
             // Not good!
             log.error(String.format("Failed to process invoice for account %s, targetDate %s",
@@ -146,7 +147,7 @@ public class InvoiceDispatcher {
         return null;
     }
 
-    private Invoice processAccountWithLock(final UUID accountId, final DateTime targetDateTime,
+    private Invoice processAccountWithLock(final GlobalLock lock, final UUID accountId, final DateTime targetDateTime,
                                            final boolean dryRun, final InternalCallContext context) throws InvoiceApiException {
         try {
 
@@ -155,8 +156,10 @@ public class InvoiceDispatcher {
 
             final Account account = accountApi.getAccountById(accountId,  context);
             List<Invoice> invoices = new ArrayList<Invoice>();
+            List<BilledThroughWatermark> billedThroughWatermarks = new ArrayList<BilledThroughWatermark>();
             if (!billingEvents.isAccountAutoInvoiceOff()) {
                 invoices = invoiceDao.getInvoicesByAccount(accountId, context); //no need to fetch, invoicing is off on this account
+                billedThroughWatermarks = invoiceDao.getBilledThroughWatermarks(accountId, context);
             }
 
             final Currency targetCurrency = account.getCurrency();
@@ -164,7 +167,7 @@ public class InvoiceDispatcher {
             // All the computations in invoice are performed on days, in the account timezone
             final LocalDate targetDate = new LocalDate(targetDateTime, account.getTimeZone());
 
-            final Invoice invoice = generator.generateInvoice(accountId, billingEvents, invoices, targetDate, account.getTimeZone(), targetCurrency);
+            final Invoice invoice = generator.generateInvoice(accountId, billingEvents, invoices, billedThroughWatermarks, targetDate, account.getTimeZone(), targetCurrency);
             if (invoice == null) {
                 log.info("Generated null invoice.");
                 if (!dryRun) {
@@ -183,7 +186,12 @@ public class InvoiceDispatcher {
                         }
                     }).size() > 0;
 
-                    invoiceDao.create(invoice, account.getBillCycleDay().getDayOfMonthUTC(), isRealInvoiceWithItems, context);
+                    // Everything up to the invoice target date is now in sync with the billing events
+                    final List<BilledThroughWatermark> newBilledThroughWatermarks = generator.computeBilledThroughWatermarks(billingEvents, invoice.getTargetDate(),
+                                                                                                                            account.getTimeZone(), targetCurrency);
+                    // Don't persist the invoice if we know another node took over the account meanwhile, it would generate its own
+                    lock.checkHeld();
+                    invoiceDao.create(invoice, account.getBillCycleDay().getDayOfMonthUTC(), isRealInvoiceWithItems, newBilledThroughWatermarks, context);
 
                     final List<InvoiceItem> fixedPriceInvoiceItems = invoice.getInvoiceItems(FixedPriceInvoiceItem.class);
                     final List<InvoiceItem> recurringInvoiceItems = invoice.getInvoiceItems(RecurringInvoiceItem.class);
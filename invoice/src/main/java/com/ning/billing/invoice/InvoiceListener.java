@@ -31,6 +31,7 @@ import com.ning.billing.util.callcontext.UserType;
 import com.ning.billing.util.events.EffectiveSubscriptionInternalEvent;
 import com.ning.billing.util.events.RepairEntitlementInternalEvent;
 
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 
@@ -46,6 +47,7 @@ public class InvoiceListener {
         this.internalCallContextFactory = internalCallContextFactory;
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleRepairEntitlementEvent(final RepairEntitlementInternalEvent repairEvent) {
         try {
@@ -56,6 +58,7 @@ public class InvoiceListener {
         }
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void handleSubscriptionTransition(final EffectiveSubscriptionInternalEvent transition) {
         try {
@@ -23,6 +23,7 @@ import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.skife.jdbi.v2.exceptions.TransactionFailedException;
 
 import com.ning.billing.ErrorCode;
@@ -69,6 +70,11 @@ public class DefaultInvoicePaymentApi implements InvoicePaymentApi {
         return dao.getAllInvoicesByAccount(accountId, internalCallContextFactory.createInternalTenantContext(context));
     }
 
+    @Override
+    public List<Invoice> getUnpaidInvoicesUpToDate(final LocalDate upToDate, final TenantContext context) {
+        return dao.getUnpaidInvoicesUpToDate(upToDate, internalCallContextFactory.createInternalTenantContext(context));
+    }
+
     @Override
     public Invoice getInvoice(final UUID invoiceId, final TenantContext context) throws InvoiceApiException {
         return dao.getById(invoiceId, internalCallContextFactory.createInternalTenantContext(context));
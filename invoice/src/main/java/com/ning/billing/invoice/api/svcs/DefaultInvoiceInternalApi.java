@@ -18,6 +18,7 @@ package com.ning.billing.invoice.api.svcs;
 
 import java.math.BigDecimal;
 import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -58,4 +59,9 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
     public BigDecimal getAccountBalance(final UUID accountId, final InternalTenantContext context) {
         return dao.getAccountBalance(accountId, context);
     }
+
+    @Override
+    public Map<UUID, LocalDate> getOldestUnpaidInvoiceDatePerAccountUpToDate(final LocalDate upToDate) {
+        return dao.getOldestUnpaidInvoiceDatePerAccountUpToDate(upToDate);
+    }
 }
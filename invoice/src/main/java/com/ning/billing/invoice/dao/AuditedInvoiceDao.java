@@ -19,6 +19,8 @@ package com.ning.billing.invoice.dao;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -43,6 +45,7 @@ import com.ning.billing.invoice.api.InvoiceItemType;
 import com.ning.billing.invoice.api.InvoicePayment;
 import com.ning.billing.invoice.api.InvoicePayment.InvoicePaymentType;
 import com.ning.billing.invoice.api.user.DefaultInvoiceAdjustmentEvent;
+import com.ning.billing.invoice.model.BilledThroughWatermark;
 import com.ning.billing.invoice.model.CreditAdjInvoiceItem;
 import com.ning.billing.invoice.model.CreditBalanceAdjInvoiceItem;
 import com.ning.billing.invoice.model.DefaultInvoice;
@@ -64,18 +67,24 @@ import com.ning.billing.util.svcsapi.bus.InternalBus.EventBusException;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap.Builder;
+import com.google.common.collect.ListMultimap;
 import com.google.inject.Inject;
 
 public class AuditedInvoiceDao implements InvoiceDao {
 
     private static final Logger log = LoggerFactory.getLogger(AuditedInvoiceDao.class);
 
+    private static final int UNPAID_INVOICES_PAGE_SIZE = 100;
+
     private final InvoiceSqlDao invoiceSqlDao;
     private final InvoicePaymentSqlDao invoicePaymentSqlDao;
     private final NextBillingDatePoster nextBillingDatePoster;
     private final InvoiceItemSqlDao invoiceItemSqlDao;
+    private final InvoiceBilledThroughSqlDao billedThroughSqlDao;
     private final Clock clock;
     private final InternalBus eventBus;
 
@@ -87,6 +96,7 @@ public class AuditedInvoiceDao implements InvoiceDao {
         this.invoiceSqlDao = dbi.onDemand(InvoiceSqlDao.class);
         this.invoicePaymentSqlDao = dbi.onDemand(InvoicePaymentSqlDao.class);
         this.invoiceItemSqlDao = dbi.onDemand(InvoiceItemSqlDao.class);
+        this.billedThroughSqlDao = dbi.onDemand(InvoiceBilledThroughSqlDao.class);
         this.nextBillingDatePoster = nextBillingDatePoster;
         this.clock = clock;
         this.eventBus = eventBus;
@@ -179,6 +189,12 @@ public class AuditedInvoiceDao implements InvoiceDao {
 
     @Override
     public void create(final Invoice invoice, final int billCycleDayUTC, final boolean isRealInvoice, final InternalCallContext context) {
+        create(invoice, billCycleDayUTC, isRealInvoice, ImmutableList.<BilledThroughWatermark>of(), context);
+    }
+
+    @Override
+    public void create(final Invoice invoice, final int billCycleDayUTC, final boolean isRealInvoice,
+                       final List<BilledThroughWatermark> billedThroughWatermarks, final InternalCallContext context) {
         invoiceSqlDao.inTransaction(new Transaction<Void, InvoiceSqlDao>() {
             @Override
             public Void inTransaction(final InvoiceSqlDao transactional, final TransactionStatus status) throws Exception {
@@ -212,6 +228,11 @@ public class AuditedInvoiceDao implements InvoiceDao {
                     recordIdList = invoicePaymentSqlDao.getRecordIds(invoice.getId().toString(), context);
                     audits.addAll(createAudits(TableName.INVOICE_PAYMENTS, recordIdList));
 
+                    if (billedThroughWatermarks.size() > 0) {
+                        final InvoiceBilledThroughSqlDao billedThroughSqlDao = transactional.become(InvoiceBilledThroughSqlDao.class);
+                        billedThroughSqlDao.batchUpsertFromTransaction(invoice.getAccountId().toString(), billedThroughWatermarks, context);
+                    }
+
                     transactional.insertAuditFromTransaction(audits, context);
                 }
                 return null;
@@ -219,6 +240,11 @@ public class AuditedInvoiceDao implements InvoiceDao {
         });
     }
 
+    @Override
+    public List<BilledThroughWatermark> getBilledThroughWatermarks(final UUID accountId, final InternalTenantContext context) {
+        return billedThroughSqlDao.getByAccountId(accountId.toString(), context);
+    }
+
     private List<EntityAudit> createAudits(final TableName tableName, final List<Long> recordIdList) {
         final List<EntityAudit> entityAuditList = new ArrayList<EntityAudit>();
         for (final Long recordId : recordIdList) {
@@ -306,6 +332,95 @@ public class AuditedInvoiceDao implements InvoiceDao {
         });
     }
 
+    @Override
+    public List<Invoice> getUnpaidInvoicesUpToDate(final LocalDate upToDate, final InternalTenantContext context) {
+        return getUnpaidInvoicesUpToDate(upToDate, UNPAID_INVOICES_PAGE_SIZE, context);
+    }
+
+    /**
+     * The unpaid invoices are selected in SQL, and loaded a page of accounts at a time, each page in its own transaction,
+     * so that a large tenant doesn't hold a single transaction open while all its invoices are read.
+     */
+    @VisibleForTesting
+    List<Invoice> getUnpaidInvoicesUpToDate(final LocalDate upToDate, final int nbAccountsPerPage, final InternalTenantContext context) {
+        final Date upToDateAsDate = upToDate.toDateTimeAtStartOfDay().toDate();
+
+        final List<Invoice> unpaidInvoices = new ArrayList<Invoice>();
+        String lastAccountId = "";
+        while (true) {
+            final List<UUID> accountIds = invoiceSqlDao.getAccountIdsWithUnpaidInvoicesUpToTargetDate(upToDateAsDate, lastAccountId, nbAccountsPerPage, context);
+            if (accountIds.isEmpty()) {
+                break;
+            }
+
+            unpaidInvoices.addAll(getUnpaidInvoicesForAccountsUpToDate(accountIds, upToDateAsDate, context));
+            if (accountIds.size() < nbAccountsPerPage) {
+                break;
+            }
+            lastAccountId = accountIds.get(accountIds.size() - 1).toString();
+        }
+        return unpaidInvoices;
+    }
+
+    private List<Invoice> getUnpaidInvoicesForAccountsUpToDate(final List<UUID> accountIds, final Date upToDate, final InternalTenantContext context) {
+        return invoiceSqlDao.inTransaction(new Transaction<List<Invoice>, InvoiceSqlDao>() {
+            @Override
+            public List<Invoice> inTransaction(final InvoiceSqlDao invoiceDao, final TransactionStatus status) throws Exception {
+                final List<Invoice> invoices = invoiceDao.getUnpaidInvoicesForAccountsUpToDate(toStrings(accountIds), upToDate, context);
+                if (invoices.isEmpty()) {
+                    // Paid in the meantime
+                    return invoices;
+                }
+
+                final List<String> invoiceIds = new ArrayList<String>(invoices.size());
+                for (final Invoice invoice : invoices) {
+                    invoiceIds.add(invoice.getId().toString());
+                }
+
+                // Load the children of the page at once, rather than invoice by invoice
+                final InvoiceItemSqlDao transInvoiceItemSqlDao = invoiceDao.become(InvoiceItemSqlDao.class);
+                final ListMultimap<UUID, InvoiceItem> itemsPerInvoice = ArrayListMultimap.<UUID, InvoiceItem>create();
+                for (final InvoiceItem item : transInvoiceItemSqlDao.getInvoiceItemsForInvoices(invoiceIds, context)) {
+                    itemsPerInvoice.put(item.getInvoiceId(), item);
+                }
+
+                final InvoicePaymentSqlDao invoicePaymentSqlDao = invoiceDao.become(InvoicePaymentSqlDao.class);
+                final ListMultimap<UUID, InvoicePayment> paymentsPerInvoice = ArrayListMultimap.<UUID, InvoicePayment>create();
+                for (final InvoicePayment invoicePayment : invoicePaymentSqlDao.getPaymentsForInvoices(invoiceIds, context)) {
+                    paymentsPerInvoice.put(invoicePayment.getInvoiceId(), invoicePayment);
+                }
+
+                final List<Invoice> unpaidInvoices = new ArrayList<Invoice>(invoices.size());
+                for (final Invoice invoice : invoices) {
+                    invoice.addInvoiceItems(itemsPerInvoice.get(invoice.getId()));
+                    invoice.addPayments(paymentsPerInvoice.get(invoice.getId()));
+                    // The query compares the sums of item and payment amounts, the balance is the reference
+                    if (invoice.getBalance().compareTo(BigDecimal.ZERO) > 0) {
+                        unpaidInvoices.add(invoice);
+                    }
+                }
+                return unpaidInvoices;
+            }
+        });
+    }
+
+    private static List<String> toStrings(final List<UUID> ids) {
+        final List<String> result = new ArrayList<String>(ids.size());
+        for (final UUID id : ids) {
+            result.add(id.toString());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<UUID, LocalDate> getOldestUnpaidInvoiceDatePerAccountUpToDate(final LocalDate upToDate) {
+        final Map<UUID, LocalDate> oldestUnpaidInvoiceDates = new LinkedHashMap<UUID, LocalDate>();
+        for (final Map.Entry<UUID, LocalDate> entry : invoiceSqlDao.getOldestUnpaidInvoiceDatePerAccountUpToDate(upToDate.toDateTimeAtStartOfDay().toDate())) {
+            oldestUnpaidInvoiceDates.put(entry.getKey(), entry.getValue());
+        }
+        return oldestUnpaidInvoiceDates;
+    }
+
     @Override
     public UUID getInvoiceIdByPaymentId(final UUID paymentId, final InternalTenantContext context) {
         return invoiceSqlDao.getInvoiceIdByPaymentId(paymentId.toString(), context);
@@ -904,8 +1019,39 @@ public class AuditedInvoiceDao implements InvoiceDao {
     }
 
     private void populateChildren(final List<Invoice> invoices, final InvoiceSqlDao invoiceSqlDao, final InternalTenantContext context) {
-        getInvoiceItemsWithinTransaction(invoices, invoiceSqlDao, context);
-        getInvoicePaymentsWithinTransaction(invoices, invoiceSqlDao, context);
+        if (invoices.size() == 0) {
+            return;
+        }
+
+        final UUID accountId = invoices.get(0).getAccountId();
+        final List<String> invoiceIds = new ArrayList<String>(invoices.size());
+        for (final Invoice invoice : invoices) {
+            if (context.getAccountRecordId() == null || !accountId.equals(invoice.getAccountId())) {
+                // Invoices across accounts, load the children invoice by invoice
+                getInvoiceItemsWithinTransaction(invoices, invoiceSqlDao, context);
+                getInvoicePaymentsWithinTransaction(invoices, invoiceSqlDao, context);
+                return;
+            }
+            invoiceIds.add(invoice.getId().toString());
+        }
+
+        // Load the children of these invoices at once, using the account record id of the context, and dispatch them to their invoice
+        final InvoiceItemSqlDao transInvoiceItemSqlDao = invoiceSqlDao.become(InvoiceItemSqlDao.class);
+        final ListMultimap<UUID, InvoiceItem> itemsPerInvoice = ArrayListMultimap.<UUID, InvoiceItem>create();
+        for (final InvoiceItem item : transInvoiceItemSqlDao.getInvoiceItemsForAccountInvoices(invoiceIds, context)) {
+            itemsPerInvoice.put(item.getInvoiceId(), item);
+        }
+
+        final InvoicePaymentSqlDao invoicePaymentSqlDao = invoiceSqlDao.become(InvoicePaymentSqlDao.class);
+        final ListMultimap<UUID, InvoicePayment> paymentsPerInvoice = ArrayListMultimap.<UUID, InvoicePayment>create();
+        for (final InvoicePayment invoicePayment : invoicePaymentSqlDao.getPaymentsForAccountInvoices(invoiceIds, context)) {
+            paymentsPerInvoice.put(invoicePayment.getInvoiceId(), invoicePayment);
+        }
+
+        for (final Invoice invoice : invoices) {
+            invoice.addInvoiceItems(itemsPerInvoice.get(invoice.getId()));
+            invoice.addPayments(paymentsPerInvoice.get(invoice.getId()));
+        }
     }
 
     private List<Invoice> getAllInvoicesByAccountFromTransaction(final UUID accountId, final InvoiceSqlDao transactional, final InternalTenantContext context) {
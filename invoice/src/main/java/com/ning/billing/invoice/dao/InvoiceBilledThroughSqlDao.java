@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.dao;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.skife.jdbi.v2.SQLStatement;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.Binder;
+import org.skife.jdbi.v2.sqlobject.BinderFactory;
+import org.skife.jdbi.v2.sqlobject.BindingAnnotation;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.sqlobject.stringtemplate.ExternalizedSqlViaStringTemplate3;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import com.ning.billing.invoice.model.BilledThroughWatermark;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+import com.ning.billing.util.callcontext.InternalTenantContextBinder;
+import com.ning.billing.util.dao.MapperBase;
+
+@ExternalizedSqlViaStringTemplate3()
+@RegisterMapper(InvoiceBilledThroughSqlDao.BilledThroughWatermarkMapper.class)
+public interface InvoiceBilledThroughSqlDao {
+
+    @SqlQuery
+    List<BilledThroughWatermark> getByAccountId(@Bind("accountId") final String accountId,
+                                                @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlBatch(transactional = false)
+    void batchUpsertFromTransaction(@Bind("accountId") final String accountId,
+                                    @BilledThroughWatermarkBinder final List<BilledThroughWatermark> watermarks,
+                                    @InternalTenantContextBinder final InternalCallContext context);
+
+    @BindingAnnotation(BilledThroughWatermarkBinder.BilledThroughWatermarkBinderFactory.class)
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.PARAMETER})
+    public @interface BilledThroughWatermarkBinder {
+
+        public static class BilledThroughWatermarkBinderFactory implements BinderFactory {
+
+            @Override
+            public Binder build(final Annotation annotation) {
+                return new Binder<BilledThroughWatermarkBinder, BilledThroughWatermark>() {
+                    @Override
+                    public void bind(final SQLStatement<?> q, final BilledThroughWatermarkBinder bind, final BilledThroughWatermark watermark) {
+                        q.bind("subscriptionId", watermark.getSubscriptionId().toString());
+                        q.bind("billedThroughDate", watermark.getBilledThroughDate().toDate());
+                        q.bind("eventsDigest", watermark.getEventsDigest());
+                    }
+                };
+            }
+        }
+    }
+
+    public static class BilledThroughWatermarkMapper extends MapperBase implements ResultSetMapper<BilledThroughWatermark> {
+
+        @Override
+        public BilledThroughWatermark map(final int index, final ResultSet result, final StatementContext context) throws SQLException {
+            final UUID subscriptionId = getUUID(result, "subscription_id");
+            final LocalDate billedThroughDate = getDate(result, "billed_through_date");
+            final String eventsDigest = result.getString("events_digest");
+            return new BilledThroughWatermark(subscriptionId, billedThroughDate, eventsDigest);
+        }
+    }
+}
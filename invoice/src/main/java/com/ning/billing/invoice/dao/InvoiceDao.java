@@ -30,6 +30,7 @@ import com.ning.billing.invoice.api.Invoice;
 import com.ning.billing.invoice.api.InvoiceApiException;
 import com.ning.billing.invoice.api.InvoiceItem;
 import com.ning.billing.invoice.api.InvoicePayment;
+import com.ning.billing.invoice.model.BilledThroughWatermark;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 
@@ -37,6 +38,19 @@ public interface InvoiceDao {
 
     void create(Invoice invoice, int billCycleDayUTC, boolean isRealInvoice, InternalCallContext context);
 
+    /**
+     * Create an invoice and record, in the same transaction, the billed-through watermarks of the account subscriptions.
+     *
+     * @param invoice                the invoice to create
+     * @param billCycleDayUTC        the account bill cycle day, in UTC
+     * @param isRealInvoice          whether the invoice should be inserted, or just its items
+     * @param billedThroughWatermarks the watermarks computed for that invoice run
+     * @param context                the call context
+     */
+    void create(Invoice invoice, int billCycleDayUTC, boolean isRealInvoice, List<BilledThroughWatermark> billedThroughWatermarks, InternalCallContext context);
+
+    List<BilledThroughWatermark> getBilledThroughWatermarks(UUID accountId, InternalTenantContext context);
+
     Invoice getById(UUID id, InternalTenantContext context) throws InvoiceApiException;
 
     Invoice getByNumber(Integer number, InternalTenantContext context) throws InvoiceApiException;
@@ -61,6 +75,23 @@ public interface InvoiceDao {
 
     List<Invoice> getUnpaidInvoicesByAccountId(UUID accountId, @Nullable LocalDate upToDate, InternalTenantContext context);
 
+    /**
+     * Retrieve the unpaid invoices of all the accounts of the tenant, up to a given target date.
+     *
+     * @param upToDate the latest target date of the invoices to return
+     * @param context  the tenant context
+     * @return the unpaid invoices, ordered by account and target date
+     */
+    List<Invoice> getUnpaidInvoicesUpToDate(LocalDate upToDate, InternalTenantContext context);
+
+    /**
+     * Retrieve the accounts, across all tenants, having at least one unpaid invoice dated on or before a given date.
+     *
+     * @param upToDate the latest invoice date to consider
+     * @return the date of the oldest unpaid invoice, keyed by account id
+     */
+    Map<UUID, LocalDate> getOldestUnpaidInvoiceDatePerAccountUpToDate(LocalDate upToDate);
+
     void test(InternalTenantContext context);
 
     List<Invoice> getAllInvoicesByAccount(UUID accountId, InternalTenantContext context);
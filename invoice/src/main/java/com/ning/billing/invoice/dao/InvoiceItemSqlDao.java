@@ -24,6 +24,7 @@ import java.lang.annotation.Target;
 import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -41,6 +42,7 @@ import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.ExternalizedSqlViaStringTemplate3;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 import com.ning.billing.catalog.api.Currency;
 import com.ning.billing.invoice.api.InvoiceItem;
@@ -75,6 +77,14 @@ public interface InvoiceItemSqlDao extends EntitySqlDao<InvoiceItem> {
     List<InvoiceItem> getInvoiceItemsByAccount(@Bind("accountId") final String accountId,
                                                @InternalTenantContextBinder final InternalTenantContext context);
 
+    @SqlQuery
+    List<InvoiceItem> getInvoiceItemsForInvoices(@BindIn("invoiceIds") final Collection<String> invoiceIds,
+                                                         @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlQuery
+    List<InvoiceItem> getInvoiceItemsForAccountInvoices(@BindIn("invoiceIds") final Collection<String> invoiceIds,
+                                                        @InternalTenantContextBinder final InternalTenantContext context);
+
     @SqlQuery
     List<InvoiceItem> getInvoiceItemsBySubscription(@Bind("subscriptionId") final String subscriptionId,
                                                     @InternalTenantContextBinder final InternalTenantContext context);
@@ -24,6 +24,7 @@ import java.lang.annotation.Target;
 import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -42,6 +43,7 @@ import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 import org.skife.jdbi.v2.sqlobject.mixins.Transmogrifier;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.ExternalizedSqlViaStringTemplate3;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 import com.ning.billing.catalog.api.Currency;
 import com.ning.billing.invoice.api.InvoicePayment;
@@ -85,6 +87,14 @@ public interface InvoicePaymentSqlDao extends EntitySqlDao<InvoicePayment>, Tran
     public List<InvoicePayment> getPaymentsForInvoice(@Bind("invoiceId") final String invoiceId,
                                                       @InternalTenantContextBinder final InternalTenantContext context);
 
+    @SqlQuery
+    public List<InvoicePayment> getPaymentsForAccountInvoices(@BindIn("invoiceIds") final Collection<String> invoiceIds,
+                                                              @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlQuery
+    public List<InvoicePayment> getPaymentsForInvoices(@BindIn("invoiceIds") final Collection<String> invoiceIds,
+                                                               @InternalTenantContextBinder final InternalTenantContext context);
+
     @SqlQuery
     List<InvoicePayment> getInvoicePayments(@Bind("paymentId") final String paymentId,
                                             @InternalTenantContextBinder final InternalTenantContext context);
@@ -23,8 +23,10 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -37,12 +39,14 @@ import org.skife.jdbi.v2.sqlobject.BinderFactory;
 import org.skife.jdbi.v2.sqlobject.BindingAnnotation;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
 import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
 import org.skife.jdbi.v2.sqlobject.mixins.CloseMe;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 import org.skife.jdbi.v2.sqlobject.mixins.Transmogrifier;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.ExternalizedSqlViaStringTemplate3;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 import com.ning.billing.catalog.api.Currency;
 import com.ning.billing.invoice.api.Invoice;
@@ -55,6 +59,8 @@ import com.ning.billing.util.dao.MapperBase;
 import com.ning.billing.util.dao.UuidMapper;
 import com.ning.billing.util.entity.dao.EntitySqlDao;
 
+import com.google.common.collect.Maps;
+
 @ExternalizedSqlViaStringTemplate3()
 @RegisterMapper(InvoiceSqlDao.InvoiceMapper.class)
 public interface InvoiceSqlDao extends EntitySqlDao<Invoice>, AuditSqlDao, Transactional<InvoiceSqlDao>, Transmogrifier, CloseMe {
@@ -72,6 +78,18 @@ public interface InvoiceSqlDao extends EntitySqlDao<Invoice>, AuditSqlDao, Trans
     List<Invoice> getAllInvoicesByAccount(@Bind("accountId") final String string,
                                           @InternalTenantContextBinder final InternalTenantContext context);
 
+    @SqlQuery
+    @RegisterMapper(UuidMapper.class)
+    List<UUID> getAccountIdsWithUnpaidInvoicesUpToTargetDate(@Bind("upToDate") final Date upToDate,
+                                                             @Bind("fromAccountId") final String fromAccountId,
+                                                             @Bind("maxAccounts") final int maxAccounts,
+                                                             @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlQuery
+    List<Invoice> getUnpaidInvoicesForAccountsUpToDate(@BindIn("accountIds") final Collection<String> accountIds,
+                                                       @Bind("upToDate") final Date upToDate,
+                                                       @InternalTenantContextBinder final InternalTenantContext context);
+
     @SqlQuery
     List<Invoice> getInvoicesByAccountAfterDate(@Bind("accountId") final String accountId,
                                                 @Bind("fromDate") final Date fromDate,
@@ -86,6 +104,11 @@ public interface InvoiceSqlDao extends EntitySqlDao<Invoice>, AuditSqlDao, Trans
     UUID getInvoiceIdByPaymentId(@Bind("paymentId") final String paymentId,
                                  @InternalTenantContextBinder final InternalTenantContext context);
 
+    // Not tenant-specific: used by the overdue sweep
+    @SqlQuery
+    @Mapper(OldestUnpaidInvoiceDateMapper.class)
+    List<Map.Entry<UUID, LocalDate>> getOldestUnpaidInvoiceDatePerAccountUpToDate(@Bind("upToDate") final Date upToDate);
+
     @BindingAnnotation(InvoiceBinder.InvoiceBinderFactory.class)
     @Retention(RetentionPolicy.RUNTIME)
     @Target({ElementType.PARAMETER})
@@ -110,6 +133,14 @@ public interface InvoiceSqlDao extends EntitySqlDao<Invoice>, AuditSqlDao, Trans
         }
     }
 
+    public static class OldestUnpaidInvoiceDateMapper extends MapperBase implements ResultSetMapper<Map.Entry<UUID, LocalDate>> {
+
+        @Override
+        public Map.Entry<UUID, LocalDate> map(final int index, final ResultSet result, final StatementContext context) throws SQLException {
+            return Maps.immutableEntry(UUID.fromString(result.getString("account_id")), getDate(result, "oldest_invoice_date"));
+        }
+    }
+
     public static class InvoiceMapper extends MapperBase implements ResultSetMapper<Invoice> {
 
         @Override
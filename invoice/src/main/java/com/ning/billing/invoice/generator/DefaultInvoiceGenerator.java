@@ -18,12 +18,15 @@ package com.ning.billing.invoice.generator;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -42,6 +45,7 @@ import com.ning.billing.invoice.api.Invoice;
 import com.ning.billing.invoice.api.InvoiceApiException;
 import com.ning.billing.invoice.api.InvoiceItem;
 import com.ning.billing.invoice.api.InvoiceItemType;
+import com.ning.billing.invoice.model.BilledThroughWatermark;
 import com.ning.billing.invoice.model.BillingMode;
 import com.ning.billing.invoice.model.CreditBalanceAdjInvoiceItem;
 import com.ning.billing.invoice.model.DefaultInvoice;
@@ -57,8 +61,11 @@ import com.ning.billing.util.svcapi.junction.BillingEvent;
 import com.ning.billing.util.svcapi.junction.BillingEventSet;
 import com.ning.billing.util.svcapi.junction.BillingModeType;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
 import com.google.inject.Inject;
 
 public class DefaultInvoiceGenerator implements InvoiceGenerator {
@@ -67,13 +74,31 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
     private static final int ROUNDING_MODE = InvoicingConfiguration.getRoundingMode();
     private static final int NUMBER_OF_DECIMALS = InvoicingConfiguration.getNumberOfDecimals();
 
+    // FULL recomputes all the items from the first billing event, INCREMENTAL only generates the items after the
+    // billed-through watermark of each subscription and VERIFY runs both, falling back to the full recompute on mismatch
+    private enum GenerationMode {
+        FULL,
+        INCREMENTAL,
+        VERIFY
+    }
+
     private final Clock clock;
     private final InvoiceConfig config;
+    private final GenerationMode generationMode;
 
     @Inject
     public DefaultInvoiceGenerator(final Clock clock, final InvoiceConfig config) {
         this.clock = clock;
         this.config = config;
+        this.generationMode = GenerationMode.valueOf(config.getInvoiceGenerationMode().toUpperCase());
+    }
+
+    @Override
+    public Invoice generateInvoice(final UUID accountId, @Nullable final BillingEventSet events,
+                                   @Nullable final List<Invoice> existingInvoices,
+                                   final LocalDate targetDate, final DateTimeZone accountTimeZone,
+                                   final Currency targetCurrency) throws InvoiceApiException {
+        return generateInvoice(accountId, events, existingInvoices, ImmutableList.<BilledThroughWatermark>of(), targetDate, accountTimeZone, targetCurrency);
     }
 
     /*
@@ -82,6 +107,7 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
     @Override
     public Invoice generateInvoice(final UUID accountId, @Nullable final BillingEventSet events,
                                    @Nullable final List<Invoice> existingInvoices,
+                                   final List<BilledThroughWatermark> billedThroughWatermarks,
                                    final LocalDate targetDate, final DateTimeZone accountTimeZone,
                                    final Currency targetCurrency) throws InvoiceApiException {
         if ((events == null) || (events.size() == 0) || events.isAccountAutoInvoiceOff()) {
@@ -89,6 +115,60 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
         }
 
         validateTargetDate(targetDate);
+
+        final LocalDate adjustedTargetDate = adjustTargetDate(existingInvoices, targetDate);
+
+        final Invoice invoice = new DefaultInvoice(accountId, clock.getUTCToday(), adjustedTargetDate, targetCurrency);
+        final UUID invoiceId = invoice.getId();
+
+        final Map<UUID, LocalDate> billedThroughDates;
+        if (generationMode == GenerationMode.FULL) {
+            billedThroughDates = ImmutableMap.<UUID, LocalDate>of();
+        } else {
+            billedThroughDates = getBilledThroughDates(billedThroughWatermarks, events, adjustedTargetDate, accountTimeZone, targetCurrency);
+        }
+
+        List<InvoiceItem> proposedItems = generateInvoiceItems(invoiceId, accountId, events, existingInvoices, billedThroughDates,
+                                                               adjustedTargetDate, accountTimeZone, targetCurrency);
+        if (generationMode == GenerationMode.VERIFY && billedThroughDates.size() > 0) {
+            final List<InvoiceItem> fullProposedItems = generateInvoiceItems(invoiceId, accountId, events, existingInvoices, ImmutableMap.<UUID, LocalDate>of(),
+                                                                             adjustedTargetDate, accountTimeZone, targetCurrency);
+            if (!isSameInvoiceItems(proposedItems, fullProposedItems)) {
+                log.error("Incremental invoice generation for account {} doesn't match the full recompute: incremental items [{}], full items [{}]",
+                          new Object[]{accountId, proposedItems, fullProposedItems});
+                proposedItems = fullProposedItems;
+            }
+        }
+
+        if (proposedItems == null || proposedItems.size() == 0) {
+            return null;
+        } else {
+            invoice.addInvoiceItems(proposedItems);
+
+            return invoice;
+        }
+    }
+
+    @Override
+    public List<BilledThroughWatermark> computeBilledThroughWatermarks(@Nullable final BillingEventSet events, final LocalDate billedThroughDate,
+                                                                       final DateTimeZone accountTimeZone, final Currency targetCurrency) {
+        final List<BilledThroughWatermark> watermarks = new ArrayList<BilledThroughWatermark>();
+        if ((events == null) || events.isAccountAutoInvoiceOff()) {
+            return watermarks;
+        }
+
+        final Map<UUID, List<BillingEvent>> eventsPerSubscription = getEventsPerSubscription(events);
+        for (final UUID subscriptionId : eventsPerSubscription.keySet()) {
+            final String eventsDigest = computeEventsDigest(eventsPerSubscription.get(subscriptionId), billedThroughDate, accountTimeZone, targetCurrency);
+            watermarks.add(new BilledThroughWatermark(subscriptionId, billedThroughDate, eventsDigest));
+        }
+        return watermarks;
+    }
+
+    private List<InvoiceItem> generateInvoiceItems(final UUID invoiceId, final UUID accountId, final BillingEventSet events,
+                                                   @Nullable final List<Invoice> existingInvoices, final Map<UUID, LocalDate> billedThroughDates,
+                                                   final LocalDate targetDate, final DateTimeZone accountTimeZone,
+                                                   final Currency targetCurrency) throws InvoiceApiException {
         //TODO MDW can use subscription Id - not bundle
         //TODO MDW worry about null sub id
 
@@ -107,26 +187,17 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
             Collections.sort(existingItems);
         }
 
-        final LocalDate adjustedTargetDate = adjustTargetDate(existingInvoices, targetDate);
-
-        final Invoice invoice = new DefaultInvoice(accountId, clock.getUTCToday(), adjustedTargetDate, targetCurrency);
-        final UUID invoiceId = invoice.getId();
-        final List<InvoiceItem> proposedItems = generateInvoiceItems(invoiceId, accountId, events, adjustedTargetDate, accountTimeZone, targetCurrency);
+        final List<InvoiceItem> proposedItems = generateInvoiceItems(invoiceId, accountId, events, billedThroughDates, targetDate, accountTimeZone, targetCurrency);
 
         removeCancellingInvoiceItems(existingItems);
+        removeBilledThroughInvoiceItems(existingItems, billedThroughDates);
         removeDuplicatedInvoiceItems(proposedItems, existingItems);
 
         addRepairedItems(existingItems, proposedItems);
         generateCBAForExistingInvoices(accountId, existingInvoices, proposedItems, targetCurrency);
         consumeExistingCredit(invoiceId, accountId, existingItems, proposedItems, targetCurrency);
 
-        if (proposedItems == null || proposedItems.size() == 0) {
-            return null;
-        } else {
-            invoice.addInvoiceItems(proposedItems);
-
-            return invoice;
-        }
+        return proposedItems;
     }
 
     void generateCBAForExistingInvoices(final UUID accountId, final List<Invoice> existingInvoices,
@@ -160,10 +231,11 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
     }
 
     void addRepairedItems(final List<InvoiceItem> existingItems, final List<InvoiceItem> proposedItems) {
+        final Map<UUID, BigDecimal> adjustedPositiveAmounts = getAdjustedPositiveAmounts(existingItems);
         for (final InvoiceItem existingItem : existingItems) {
             if (existingItem.getInvoiceItemType() == InvoiceItemType.RECURRING ||
                 existingItem.getInvoiceItemType() == InvoiceItemType.FIXED) {
-                final BigDecimal existingAdjustedPositiveAmount = getAdjustedPositiveAmount(existingItems, existingItem.getId());
+                final BigDecimal existingAdjustedPositiveAmount = Objects.firstNonNull(adjustedPositiveAmounts.get(existingItem.getId()), BigDecimal.ZERO);
                 final BigDecimal amountNegated = existingItem.getAmount() == null ? null : existingItem.getAmount().subtract(existingAdjustedPositiveAmount).negate();
                 if (amountNegated.compareTo(BigDecimal.ZERO) < 0) {
                     final RepairAdjInvoiceItem repairItem = new RepairAdjInvoiceItem(existingItem.getInvoiceId(), existingItem.getAccountId(), existingItem.getStartDate(), existingItem.getEndDate(), amountNegated, existingItem.getCurrency(), existingItem.getId());
@@ -181,24 +253,24 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
     // use ITEM_ADJUSTEMNT rather than CREDIT_ADJ or REFUND_ADJ when possible.
     //
     BigDecimal getAdjustedPositiveAmount(final List<InvoiceItem> existingItems, final UUID linkedItemId) {
-        BigDecimal totalAdjustedOnItem = BigDecimal.ZERO;
-        final Collection<InvoiceItem> c = Collections2.filter(existingItems, new Predicate<InvoiceItem>() {
-            @Override
-            public boolean apply(InvoiceItem item) {
-                if (item.getInvoiceItemType() == InvoiceItemType.ITEM_ADJ &&
-                    item.getLinkedItemId() != null && item.getLinkedItemId().equals(linkedItemId)) {
-                    return true;
-                } else {
-                    return false;
-                }
+        return Objects.firstNonNull(getAdjustedPositiveAmounts(existingItems).get(linkedItemId), BigDecimal.ZERO);
+    }
+
+    // Index the ITEM_ADJ amounts by the item they adjust, in a single pass over the existing items
+    private Map<UUID, BigDecimal> getAdjustedPositiveAmounts(final List<InvoiceItem> existingItems) {
+        final Map<UUID, BigDecimal> totalAdjustedPerLinkedItem = new HashMap<UUID, BigDecimal>();
+        for (final InvoiceItem item : existingItems) {
+            if (item.getInvoiceItemType() == InvoiceItemType.ITEM_ADJ && item.getLinkedItemId() != null) {
+                final BigDecimal totalAdjustedOnItem = Objects.firstNonNull(totalAdjustedPerLinkedItem.get(item.getLinkedItemId()), BigDecimal.ZERO);
+                totalAdjustedPerLinkedItem.put(item.getLinkedItemId(), totalAdjustedOnItem.add(item.getAmount()));
             }
-        });
+        }
 
-        final Iterator<InvoiceItem> it = c.iterator();
-        while (it.hasNext()) {
-            totalAdjustedOnItem = totalAdjustedOnItem.add(it.next().getAmount());
+        final Map<UUID, BigDecimal> adjustedPositiveAmounts = new HashMap<UUID, BigDecimal>();
+        for (final UUID linkedItemId : totalAdjustedPerLinkedItem.keySet()) {
+            adjustedPositiveAmounts.put(linkedItemId, totalAdjustedPerLinkedItem.get(linkedItemId).negate());
         }
-        return totalAdjustedOnItem.negate();
+        return adjustedPositiveAmounts;
     }
 
     void consumeExistingCredit(final UUID invoiceId, final UUID accountId, final List<InvoiceItem> existingItems,
@@ -265,25 +337,60 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
      */
     void removeDuplicatedInvoiceItems(final List<InvoiceItem> proposedItems,
                                       final List<InvoiceItem> existingInvoiceItems) {
-        // We can't just use sets here as order matters (we want to keep duplicated in existingInvoiceItems)
-        final Iterator<InvoiceItem> proposedItemIterator = proposedItems.iterator();
-        while (proposedItemIterator.hasNext()) {
-            final InvoiceItem proposedItem = proposedItemIterator.next();
-
-            final Iterator<InvoiceItem> existingItemIterator = existingInvoiceItems.iterator();
-            while (existingItemIterator.hasNext()) {
-                final InvoiceItem existingItem = existingItemIterator.next();
-                if (existingItem.equals(proposedItem)) {
-                    existingItemIterator.remove();
-                    proposedItemIterator.remove();
-                    break;
+        // We can't just use sets here as order matters (we want to keep duplicated in existingInvoiceItems): each proposed item
+        // removes the first equal existing item. Existing items are indexed by a key shared by equal items, so that only
+        // the candidates with the same key need to be compared.
+        final InvoiceItem[] existingItems = existingInvoiceItems.toArray(new InvoiceItem[existingInvoiceItems.size()]);
+        final Map<InvoiceItemKey, LinkedList<Integer>> existingItemsPerKey = new HashMap<InvoiceItemKey, LinkedList<Integer>>();
+        for (int i = 0; i < existingItems.length; i++) {
+            final InvoiceItemKey key = new InvoiceItemKey(existingItems[i]);
+            if (existingItemsPerKey.get(key) == null) {
+                existingItemsPerKey.put(key, new LinkedList<Integer>());
+            }
+            existingItemsPerKey.get(key).add(i);
+        }
+
+        final boolean[] isExistingItemRemoved = new boolean[existingItems.length];
+        final List<InvoiceItem> remainingProposedItems = new ArrayList<InvoiceItem>(proposedItems.size());
+        for (final InvoiceItem proposedItem : proposedItems) {
+            boolean isDuplicated = false;
+
+            final List<Integer> candidates = existingItemsPerKey.get(new InvoiceItemKey(proposedItem));
+            if (candidates != null) {
+                final Iterator<Integer> candidateIterator = candidates.iterator();
+                while (candidateIterator.hasNext()) {
+                    final int candidate = candidateIterator.next();
+                    if (existingItems[candidate].equals(proposedItem)) {
+                        candidateIterator.remove();
+                        isExistingItemRemoved[candidate] = true;
+                        isDuplicated = true;
+                        break;
+                    }
                 }
             }
+
+            if (!isDuplicated) {
+                remainingProposedItems.add(proposedItem);
+            }
+        }
+
+        if (remainingProposedItems.size() == proposedItems.size()) {
+            return;
+        }
+
+        proposedItems.clear();
+        proposedItems.addAll(remainingProposedItems);
+
+        existingInvoiceItems.clear();
+        for (int i = 0; i < existingItems.length; i++) {
+            if (!isExistingItemRemoved[i]) {
+                existingInvoiceItems.add(existingItems[i]);
+            }
         }
     }
 
     void removeCancellingInvoiceItems(final List<InvoiceItem> items) {
-        final List<UUID> itemsToRemove = new ArrayList<UUID>();
+        final Set<UUID> itemsToRemove = new HashSet<UUID>();
 
         for (final InvoiceItem item1 : items) {
             if (item1.getInvoiceItemType() == InvoiceItemType.REPAIR_ADJ) {
@@ -293,17 +400,57 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
             }
         }
 
-        final Iterator<InvoiceItem> iterator = items.iterator();
-        while (iterator.hasNext()) {
-            final InvoiceItem item = iterator.next();
-            if (itemsToRemove.contains(item.getId())) {
-                iterator.remove();
+        if (itemsToRemove.size() == 0) {
+            return;
+        }
+
+        final List<InvoiceItem> remainingItems = new ArrayList<InvoiceItem>(items.size());
+        for (final InvoiceItem item : items) {
+            if (!itemsToRemove.contains(item.getId())) {
+                remainingItems.add(item);
             }
         }
+        items.clear();
+        items.addAll(remainingItems);
+    }
+
+    // Fields checked by the equals implementations of all invoice items: equal items always have the same key
+    private static final class InvoiceItemKey {
+
+        private final Class<?> itemClass;
+        private final UUID subscriptionId;
+        private final LocalDate startDate;
+
+        private InvoiceItemKey(final InvoiceItem item) {
+            this.itemClass = item.getClass();
+            this.subscriptionId = item.getSubscriptionId();
+            this.startDate = item.getStartDate();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final InvoiceItemKey that = (InvoiceItemKey) o;
+            return itemClass.equals(that.itemClass) &&
+                   Objects.equal(subscriptionId, that.subscriptionId) &&
+                   Objects.equal(startDate, that.startDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(itemClass, subscriptionId, startDate);
+        }
     }
 
     private List<InvoiceItem> generateInvoiceItems(final UUID invoiceId, final UUID accountId, final BillingEventSet events,
-                                                   final LocalDate targetDate, final DateTimeZone accountTimeZone, final Currency currency) throws InvoiceApiException {
+                                                   final Map<UUID, LocalDate> billedThroughDates, final LocalDate targetDate,
+                                                   final DateTimeZone accountTimeZone, final Currency currency) throws InvoiceApiException {
         final List<InvoiceItem> items = new ArrayList<InvoiceItem>();
 
         if (events.size() == 0) {
@@ -319,11 +466,16 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
             if (!events.getSubscriptionIdsWithAutoInvoiceOff().
                     contains(thisEvent.getSubscription().getId())) { // don't consider events for subscriptions that have auto_invoice_off
                 final BillingEvent adjustedNextEvent = (thisEvent.getSubscription().getId() == nextEvent.getSubscription().getId()) ? nextEvent : null;
-                items.addAll(processEvents(invoiceId, accountId, thisEvent, adjustedNextEvent, targetDate, accountTimeZone, currency));
+                if (!isBilledThrough(thisEvent, adjustedNextEvent, billedThroughDates)) {
+                    items.addAll(processEvents(invoiceId, accountId, thisEvent, adjustedNextEvent, targetDate, accountTimeZone, currency));
+                }
             }
         }
         items.addAll(processEvents(invoiceId, accountId, nextEvent, null, targetDate, accountTimeZone, currency));
 
+        // Events spanning the watermark may still generate items which were already billed
+        removeBilledThroughInvoiceItems(items, billedThroughDates);
+
         // The above should reproduce the semantics of the code below using iterator instead of list.
         //
         //        for (int i = 0; i < events.size(); i++) {
@@ -339,6 +491,155 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
         return items;
     }
 
+    /*
+     * Returns the billed-through date of the subscriptions for which the incremental generation can be used, i.e. the ones
+     * whose billing events up to the watermark haven't changed since it was recorded. Any change (e.g. a backdated cancellation
+     * or plan change) requires a repair, hence a full recompute for that subscription.
+     */
+    private Map<UUID, LocalDate> getBilledThroughDates(final List<BilledThroughWatermark> billedThroughWatermarks, final BillingEventSet events,
+                                                       final LocalDate targetDate, final DateTimeZone accountTimeZone, final Currency currency) {
+        final Map<UUID, LocalDate> billedThroughDates = new HashMap<UUID, LocalDate>();
+        if (billedThroughWatermarks.size() == 0) {
+            return billedThroughDates;
+        }
+
+        final Map<UUID, List<BillingEvent>> eventsPerSubscription = getEventsPerSubscription(events);
+        for (final BilledThroughWatermark watermark : billedThroughWatermarks) {
+            final List<BillingEvent> subscriptionEvents = eventsPerSubscription.get(watermark.getSubscriptionId());
+            if (subscriptionEvents == null || watermark.getBilledThroughDate().isAfter(targetDate)) {
+                continue;
+            }
+
+            final String eventsDigest = computeEventsDigest(subscriptionEvents, watermark.getBilledThroughDate(), accountTimeZone, currency);
+            if (eventsDigest.equals(watermark.getEventsDigest())) {
+                billedThroughDates.put(watermark.getSubscriptionId(), watermark.getBilledThroughDate());
+            } else {
+                log.info("Billing events changed for subscription {} before {}, recomputing all its items", watermark.getSubscriptionId(), watermark.getBilledThroughDate());
+            }
+        }
+        return billedThroughDates;
+    }
+
+    private Map<UUID, List<BillingEvent>> getEventsPerSubscription(final BillingEventSet events) {
+        final Map<UUID, List<BillingEvent>> eventsPerSubscription = new LinkedHashMap<UUID, List<BillingEvent>>();
+        for (final BillingEvent event : events) {
+            final UUID subscriptionId = event.getSubscription().getId();
+            if (events.getSubscriptionIdsWithAutoInvoiceOff().contains(subscriptionId)) {
+                continue;
+            }
+            if (eventsPerSubscription.get(subscriptionId) == null) {
+                eventsPerSubscription.put(subscriptionId, new ArrayList<BillingEvent>());
+            }
+            eventsPerSubscription.get(subscriptionId).add(event);
+        }
+        return eventsPerSubscription;
+    }
+
+    // The items generated up to the billed-through date only depend on the billing events effective up to that date
+    private String computeEventsDigest(final List<BillingEvent> subscriptionEvents, final LocalDate billedThroughDate,
+                                       final DateTimeZone accountTimeZone, final Currency currency) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(accountTimeZone.getID()).append('|').append(currency).append('|').append(billedThroughDate);
+        for (final BillingEvent event : subscriptionEvents) {
+            final LocalDate effectiveDate = new LocalDate(event.getEffectiveDate(), event.getTimeZone());
+            if (effectiveDate.isAfter(billedThroughDate)) {
+                break;
+            }
+
+            sb.append('|').append(effectiveDate)
+              .append(',').append(event.getSubscription().getBundleId())
+              .append(',').append(event.getPlan().getName())
+              .append(',').append(event.getPlanPhase().getName())
+              .append(',').append(event.getBillingPeriod())
+              .append(',').append(event.getBillingMode())
+              .append(',').append(event.getBillCycleDay().getDayOfMonthLocal())
+              .append(',').append(event.getFixedPrice() == null ? null : event.getFixedPrice().stripTrailingZeros().toPlainString())
+              .append(',').append(event.getRecurringPrice() == null ? null : event.getRecurringPrice().stripTrailingZeros().toPlainString());
+        }
+        return Hashing.sha1().hashString(sb, Charsets.UTF_8).toString();
+    }
+
+    // All the items generated for an event end on or before the next event for that subscription
+    private boolean isBilledThrough(final BillingEvent thisEvent, @Nullable final BillingEvent nextEvent, final Map<UUID, LocalDate> billedThroughDates) {
+        final LocalDate billedThroughDate = billedThroughDates.get(thisEvent.getSubscription().getId());
+        if (billedThroughDate == null || nextEvent == null) {
+            return false;
+        }
+
+        final LocalDate nextEventDate = new LocalDate(nextEvent.getEffectiveDate(), nextEvent.getTimeZone());
+        return !nextEventDate.isAfter(billedThroughDate);
+    }
+
+    private boolean isBilledThrough(final InvoiceItem item, final Map<UUID, LocalDate> billedThroughDates) {
+        final LocalDate billedThroughDate = item.getSubscriptionId() == null ? null : billedThroughDates.get(item.getSubscriptionId());
+        if (billedThroughDate == null) {
+            return false;
+        }
+
+        if (item.getInvoiceItemType() == InvoiceItemType.RECURRING) {
+            return item.getEndDate() != null && !item.getEndDate().isAfter(billedThroughDate);
+        } else if (item.getInvoiceItemType() == InvoiceItemType.FIXED) {
+            return !item.getStartDate().isAfter(billedThroughDate);
+        } else {
+            return false;
+        }
+    }
+
+    /*
+     * Removes the fixed and recurring items which are within the billed-through window: these were already matched against
+     * the billing events during the run which recorded the watermark
+     */
+    void removeBilledThroughInvoiceItems(final List<InvoiceItem> items, final Map<UUID, LocalDate> billedThroughDates) {
+        if (billedThroughDates.size() == 0) {
+            return;
+        }
+
+        final List<InvoiceItem> remainingItems = new ArrayList<InvoiceItem>(items.size());
+        for (final InvoiceItem item : items) {
+            if (!isBilledThrough(item, billedThroughDates)) {
+                remainingItems.add(item);
+            }
+        }
+        items.clear();
+        items.addAll(remainingItems);
+    }
+
+    private boolean isSameInvoiceItems(final List<InvoiceItem> items, final List<InvoiceItem> otherItems) {
+        if (items.size() != otherItems.size()) {
+            return false;
+        }
+
+        final List<InvoiceItem> remainingItems = new LinkedList<InvoiceItem>(otherItems);
+        for (final InvoiceItem item : items) {
+            boolean found = false;
+            final Iterator<InvoiceItem> iterator = remainingItems.iterator();
+            while (iterator.hasNext()) {
+                if (isSameInvoiceItem(item, iterator.next())) {
+                    iterator.remove();
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Ids of newly generated items are random, so compare all the other fields
+    private boolean isSameInvoiceItem(final InvoiceItem item, final InvoiceItem otherItem) {
+        return item.getInvoiceItemType() == otherItem.getInvoiceItemType() &&
+               Objects.equal(item.getInvoiceId(), otherItem.getInvoiceId()) &&
+               Objects.equal(item.getSubscriptionId(), otherItem.getSubscriptionId()) &&
+               Objects.equal(item.getPlanName(), otherItem.getPlanName()) &&
+               Objects.equal(item.getPhaseName(), otherItem.getPhaseName()) &&
+               Objects.equal(item.getStartDate(), otherItem.getStartDate()) &&
+               Objects.equal(item.getEndDate(), otherItem.getEndDate()) &&
+               Objects.equal(item.getLinkedItemId(), otherItem.getLinkedItemId()) &&
+               (item.getAmount() == null ? otherItem.getAmount() == null : otherItem.getAmount() != null && item.getAmount().compareTo(otherItem.getAmount()) == 0);
+    }
+
     // Turn a set of events into a list of invoice items. Note that the dates on the invoice items will be rounded (granularity of a day)
     private List<InvoiceItem> processEvents(final UUID invoiceId, final UUID accountId, final BillingEvent thisEvent, @Nullable final BillingEvent nextEvent,
                                             final LocalDate targetDate, final DateTimeZone accountTimeZone, final Currency currency) throws InvoiceApiException {
@@ -27,10 +27,25 @@ import org.joda.time.LocalDate;
 import com.ning.billing.catalog.api.Currency;
 import com.ning.billing.invoice.api.Invoice;
 import com.ning.billing.invoice.api.InvoiceApiException;
+import com.ning.billing.invoice.model.BilledThroughWatermark;
 import com.ning.billing.util.svcapi.junction.BillingEventSet;
 
 public interface InvoiceGenerator {
 
     public Invoice generateInvoice(UUID accountId, @Nullable BillingEventSet events, @Nullable List<Invoice> existingInvoices,
                                    LocalDate targetDate, DateTimeZone accountTimeZone, Currency targetCurrency) throws InvoiceApiException;
+
+    /**
+     * Generate an invoice, only considering the billing events after the billed-through watermark of each subscription,
+     * unless its billing events changed before the watermark.
+     */
+    public Invoice generateInvoice(UUID accountId, @Nullable BillingEventSet events, @Nullable List<Invoice> existingInvoices,
+                                   List<BilledThroughWatermark> billedThroughWatermarks, LocalDate targetDate,
+                                   DateTimeZone accountTimeZone, Currency targetCurrency) throws InvoiceApiException;
+
+    /**
+     * Compute the watermarks to record once an invoice with the given target date has been persisted.
+     */
+    public List<BilledThroughWatermark> computeBilledThroughWatermarks(@Nullable BillingEventSet events, LocalDate billedThroughDate,
+                                                                       DateTimeZone accountTimeZone, Currency targetCurrency);
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.invoice.model;
+
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+
+/**
+ * Records, for a subscription, the date up to which its invoice items are known to be in sync with its billing events,
+ * along with a digest of the billing events which were used to compute these items.
+ */
+public class BilledThroughWatermark {
+
+    private final UUID subscriptionId;
+    private final LocalDate billedThroughDate;
+    private final String eventsDigest;
+
+    public BilledThroughWatermark(final UUID subscriptionId, final LocalDate billedThroughDate, final String eventsDigest) {
+        this.subscriptionId = subscriptionId;
+        this.billedThroughDate = billedThroughDate;
+        this.eventsDigest = eventsDigest;
+    }
+
+    public UUID getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public LocalDate getBilledThroughDate() {
+        return billedThroughDate;
+    }
+
+    public String getEventsDigest() {
+        return eventsDigest;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("BilledThroughWatermark");
+        sb.append("{subscriptionId=").append(subscriptionId);
+        sb.append(", billedThroughDate=").append(billedThroughDate);
+        sb.append(", eventsDigest='").append(eventsDigest).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final BilledThroughWatermark that = (BilledThroughWatermark) o;
+
+        if (billedThroughDate != null ? billedThroughDate.compareTo(that.billedThroughDate) != 0 : that.billedThroughDate != null) {
+            return false;
+        }
+        if (eventsDigest != null ? !eventsDigest.equals(that.eventsDigest) : that.eventsDigest != null) {
+            return false;
+        }
+        if (subscriptionId != null ? !subscriptionId.equals(that.subscriptionId) : that.subscriptionId != null) {
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = subscriptionId != null ? subscriptionId.hashCode() : 0;
+        result = 31 * result + (billedThroughDate != null ? billedThroughDate.hashCode() : 0);
+        result = 31 * result + (eventsDigest != null ? eventsDigest.hashCode() : 0);
+        return result;
+    }
+}
@@ -78,6 +78,11 @@ public class DefaultNextBillingDateNotifier implements NextBillingDateNotifier {
             public boolean isNotificationProcessingOff() {
                 return config.isNotificationProcessingOff();
             }
+
+            @Override
+            public int getMaxClaimedNotifications() {
+                return config.getMaxClaimedNotifications();
+            }
         };
 
         final NotificationQueueHandler notificationQueueHandler = new NotificationQueueHandler() {
@@ -45,6 +45,7 @@ CREATE TABLE invoices (
 CREATE UNIQUE INDEX invoices_id ON invoices(id);
 CREATE INDEX invoices_account_target ON invoices(account_id ASC, target_date);
 CREATE INDEX invoices_tenant_account_record_id ON invoices(tenant_record_id, account_record_id);
+CREATE INDEX invoices_invoice_date ON invoices(invoice_date);
 
 DROP TABLE IF EXISTS invoice_payments;
 CREATE TABLE invoice_payments (
@@ -67,4 +68,24 @@ CREATE TABLE invoice_payments (
 CREATE UNIQUE INDEX invoice_payments_id ON invoice_payments(id);
 CREATE INDEX invoice_payments ON invoice_payments(payment_id);
 CREATE INDEX invoice_payments_reversals ON invoice_payments(linked_invoice_payment_id);
+CREATE INDEX invoice_payments_invoice_id ON invoice_payments(invoice_id);
 CREATE INDEX invoice_payments_tenant_account_record_id ON invoice_payments(tenant_record_id, account_record_id);
+
+DROP TABLE IF EXISTS invoice_billed_through;
+CREATE TABLE invoice_billed_through (
+    record_id int(11) unsigned NOT NULL AUTO_INCREMENT,
+    subscription_id char(36) NOT NULL,
+    account_id char(36) NOT NULL,
+    billed_through_date date NOT NULL,
+    events_digest char(40) NOT NULL,
+    created_by varchar(50) NOT NULL,
+    created_date datetime NOT NULL,
+    updated_by varchar(50) NOT NULL,
+    updated_date datetime NOT NULL,
+    account_record_id int(11) unsigned default null,
+    tenant_record_id int(11) unsigned default null,
+    PRIMARY KEY(record_id)
+) ENGINE=innodb;
+CREATE UNIQUE INDEX invoice_billed_through_subscription_id ON invoice_billed_through(subscription_id);
+CREATE INDEX invoice_billed_through_account_id ON invoice_billed_through(account_id ASC);
+CREATE INDEX invoice_billed_through_tenant_account_record_id ON invoice_billed_through(tenant_record_id, account_record_id);
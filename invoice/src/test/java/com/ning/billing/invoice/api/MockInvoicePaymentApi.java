@@ -26,6 +26,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
 
 import com.ning.billing.catalog.api.Currency;
 import com.ning.billing.invoice.api.InvoicePayment.InvoicePaymentType;
@@ -63,6 +64,18 @@ public class MockInvoicePaymentApi implements InvoicePaymentApi {
         return result;
     }
 
+    @Override
+    public List<Invoice> getUnpaidInvoicesUpToDate(final LocalDate upToDate, final TenantContext context) {
+        final ArrayList<Invoice> result = new ArrayList<Invoice>();
+
+        for (final Invoice invoice : invoices) {
+            if (!invoice.getTargetDate().isAfter(upToDate) && invoice.getBalance().compareTo(BigDecimal.ZERO) > 0 && !invoice.isMigrationInvoice()) {
+                result.add(invoice);
+            }
+        }
+        return result;
+    }
+
     @Override
     public Invoice getInvoice(final UUID invoiceId, final TenantContext context) {
         for (final Invoice invoice : invoices) {
@@ -63,6 +63,11 @@ public class InvoiceDaoTestBase extends InvoicingTestBase {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public int getMaxClaimedNotifications() {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public int getNumberOfMonthsInFuture() {
             return 36;
@@ -72,6 +77,11 @@ public class InvoiceDaoTestBase extends InvoicingTestBase {
         public boolean isEmailNotificationsEnabled() {
             return false;
         }
+
+        @Override
+        public String getInvoiceGenerationMode() {
+            return "INCREMENTAL";
+        }
     };
 
     private static void loadSystemPropertiesFromClasspath(final String resource) {
@@ -34,6 +34,7 @@ import com.ning.billing.invoice.api.InvoiceApiException;
 import com.ning.billing.invoice.api.InvoiceItem;
 import com.ning.billing.invoice.api.InvoicePayment;
 import com.ning.billing.invoice.api.user.DefaultInvoiceCreationEvent;
+import com.ning.billing.invoice.model.BilledThroughWatermark;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.util.svcsapi.bus.InternalBus;
@@ -45,6 +46,7 @@ public class MockInvoiceDao implements InvoiceDao {
     private final InternalBus eventBus;
     private final Object monitor = new Object();
     private final Map<UUID, Invoice> invoices = new LinkedHashMap<UUID, Invoice>();
+    private final Map<UUID, BilledThroughWatermark> watermarks = new LinkedHashMap<UUID, BilledThroughWatermark>();
 
     @Inject
     public MockInvoiceDao(final InternalBus eventBus) {
@@ -65,6 +67,24 @@ public class MockInvoiceDao implements InvoiceDao {
         }
     }
 
+    @Override
+    public void create(final Invoice invoice, final int billCycleDay, final boolean isRealInvoice,
+                       final List<BilledThroughWatermark> billedThroughWatermarks, final InternalCallContext context) {
+        synchronized (monitor) {
+            for (final BilledThroughWatermark watermark : billedThroughWatermarks) {
+                watermarks.put(watermark.getSubscriptionId(), watermark);
+            }
+        }
+        create(invoice, billCycleDay, isRealInvoice, context);
+    }
+
+    @Override
+    public List<BilledThroughWatermark> getBilledThroughWatermarks(final UUID accountId, final InternalTenantContext context) {
+        synchronized (monitor) {
+            return new ArrayList<BilledThroughWatermark>(watermarks.values());
+        }
+    }
+
     @Override
     public Invoice getById(final UUID id, final InternalTenantContext context) {
         synchronized (monitor) {
@@ -207,6 +227,37 @@ public class MockInvoiceDao implements InvoiceDao {
         return unpaidInvoices;
     }
 
+    @Override
+    public List<Invoice> getUnpaidInvoicesUpToDate(final LocalDate upToDate, final InternalTenantContext context) {
+        final List<Invoice> unpaidInvoices = new ArrayList<Invoice>();
+
+        for (final Invoice invoice : get(context)) {
+            if (!invoice.getTargetDate().isAfter(upToDate) && (invoice.getBalance().compareTo(BigDecimal.ZERO) > 0) && !invoice.isMigrationInvoice()) {
+                unpaidInvoices.add(invoice);
+            }
+        }
+
+        return unpaidInvoices;
+    }
+
+    @Override
+    public Map<UUID, LocalDate> getOldestUnpaidInvoiceDatePerAccountUpToDate(final LocalDate upToDate) {
+        final Map<UUID, LocalDate> oldestUnpaidInvoiceDates = new LinkedHashMap<UUID, LocalDate>();
+
+        synchronized (monitor) {
+            for (final Invoice invoice : invoices.values()) {
+                if (!invoice.getInvoiceDate().isAfter(upToDate) && (invoice.getBalance().compareTo(BigDecimal.ZERO) > 0) && !invoice.isMigrationInvoice()) {
+                    final LocalDate oldestInvoiceDate = oldestUnpaidInvoiceDates.get(invoice.getAccountId());
+                    if (oldestInvoiceDate == null || invoice.getInvoiceDate().isBefore(oldestInvoiceDate)) {
+                        oldestUnpaidInvoiceDates.put(invoice.getAccountId(), invoice.getInvoiceDate());
+                    }
+                }
+            }
+        }
+
+        return oldestUnpaidInvoiceDates;
+    }
+
     @Override
     public List<Invoice> getAllInvoicesByAccount(final UUID accountId, final InternalTenantContext context) {
         final List<Invoice> result = new ArrayList<Invoice>();
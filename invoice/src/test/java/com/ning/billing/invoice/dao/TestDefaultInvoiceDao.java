@@ -17,6 +17,8 @@
 package com.ning.billing.invoice.dao;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -33,6 +35,7 @@ import com.ning.billing.ErrorCode;
 import com.ning.billing.invoice.InvoiceTestSuite;
 import com.ning.billing.invoice.api.Invoice;
 import com.ning.billing.invoice.api.InvoiceApiException;
+import com.ning.billing.invoice.api.InvoiceItem;
 import com.ning.billing.invoice.api.InvoicePayment;
 import com.ning.billing.invoice.notification.NextBillingDatePoster;
 import com.ning.billing.util.callcontext.InternalTenantContext;
@@ -43,6 +46,7 @@ import com.ning.billing.util.tag.dao.MockTagDefinitionDao;
 import com.ning.billing.util.tag.dao.TagDao;
 import com.ning.billing.util.tag.dao.TagDefinitionDao;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 public class TestDefaultInvoiceDao extends InvoiceTestSuite {
@@ -61,7 +65,7 @@ public class TestDefaultInvoiceDao extends InvoiceTestSuite {
             public Object answer(final InvocationOnMock invocation) {
                 final Object[] args = invocation.getArguments();
                 try {
-                    ((Transaction<Void, InvoiceSqlDao>) args[0]).inTransaction(invoiceSqlDao, null);
+                    return ((Transaction<Object, InvoiceSqlDao>) args[0]).inTransaction(invoiceSqlDao, null);
                 } catch (Exception e) {
                     Assert.fail(e.toString());
                 }
@@ -112,6 +116,82 @@ public class TestDefaultInvoiceDao extends InvoiceTestSuite {
         Assert.assertEquals(actualRefundAmount, expectedRefundAmount);
     }
 
+    @Test(groups = "fast")
+    public void testPopulateChildrenPerAccount() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final Invoice firstInvoice = createInvoice(accountId);
+        final Invoice secondInvoice = createInvoice(accountId);
+        Mockito.when(invoiceSqlDao.getInvoicesByAccount(accountId.toString(), internalCallContext)).thenReturn(ImmutableList.<Invoice>of(firstInvoice, secondInvoice));
+
+        final InvoiceItem firstItem = createInvoiceItem(firstInvoice);
+        final InvoiceItem secondItem = createInvoiceItem(secondInvoice);
+        final InvoiceItem thirdItem = createInvoiceItem(secondInvoice);
+        final InvoiceItemSqlDao invoiceItemSqlDao = Mockito.mock(InvoiceItemSqlDao.class);
+        Mockito.when(invoiceSqlDao.become(InvoiceItemSqlDao.class)).thenReturn(invoiceItemSqlDao);
+        final List<String> invoiceIds = ImmutableList.<String>of(firstInvoice.getId().toString(), secondInvoice.getId().toString());
+        Mockito.when(invoiceItemSqlDao.getInvoiceItemsForAccountInvoices(invoiceIds, internalCallContext)).thenReturn(ImmutableList.<InvoiceItem>of(firstItem, secondItem, thirdItem));
+
+        final InvoicePayment payment = createInvoicePayment(firstInvoice);
+        final InvoicePaymentSqlDao invoicePaymentSqlDao = Mockito.mock(InvoicePaymentSqlDao.class);
+        Mockito.when(invoiceSqlDao.become(InvoicePaymentSqlDao.class)).thenReturn(invoicePaymentSqlDao);
+        Mockito.when(invoicePaymentSqlDao.getPaymentsForAccountInvoices(invoiceIds, internalCallContext)).thenReturn(ImmutableList.<InvoicePayment>of(payment));
+
+        Assert.assertEquals(dao.getInvoicesByAccount(accountId, internalCallContext), ImmutableList.<Invoice>of(firstInvoice, secondInvoice));
+
+        // One query for the items of these invoices and one for their payments, dispatched to their invoice
+        Mockito.verify(invoiceItemSqlDao, Mockito.times(1)).getInvoiceItemsForAccountInvoices(invoiceIds, internalCallContext);
+        Mockito.verify(invoiceItemSqlDao, Mockito.never()).getInvoiceItemsByInvoice(Mockito.anyString(), Mockito.<InternalTenantContext>any());
+        Mockito.verify(invoicePaymentSqlDao, Mockito.times(1)).getPaymentsForAccountInvoices(invoiceIds, internalCallContext);
+        Mockito.verify(invoicePaymentSqlDao, Mockito.never()).getPaymentsForInvoice(Mockito.anyString(), Mockito.<InternalTenantContext>any());
+
+        Mockito.verify(firstInvoice).addInvoiceItems(ImmutableList.<InvoiceItem>of(firstItem));
+        Mockito.verify(secondInvoice).addInvoiceItems(ImmutableList.<InvoiceItem>of(secondItem, thirdItem));
+        Mockito.verify(firstInvoice).addPayments(ImmutableList.<InvoicePayment>of(payment));
+        Mockito.verify(secondInvoice).addPayments(ImmutableList.<InvoicePayment>of());
+    }
+
+    @Test(groups = "fast")
+    public void testPopulateChildrenAcrossAccounts() throws Exception {
+        final Invoice firstInvoice = createInvoice(UUID.randomUUID());
+        final Invoice secondInvoice = createInvoice(UUID.randomUUID());
+        Mockito.when(invoiceSqlDao.get(internalCallContext)).thenReturn(ImmutableList.<Invoice>of(firstInvoice, secondInvoice));
+
+        final InvoiceItemSqlDao invoiceItemSqlDao = Mockito.mock(InvoiceItemSqlDao.class);
+        Mockito.when(invoiceSqlDao.become(InvoiceItemSqlDao.class)).thenReturn(invoiceItemSqlDao);
+        final InvoicePaymentSqlDao invoicePaymentSqlDao = Mockito.mock(InvoicePaymentSqlDao.class);
+        Mockito.when(invoiceSqlDao.become(InvoicePaymentSqlDao.class)).thenReturn(invoicePaymentSqlDao);
+
+        Assert.assertEquals(dao.get(internalCallContext), ImmutableList.<Invoice>of(firstInvoice, secondInvoice));
+
+        // The children are loaded invoice by invoice
+        Mockito.verify(invoiceItemSqlDao, Mockito.never()).getInvoiceItemsForAccountInvoices(Mockito.<Collection<String>>any(), Mockito.<InternalTenantContext>any());
+        Mockito.verify(invoiceItemSqlDao, Mockito.times(2)).getInvoiceItemsByInvoice(Mockito.anyString(), Mockito.<InternalTenantContext>any());
+        Mockito.verify(invoicePaymentSqlDao, Mockito.never()).getPaymentsForAccountInvoices(Mockito.<Collection<String>>any(), Mockito.<InternalTenantContext>any());
+        Mockito.verify(invoicePaymentSqlDao, Mockito.times(2)).getPaymentsForInvoice(Mockito.anyString(), Mockito.<InternalTenantContext>any());
+    }
+
+    private Invoice createInvoice(final UUID accountId) {
+        final Invoice invoice = Mockito.mock(Invoice.class);
+        final UUID invoiceId = UUID.randomUUID();
+        Mockito.when(invoice.getId()).thenReturn(invoiceId);
+        Mockito.when(invoice.getAccountId()).thenReturn(accountId);
+        return invoice;
+    }
+
+    private InvoiceItem createInvoiceItem(final Invoice invoice) {
+        final InvoiceItem item = Mockito.mock(InvoiceItem.class);
+        final UUID invoiceId = invoice.getId();
+        Mockito.when(item.getInvoiceId()).thenReturn(invoiceId);
+        return item;
+    }
+
+    private InvoicePayment createInvoicePayment(final Invoice invoice) {
+        final InvoicePayment invoicePayment = Mockito.mock(InvoicePayment.class);
+        final UUID invoiceId = invoice.getId();
+        Mockito.when(invoicePayment.getInvoiceId()).thenReturn(invoiceId);
+        return invoicePayment;
+    }
+
     @Test(groups = "fast")
     public void testFindByNumber() throws Exception {
         final Integer number = Integer.MAX_VALUE;
@@ -57,6 +57,7 @@ import com.ning.billing.invoice.api.InvoiceItem;
 import com.ning.billing.invoice.api.InvoiceItemType;
 import com.ning.billing.invoice.api.InvoicePayment;
 import com.ning.billing.invoice.api.InvoicePayment.InvoicePaymentType;
+import com.ning.billing.invoice.model.BilledThroughWatermark;
 import com.ning.billing.invoice.model.CreditAdjInvoiceItem;
 import com.ning.billing.invoice.model.CreditBalanceAdjInvoiceItem;
 import com.ning.billing.invoice.model.DefaultInvoice;
@@ -64,12 +65,14 @@ import com.ning.billing.invoice.model.DefaultInvoicePayment;
 import com.ning.billing.invoice.model.FixedPriceInvoiceItem;
 import com.ning.billing.invoice.model.RecurringInvoiceItem;
 import com.ning.billing.invoice.model.RepairAdjInvoiceItem;
+import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.clock.ClockMock;
 import com.ning.billing.util.entity.EntityPersistenceException;
 import com.ning.billing.util.svcapi.junction.BillingEvent;
 import com.ning.billing.util.svcapi.junction.BillingEventSet;
 import com.ning.billing.util.svcapi.junction.BillingModeType;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 public class TestInvoiceDao extends InvoiceDaoTestBase {
@@ -996,6 +999,74 @@ public class TestInvoiceDao extends InvoiceDaoTestBase {
         assertEquals(invoices.size(), 2);
     }
 
+    @Test(groups = "slow")
+    public void testGetUnpaidInvoicesUpToDatePerPageOfAccounts() throws EntityPersistenceException {
+        final LocalDate upToDate = new LocalDate(2011, 12, 1);
+        final BigDecimal amount = new BigDecimal("10.0");
+
+        // Unpaid
+        final UUID unpaidAccountId = UUID.randomUUID();
+        final Invoice unpaidInvoice = createInvoiceWithItem(unpaidAccountId, new LocalDate(2011, 10, 6), amount);
+        // Paid
+        final UUID paidAccountId = UUID.randomUUID();
+        final Invoice paidInvoice = createInvoiceWithItem(paidAccountId, new LocalDate(2011, 10, 6), amount);
+        invoicePaymentDao.create(new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, UUID.randomUUID(), paidInvoice.getId(), new DateTime(), amount, Currency.USD), internalCallContext);
+        // Unpaid, one before and one after the date
+        final UUID otherUnpaidAccountId = UUID.randomUUID();
+        final Invoice otherUnpaidInvoice = createInvoiceWithItem(otherUnpaidAccountId, new LocalDate(2011, 11, 6), amount);
+        createInvoiceWithItem(otherUnpaidAccountId, new LocalDate(2011, 12, 6), amount);
+
+        final List<UUID> accountIds = ImmutableList.<UUID>of(unpaidAccountId, paidAccountId, otherUnpaidAccountId);
+        for (final int nbAccountsPerPage : new int[]{1, 2, 100}) {
+            final Map<UUID, Invoice> unpaidInvoices = new HashMap<UUID, Invoice>();
+            for (final Invoice invoice : ((AuditedInvoiceDao) invoiceDao).getUnpaidInvoicesUpToDate(upToDate, nbAccountsPerPage, internalCallContext)) {
+                if (accountIds.contains(invoice.getAccountId())) {
+                    assertNull(unpaidInvoices.put(invoice.getId(), invoice));
+                }
+            }
+            assertEquals(unpaidInvoices.size(), 2);
+            assertEquals(unpaidInvoices.get(unpaidInvoice.getId()).getBalance().compareTo(amount), 0);
+            assertEquals(unpaidInvoices.get(otherUnpaidInvoice.getId()).getBalance().compareTo(amount), 0);
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testGetOldestUnpaidInvoiceDatePerAccountUpToDate() throws EntityPersistenceException {
+        final LocalDate upToDate = new LocalDate(2011, 12, 1);
+        final BigDecimal amount = new BigDecimal("10.0");
+
+        // Two unpaid invoices
+        final UUID unpaidAccountId = UUID.randomUUID();
+        createInvoiceWithItem(unpaidAccountId, new LocalDate(2011, 11, 6), new LocalDate(2011, 11, 6), amount);
+        createInvoiceWithItem(unpaidAccountId, new LocalDate(2011, 10, 6), new LocalDate(2011, 10, 6), amount);
+        // The oldest invoice is paid
+        final UUID partiallyPaidAccountId = UUID.randomUUID();
+        final Invoice paidInvoice = createInvoiceWithItem(partiallyPaidAccountId, new LocalDate(2011, 10, 1), new LocalDate(2011, 10, 1), amount);
+        invoicePaymentDao.create(new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, UUID.randomUUID(), paidInvoice.getId(), new DateTime(), amount, Currency.USD), internalCallContext);
+        createInvoiceWithItem(partiallyPaidAccountId, new LocalDate(2011, 11, 1), new LocalDate(2011, 11, 1), amount);
+        // Unpaid, but after the date
+        final UUID laterUnpaidAccountId = UUID.randomUUID();
+        createInvoiceWithItem(laterUnpaidAccountId, new LocalDate(2011, 12, 6), new LocalDate(2011, 12, 6), amount);
+
+        final Map<UUID, LocalDate> oldestUnpaidInvoiceDates = invoiceDao.getOldestUnpaidInvoiceDatePerAccountUpToDate(upToDate);
+        assertEquals(oldestUnpaidInvoiceDates.get(unpaidAccountId), new LocalDate(2011, 10, 6));
+        assertEquals(oldestUnpaidInvoiceDates.get(partiallyPaidAccountId), new LocalDate(2011, 11, 1));
+        assertNull(oldestUnpaidInvoiceDates.get(laterUnpaidAccountId));
+    }
+
+    private Invoice createInvoiceWithItem(final UUID accountId, final LocalDate targetDate, final BigDecimal amount) throws EntityPersistenceException {
+        return createInvoiceWithItem(accountId, clock.getUTCToday(), targetDate, amount);
+    }
+
+    private Invoice createInvoiceWithItem(final UUID accountId, final LocalDate invoiceDate, final LocalDate targetDate, final BigDecimal amount) throws EntityPersistenceException {
+        final Invoice invoice = new DefaultInvoice(accountId, invoiceDate, targetDate, Currency.USD);
+        invoiceDao.create(invoice, invoice.getTargetDate().getDayOfMonth(), true, internalCallContext);
+        final RecurringInvoiceItem item = new RecurringInvoiceItem(invoice.getId(), accountId, UUID.randomUUID(), UUID.randomUUID(), "test plan", "test phase A",
+                                                                   targetDate, targetDate.plusMonths(1), amount, amount, Currency.USD);
+        invoiceItemSqlDao.create(item, internalCallContext);
+        return invoice;
+    }
+
     /*
      *
      * this test verifies that immediate changes give the correct results
@@ -1056,6 +1127,118 @@ public class TestInvoiceDao extends InvoiceDaoTestBase {
         assertEquals(savedInvoice2.getBalance(), FIFTEEN);
     }
 
+    @Test(groups = "slow")
+    public void testBilledThroughWatermarks() throws InvoiceApiException, CatalogApiException {
+        final UUID accountId = UUID.randomUUID();
+        final Currency currency = Currency.USD;
+        final Subscription subscription = getZombieSubscription();
+
+        final MockInternationalPrice recurringPrice1 = new MockInternationalPrice(new DefaultPrice(FIVE, currency));
+        final MockPlanPhase phase1 = new MockPlanPhase(recurringPrice1, null, BillingPeriod.MONTHLY, PhaseType.EVERGREEN);
+        final MockPlan plan = new MockPlan(phase1);
+
+        final LocalDate startDate = buildDate(2011, 1, 1);
+        final BillingEventSet events = new MockBillingEventSet();
+        events.add(createMockBillingEvent(null, subscription, startDate.toDateTimeAtStartOfDay(), plan, phase1, null,
+                                          recurringPrice1.getPrice(currency), currency, BillingPeriod.MONTHLY, 1, BillingModeType.IN_ADVANCE,
+                                          "testEvent1", 1L, SubscriptionTransitionType.CREATE));
+        assertEquals(invoiceDao.getBilledThroughWatermarks(accountId, internalCallContext).size(), 0);
+
+        // The watermarks are inserted with the first invoice
+        final Invoice invoice1 = generator.generateInvoice(accountId, events, invoiceDao.getInvoicesByAccount(accountId, internalCallContext),
+                                                           invoiceDao.getBilledThroughWatermarks(accountId, internalCallContext),
+                                                           startDate, DateTimeZone.UTC, currency);
+        assertNotNull(invoice1);
+        final List<BilledThroughWatermark> watermarks1 = generator.computeBilledThroughWatermarks(events, invoice1.getTargetDate(), DateTimeZone.UTC, currency);
+        invoiceDao.create(invoice1, 1, true, watermarks1, internalCallContext);
+        assertEquals(invoiceDao.getBilledThroughWatermarks(accountId, internalCallContext), watermarks1);
+
+        // The next run only bills the new period, and moves the watermark forward
+        final LocalDate secondTargetDate = startDate.plusMonths(1);
+        final Invoice invoice2 = generator.generateInvoice(accountId, events, invoiceDao.getInvoicesByAccount(accountId, internalCallContext),
+                                                           invoiceDao.getBilledThroughWatermarks(accountId, internalCallContext),
+                                                           secondTargetDate, DateTimeZone.UTC, currency);
+        assertNotNull(invoice2);
+        assertEquals(invoice2.getNumberOfItems(), 1);
+        assertEquals(invoice2.getBalance(), FIVE);
+        final List<BilledThroughWatermark> watermarks2 = generator.computeBilledThroughWatermarks(events, invoice2.getTargetDate(), DateTimeZone.UTC, currency);
+        invoiceDao.create(invoice2, 1, true, watermarks2, internalCallContext);
+        final List<BilledThroughWatermark> savedWatermarks = invoiceDao.getBilledThroughWatermarks(accountId, internalCallContext);
+        assertEquals(savedWatermarks, watermarks2);
+        assertEquals(savedWatermarks.get(0).getBilledThroughDate(), secondTargetDate);
+
+        // A backdated change no longer matches the stored digest, and the billed periods are repaired as the full recompute does
+        final MockInternationalPrice recurringPrice2 = new MockInternationalPrice(new DefaultPrice(TEN, currency));
+        final MockPlanPhase phase2 = new MockPlanPhase(recurringPrice2, null, BillingPeriod.MONTHLY, PhaseType.EVERGREEN);
+        events.add(createMockBillingEvent(null, subscription, startDate.plusDays(15).toDateTimeAtStartOfDay(), plan, phase2, null,
+                                          recurringPrice2.getPrice(currency), currency, BillingPeriod.MONTHLY, 1, BillingModeType.IN_ADVANCE,
+                                          "testEvent2", 2L, SubscriptionTransitionType.CHANGE));
+        final List<BilledThroughWatermark> newWatermarks = generator.computeBilledThroughWatermarks(events, secondTargetDate, DateTimeZone.UTC, currency);
+        assertEquals(newWatermarks.size(), 1);
+        assertTrue(!newWatermarks.get(0).getEventsDigest().equals(savedWatermarks.get(0).getEventsDigest()));
+
+        final List<Invoice> savedInvoices = invoiceDao.getInvoicesByAccount(accountId, internalCallContext);
+        final Invoice incrementalInvoice = generator.generateInvoice(accountId, events, savedInvoices, savedWatermarks, secondTargetDate, DateTimeZone.UTC, currency);
+        final Invoice fullInvoice = generator.generateInvoice(accountId, events, savedInvoices, secondTargetDate, DateTimeZone.UTC, currency);
+        assertNotNull(incrementalInvoice);
+        assertNotNull(fullInvoice);
+        assertEquals(incrementalInvoice.getNumberOfItems(), fullInvoice.getNumberOfItems());
+        assertEquals(incrementalInvoice.getBalance().compareTo(fullInvoice.getBalance()), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testGetInvoicesByAccountLoadsTheirChildren() throws InvoiceApiException {
+        final UUID accountId = UUID.randomUUID();
+        final LocalDate firstTargetDate = new LocalDate(2012, 1, 1);
+        final LocalDate secondTargetDate = firstTargetDate.plusMonths(1);
+        final Invoice firstInvoice = createInvoiceWithItem(accountId, firstTargetDate, TEN, internalCallContext);
+        final Invoice secondInvoice = createInvoiceWithItem(accountId, secondTargetDate, TWENTY, internalCallContext);
+        invoiceDao.notifyOfPayment(new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, UUID.randomUUID(), firstInvoice.getId(), clock.getUTCNow(), FOUR, Currency.USD),
+                                   internalCallContext);
+
+        // An invoice of another account, with its own account record id
+        final InternalCallContext otherAccountContext = new InternalCallContext(internalCallContext.getTenantRecordId(), internalCallContext.getAccountRecordId() + 1, callContext);
+        final UUID otherAccountId = UUID.randomUUID();
+        final Invoice otherInvoice = createInvoiceWithItem(otherAccountId, firstTargetDate, FIVE, otherAccountContext);
+        invoiceDao.notifyOfPayment(new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, UUID.randomUUID(), otherInvoice.getId(), clock.getUTCNow(), FIVE, Currency.USD),
+                                   otherAccountContext);
+
+        final Map<UUID, Invoice> invoices = new HashMap<UUID, Invoice>();
+        for (final Invoice invoice : invoiceDao.getInvoicesByAccount(accountId, internalCallContext)) {
+            invoices.put(invoice.getId(), invoice);
+        }
+        assertEquals(invoices.size(), 2);
+        checkInvoiceChildren(invoices.get(firstInvoice.getId()), TEN, FOUR);
+        checkInvoiceChildren(invoices.get(secondInvoice.getId()), TWENTY, BigDecimal.ZERO);
+
+        // Only the requested invoices get their children
+        final List<Invoice> laterInvoices = invoiceDao.getInvoicesByAccount(accountId, secondTargetDate, internalCallContext);
+        assertEquals(laterInvoices.size(), 1);
+        assertEquals(laterInvoices.get(0).getId(), secondInvoice.getId());
+        checkInvoiceChildren(laterInvoices.get(0), TWENTY, BigDecimal.ZERO);
+
+        final List<Invoice> otherInvoices = invoiceDao.getInvoicesByAccount(otherAccountId, otherAccountContext);
+        assertEquals(otherInvoices.size(), 1);
+        checkInvoiceChildren(otherInvoices.get(0), FIVE, FIVE);
+    }
+
+    private Invoice createInvoiceWithItem(final UUID accountId, final LocalDate targetDate, final BigDecimal amount, final InternalCallContext context) {
+        final Invoice invoice = new DefaultInvoice(accountId, clock.getUTCToday(), targetDate, Currency.USD);
+        invoice.addInvoiceItem(new RecurringInvoiceItem(invoice.getId(), accountId, UUID.randomUUID(), UUID.randomUUID(), "test plan", "test phase",
+                                                        targetDate, targetDate.plusMonths(1), amount, amount, Currency.USD));
+        invoiceDao.create(invoice, targetDate.getDayOfMonth(), true, context);
+        return invoice;
+    }
+
+    private void checkInvoiceChildren(final Invoice invoice, final BigDecimal chargedAmount, final BigDecimal paidAmount) {
+        assertEquals(invoice.getInvoiceItems().size(), 1);
+        assertEquals(invoice.getInvoiceItems().get(0).getInvoiceId(), invoice.getId());
+        assertEquals(invoice.getChargedAmount().compareTo(chargedAmount), 0);
+        assertEquals(invoice.getPayments().size(), paidAmount.compareTo(BigDecimal.ZERO) == 0 ? 0 : 1);
+        assertEquals(invoice.getPaidAmount().compareTo(paidAmount), 0);
+        assertEquals(invoice.getBalance().compareTo(chargedAmount.subtract(paidAmount)), 0);
+    }
+
     @Test(groups = "slow")
     public void testInvoiceForFreeTrial() throws InvoiceApiException, CatalogApiException {
         final Currency currency = Currency.USD;
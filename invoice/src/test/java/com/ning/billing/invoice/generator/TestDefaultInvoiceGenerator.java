@@ -52,6 +52,7 @@ import com.ning.billing.invoice.api.Invoice;
 import com.ning.billing.invoice.api.InvoiceApiException;
 import com.ning.billing.invoice.api.InvoiceItem;
 import com.ning.billing.invoice.api.InvoicePayment.InvoicePaymentType;
+import com.ning.billing.invoice.model.BilledThroughWatermark;
 import com.ning.billing.invoice.model.CreditBalanceAdjInvoiceItem;
 import com.ning.billing.invoice.model.DefaultInvoice;
 import com.ning.billing.invoice.model.DefaultInvoicePayment;
@@ -65,6 +66,8 @@ import com.ning.billing.util.svcapi.junction.BillingEvent;
 import com.ning.billing.util.svcapi.junction.BillingEventSet;
 import com.ning.billing.util.svcapi.junction.BillingModeType;
 
+import com.google.common.collect.ImmutableList;
+
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
@@ -96,10 +99,20 @@ public class TestDefaultInvoiceGenerator extends InvoicingTestBase {
                 return false;
             }
 
+            @Override
+            public String getInvoiceGenerationMode() {
+                return "INCREMENTAL";
+            }
+
             @Override
             public boolean isNotificationProcessingOff() {
                 throw new UnsupportedOperationException();
             }
+
+            @Override
+            public int getMaxClaimedNotifications() {
+                throw new UnsupportedOperationException();
+            }
         };
         this.generator = new DefaultInvoiceGenerator(clock, invoiceConfig);
     }
@@ -630,6 +643,50 @@ public class TestDefaultInvoiceGenerator extends InvoicingTestBase {
         assertEquals(invoice2.getBalance(), FIVE);
     }
 
+    @Test(groups = "fast")
+    public void testIncrementalInvoiceGeneration() throws InvoiceApiException, CatalogApiException {
+        final Plan plan = new MockPlan();
+        final PlanPhase phase1 = createMockMonthlyPlanPhase(FIVE, PhaseType.EVERGREEN);
+        final PlanPhase phase2 = createMockMonthlyPlanPhase(TEN, PhaseType.EVERGREEN);
+
+        final BillingEventSet events = new MockBillingEventSet();
+        final UUID subscriptionId = UUID.randomUUID();
+        final UUID accountId = UUID.randomUUID();
+
+        final LocalDate startDate = new LocalDate(2011, 1, 1);
+        events.add(createBillingEvent(subscriptionId, startDate, plan, phase1, 1));
+
+        final List<Invoice> invoiceList = new ArrayList<Invoice>();
+        final Invoice invoice1 = generator.generateInvoice(accountId, events, invoiceList, ImmutableList.<BilledThroughWatermark>of(),
+                                                           startDate, DateTimeZone.UTC, Currency.USD);
+        assertNotNull(invoice1);
+        invoiceList.add(invoice1);
+        final List<BilledThroughWatermark> watermarks1 = generator.computeBilledThroughWatermarks(events, invoice1.getTargetDate(), DateTimeZone.UTC, Currency.USD);
+        assertEquals(watermarks1.size(), 1);
+        assertEquals(watermarks1.get(0).getBilledThroughDate(), startDate);
+
+        // Only the new period is generated
+        final LocalDate secondTargetDate = startDate.plusMonths(1);
+        final Invoice invoice2 = generator.generateInvoice(accountId, events, invoiceList, watermarks1, secondTargetDate, DateTimeZone.UTC, Currency.USD);
+        assertNotNull(invoice2);
+        assertEquals(invoice2.getNumberOfItems(), 1);
+        assertEquals(invoice2.getBalance(), FIVE);
+        invoiceList.add(invoice2);
+        final List<BilledThroughWatermark> watermarks2 = generator.computeBilledThroughWatermarks(events, invoice2.getTargetDate(), DateTimeZone.UTC, Currency.USD);
+
+        // Nothing to bill
+        assertNull(generator.generateInvoice(accountId, events, invoiceList, watermarks2, secondTargetDate, DateTimeZone.UTC, Currency.USD));
+
+        // A backdated change invalidates the watermark: the incremental generation needs to repair the billed periods, as the full recompute does
+        events.add(createBillingEvent(subscriptionId, startDate.plusDays(15), plan, phase2, 1));
+        final Invoice incrementalInvoice = generator.generateInvoice(accountId, events, invoiceList, watermarks2, secondTargetDate, DateTimeZone.UTC, Currency.USD);
+        final Invoice fullInvoice = generator.generateInvoice(accountId, events, invoiceList, secondTargetDate, DateTimeZone.UTC, Currency.USD);
+        assertNotNull(incrementalInvoice);
+        assertNotNull(fullInvoice);
+        assertEquals(incrementalInvoice.getNumberOfItems(), fullInvoice.getNumberOfItems());
+        assertEquals(incrementalInvoice.getBalance().compareTo(fullInvoice.getBalance()), 0);
+    }
+
     @Test(groups = "fast")
     public void testFixedModePlanChange() throws InvoiceApiException, CatalogApiException {
         // create a subscription with a fixed price and recurring price
@@ -32,6 +32,7 @@ import com.ning.billing.invoice.api.InvoiceItem;
 import com.ning.billing.invoice.api.InvoiceItemType;
 import com.ning.billing.invoice.model.CreditBalanceAdjInvoiceItem;
 import com.ning.billing.invoice.model.FixedPriceInvoiceItem;
+import com.ning.billing.invoice.model.ItemAdjInvoiceItem;
 import com.ning.billing.invoice.model.RecurringInvoiceItem;
 import com.ning.billing.invoice.model.RepairAdjInvoiceItem;
 import com.ning.billing.invoice.tests.InvoicingTestBase;
@@ -69,11 +70,21 @@ public class TestDefaultInvoiceGeneratorUnit extends InvoicingTestBase {
                 return false;
             }
 
+            @Override
+            public int getMaxClaimedNotifications() {
+                return 100;
+            }
+
             @Override
             public boolean isEmailNotificationsEnabled() {
                 return false;
             }
 
+            @Override
+            public String getInvoiceGenerationMode() {
+                return "INCREMENTAL";
+            }
+
             @Override
             public long getSleepTimeMs() {
                 return 100;
@@ -297,6 +308,36 @@ public class TestDefaultInvoiceGeneratorUnit extends InvoicingTestBase {
 
     }
 
+    @Test(groups = "fast")
+    public void testAddRepairedItemsWithItemAdjustments() {
+        final LocalDate startDate = clock.getUTCToday();
+        final LocalDate endDate = startDate.plusMonths(1);
+        final BigDecimal amount = new BigDecimal("12.00");
+
+        final List<InvoiceItem> existing = new LinkedList<InvoiceItem>();
+        final InvoiceItem item1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, planName, phaseName, startDate, endDate, amount, amount, currency);
+        final InvoiceItem item2 = new FixedPriceInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, planName, phaseName, startDate, amount, currency);
+        existing.add(item1);
+        existing.add(item2);
+        // Two partial adjustments on the first item, a full one on the second item
+        existing.add(new ItemAdjInvoiceItem(item1, startDate, new BigDecimal("-2.00"), currency));
+        existing.add(new ItemAdjInvoiceItem(item1, startDate, new BigDecimal("-3.00"), currency));
+        existing.add(new ItemAdjInvoiceItem(item2, startDate, amount.negate(), currency));
+
+        assertEquals(gen.getAdjustedPositiveAmount(existing, item1.getId()).compareTo(new BigDecimal("5.00")), 0);
+        assertEquals(gen.getAdjustedPositiveAmount(existing, item2.getId()).compareTo(amount), 0);
+        assertEquals(gen.getAdjustedPositiveAmount(existing, UUID.randomUUID()).compareTo(BigDecimal.ZERO), 0);
+
+        final List<InvoiceItem> proposed = new LinkedList<InvoiceItem>();
+        gen.addRepairedItems(existing, proposed);
+
+        // Only the remaining amount of the first item is repaired
+        assertEquals(proposed.size(), 1);
+        assertEquals(proposed.get(0).getInvoiceItemType(), InvoiceItemType.REPAIR_ADJ);
+        assertEquals(proposed.get(0).getLinkedItemId(), item1.getId());
+        assertEquals(proposed.get(0).getAmount().compareTo(new BigDecimal("-7.00")), 0);
+    }
+
     @Test(groups = "fast")
     public void testGenerateCreditsForPastRepairedInvoices() {
         final LocalDate startDate = clock.getUTCToday();
@@ -19,7 +19,6 @@ package com.ning.billing.jaxrs.resources;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 
@@ -280,11 +279,7 @@ public class AccountResource extends JaxRsResourceBase {
         }
 
         // Get the bundles
-        final List<SubscriptionBundle> bundles = entitlementApi.getBundlesForAccount(account.getId(), tenantContext);
-        final List<BundleTimeline> bundlesTimeline = new LinkedList<BundleTimeline>();
-        for (final SubscriptionBundle bundle : bundles) {
-            bundlesTimeline.add(timelineApi.getBundleTimeline(bundle.getId(), tenantContext));
-        }
+        final List<BundleTimeline> bundlesTimeline = timelineApi.getBundleTimelinesForAccount(account.getId(), tenantContext);
         final AuditLogsForBundles bundlesAuditLogs = auditUserApi.getAuditLogsForBundles(bundlesTimeline, auditMode.getLevel(), tenantContext);
 
         final AccountTimelineJson json = new AccountTimelineJson(account, invoices, payments, bundlesTimeline,
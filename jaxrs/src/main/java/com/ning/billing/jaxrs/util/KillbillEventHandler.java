@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 
 import com.ning.billing.util.events.BusInternalEvent;
@@ -55,6 +56,7 @@ public class KillbillEventHandler {
     /*
      * Killbill server event handler
      */
+    @AllowConcurrentEvents
     @Subscribe
     public void handleEntitlementevents(final BusInternalEvent event) {
         final List<CompletionUserRequestNotifier> runningWaiters = new ArrayList<CompletionUserRequestNotifier>();
@@ -18,6 +18,8 @@ package com.ning.billing.junction.plumbing.billing;
 
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
@@ -36,6 +38,7 @@ import com.ning.billing.catalog.api.Plan;
 import com.ning.billing.catalog.api.PlanPhase;
 import com.ning.billing.catalog.api.PlanPhaseSpecifier;
 import com.ning.billing.catalog.api.Product;
+import com.ning.billing.catalog.api.ProductCategory;
 import com.ning.billing.entitlement.api.SubscriptionTransitionType;
 import com.ning.billing.entitlement.api.user.EntitlementUserApiException;
 import com.ning.billing.entitlement.api.user.Subscription;
@@ -62,9 +65,16 @@ public class BillCycleDayCalculator {
 
     protected BillCycleDay calculateBcd(final SubscriptionBundle bundle, final Subscription subscription, final EffectiveSubscriptionInternalEvent transition, final Account account, final InternalCallContext context)
             throws CatalogApiException, AccountApiException, EntitlementUserApiException {
+        return calculateBcd(bundle, null, subscription, transition, account, catalogService.getFullCatalog(), context);
+    }
 
-        final Catalog catalog = catalogService.getFullCatalog();
-
+    /**
+     * Same as above, for callers which have already loaded the catalog and the subscriptions of the bundle: this avoids
+     * going back to the database for the base subscription of the bundle.
+     */
+    protected BillCycleDay calculateBcd(final SubscriptionBundle bundle, @Nullable final List<Subscription> bundleSubscriptions, final Subscription subscription,
+                                        final EffectiveSubscriptionInternalEvent transition, final Account account, final Catalog catalog, final InternalCallContext context)
+            throws CatalogApiException, AccountApiException, EntitlementUserApiException {
         final Plan prevPlan = (transition.getPreviousPlan() != null) ? catalog.findPlan(transition.getPreviousPlan(), transition.getEffectiveTransitionTime(), transition.getSubscriptionStartDate()) : null;
         final Plan nextPlan = (transition.getNextPlan() != null) ? catalog.findPlan(transition.getNextPlan(), transition.getEffectiveTransitionTime(), transition.getSubscriptionStartDate()) : null;
 
@@ -84,12 +94,18 @@ public class BillCycleDayCalculator {
                                        phase.getPhaseType()),
                 transition.getRequestedTransitionTime());
 
-        return calculateBcdForAlignment(alignment, bundle, subscription, account, catalog, plan, context);
+        return calculateBcdForAlignment(alignment, bundle, bundleSubscriptions, subscription, account, catalog, plan, context);
     }
 
     @VisibleForTesting
     BillCycleDay calculateBcdForAlignment(final BillingAlignment alignment, final SubscriptionBundle bundle, final Subscription subscription,
                                           final Account account, final Catalog catalog, final Plan plan, final InternalCallContext context) throws AccountApiException, EntitlementUserApiException, CatalogApiException {
+        return calculateBcdForAlignment(alignment, bundle, null, subscription, account, catalog, plan, context);
+    }
+
+    private BillCycleDay calculateBcdForAlignment(final BillingAlignment alignment, final SubscriptionBundle bundle, @Nullable final List<Subscription> bundleSubscriptions,
+                                                  final Subscription subscription, final Account account, final Catalog catalog, final Plan plan,
+                                                  final InternalCallContext context) throws AccountApiException, EntitlementUserApiException, CatalogApiException {
         BillCycleDay result = null;
         switch (alignment) {
             case ACCOUNT:
@@ -99,7 +115,7 @@ public class BillCycleDayCalculator {
                 }
                 break;
             case BUNDLE:
-                final Subscription baseSub = entitlementApi.getBaseSubscription(bundle.getId(), context);
+                final Subscription baseSub = getBaseSubscription(bundle, bundleSubscriptions, context);
                 Plan basePlan = baseSub.getCurrentPlan();
                 if (basePlan == null) {
                     // The BP has been cancelled
@@ -119,6 +135,18 @@ public class BillCycleDayCalculator {
         return result;
     }
 
+    private Subscription getBaseSubscription(final SubscriptionBundle bundle, @Nullable final List<Subscription> bundleSubscriptions, final InternalCallContext context)
+            throws EntitlementUserApiException {
+        if (bundleSubscriptions != null) {
+            for (final Subscription cur : bundleSubscriptions) {
+                if (cur.getCategory() == ProductCategory.BASE) {
+                    return cur;
+                }
+            }
+        }
+        return entitlementApi.getBaseSubscription(bundle.getId(), context);
+    }
+
     @VisibleForTesting
     BillCycleDay calculateBcdFromSubscription(final Subscription subscription, final Plan plan, final Account account, final Catalog catalog, final InternalCallContext context)
             throws AccountApiException, CatalogApiException {
@@ -16,8 +16,12 @@
 
 package com.ning.billing.junction.plumbing.billing;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.UUID;
 
@@ -28,12 +32,12 @@ import com.ning.billing.account.api.Account;
 import com.ning.billing.account.api.AccountApiException;
 import com.ning.billing.account.api.BillCycleDay;
 import com.ning.billing.account.api.MutableAccountData;
+import com.ning.billing.catalog.api.Catalog;
 import com.ning.billing.catalog.api.CatalogApiException;
 import com.ning.billing.catalog.api.CatalogService;
 import com.ning.billing.entitlement.api.user.Subscription;
 import com.ning.billing.entitlement.api.user.SubscriptionBundle;
 import com.ning.billing.util.callcontext.InternalCallContext;
-import com.ning.billing.util.dao.ObjectType;
 import com.ning.billing.util.events.EffectiveSubscriptionInternalEvent;
 import com.ning.billing.util.svcapi.account.AccountInternalApi;
 import com.ning.billing.util.svcapi.entitlement.EntitlementInternalApi;
@@ -42,7 +46,6 @@ import com.ning.billing.util.svcapi.junction.BillingEventSet;
 import com.ning.billing.util.svcapi.junction.BillingInternalApi;
 import com.ning.billing.util.svcapi.tag.TagInternalApi;
 import com.ning.billing.util.tag.ControlTagType;
-import com.ning.billing.util.tag.Tag;
 
 import com.google.inject.Inject;
 
@@ -81,16 +84,24 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
         try {
             final Account account = accountApi.getAccountById(accountId, context);
 
+            // Look up AUTO_INVOICING_OFF for the account and all its bundles at once
+            final List<UUID> objectIds = new ArrayList<UUID>(bundles.size() + 1);
+            objectIds.add(accountId);
+            for (final SubscriptionBundle bundle : bundles) {
+                objectIds.add(bundle.getId());
+            }
+            final Set<UUID> autoInvoicingOffObjectIds = new HashSet<UUID>(tagApi.getObjectIdsWithTag(ControlTagType.AUTO_INVOICING_OFF.getId(), objectIds, context));
+
             // Check to see if billing is off for the account
-            final Map<String, Tag> accountTags = tagApi.getTags(accountId, ObjectType.ACCOUNT, context);
-            for (final Tag cur : accountTags.values()) {
-                if (ControlTagType.AUTO_INVOICING_OFF.getId().equals(cur.getTagDefinitionId())) {
-                    result.setAccountAutoInvoiceIsOff(true);
-                    return result; // billing is off, we are done
-                }
+            if (autoInvoicingOffObjectIds.contains(accountId)) {
+                result.setAccountAutoInvoiceIsOff(true);
+                return result; // billing is off, we are done
             }
 
-            addBillingEventsForBundles(bundles, account, context, result);
+            final Map<UUID, List<Subscription>> subscriptionsPerBundle = entitlementApi.getSubscriptionsForAccount(accountId, context);
+            // Use the same catalog for the whole run, even if a new one gets published meanwhile
+            final Catalog catalog = catalogService.getFullCatalog();
+            addBillingEventsForBundles(bundles, subscriptionsPerBundle, autoInvoicingOffObjectIds, account, catalog, context, result);
         } catch (AccountApiException e) {
             log.warn("Failed while getting BillingEvent", e);
         }
@@ -110,36 +121,29 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
         }
     }
 
-    private void addBillingEventsForBundles(final List<SubscriptionBundle> bundles, final Account account, final InternalCallContext context,
+    private void addBillingEventsForBundles(final List<SubscriptionBundle> bundles, final Map<UUID, List<Subscription>> subscriptionsPerBundle,
+            final Set<UUID> autoInvoicingOffObjectIds, final Account account, final Catalog catalog, final InternalCallContext context,
             final DefaultBillingEventSet result) {
         for (final SubscriptionBundle bundle : bundles) {
-            final List<Subscription> subscriptions = entitlementApi.getSubscriptionsForBundle(bundle.getId(), context);
+            final List<Subscription> subscriptions = subscriptionsPerBundle.get(bundle.getId()) != null ? subscriptionsPerBundle.get(bundle.getId()) : Collections.<Subscription>emptyList();
 
             //Check if billing is off for the bundle
-            final Map<String, Tag> bundleTags = tagApi.getTags(bundle.getId(), ObjectType.BUNDLE, context);
-
-            boolean found_AUTO_INVOICING_OFF = false;
-            for (final Tag cur : bundleTags.values()) {
-                if (ControlTagType.AUTO_INVOICING_OFF.getId().equals(cur.getTagDefinitionId())) {
-                    found_AUTO_INVOICING_OFF = true;
-                    break;
-                }
-            }
-            if (found_AUTO_INVOICING_OFF) {
+            if (autoInvoicingOffObjectIds.contains(bundle.getId())) {
                 for (final Subscription subscription : subscriptions) { // billing is off so list sub ids in set to be excluded
                     result.getSubscriptionIdsWithAutoInvoiceOff().add(subscription.getId());
                 }
             } else { // billing is not off
-                addBillingEventsForSubscription(subscriptions, bundle, account, context, result);
+                addBillingEventsForSubscription(subscriptions, bundle, account, catalog, context, result);
             }
         }
     }
 
-    private void addBillingEventsForSubscription(final List<Subscription> subscriptions, final SubscriptionBundle bundle, final Account account, final InternalCallContext context, final DefaultBillingEventSet result) {
+    private void addBillingEventsForSubscription(final List<Subscription> subscriptions, final SubscriptionBundle bundle, final Account account, final Catalog catalog,
+                                                 final InternalCallContext context, final DefaultBillingEventSet result) {
         for (final Subscription subscription : subscriptions) {
             for (final EffectiveSubscriptionInternalEvent transition : entitlementApi.getBillingTransitions(subscription, context)) {
                 try {
-                    final BillCycleDay bcd = bcdCalculator.calculateBcd(bundle, subscription, transition, account, context);
+                    final BillCycleDay bcd = bcdCalculator.calculateBcd(bundle, subscriptions, subscription, transition, account, catalog, context);
 
                     if (account.getBillCycleDay().getDayOfMonthUTC() == 0) {
                         final MutableAccountData modifiedData = account.toMutableAccountData();
@@ -147,7 +151,7 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
                         accountApi.updateAccount(account.getExternalKey(), modifiedData, context);
                     }
 
-                    final BillingEvent event = new DefaultBillingEvent(account, transition, subscription, bcd, account.getCurrency(), catalogService.getFullCatalog());
+                    final BillingEvent event = new DefaultBillingEvent(account, transition, subscription, bcd, account.getCurrency(), catalog);
                     result.add(event);
                 } catch (CatalogApiException e) {
                     log.error("Failing to identify catalog components while creating BillingEvent from transition: " +
@@ -22,11 +22,10 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.SortedSet;
 import java.util.UUID;
 
@@ -68,7 +67,6 @@ import com.ning.billing.util.callcontext.InternalCallContextFactory;
 import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.util.clock.Clock;
 import com.ning.billing.util.clock.ClockMock;
-import com.ning.billing.util.dao.ObjectType;
 import com.ning.billing.util.events.EffectiveSubscriptionInternalEvent;
 import com.ning.billing.util.svcapi.account.AccountInternalApi;
 import com.ning.billing.util.svcapi.entitlement.EntitlementInternalApi;
@@ -80,7 +78,9 @@ import com.ning.billing.util.svcapi.junction.BlockingInternalApi;
 import com.ning.billing.util.svcapi.junction.DefaultBlockingState;
 import com.ning.billing.util.svcapi.tag.TagInternalApi;
 import com.ning.billing.util.tag.ControlTagType;
-import com.ning.billing.util.tag.Tag;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 public class TestBillingApi extends JunctionTestSuite {
 
@@ -138,6 +138,7 @@ public class TestBillingApi extends JunctionTestSuite {
         entitlementApi = Mockito.mock(EntitlementInternalApi.class);
         Mockito.when(entitlementApi.getBundlesForAccount(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenReturn(bundles);
         Mockito.when(entitlementApi.getSubscriptionsForBundle(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenReturn(subscriptions);
+        Mockito.when(entitlementApi.getSubscriptionsForAccount(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenReturn(ImmutableMap.<UUID, List<Subscription>>of(bunId, subscriptions));
         Mockito.when(entitlementApi.getSubscriptionFromId(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenReturn(subscription);
         Mockito.when(entitlementApi.getBundleFromId(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenReturn(bundle);
         Mockito.when(entitlementApi.getBaseSubscription(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenReturn(subscription);
@@ -276,12 +277,8 @@ public class TestBillingApi extends JunctionTestSuite {
 
         final Account account = createAccount(32);
 
-        final Map<String, Tag> tags = new HashMap<String, Tag>();
-        final Tag aioTag = mock(Tag.class);
-        when(aioTag.getTagDefinitionId()).thenReturn(ControlTagType.AUTO_INVOICING_OFF.getId());
-        tags.put(ControlTagType.AUTO_INVOICING_OFF.name(), aioTag);
-        when(tagApi.getTags(account.getId(), ObjectType.ACCOUNT, internalCallContext)).thenReturn(tags);
-        assertEquals(tagApi.getTags(account.getId(), ObjectType.ACCOUNT, internalCallContext), tags);
+        when(tagApi.getObjectIdsWithTag(Mockito.eq(ControlTagType.AUTO_INVOICING_OFF.getId()), Mockito.<Collection<UUID>>any(), Mockito.<InternalTenantContext>any()))
+                .thenReturn(ImmutableList.<UUID>of(account.getId()));
 
         final BillingEventSet events = api.getBillingEventsForAccountAndUpdateAccountBCD(account.getId(), internalCallContext);
 
@@ -297,11 +294,8 @@ public class TestBillingApi extends JunctionTestSuite {
 
         final Account account = createAccount(32);
 
-        final Map<String, Tag> tags = new HashMap<String, Tag>();
-        final Tag aioTag = mock(Tag.class);
-        when(aioTag.getTagDefinitionId()).thenReturn(ControlTagType.AUTO_INVOICING_OFF.getId());
-        tags.put(ControlTagType.AUTO_INVOICING_OFF.name(), aioTag);
-        when(tagApi.getTags(bunId, ObjectType.BUNDLE, internalCallContext)).thenReturn(tags);
+        when(tagApi.getObjectIdsWithTag(Mockito.eq(ControlTagType.AUTO_INVOICING_OFF.getId()), Mockito.<Collection<UUID>>any(), Mockito.<InternalTenantContext>any()))
+                .thenReturn(ImmutableList.<UUID>of(bunId));
 
         final BillingEventSet events = api.getBillingEventsForAccountAndUpdateAccountBCD(account.getId(), internalCallContext);
 
@@ -61,6 +61,11 @@ public class DefaultOverdueCheckNotifier implements OverdueCheckNotifier {
                 return config.isNotificationProcessingOff();
             }
 
+            @Override
+            public int getMaxClaimedNotifications() {
+                return config.getMaxClaimedNotifications();
+            }
+
             @Override
             public long getSleepTimeMs() {
                 return config.getSleepTimeMs();
@@ -18,6 +18,7 @@ package com.ning.billing.overdue;
 
 import org.skife.config.Config;
 import org.skife.config.Default;
+import org.skife.config.TimeSpan;
 
 import com.ning.billing.config.KillbillConfig;
 import com.ning.billing.config.NotificationConfig;
@@ -34,6 +35,11 @@ public interface OverdueProperties extends NotificationConfig, KillbillConfig {
     @Default("false")
     public boolean isNotificationProcessingOff();
 
+    @Override
+    @Config("killbill.overdue.engine.notifications.claimed")
+    @Default("100")
+    public int getMaxClaimedNotifications();
+
     @Config("killbill.overdue.maxNumberOfMonthsInFuture")
     @Default("36")
     public int getNumberOfMonthsInFuture();
@@ -41,4 +47,16 @@ public interface OverdueProperties extends NotificationConfig, KillbillConfig {
     @Config("killbill.overdue.uri")
     @Default("jar:///com/ning/billing/irs/overdue/Config.xml")
     public String getConfigURI();
+
+    @Config("killbill.overdue.triggers.coalescingWindow")
+    @Default("0s")
+    public TimeSpan getTriggerCoalescingWindow();
+
+    @Config("killbill.overdue.sweep.interval")
+    @Default("0s")
+    public TimeSpan getSweepInterval();
+
+    @Config("killbill.overdue.sweep.threads")
+    @Default("4")
+    public int getSweepThreads();
 }
@@ -211,8 +211,8 @@ public class OverdueStateApplicator<T extends Blockable> {
                 computeSubscriptionsToCancel((T) cur, result, context);
             }
         } else if (blockable instanceof Account) {
-            for (final SubscriptionBundle cur : entitlementUserApi.getBundlesForAccount(blockable.getId(), context)) {
-                computeSubscriptionsToCancel((T) cur, result, context);
+            for (final List<Subscription> cur : entitlementUserApi.getSubscriptionsForAccount(blockable.getId(), context).values()) {
+                result.addAll(cur);
             }
         }
     }
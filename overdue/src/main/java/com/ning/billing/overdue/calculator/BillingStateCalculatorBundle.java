@@ -17,10 +17,16 @@
 package com.ning.billing.overdue.calculator;
 
 import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
 
@@ -31,6 +37,7 @@ import com.ning.billing.catalog.api.BillingPeriod;
 import com.ning.billing.catalog.api.PhaseType;
 import com.ning.billing.catalog.api.PriceList;
 import com.ning.billing.catalog.api.Product;
+import com.ning.billing.catalog.api.ProductCategory;
 import com.ning.billing.entitlement.api.user.EntitlementUserApiException;
 import com.ning.billing.entitlement.api.user.Subscription;
 import com.ning.billing.entitlement.api.user.SubscriptionBundle;
@@ -70,50 +77,7 @@ public class BillingStateCalculatorBundle extends BillingStateCalculator<Subscri
 
             final Subscription basePlan = getBasePlanIfExist(bundle.getId(), context);
 
-            final UUID id = bundle.getId();
-            final int numberOfUnpaidInvoices = unpaidInvoices.size();
-            final BigDecimal unpaidInvoiceBalance = sumBalance(unpaidInvoices);
-            LocalDate dateOfEarliestUnpaidInvoice = null;
-            UUID idOfEarliestUnpaidInvoice = null;
-            final Invoice invoice = earliest(unpaidInvoices);
-            if (invoice != null) {
-                dateOfEarliestUnpaidInvoice = invoice.getInvoiceDate();
-                idOfEarliestUnpaidInvoice = invoice.getId();
-            }
-            final PaymentResponse responseForLastFailedPayment = PaymentResponse.INSUFFICIENT_FUNDS; //TODO MDW
-            final Tag[] tags = new Tag[]{}; //TODO MDW
-
-            final Product basePlanProduct;
-            final BillingPeriod basePlanBillingPeriod;
-            final PriceList basePlanPriceList;
-            final PhaseType basePlanPhaseType;
-            //
-            // basePlan is null for standalone subscriptions
-            // basePlan.getCurrentPlan() is null if basePlan has been cancelled
-            if (basePlan == null || basePlan.getCurrentPlan() == null) {
-                basePlanProduct = null;
-                basePlanBillingPeriod = null;
-                basePlanPriceList = null;
-                basePlanPhaseType = null;
-            } else {
-                basePlanProduct = basePlan.getCurrentPlan().getProduct();
-                basePlanBillingPeriod = basePlan.getCurrentPlan().getBillingPeriod();
-                basePlanPriceList = basePlan.getCurrentPriceList();
-                basePlanPhaseType = basePlan.getCurrentPhase().getPhaseType();
-            }
-
-            return new BillingStateBundle(id,
-                                          numberOfUnpaidInvoices,
-                                          unpaidInvoiceBalance,
-                                          dateOfEarliestUnpaidInvoice,
-                                          account.getTimeZone(),
-                                          idOfEarliestUnpaidInvoice,
-                                          responseForLastFailedPayment,
-                                          tags,
-                                          basePlanProduct,
-                                          basePlanBillingPeriod,
-                                          basePlanPriceList,
-                                          basePlanPhaseType);
+            return createBillingState(bundle.getId(), account, unpaidInvoices, basePlan);
         } catch (EntitlementUserApiException e) {
             throw new OverdueException(e);
         } catch (AccountApiException e) {
@@ -121,6 +85,106 @@ public class BillingStateCalculatorBundle extends BillingStateCalculator<Subscri
         }
     }
 
+    /**
+     * Compute the billing state of all the bundles of an account, loading the account, its unpaid invoices and its
+     * subscriptions only once.
+     *
+     * @param accountId the account id
+     * @param bundles   the bundles of the account
+     * @param context   the tenant context
+     * @return the billing state of each bundle, keyed by bundle id
+     * @throws OverdueException if the account cannot be retrieved
+     */
+    public Map<UUID, BillingStateBundle> calculateBillingStates(final UUID accountId, final List<SubscriptionBundle> bundles,
+                                                                final InternalTenantContext context) throws OverdueException {
+        final Account account;
+        try {
+            account = accountApi.getAccountById(accountId, context);
+        } catch (AccountApiException e) {
+            throw new OverdueException(e);
+        }
+
+        // Index the unpaid invoices by bundle in one pass
+        final Map<UUID, SortedSet<Invoice>> unpaidInvoicesPerBundle = new HashMap<UUID, SortedSet<Invoice>>();
+        for (final Invoice invoice : unpaidInvoicesForAccount(accountId, account.getTimeZone(), context)) {
+            for (final InvoiceItem item : invoice.getInvoiceItems()) {
+                if (item.getBundleId() == null) {
+                    continue;
+                }
+                if (unpaidInvoicesPerBundle.get(item.getBundleId()) == null) {
+                    unpaidInvoicesPerBundle.put(item.getBundleId(), new TreeSet<Invoice>(new InvoiceDateComparator()));
+                }
+                unpaidInvoicesPerBundle.get(item.getBundleId()).add(invoice);
+            }
+        }
+
+        final Map<UUID, Subscription> basePlanPerBundle = new HashMap<UUID, Subscription>();
+        for (final List<Subscription> subscriptions : entitlementApi.getSubscriptionsForAccount(accountId, context).values()) {
+            for (final Subscription subscription : subscriptions) {
+                if (subscription.getCategory() == ProductCategory.BASE) {
+                    basePlanPerBundle.put(subscription.getBundleId(), subscription);
+                }
+            }
+        }
+
+        final Map<UUID, BillingStateBundle> result = new LinkedHashMap<UUID, BillingStateBundle>();
+        for (final SubscriptionBundle bundle : bundles) {
+            SortedSet<Invoice> unpaidInvoices = unpaidInvoicesPerBundle.get(bundle.getId());
+            if (unpaidInvoices == null) {
+                unpaidInvoices = new TreeSet<Invoice>(new InvoiceDateComparator());
+            }
+            result.put(bundle.getId(), createBillingState(bundle.getId(), account, unpaidInvoices, basePlanPerBundle.get(bundle.getId())));
+        }
+        return result;
+    }
+
+    private BillingStateBundle createBillingState(final UUID id, final Account account, final SortedSet<Invoice> unpaidInvoices,
+                                                  @Nullable final Subscription basePlan) {
+        final int numberOfUnpaidInvoices = unpaidInvoices.size();
+        final BigDecimal unpaidInvoiceBalance = sumBalance(unpaidInvoices);
+        LocalDate dateOfEarliestUnpaidInvoice = null;
+        UUID idOfEarliestUnpaidInvoice = null;
+        final Invoice invoice = earliest(unpaidInvoices);
+        if (invoice != null) {
+            dateOfEarliestUnpaidInvoice = invoice.getInvoiceDate();
+            idOfEarliestUnpaidInvoice = invoice.getId();
+        }
+        final PaymentResponse responseForLastFailedPayment = PaymentResponse.INSUFFICIENT_FUNDS; //TODO MDW
+        final Tag[] tags = new Tag[]{}; //TODO MDW
+
+        final Product basePlanProduct;
+        final BillingPeriod basePlanBillingPeriod;
+        final PriceList basePlanPriceList;
+        final PhaseType basePlanPhaseType;
+        //
+        // basePlan is null for standalone subscriptions
+        // basePlan.getCurrentPlan() is null if basePlan has been cancelled
+        if (basePlan == null || basePlan.getCurrentPlan() == null) {
+            basePlanProduct = null;
+            basePlanBillingPeriod = null;
+            basePlanPriceList = null;
+            basePlanPhaseType = null;
+        } else {
+            basePlanProduct = basePlan.getCurrentPlan().getProduct();
+            basePlanBillingPeriod = basePlan.getCurrentPlan().getBillingPeriod();
+            basePlanPriceList = basePlan.getCurrentPriceList();
+            basePlanPhaseType = basePlan.getCurrentPhase().getPhaseType();
+        }
+
+        return new BillingStateBundle(id,
+                                      numberOfUnpaidInvoices,
+                                      unpaidInvoiceBalance,
+                                      dateOfEarliestUnpaidInvoice,
+                                      account.getTimeZone(),
+                                      idOfEarliestUnpaidInvoice,
+                                      responseForLastFailedPayment,
+                                      tags,
+                                      basePlanProduct,
+                                      basePlanBillingPeriod,
+                                      basePlanPriceList,
+                                      basePlanPhaseType);
+    }
+
     public SortedSet<Invoice> unpaidInvoicesForBundle(final UUID bundleId, final UUID accountId, final DateTimeZone accountTimeZone, final InternalTenantContext context) {
         final SortedSet<Invoice> unpaidInvoices = unpaidInvoicesForAccount(accountId, accountTimeZone, context);
         final SortedSet<Invoice> result = new TreeSet<Invoice>(new InvoiceDateComparator());
@@ -71,6 +71,23 @@ public abstract class DefaultOverdueStateSet<T extends Blockable> extends Valida
         return getClearState();
     }
 
+    /**
+     * @param now the evaluation date
+     * @return the latest invoice date for which an unpaid invoice may lead to one of the states on that date, null if
+     *         there is no state
+     */
+    public LocalDate getLatestTriggeringInvoiceDate(final LocalDate now) {
+        LocalDate latestInvoiceDate = null;
+        for (final DefaultOverdueState<T> overdueState : getStates()) {
+            final Period timeOffset = overdueState.getCondition() == null ? ZERO_PERIOD : overdueState.getCondition().getTimeOffset().toJodaPeriod();
+            final LocalDate invoiceDate = now.minus(timeOffset);
+            if (latestInvoiceDate == null || invoiceDate.isAfter(latestInvoiceDate)) {
+                latestInvoiceDate = invoiceDate;
+            }
+        }
+        return latestInvoiceDate;
+    }
+
     @Override
     public ValidationErrors validate(final OverdueConfig root,
                                      final ValidationErrors errors) {
@@ -30,7 +30,9 @@ import com.ning.billing.overdue.api.DefaultOverdueUserApi;
 import com.ning.billing.overdue.applicator.OverdueEmailGenerator;
 import com.ning.billing.overdue.applicator.formatters.DefaultOverdueEmailFormatterFactory;
 import com.ning.billing.overdue.applicator.formatters.OverdueEmailFormatterFactory;
+import com.ning.billing.overdue.listener.OverdueTriggerCoalescer;
 import com.ning.billing.overdue.service.DefaultOverdueService;
+import com.ning.billing.overdue.service.OverdueSweeper;
 import com.ning.billing.overdue.wrapper.OverdueWrapperFactory;
 
 import com.google.inject.AbstractModule;
@@ -51,6 +53,8 @@ public class DefaultOverdueModule extends AbstractModule implements OverdueModul
         //bind(ExtendedOverdueService.class).to(DefaultOverdueService.class).asEagerSingleton();
         bind(OverdueCheckNotifier.class).to(DefaultOverdueCheckNotifier.class).asEagerSingleton();
         bind(OverdueCheckPoster.class).to(DefaultOverdueCheckPoster.class).asEagerSingleton();
+        bind(OverdueTriggerCoalescer.class).asEagerSingleton();
+        bind(OverdueSweeper.class).asEagerSingleton();
     }
 
     protected void installOverdueService() {
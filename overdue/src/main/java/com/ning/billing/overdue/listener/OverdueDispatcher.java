@@ -16,7 +16,9 @@
 
 package com.ning.billing.overdue.listener;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -26,7 +28,11 @@ import com.ning.billing.entitlement.api.user.EntitlementUserApiException;
 import com.ning.billing.entitlement.api.user.SubscriptionBundle;
 import com.ning.billing.junction.api.Blockable;
 import com.ning.billing.overdue.OverdueApiException;
+import com.ning.billing.overdue.OverdueState;
+import com.ning.billing.overdue.calculator.BillingStateCalculatorBundle;
+import com.ning.billing.overdue.config.api.BillingStateBundle;
 import com.ning.billing.overdue.config.api.OverdueException;
+import com.ning.billing.overdue.wrapper.OverdueWrapper;
 import com.ning.billing.overdue.wrapper.OverdueWrapperFactory;
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.svcapi.entitlement.EntitlementInternalApi;
@@ -38,20 +44,51 @@ public class OverdueDispatcher {
 
     private final EntitlementInternalApi entitlementApi;
     private final OverdueWrapperFactory factory;
+    private final BillingStateCalculatorBundle billingStateCalculatorBundle;
 
     @Inject
     public OverdueDispatcher(
             final EntitlementInternalApi entitlementApi,
-            final OverdueWrapperFactory factory) {
+            final OverdueWrapperFactory factory,
+            final BillingStateCalculatorBundle billingStateCalculatorBundle) {
         this.entitlementApi = entitlementApi;
         this.factory = factory;
+        this.billingStateCalculatorBundle = billingStateCalculatorBundle;
     }
 
-    public void processOverdueForAccount(final UUID accountId, final InternalCallContext context) {
+    /**
+     * @return the new overdue state of the bundles whose overdue state changed, keyed by bundle id
+     */
+    public Map<UUID, OverdueState<SubscriptionBundle>> processOverdueForAccount(final UUID accountId, final InternalCallContext context) {
+        final Map<UUID, OverdueState<SubscriptionBundle>> overdueStates = new HashMap<UUID, OverdueState<SubscriptionBundle>>();
         final List<SubscriptionBundle> bundles = entitlementApi.getBundlesForAccount(accountId, context);
+        if (bundles.isEmpty() || !factory.isOverdueConfiguredForBundles()) {
+            return overdueStates;
+        }
+
+        // Compute the billing state of all bundles from a single snapshot of the account
+        final Map<UUID, BillingStateBundle> billingStates;
+        try {
+            billingStates = billingStateCalculatorBundle.calculateBillingStates(accountId, bundles, context);
+        } catch (OverdueException e) {
+            log.error("Error processing Overdue for Account with id: " + accountId.toString(), e);
+            return overdueStates;
+        }
+
         for (final SubscriptionBundle bundle : bundles) {
-            processOverdue(bundle, context);
+            try {
+                final OverdueWrapper<SubscriptionBundle> wrapper = factory.createOverdueWrapperFor(bundle);
+                final OverdueState<SubscriptionBundle> overdueState = wrapper.refreshIfChanged(billingStates.get(bundle.getId()), context);
+                if (overdueState != null) {
+                    overdueStates.put(bundle.getId(), overdueState);
+                }
+            } catch (OverdueException e) {
+                log.error("Error processing Overdue for Blockable with id: " + bundle.getId().toString(), e);
+            } catch (OverdueApiException e) {
+                log.error("Error processing Overdue for Blockable with id: " + bundle.getId().toString(), e);
+            }
         }
+        return overdueStates;
     }
 
     public void processOverdueForBundle(final UUID bundleId, final InternalCallContext context) {
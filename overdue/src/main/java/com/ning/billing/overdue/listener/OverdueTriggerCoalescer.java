@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.overdue.listener;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.junction.api.Blockable;
+import com.ning.billing.ovedue.notification.DefaultOverdueCheckNotifier;
+import com.ning.billing.ovedue.notification.OverdueCheckNotificationKey;
+import com.ning.billing.overdue.OverdueProperties;
+import com.ning.billing.overdue.service.DefaultOverdueService;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.clock.Clock;
+import com.ning.billing.util.notificationq.NotificationQueue;
+import com.ning.billing.util.notificationq.NotificationQueueService;
+import com.ning.billing.util.notificationq.NotificationQueueService.NoSuchNotificationQueue;
+
+import com.google.inject.Inject;
+
+/**
+ * Collapses the overdue refresh triggers received for an account within the coalescing window: the first trigger
+ * records a single account notification on the overdue check queue, and the following ones are dropped until that
+ * notification is processed.
+ * <p/>
+ * The pending notifications are only known to the node which scheduled them, while the notification may be processed
+ * by any node: a trigger is therefore only collapsed while the pending notification is not due yet. Once it is due, it
+ * may already have been processed, and the next trigger schedules a new notification (at worst one extra refresh).
+ */
+public class OverdueTriggerCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(OverdueTriggerCoalescer.class);
+
+    private static final int PURGE_EXPIRED_EVERY_NB_NOTIFICATIONS = 1024;
+
+    private final OverdueDispatcher dispatcher;
+    private final NotificationQueueService notificationQueueService;
+    private final OverdueProperties properties;
+    private final Clock clock;
+
+    // Accounts with a pending notification, and the time (in ms) at which it was scheduled
+    private final ConcurrentMap<UUID, Long> pendingAccounts = new ConcurrentHashMap<UUID, Long>();
+    private final AtomicLong nbScheduledNotifications = new AtomicLong(0);
+    private final AtomicLong nbCollapsedTriggers = new AtomicLong(0);
+    private final AtomicLong nbExecutedRefreshes = new AtomicLong(0);
+
+    @Inject
+    public OverdueTriggerCoalescer(final OverdueDispatcher dispatcher, final NotificationQueueService notificationQueueService,
+                                   final OverdueProperties properties, final Clock clock) {
+        this.dispatcher = dispatcher;
+        this.notificationQueueService = notificationQueueService;
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    public void trigger(final UUID accountId, final InternalCallContext context) {
+        final long coalescingWindowMs = properties.getTriggerCoalescingWindow().getMillis();
+        if (coalescingWindowMs <= 0) {
+            refresh(accountId, context);
+            return;
+        }
+
+        final long now = clock.getUTCNow().getMillis();
+        final Long scheduledTime = pendingAccounts.get(accountId);
+        final boolean isPending;
+        if (scheduledTime == null) {
+            isPending = pendingAccounts.putIfAbsent(accountId, now) != null;
+        } else if (isExpired(scheduledTime, now, coalescingWindowMs)) {
+            // The notification is due, and may have been processed by another node already
+            isPending = !pendingAccounts.replace(accountId, scheduledTime, now);
+        } else {
+            isPending = true;
+        }
+        if (isPending) {
+            nbCollapsedTriggers.incrementAndGet();
+            return;
+        }
+
+        if (nbScheduledNotifications.incrementAndGet() % PURGE_EXPIRED_EVERY_NB_NOTIFICATIONS == 0) {
+            purgeExpiredAccounts(now, coalescingWindowMs);
+        }
+
+        try {
+            final NotificationQueue checkOverdueQueue = notificationQueueService.getNotificationQueue(DefaultOverdueService.OVERDUE_SERVICE_NAME,
+                                                                                                     DefaultOverdueCheckNotifier.OVERDUE_CHECK_NOTIFIER_QUEUE);
+            checkOverdueQueue.recordFutureNotification(clock.getUTCNow().plus(coalescingWindowMs), accountId,
+                                                       new OverdueCheckNotificationKey(accountId, Blockable.Type.ACCOUNT), context);
+        } catch (NoSuchNotificationQueue e) {
+            log.error("Attempting to put items on a non-existent queue (DefaultOverdueCheck).", e);
+            pendingAccounts.remove(accountId);
+            refresh(accountId, context);
+        } catch (IOException e) {
+            log.error("Failed to serialize notificationKey for account {}", accountId);
+            pendingAccounts.remove(accountId);
+            refresh(accountId, context);
+        }
+    }
+
+    public void processPendingTrigger(final UUID accountId, final InternalCallContext context) {
+        // Triggers received from now on may not be seen by this refresh, they need a new notification
+        pendingAccounts.remove(accountId);
+        refresh(accountId, context);
+    }
+
+    private boolean isExpired(final long scheduledTime, final long now, final long coalescingWindowMs) {
+        return now >= scheduledTime + coalescingWindowMs;
+    }
+
+    // Entries of accounts whose notification was processed by another node are otherwise only replaced on their next trigger
+    private void purgeExpiredAccounts(final long now, final long coalescingWindowMs) {
+        final Iterator<Map.Entry<UUID, Long>> iterator = pendingAccounts.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<UUID, Long> entry = iterator.next();
+            if (isExpired(entry.getValue(), now, coalescingWindowMs)) {
+                pendingAccounts.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void refresh(final UUID accountId, final InternalCallContext context) {
+        dispatcher.processOverdueForAccount(accountId, context);
+        nbExecutedRefreshes.incrementAndGet();
+    }
+
+    /**
+     * @return the number of triggers dropped because a refresh was already pending for the account
+     */
+    public long getNbCollapsedTriggers() {
+        return nbCollapsedTriggers.get();
+    }
+
+    /**
+     * @return the number of account refreshes executed
+     */
+    public long getNbExecutedRefreshes() {
+        return nbExecutedRefreshes.get();
+    }
+}
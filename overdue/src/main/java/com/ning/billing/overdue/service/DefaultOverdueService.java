@@ -48,6 +48,7 @@ public class DefaultOverdueService implements OverdueService {
     private final BusService busService;
     private final OverdueListener listener;
     private final OverdueWrapperFactory factory;
+    private final OverdueSweeper sweeper;
 
     private OverdueConfig overdueConfig;
     private boolean isConfigLoaded;
@@ -59,13 +60,15 @@ public class DefaultOverdueService implements OverdueService {
             final OverdueCheckNotifier notifier,
             final BusService busService,
             final OverdueListener listener,
-            final OverdueWrapperFactory factory) {
+            final OverdueWrapperFactory factory,
+            final OverdueSweeper sweeper) {
         this.userApi = userApi;
         this.properties = properties;
         this.notifier = notifier;
         this.busService = busService;
         this.listener = listener;
         this.factory = factory;
+        this.sweeper = sweeper;
         this.isConfigLoaded = false;
     }
 
@@ -118,6 +121,7 @@ public class DefaultOverdueService implements OverdueService {
     @LifecycleHandlerType(LifecycleLevel.START_SERVICE)
     public void start() {
         notifier.start();
+        sweeper.start();
     }
 
     @LifecycleHandlerType(LifecycleHandlerType.LifecycleLevel.REGISTER_EVENTS)
@@ -140,6 +144,7 @@ public class DefaultOverdueService implements OverdueService {
 
     @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
     public void stop() {
+        sweeper.stop();
         notifier.stop();
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010-2011 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.overdue.service;
+
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Outcome of an overdue sweep.
+ */
+public class OverdueSweepSummary {
+
+    private final DateTime startDate;
+    private final LocalDate latestInvoiceDate;
+    private final LocalDate oldestInvoiceDate;
+    private final int nbAccounts;
+    private final int nbFailedAccounts;
+    private final Map<String, Integer> nbTransitionsPerState;
+    private final long durationMs;
+
+    public OverdueSweepSummary(final DateTime startDate, final LocalDate latestInvoiceDate, final LocalDate oldestInvoiceDate,
+                               final int nbAccounts, final int nbFailedAccounts, final Map<String, Integer> nbTransitionsPerState, final long durationMs) {
+        this.startDate = startDate;
+        this.latestInvoiceDate = latestInvoiceDate;
+        this.oldestInvoiceDate = oldestInvoiceDate;
+        this.nbAccounts = nbAccounts;
+        this.nbFailedAccounts = nbFailedAccounts;
+        this.nbTransitionsPerState = ImmutableMap.<String, Integer>copyOf(nbTransitionsPerState);
+        this.durationMs = durationMs;
+    }
+
+    public DateTime getStartDate() {
+        return startDate;
+    }
+
+    /**
+     * @return the latest invoice date of the unpaid invoices used to select the accounts
+     */
+    public LocalDate getLatestInvoiceDate() {
+        return latestInvoiceDate;
+    }
+
+    /**
+     * @return the oldest invoice date of the unpaid invoices of the selected accounts, null if none was selected
+     */
+    public LocalDate getOldestInvoiceDate() {
+        return oldestInvoiceDate;
+    }
+
+    public int getNbAccounts() {
+        return nbAccounts;
+    }
+
+    public int getNbFailedAccounts() {
+        return nbFailedAccounts;
+    }
+
+    /**
+     * @return the number of bundles which transitioned to each overdue state, keyed by state name
+     */
+    public Map<String, Integer> getNbTransitionsPerState() {
+        return nbTransitionsPerState;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public long getAccountsPerSecond() {
+        return durationMs == 0 ? nbAccounts : nbAccounts * 1000L / durationMs;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("OverdueSweepSummary");
+        sb.append("{startDate=").append(startDate);
+        sb.append(", latestInvoiceDate=").append(latestInvoiceDate);
+        sb.append(", oldestInvoiceDate=").append(oldestInvoiceDate);
+        sb.append(", nbAccounts=").append(nbAccounts);
+        sb.append(", nbFailedAccounts=").append(nbFailedAccounts);
+        sb.append(", nbTransitionsPerState=").append(nbTransitionsPerState);
+        sb.append(", durationMs=").append(durationMs);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2010-2011 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.overdue.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.entitlement.api.user.SubscriptionBundle;
+import com.ning.billing.overdue.OverdueProperties;
+import com.ning.billing.overdue.OverdueState;
+import com.ning.billing.overdue.listener.OverdueDispatcher;
+import com.ning.billing.overdue.wrapper.OverdueWrapperFactory;
+import com.ning.billing.util.callcontext.CallOrigin;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.UserType;
+import com.ning.billing.util.clock.Clock;
+import com.ning.billing.util.dao.ObjectType;
+import com.ning.billing.util.globallocker.GlobalLock;
+import com.ning.billing.util.globallocker.GlobalLocker;
+import com.ning.billing.util.globallocker.GlobalLocker.LockerType;
+import com.ning.billing.util.globallocker.LockFailedException;
+import com.ning.billing.util.svcapi.invoice.InvoiceInternalApi;
+
+import com.google.inject.Inject;
+
+/**
+ * Periodically re-evaluates the overdue state of all the accounts which may be overdue, instead of relying only on
+ * the per-bundle overdue check notifications.
+ * <p/>
+ * The candidate accounts are the ones with an unpaid invoice older than the smallest time threshold of the overdue
+ * states, and are retrieved with a single query. They are partitioned by account across the sweep threads, and all
+ * the bundles of an account are evaluated from a single snapshot of the account.
+ * <p/>
+ * A sweep holds a global lock, so that only one node sweeps at a time: the other nodes skip their sweep while it is held.
+ */
+public class OverdueSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(OverdueSweeper.class);
+
+    private static final String SWEEP_TH_NAME = "Overdue-sweep-th";
+    private static final String SWEEP_WORKER_THREAD_PREFIX = "Overdue-sweep-worker-th-";
+    private static final long TERMINATION_TIMEOUT_SEC = 5;
+    private static final int NB_LOCK_TRY = 1;
+
+    private final OverdueDispatcher dispatcher;
+    private final OverdueWrapperFactory factory;
+    private final InvoiceInternalApi invoiceApi;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final OverdueProperties properties;
+    private final GlobalLocker locker;
+    private final Clock clock;
+
+    private ScheduledExecutorService sweepThread;
+    private volatile OverdueSweepSummary lastSummary;
+
+    @Inject
+    public OverdueSweeper(final OverdueDispatcher dispatcher, final OverdueWrapperFactory factory, final InvoiceInternalApi invoiceApi,
+                          final InternalCallContextFactory internalCallContextFactory, final OverdueProperties properties,
+                          final GlobalLocker locker, final Clock clock) {
+        this.dispatcher = dispatcher;
+        this.factory = factory;
+        this.invoiceApi = invoiceApi;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.properties = properties;
+        this.locker = locker;
+        this.clock = clock;
+    }
+
+    public synchronized void start() {
+        final long sweepIntervalMs = properties.getSweepInterval().getMillis();
+        if (sweepThread != null || sweepIntervalMs <= 0) {
+            return;
+        }
+
+        sweepThread = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread th = new Thread(r, SWEEP_TH_NAME);
+                th.setDaemon(true);
+                return th;
+            }
+        });
+        sweepThread.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweep();
+                } catch (RuntimeException e) {
+                    log.error("Unexpected failure during overdue sweep", e);
+                }
+            }
+        }, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Sweeping overdue accounts every {} ms", sweepIntervalMs);
+    }
+
+    public synchronized void stop() {
+        if (sweepThread == null) {
+            return;
+        }
+
+        sweepThread.shutdownNow();
+        try {
+            if (!sweepThread.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                log.warn("Overdue sweep thread did not terminate");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Overdue sweep stop sequence has been interrupted");
+        } finally {
+            sweepThread = null;
+        }
+    }
+
+    /**
+     * @return the summary of the sweep, null if another node is sweeping
+     */
+    public OverdueSweepSummary sweep() {
+        // Don't wait for the lock: the node holding it is already sweeping
+        if (!locker.isFree(LockerType.OVERDUE_SWEEP, DefaultOverdueService.OVERDUE_SERVICE_NAME)) {
+            log.debug("Skipping overdue sweep, another node is sweeping");
+            return null;
+        }
+
+        GlobalLock lock = null;
+        try {
+            lock = locker.lockWithNumberOfTries(LockerType.OVERDUE_SWEEP, DefaultOverdueService.OVERDUE_SERVICE_NAME, NB_LOCK_TRY);
+
+            return sweepWithLock();
+        } catch (LockFailedException e) {
+            log.debug("Skipping overdue sweep, another node is sweeping");
+            return null;
+        } finally {
+            if (lock != null) {
+                lock.release();
+            }
+        }
+    }
+
+    private OverdueSweepSummary sweepWithLock() {
+        final DateTime startDate = clock.getUTCNow();
+        final long startTime = System.currentTimeMillis();
+
+        // Accounts ahead of UTC may already be one day later
+        final LocalDate latestInvoiceDate = factory.getLatestTriggeringInvoiceDateForBundles(clock.getUTCToday().plusDays(1));
+        if (latestInvoiceDate == null) {
+            // No overdue state configured
+            lastSummary = new OverdueSweepSummary(startDate, null, null, 0, 0, new HashMap<String, Integer>(), 0);
+            return lastSummary;
+        }
+
+        final Map<UUID, LocalDate> oldestInvoiceDates = invoiceApi.getOldestUnpaidInvoiceDatePerAccountUpToDate(latestInvoiceDate);
+        final List<UUID> accountIds = new ArrayList<UUID>(oldestInvoiceDates.keySet());
+        LocalDate oldestInvoiceDate = null;
+        for (final LocalDate invoiceDate : oldestInvoiceDates.values()) {
+            if (oldestInvoiceDate == null || invoiceDate.isBefore(oldestInvoiceDate)) {
+                oldestInvoiceDate = invoiceDate;
+            }
+        }
+
+        final AtomicInteger nbFailedAccounts = new AtomicInteger(0);
+        final ConcurrentMap<String, AtomicInteger> nbTransitionsPerState = new ConcurrentHashMap<String, AtomicInteger>();
+
+        if (!accountIds.isEmpty()) {
+            // Partition the accounts across the workers, so that each account is evaluated by a single one
+            final int nbThreads = Math.max(1, Math.min(properties.getSweepThreads(), accountIds.size()));
+            final List<List<UUID>> partitions = new ArrayList<List<UUID>>(nbThreads);
+            for (int i = 0; i < nbThreads; i++) {
+                partitions.add(new ArrayList<UUID>());
+            }
+            for (final UUID accountId : accountIds) {
+                partitions.get((accountId.hashCode() & Integer.MAX_VALUE) % nbThreads).add(accountId);
+            }
+
+            final ExecutorService executor = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread th = new Thread(r);
+                    th.setName(SWEEP_WORKER_THREAD_PREFIX + th.getId());
+                    return th;
+                }
+            });
+
+            try {
+                final List<Future<Void>> futures = new ArrayList<Future<Void>>(nbThreads);
+                for (final List<UUID> partition : partitions) {
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            sweepAccounts(partition, nbFailedAccounts, nbTransitionsPerState);
+                            return null;
+                        }
+                    }));
+                }
+
+                for (final Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        log.error("Unexpected failure during overdue sweep", e.getCause());
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.warn("Overdue sweep interrupted");
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        final Map<String, Integer> nbTransitionsPerStateSnapshot = new HashMap<String, Integer>();
+        for (final String stateName : nbTransitionsPerState.keySet()) {
+            nbTransitionsPerStateSnapshot.put(stateName, nbTransitionsPerState.get(stateName).get());
+        }
+
+        final OverdueSweepSummary summary = new OverdueSweepSummary(startDate, latestInvoiceDate, oldestInvoiceDate, accountIds.size(), nbFailedAccounts.get(),
+                                                                    nbTransitionsPerStateSnapshot, System.currentTimeMillis() - startTime);
+        lastSummary = summary;
+        log.info("Overdue sweep completed ({} accounts/s): {}", summary.getAccountsPerSecond(), summary);
+        return summary;
+    }
+
+    private void sweepAccounts(final List<UUID> accountIds, final AtomicInteger nbFailedAccounts, final ConcurrentMap<String, AtomicInteger> nbTransitionsPerState) {
+        for (final UUID accountId : accountIds) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            try {
+                final InternalCallContext context = internalCallContextFactory.createInternalCallContext(accountId, ObjectType.ACCOUNT, "OverdueService",
+                                                                                                         CallOrigin.INTERNAL, UserType.SYSTEM, null);
+                // Only the bundles whose overdue state changed are returned
+                for (final OverdueState<SubscriptionBundle> overdueState : dispatcher.processOverdueForAccount(accountId, context).values()) {
+                    nbTransitionsPerState.putIfAbsent(overdueState.getName(), new AtomicInteger(0));
+                    nbTransitionsPerState.get(overdueState.getName()).incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to evaluate overdue for account " + accountId + " during overdue sweep", e);
+                nbFailedAccounts.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the summary of the last sweep, null if none completed yet
+     */
+    public OverdueSweepSummary getLastSummary() {
+        return lastSummary;
+    }
+
+    /**
+     * @return how long ago the last completed sweep started, in ms (-1 if none completed yet): overdue states can't be
+     *         more out of date than that
+     */
+    public long getLagMs() {
+        final OverdueSweepSummary summary = lastSummary;
+        if (summary == null) {
+            return -1;
+        }
+        return clock.getUTCNow().getMillis() - summary.getStartDate().getMillis();
+    }
+}
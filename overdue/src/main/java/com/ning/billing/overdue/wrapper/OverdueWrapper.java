@@ -57,6 +57,26 @@ public class OverdueWrapper<T extends Blockable> {
 
         final BillingState<T> billingState = billingState(context);
         final String previousOverdueStateName = api.getBlockingStateFor(overdueable, context).getStateName();
+        return refresh(billingState, previousOverdueStateName, context);
+    }
+
+    /**
+     * Same as refresh, but using a billing state already computed by the caller (e.g. for all the bundles of an account)
+     *
+     * @return the new overdue state, null if the overdue state did not change
+     */
+    public OverdueState<T> refreshIfChanged(final BillingState<T> billingState, final InternalCallContext context) throws OverdueException, OverdueApiException {
+        if (overdueStateSet.size() < 1) { // No configuration available
+            return null;
+        }
+
+        final String previousOverdueStateName = api.getBlockingStateFor(overdueable, context).getStateName();
+        final OverdueState<T> nextOverdueState = refresh(billingState, previousOverdueStateName, context);
+
+        return previousOverdueStateName.equals(nextOverdueState.getName()) ? null : nextOverdueState;
+    }
+
+    private OverdueState<T> refresh(final BillingState<T> billingState, final String previousOverdueStateName, final InternalCallContext context) throws OverdueException, OverdueApiException {
         final OverdueState<T> nextOverdueState = overdueStateSet.calculateOverdueState(billingState, clock.getToday(billingState.getAccountTimeZone()));
 
         overdueStateApplicator.apply(overdueStateSet.getFirstState(), billingState, overdueable, previousOverdueStateName, nextOverdueState, context);
@@ -18,6 +18,7 @@ package com.ning.billing.overdue.wrapper;
 
 import java.util.UUID;
 
+import org.joda.time.LocalDate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -91,6 +92,25 @@ public class OverdueWrapperFactory {
         }
     }
 
+    /**
+     * @return false if no overdue state is configured for bundles, in which case refreshing them is a no-op
+     */
+    public boolean isOverdueConfiguredForBundles() {
+        return getOverdueStateSetBundle().size() > 0;
+    }
+
+    /**
+     * @param today the evaluation date
+     * @return the latest invoice date for which an unpaid invoice may lead a bundle to an overdue state, null if no
+     *         overdue state is configured for bundles
+     */
+    public LocalDate getLatestTriggeringInvoiceDateForBundles(final LocalDate today) {
+        if (config == null || config.getBundleStateSet() == null) {
+            return null;
+        }
+        return config.getBundleStateSet().getLatestTriggeringInvoiceDate(today);
+    }
+
     private OverdueStateSet<SubscriptionBundle> getOverdueStateSetBundle() {
         if (config == null || config.getBundleStateSet() == null) {
             return new DefaultOverdueStateSet<SubscriptionBundle>() {
@@ -19,6 +19,7 @@ package com.ning.billing.overdue.calculator;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.UUID;
 
@@ -34,6 +35,7 @@ import com.ning.billing.catalog.MockPlan;
 import com.ning.billing.catalog.MockPriceList;
 import com.ning.billing.catalog.api.Plan;
 import com.ning.billing.catalog.api.PriceList;
+import com.ning.billing.catalog.api.ProductCategory;
 import com.ning.billing.entitlement.api.user.Subscription;
 import com.ning.billing.entitlement.api.user.SubscriptionBundle;
 import com.ning.billing.invoice.api.Invoice;
@@ -49,6 +51,7 @@ import com.ning.billing.util.svcapi.invoice.InvoiceInternalApi;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 public class TestBillingStateCalculatorBundle extends TestBillingStateCalculator {
     private List<InvoiceItem> createInvoiceItems(final UUID[] bundleIds) {
@@ -201,6 +204,69 @@ public class TestBillingStateCalculatorBundle extends TestBillingStateCalculator
 
     }
 
+    @Test(groups = "fast")
+    public void testCalculateBillingStatesForAccount() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final UUID thisBundleId = new UUID(0L, 0L);
+        final UUID thatBundleId = new UUID(0L, 1L);
+        final UUID otherBundleId = new UUID(0L, 2L);
+
+        now = new LocalDate();
+        final List<Invoice> invoices = new ArrayList<Invoice>(3);
+        invoices.add(createInvoice(now.minusDays(3), BigDecimal.TEN, createInvoiceItems(new UUID[]{thatBundleId})));
+        invoices.add(createInvoice(now.minusDays(2), new BigDecimal("100.00"), createInvoiceItems(new UUID[]{thatBundleId, thisBundleId, thatBundleId})));
+        invoices.add(createInvoice(now.minusDays(1), new BigDecimal("1000.00"), createInvoiceItems(new UUID[]{thisBundleId})));
+
+        final Clock clock = new ClockMock();
+        final InvoiceInternalApi invoiceApi = Mockito.mock(InvoiceInternalApi.class);
+        Mockito.when(invoiceApi.getUnpaidInvoicesByAccountId(Mockito.<UUID>any(), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any())).thenReturn(invoices);
+
+        final List<SubscriptionBundle> bundles = new ArrayList<SubscriptionBundle>();
+        for (final UUID bundleId : new UUID[]{thisBundleId, thatBundleId, otherBundleId}) {
+            final SubscriptionBundle bundle = Mockito.mock(SubscriptionBundle.class);
+            Mockito.when(bundle.getId()).thenReturn(bundleId);
+            Mockito.when(bundle.getAccountId()).thenReturn(accountId);
+            bundles.add(bundle);
+        }
+
+        // Only the first bundle has a base plan
+        final Subscription subscription = Mockito.mock(Subscription.class);
+        final Plan plan = MockPlan.createBicycleNoTrialEvergreen1USD();
+        Mockito.when(subscription.getBundleId()).thenReturn(thisBundleId);
+        Mockito.when(subscription.getCategory()).thenReturn(ProductCategory.BASE);
+        Mockito.when(subscription.getCurrentPlan()).thenReturn(plan);
+        Mockito.when(subscription.getCurrentPriceList()).thenReturn(new MockPriceList());
+        Mockito.when(subscription.getCurrentPhase()).thenReturn(plan.getFinalPhase());
+
+        final EntitlementInternalApi entitlementApi = Mockito.mock(EntitlementInternalApi.class);
+        Mockito.when(entitlementApi.getSubscriptionsForAccount(Mockito.eq(accountId), Mockito.<InternalTenantContext>any()))
+               .thenReturn(ImmutableMap.<UUID, List<Subscription>>of(thisBundleId, ImmutableList.<Subscription>of(subscription)));
+
+        final BillingStateCalculatorBundle calc = new BillingStateCalculatorBundle(entitlementApi, invoiceApi, accountApi, clock);
+        final Map<UUID, BillingStateBundle> states = calc.calculateBillingStates(accountId, bundles, internalCallContext);
+        Assert.assertEquals(states.size(), 3);
+
+        final BillingStateBundle thisState = states.get(thisBundleId);
+        Assert.assertEquals(thisState.getNumberOfUnpaidInvoices(), 2);
+        Assert.assertEquals(thisState.getBalanceOfUnpaidInvoices().intValue(), 1100);
+        Assert.assertEquals(thisState.getDateOfEarliestUnpaidInvoice().compareTo(now.minusDays(2)), 0);
+        Assert.assertEquals(thisState.getBasePlanProduct(), plan.getProduct());
+
+        final BillingStateBundle thatState = states.get(thatBundleId);
+        Assert.assertEquals(thatState.getNumberOfUnpaidInvoices(), 2);
+        Assert.assertEquals(thatState.getBalanceOfUnpaidInvoices().intValue(), 110);
+        Assert.assertEquals(thatState.getDateOfEarliestUnpaidInvoice().compareTo(now.minusDays(3)), 0);
+        Assert.assertNull(thatState.getBasePlanProduct());
+
+        final BillingStateBundle otherState = states.get(otherBundleId);
+        Assert.assertEquals(otherState.getNumberOfUnpaidInvoices(), 0);
+        Assert.assertEquals(otherState.getBalanceOfUnpaidInvoices().intValue(), 0);
+        Assert.assertNull(otherState.getDateOfEarliestUnpaidInvoice());
+
+        // The unpaid invoices were loaded once for all bundles
+        Mockito.verify(invoiceApi, Mockito.times(1)).getUnpaidInvoicesByAccountId(Mockito.<UUID>any(), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any());
+    }
+
     public void testCorrectBehaviorForNoOverdueConfig() {
         //TODO with no overdue config the system should be fine - take no action but see no NPEs
     }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010-2011 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.overdue.listener;
+
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.ovedue.notification.DefaultOverdueCheckNotifier;
+import com.ning.billing.overdue.OverdueProperties;
+import com.ning.billing.overdue.OverdueTestSuite;
+import com.ning.billing.overdue.service.DefaultOverdueService;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.clock.ClockMock;
+import com.ning.billing.util.notificationq.NotificationKey;
+import com.ning.billing.util.notificationq.NotificationQueue;
+import com.ning.billing.util.notificationq.NotificationQueueService;
+
+public class TestOverdueTriggerCoalescer extends OverdueTestSuite {
+
+    @Test(groups = "fast")
+    public void testTriggersAreCollapsedWithinTheWindow() throws Exception {
+        final OverdueDispatcher dispatcher = Mockito.mock(OverdueDispatcher.class);
+        final NotificationQueue queue = Mockito.mock(NotificationQueue.class);
+        final NotificationQueueService notificationQueueService = Mockito.mock(NotificationQueueService.class);
+        Mockito.when(notificationQueueService.getNotificationQueue(DefaultOverdueService.OVERDUE_SERVICE_NAME, DefaultOverdueCheckNotifier.OVERDUE_CHECK_NOTIFIER_QUEUE)).thenReturn(queue);
+        final OverdueProperties properties = Mockito.mock(OverdueProperties.class);
+        Mockito.when(properties.getTriggerCoalescingWindow()).thenReturn(new TimeSpan("5s"));
+
+        final OverdueTriggerCoalescer coalescer = new OverdueTriggerCoalescer(dispatcher, notificationQueueService, properties, new ClockMock());
+        final UUID accountId = UUID.randomUUID();
+        final InternalCallContext context = Mockito.mock(InternalCallContext.class);
+
+        coalescer.trigger(accountId, context);
+        coalescer.trigger(accountId, context);
+        coalescer.trigger(accountId, context);
+        Mockito.verify(queue, Mockito.times(1)).recordFutureNotification(Mockito.<DateTime>any(), Mockito.eq(accountId), Mockito.<NotificationKey>any(), Mockito.eq(context));
+        Mockito.verify(dispatcher, Mockito.never()).processOverdueForAccount(accountId, context);
+        Assert.assertEquals(coalescer.getNbCollapsedTriggers(), 2);
+        Assert.assertEquals(coalescer.getNbExecutedRefreshes(), 0);
+
+        coalescer.processPendingTrigger(accountId, context);
+        Mockito.verify(dispatcher, Mockito.times(1)).processOverdueForAccount(accountId, context);
+        Assert.assertEquals(coalescer.getNbExecutedRefreshes(), 1);
+
+        // A new burst needs a new notification
+        coalescer.trigger(accountId, context);
+        Mockito.verify(queue, Mockito.times(2)).recordFutureNotification(Mockito.<DateTime>any(), Mockito.eq(accountId), Mockito.<NotificationKey>any(), Mockito.eq(context));
+        Assert.assertEquals(coalescer.getNbCollapsedTriggers(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testNotificationProcessedByAnotherNode() throws Exception {
+        final OverdueDispatcher dispatcher = Mockito.mock(OverdueDispatcher.class);
+        final NotificationQueue queue = Mockito.mock(NotificationQueue.class);
+        final NotificationQueueService notificationQueueService = Mockito.mock(NotificationQueueService.class);
+        Mockito.when(notificationQueueService.getNotificationQueue(DefaultOverdueService.OVERDUE_SERVICE_NAME, DefaultOverdueCheckNotifier.OVERDUE_CHECK_NOTIFIER_QUEUE)).thenReturn(queue);
+        final OverdueProperties properties = Mockito.mock(OverdueProperties.class);
+        Mockito.when(properties.getTriggerCoalescingWindow()).thenReturn(new TimeSpan("5s"));
+
+        // Two nodes sharing the same notification queue
+        final ClockMock clock = new ClockMock();
+        final OverdueTriggerCoalescer coalescer = new OverdueTriggerCoalescer(dispatcher, notificationQueueService, properties, clock);
+        final OverdueTriggerCoalescer otherNodeCoalescer = new OverdueTriggerCoalescer(dispatcher, notificationQueueService, properties, clock);
+        final UUID accountId = UUID.randomUUID();
+        final InternalCallContext context = Mockito.mock(InternalCallContext.class);
+
+        coalescer.trigger(accountId, context);
+        Mockito.verify(queue, Mockito.times(1)).recordFutureNotification(Mockito.<DateTime>any(), Mockito.eq(accountId), Mockito.<NotificationKey>any(), Mockito.eq(context));
+
+        // Before the notification is due, triggers are collapsed
+        clock.addDeltaFromReality(4000L);
+        coalescer.trigger(accountId, context);
+        Mockito.verify(queue, Mockito.times(1)).recordFutureNotification(Mockito.<DateTime>any(), Mockito.eq(accountId), Mockito.<NotificationKey>any(), Mockito.eq(context));
+        Assert.assertEquals(coalescer.getNbCollapsedTriggers(), 1);
+
+        // The notification is processed by the other node, the first one doesn't know about it
+        clock.addDeltaFromReality(1000L);
+        otherNodeCoalescer.processPendingTrigger(accountId, context);
+        Mockito.verify(dispatcher, Mockito.times(1)).processOverdueForAccount(accountId, context);
+
+        // Right after that, the next trigger is not lost: the notification was due, so a new one is scheduled
+        coalescer.trigger(accountId, context);
+        Mockito.verify(queue, Mockito.times(2)).recordFutureNotification(Mockito.<DateTime>any(), Mockito.eq(accountId), Mockito.<NotificationKey>any(), Mockito.eq(context));
+        Assert.assertEquals(coalescer.getNbCollapsedTriggers(), 1);
+
+        // And the new notification collapses the following triggers again
+        coalescer.trigger(accountId, context);
+        Mockito.verify(queue, Mockito.times(2)).recordFutureNotification(Mockito.<DateTime>any(), Mockito.eq(accountId), Mockito.<NotificationKey>any(), Mockito.eq(context));
+        Assert.assertEquals(coalescer.getNbCollapsedTriggers(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testNoCoalescingWindow() throws Exception {
+        final OverdueDispatcher dispatcher = Mockito.mock(OverdueDispatcher.class);
+        final NotificationQueueService notificationQueueService = Mockito.mock(NotificationQueueService.class);
+        final OverdueProperties properties = Mockito.mock(OverdueProperties.class);
+        Mockito.when(properties.getTriggerCoalescingWindow()).thenReturn(new TimeSpan("0s"));
+
+        final OverdueTriggerCoalescer coalescer = new OverdueTriggerCoalescer(dispatcher, notificationQueueService, properties, new ClockMock());
+        final UUID accountId = UUID.randomUUID();
+        final InternalCallContext context = Mockito.mock(InternalCallContext.class);
+
+        coalescer.trigger(accountId, context);
+        coalescer.trigger(accountId, context);
+        Mockito.verify(dispatcher, Mockito.times(2)).processOverdueForAccount(accountId, context);
+        Mockito.verifyZeroInteractions(notificationQueueService);
+        Assert.assertEquals(coalescer.getNbCollapsedTriggers(), 0);
+        Assert.assertEquals(coalescer.getNbExecutedRefreshes(), 2);
+    }
+}
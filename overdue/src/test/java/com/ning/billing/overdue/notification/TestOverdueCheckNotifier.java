@@ -94,7 +94,7 @@ public class TestOverdueCheckNotifier extends OverdueTestSuiteWithEmbeddedDB {
         UUID latestSubscriptionId = null;
 
         public OverdueListenerMock() {
-            super(null, new InternalCallContextFactory(getMysqlTestingHelper().getDBI(), new ClockMock()));
+            super(null, null, new InternalCallContextFactory(getMysqlTestingHelper().getDBI(), new ClockMock()));
         }
 
         @Override
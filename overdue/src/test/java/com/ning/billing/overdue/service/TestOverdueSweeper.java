@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010-2011 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.overdue.service;
+
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.billing.entitlement.api.user.SubscriptionBundle;
+import com.ning.billing.overdue.OverdueProperties;
+import com.ning.billing.overdue.OverdueState;
+import com.ning.billing.overdue.OverdueTestSuite;
+import com.ning.billing.overdue.listener.OverdueDispatcher;
+import com.ning.billing.overdue.wrapper.OverdueWrapperFactory;
+import com.ning.billing.util.callcontext.CallOrigin;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.UserType;
+import com.ning.billing.util.clock.ClockMock;
+import com.ning.billing.util.dao.ObjectType;
+import com.ning.billing.util.globallocker.GlobalLock;
+import com.ning.billing.util.globallocker.GlobalLocker;
+import com.ning.billing.util.globallocker.GlobalLocker.LockerType;
+import com.ning.billing.util.svcapi.invoice.InvoiceInternalApi;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TestOverdueSweeper extends OverdueTestSuite {
+
+    @SuppressWarnings("unchecked")
+    @Test(groups = "fast")
+    public void testSweep() throws Exception {
+        final ClockMock clock = new ClockMock();
+        final LocalDate latestInvoiceDate = clock.getUTCToday().minusDays(30);
+        final OverdueWrapperFactory factory = Mockito.mock(OverdueWrapperFactory.class);
+        Mockito.when(factory.getLatestTriggeringInvoiceDateForBundles(Mockito.<LocalDate>any())).thenReturn(latestInvoiceDate);
+
+        final UUID accountId1 = UUID.randomUUID();
+        final UUID accountId2 = UUID.randomUUID();
+        final UUID accountId3 = UUID.randomUUID();
+        final InvoiceInternalApi invoiceApi = Mockito.mock(InvoiceInternalApi.class);
+        final LocalDate oldestInvoiceDate = latestInvoiceDate.minusDays(10);
+        Mockito.when(invoiceApi.getOldestUnpaidInvoiceDatePerAccountUpToDate(latestInvoiceDate))
+               .thenReturn(ImmutableMap.<UUID, LocalDate>of(accountId1, latestInvoiceDate.minusDays(5), accountId2, oldestInvoiceDate, accountId3, latestInvoiceDate));
+
+        final OverdueState<SubscriptionBundle> clearState = Mockito.mock(OverdueState.class);
+        Mockito.when(clearState.getName()).thenReturn("__KILLBILL__CLEAR__OVERDUE_STATE__");
+        final OverdueState<SubscriptionBundle> od1State = Mockito.mock(OverdueState.class);
+        Mockito.when(od1State.getName()).thenReturn("OD1");
+
+        // The dispatcher only returns the bundles whose overdue state changed
+        final OverdueDispatcher dispatcher = Mockito.mock(OverdueDispatcher.class);
+        Mockito.when(dispatcher.processOverdueForAccount(Mockito.eq(accountId1), Mockito.<InternalCallContext>any()))
+               .thenReturn(ImmutableMap.<UUID, OverdueState<SubscriptionBundle>>of(UUID.randomUUID(), od1State, UUID.randomUUID(), clearState));
+        Mockito.when(dispatcher.processOverdueForAccount(Mockito.eq(accountId2), Mockito.<InternalCallContext>any()))
+               .thenReturn(ImmutableMap.<UUID, OverdueState<SubscriptionBundle>>of());
+        Mockito.when(dispatcher.processOverdueForAccount(Mockito.eq(accountId3), Mockito.<InternalCallContext>any()))
+               .thenThrow(new RuntimeException("Unexpected"));
+
+        final InternalCallContextFactory internalCallContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(internalCallContextFactory.createInternalCallContext(Mockito.<UUID>any(), Mockito.eq(ObjectType.ACCOUNT), Mockito.anyString(),
+                                                                          Mockito.<CallOrigin>any(), Mockito.<UserType>any(), Mockito.<UUID>any()))
+               .thenReturn(Mockito.mock(InternalCallContext.class));
+
+        final OverdueProperties properties = Mockito.mock(OverdueProperties.class);
+        Mockito.when(properties.getSweepInterval()).thenReturn(new TimeSpan("0s"));
+        Mockito.when(properties.getSweepThreads()).thenReturn(2);
+
+        final GlobalLock lock = Mockito.mock(GlobalLock.class);
+        final GlobalLocker locker = createLocker(true, lock);
+
+        final OverdueSweeper sweeper = new OverdueSweeper(dispatcher, factory, invoiceApi, internalCallContextFactory, properties, locker, clock);
+        Assert.assertNull(sweeper.getLastSummary());
+        Assert.assertEquals(sweeper.getLagMs(), -1);
+
+        final OverdueSweepSummary summary = sweeper.sweep();
+        Assert.assertEquals(summary.getLatestInvoiceDate(), latestInvoiceDate);
+        Assert.assertEquals(summary.getOldestInvoiceDate(), oldestInvoiceDate);
+        Assert.assertEquals(summary.getNbAccounts(), 3);
+        Assert.assertEquals(summary.getNbFailedAccounts(), 1);
+        Assert.assertEquals(summary.getNbTransitionsPerState().size(), 2);
+        Assert.assertEquals((int) summary.getNbTransitionsPerState().get("OD1"), 1);
+        Assert.assertEquals((int) summary.getNbTransitionsPerState().get("__KILLBILL__CLEAR__OVERDUE_STATE__"), 1);
+        Assert.assertEquals(sweeper.getLastSummary(), summary);
+
+        // The lag is the time elapsed since the last completed sweep started
+        clock.addDays(1);
+        final long lagMs = sweeper.getLagMs();
+        Assert.assertTrue(lagMs >= 24 * 3600 * 1000L);
+        Assert.assertTrue(lagMs <= clock.getUTCNow().getMillis() - summary.getStartDate().getMillis());
+        Mockito.verify(lock, Mockito.times(1)).release();
+
+        // Each account is evaluated exactly once
+        Mockito.verify(dispatcher, Mockito.times(1)).processOverdueForAccount(Mockito.eq(accountId1), Mockito.<InternalCallContext>any());
+        Mockito.verify(dispatcher, Mockito.times(1)).processOverdueForAccount(Mockito.eq(accountId2), Mockito.<InternalCallContext>any());
+        Mockito.verify(dispatcher, Mockito.times(1)).processOverdueForAccount(Mockito.eq(accountId3), Mockito.<InternalCallContext>any());
+    }
+
+    @Test(groups = "fast")
+    public void testSweepWithoutOverdueConfig() throws Exception {
+        final OverdueWrapperFactory factory = Mockito.mock(OverdueWrapperFactory.class);
+        final InvoiceInternalApi invoiceApi = Mockito.mock(InvoiceInternalApi.class);
+        final OverdueDispatcher dispatcher = Mockito.mock(OverdueDispatcher.class);
+        final OverdueProperties properties = Mockito.mock(OverdueProperties.class);
+
+        final OverdueSweeper sweeper = new OverdueSweeper(dispatcher, factory, invoiceApi, Mockito.mock(InternalCallContextFactory.class), properties,
+                                                          createLocker(true, Mockito.mock(GlobalLock.class)), new ClockMock());
+        final OverdueSweepSummary summary = sweeper.sweep();
+        Assert.assertEquals(summary.getNbAccounts(), 0);
+        Assert.assertNull(summary.getOldestInvoiceDate());
+        Assert.assertEquals(sweeper.getLastSummary(), summary);
+        Assert.assertTrue(sweeper.getLagMs() >= 0);
+        Mockito.verifyZeroInteractions(invoiceApi, dispatcher);
+    }
+
+    @Test(groups = "fast")
+    public void testSweepSkippedWhileAnotherNodeSweeps() throws Exception {
+        final OverdueWrapperFactory factory = Mockito.mock(OverdueWrapperFactory.class);
+        final InvoiceInternalApi invoiceApi = Mockito.mock(InvoiceInternalApi.class);
+        final OverdueDispatcher dispatcher = Mockito.mock(OverdueDispatcher.class);
+        final GlobalLocker locker = createLocker(false, Mockito.mock(GlobalLock.class));
+
+        final OverdueSweeper sweeper = new OverdueSweeper(dispatcher, factory, invoiceApi, Mockito.mock(InternalCallContextFactory.class),
+                                                          Mockito.mock(OverdueProperties.class), locker, new ClockMock());
+        Assert.assertNull(sweeper.sweep());
+        Assert.assertNull(sweeper.getLastSummary());
+        Mockito.verify(locker, Mockito.never()).lockWithNumberOfTries(Mockito.<LockerType>any(), Mockito.anyString(), Mockito.anyInt());
+        Mockito.verifyZeroInteractions(factory, invoiceApi, dispatcher);
+    }
+
+    private GlobalLocker createLocker(final boolean isFree, final GlobalLock lock) {
+        final GlobalLocker locker = Mockito.mock(GlobalLocker.class);
+        Mockito.when(locker.isFree(LockerType.OVERDUE_SWEEP, DefaultOverdueService.OVERDUE_SERVICE_NAME)).thenReturn(isFree);
+        Mockito.when(locker.lockWithNumberOfTries(LockerType.OVERDUE_SWEEP, DefaultOverdueService.OVERDUE_SERVICE_NAME, 1)).thenReturn(lock);
+        return locker;
+    }
+}
@@ -19,14 +19,25 @@ package com.ning.billing.overdue.wrapper;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.ning.billing.entitlement.api.user.SubscriptionBundle;
+import com.ning.billing.junction.api.BlockingState;
 import com.ning.billing.overdue.OverdueState;
 import com.ning.billing.overdue.OverdueTestBase;
+import com.ning.billing.overdue.applicator.OverdueStateApplicator;
+import com.ning.billing.overdue.calculator.BillingStateCalculator;
 import com.ning.billing.overdue.config.OverdueConfig;
+import com.ning.billing.overdue.config.api.BillingState;
+import com.ning.billing.overdue.config.api.OverdueStateSet;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.clock.ClockMock;
 import com.ning.billing.util.config.XMLLoader;
+import com.ning.billing.util.svcapi.junction.BlockingInternalApi;
 import com.ning.billing.util.svcapi.junction.DefaultBlockingState;
 
 public class TestOverdueWrapper extends OverdueTestBase {
@@ -78,4 +89,35 @@ public class TestOverdueWrapper extends OverdueTestBase {
         Assert.assertEquals(result.blockChanges(), state.blockChanges());
         Assert.assertEquals(result.disableEntitlementAndChangesBlocked(), state.disableEntitlementAndChangesBlocked());
     }
+
+    @SuppressWarnings("unchecked")
+    @Test(groups = "fast")
+    public void testRefreshIfChanged() throws Exception {
+        final SubscriptionBundle bundle = Mockito.mock(SubscriptionBundle.class);
+        final BlockingState blockingState = Mockito.mock(BlockingState.class);
+        Mockito.when(blockingState.getStateName()).thenReturn("OD1");
+        final BlockingInternalApi blockingApi = Mockito.mock(BlockingInternalApi.class);
+        Mockito.when(blockingApi.getBlockingStateFor(Mockito.eq(bundle), Mockito.<InternalCallContext>any())).thenReturn(blockingState);
+
+        final OverdueState<SubscriptionBundle> od1State = Mockito.mock(OverdueState.class);
+        Mockito.when(od1State.getName()).thenReturn("OD1");
+        final OverdueState<SubscriptionBundle> od2State = Mockito.mock(OverdueState.class);
+        Mockito.when(od2State.getName()).thenReturn("OD2");
+        final BillingState<SubscriptionBundle> billingState = Mockito.mock(BillingState.class);
+        Mockito.when(billingState.getAccountTimeZone()).thenReturn(DateTimeZone.UTC);
+        final OverdueStateSet<SubscriptionBundle> overdueStateSet = Mockito.mock(OverdueStateSet.class);
+        Mockito.when(overdueStateSet.size()).thenReturn(2);
+        Mockito.when(overdueStateSet.calculateOverdueState(Mockito.eq(billingState), Mockito.<LocalDate>any())).thenReturn(od1State, od2State);
+
+        final OverdueStateApplicator<SubscriptionBundle> applicator = Mockito.mock(OverdueStateApplicator.class);
+        final OverdueWrapper<SubscriptionBundle> wrapper = new OverdueWrapper<SubscriptionBundle>(bundle, blockingApi, overdueStateSet, new ClockMock(),
+                                                                                                  Mockito.mock(BillingStateCalculator.class), applicator);
+
+        // Still in OD1: no transition
+        Assert.assertNull(wrapper.refreshIfChanged(billingState, internalCallContext));
+        // From OD1 to OD2
+        Assert.assertEquals(wrapper.refreshIfChanged(billingState, internalCallContext), od2State);
+        Mockito.verify(applicator, Mockito.times(2)).apply(Mockito.<OverdueState<SubscriptionBundle>>any(), Mockito.eq(billingState), Mockito.eq(bundle),
+                                                           Mockito.eq("OD1"), Mockito.<OverdueState<SubscriptionBundle>>any(), Mockito.<InternalCallContext>any());
+    }
 }
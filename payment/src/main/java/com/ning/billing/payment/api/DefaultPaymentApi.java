@@ -23,10 +23,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import org.joda.time.LocalDate;
+
 import com.ning.billing.ErrorCode;
 import com.ning.billing.account.api.Account;
 import com.ning.billing.payment.core.PaymentMethodProcessor;
 import com.ning.billing.payment.core.PaymentProcessor;
+import com.ning.billing.payment.core.PaymentRunProcessor;
 import com.ning.billing.payment.core.RefundProcessor;
 import com.ning.billing.util.callcontext.CallContext;
 import com.ning.billing.util.callcontext.InternalCallContextFactory;
@@ -40,16 +43,19 @@ public class DefaultPaymentApi implements PaymentApi {
     private final PaymentMethodProcessor methodProcessor;
     private final PaymentProcessor paymentProcessor;
     private final RefundProcessor refundProcessor;
+    private final PaymentRunProcessor paymentRunProcessor;
     private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
     public DefaultPaymentApi(final PaymentMethodProcessor methodProcessor,
                              final PaymentProcessor paymentProcessor,
                              final RefundProcessor refundProcessor,
+                             final PaymentRunProcessor paymentRunProcessor,
                              final InternalCallContextFactory internalCallContextFactory) {
         this.methodProcessor = methodProcessor;
         this.paymentProcessor = paymentProcessor;
         this.refundProcessor = refundProcessor;
+        this.paymentRunProcessor = paymentRunProcessor;
         this.internalCallContextFactory = internalCallContextFactory;
     }
 
@@ -66,6 +72,11 @@ public class DefaultPaymentApi implements PaymentApi {
                                               internalCallContextFactory.createInternalCallContext(account.getId(), context), true, true);
     }
 
+    @Override
+    public PaymentRunSummary runPayments(final LocalDate upToDate, final CallContext context) {
+        return paymentRunProcessor.runPayments(upToDate, context);
+    }
+
     @Override
     public Payment getPayment(final UUID paymentId, final TenantContext context) throws PaymentApiException {
         final Payment payment = paymentProcessor.getPayment(paymentId, internalCallContextFactory.createInternalTenantContext(context));
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010-2011 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.api;
+
+import org.joda.time.LocalDate;
+
+public class DefaultPaymentRunSummary implements PaymentRunSummary {
+
+    private final LocalDate upToDate;
+    private final int nbAccounts;
+    private final int nbInvoices;
+    private final int nbSuccessfulPayments;
+    private final int nbFailedPayments;
+    private final int nbSkippedInvoices;
+    private final long durationMs;
+
+    public DefaultPaymentRunSummary(final LocalDate upToDate, final int nbAccounts, final int nbInvoices, final int nbSuccessfulPayments,
+                                    final int nbFailedPayments, final int nbSkippedInvoices, final long durationMs) {
+        this.upToDate = upToDate;
+        this.nbAccounts = nbAccounts;
+        this.nbInvoices = nbInvoices;
+        this.nbSuccessfulPayments = nbSuccessfulPayments;
+        this.nbFailedPayments = nbFailedPayments;
+        this.nbSkippedInvoices = nbSkippedInvoices;
+        this.durationMs = durationMs;
+    }
+
+    @Override
+    public LocalDate getUpToDate() {
+        return upToDate;
+    }
+
+    @Override
+    public int getNbAccounts() {
+        return nbAccounts;
+    }
+
+    @Override
+    public int getNbInvoices() {
+        return nbInvoices;
+    }
+
+    @Override
+    public int getNbSuccessfulPayments() {
+        return nbSuccessfulPayments;
+    }
+
+    @Override
+    public int getNbFailedPayments() {
+        return nbFailedPayments;
+    }
+
+    @Override
+    public int getNbSkippedInvoices() {
+        return nbSkippedInvoices;
+    }
+
+    @Override
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("DefaultPaymentRunSummary");
+        sb.append("{upToDate=").append(upToDate);
+        sb.append(", nbAccounts=").append(nbAccounts);
+        sb.append(", nbInvoices=").append(nbInvoices);
+        sb.append(", nbSuccessfulPayments=").append(nbSuccessfulPayments);
+        sb.append(", nbFailedPayments=").append(nbFailedPayments);
+        sb.append(", nbSkippedInvoices=").append(nbSkippedInvoices);
+        sb.append(", durationMs=").append(durationMs);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -16,12 +16,15 @@
 
 package com.ning.billing.payment.bus;
 
+import java.util.concurrent.TimeoutException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ning.billing.ErrorCode;
 import com.ning.billing.account.api.Account;
 import com.ning.billing.account.api.AccountApiException;
+import com.ning.billing.payment.api.Payment;
 import com.ning.billing.payment.api.PaymentApiException;
 import com.ning.billing.payment.core.PaymentProcessor;
 import com.ning.billing.util.callcontext.CallOrigin;
@@ -31,7 +34,11 @@ import com.ning.billing.util.callcontext.UserType;
 import com.ning.billing.util.events.InvoiceCreationInternalEvent;
 import com.ning.billing.util.svcapi.account.AccountInternalApi;
 
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Inject;
 
 public class InvoiceHandler {
@@ -51,27 +58,66 @@ public class InvoiceHandler {
         this.internalCallContextFactory = internalCallContextFactory;
     }
 
+    @AllowConcurrentEvents
     @Subscribe
     public void processInvoiceEvent(final InvoiceCreationInternalEvent event) {
 
         log.info("Received invoice creation notification for account {} and invoice {}",
                  event.getAccountId(), event.getInvoiceId());
 
-        final Account account;
+        final InternalCallContext internalContext =  internalCallContextFactory.createInternalCallContext(event.getTenantRecordId(), event.getAccountRecordId(), "PaymentRequestProcessor", CallOrigin.INTERNAL, UserType.SYSTEM, event.getUserToken());
+        Account account = null;
         try {
-            final InternalCallContext internalContext =  internalCallContextFactory.createInternalCallContext(event.getTenantRecordId(), event.getAccountRecordId(), "PaymentRequestProcessor", CallOrigin.INTERNAL, UserType.SYSTEM, event.getUserToken());
             account = accountApi.getAccountById(event.getAccountId(), internalContext);
-            paymentProcessor.createPayment(account, event.getInvoiceId(), null, internalContext, false, false);
+            // Don't hold the bus thread while the plugin processes the payment
+            final ListenableFuture<Payment> payment = paymentProcessor.createPaymentAsync(account, event.getInvoiceId(), internalContext);
+            Futures.addCallback(payment, new FutureCallback<Payment>() {
+                @Override
+                public void onSuccess(final Payment result) {
+                }
+
+                @Override
+                public void onFailure(final Throwable t) {
+                    if (t instanceof PaymentApiException) {
+                        logPaymentError((PaymentApiException) t);
+                    } else if (t instanceof TimeoutException) {
+                        // The plugin thread will complete (and set the correct status), as for a synchronous timeout
+                        log.warn("Payment for account {} and invoice {} timed out", event.getAccountId(), event.getInvoiceId());
+                    } else {
+                        log.error("Failed to process invoice payment", t);
+                    }
+                }
+            });
         } catch (AccountApiException e) {
             log.error("Failed to process invoice payment", e);
         } catch (PaymentApiException e) {
-            // Log as error unless:
-            if (e.getCode() != ErrorCode.PAYMENT_NULL_INVOICE.getCode() /*  Nothing to left be paid*/ &&
-                    e.getCode() != ErrorCode.PAYMENT_CREATE_PAYMENT.getCode() /* User payment error */) {
-                log.error("Failed to process invoice payment {}", e.toString());
+            if (e.getCode() == ErrorCode.PAYMENT_PLUGIN_UNAVAILABLE.getCode()) {
+                // The plugin was not called: record the payment as a plugin failure, so that it gets retried
+                createPaymentForPluginFailure(account, event, internalContext, e);
+            } else {
+                logPaymentError(e);
             }
+        } catch (TimeoutException e) {
+            // The queue of the plugin is full: record the payment as a plugin failure, so that it gets retried
+            createPaymentForPluginFailure(account, event, internalContext, e);
         }
     }
-}
 
+    private void createPaymentForPluginFailure(final Account account, final InvoiceCreationInternalEvent event, final InternalCallContext internalContext,
+                                               final Exception cause) {
+        log.warn("Failed to process invoice payment for account {} and invoice {}: {}", new Object[]{event.getAccountId(), event.getInvoiceId(), cause.toString()});
+        try {
+            paymentProcessor.createPaymentForPluginFailure(account, event.getInvoiceId(), internalContext);
+        } catch (PaymentApiException pe) {
+            logPaymentError(pe);
+        }
+    }
 
+    private void logPaymentError(final PaymentApiException e) {
+        // Log as error unless:
+        if (e.getCode() != ErrorCode.PAYMENT_NULL_INVOICE.getCode() /*  Nothing to left be paid*/ &&
+                e.getCode() != ErrorCode.PAYMENT_CREATE_PAYMENT.getCode() /* User payment error */) {
+            log.error("Failed to process invoice payment {}", e.toString());
+        }
+    }
+}
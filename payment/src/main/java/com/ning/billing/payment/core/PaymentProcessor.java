@@ -19,17 +19,20 @@ import static com.ning.billing.payment.glue.PaymentModule.PLUGIN_EXECUTOR_NAMED;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,12 +53,15 @@ import com.ning.billing.payment.dao.PaymentAttemptModelDao;
 import com.ning.billing.payment.dao.PaymentDao;
 import com.ning.billing.payment.dao.PaymentModelDao;
 import com.ning.billing.payment.dao.RefundModelDao;
+import com.ning.billing.payment.dispatcher.PluginBulkhead;
+import com.ning.billing.payment.dispatcher.PluginBulkheads;
 import com.ning.billing.payment.dispatcher.PluginDispatcher;
 import com.ning.billing.payment.plugin.api.PaymentInfoPlugin;
 import com.ning.billing.payment.plugin.api.PaymentPluginApi;
 import com.ning.billing.payment.plugin.api.PaymentPluginApiException;
 import com.ning.billing.payment.provider.PaymentProviderPluginRegistry;
 import com.ning.billing.payment.retry.AutoPayRetryService.AutoPayRetryServiceScheduler;
+import com.ning.billing.payment.retry.BaseRetryService.RetryServiceScheduler;
 import com.ning.billing.payment.retry.FailedPaymentRetryService.FailedPaymentRetryServiceScheduler;
 import com.ning.billing.payment.retry.PluginFailureRetryService.PluginFailureRetryServiceScheduler;
 import com.ning.billing.util.callcontext.InternalCallContext;
@@ -69,7 +75,10 @@ import com.ning.billing.util.svcapi.tag.TagInternalApi;
 import com.ning.billing.util.svcsapi.bus.InternalBus;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ListMultimap;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.name.Named;
 
 public class PaymentProcessor extends ProcessorBase {
@@ -83,6 +92,7 @@ public class PaymentProcessor extends ProcessorBase {
     private final Clock clock;
 
     private final PaymentConfig paymentConfig;
+    private final PluginBulkheads pluginBulkheads;
 
     private final PluginDispatcher<Payment> paymentPluginDispatcher;
     private final PluginDispatcher<Void> voidPluginDispatcher;
@@ -103,6 +113,7 @@ public class PaymentProcessor extends ProcessorBase {
                             final Clock clock,
                             final GlobalLocker locker,
                             final PaymentConfig paymentConfig,
+                            final PluginBulkheads pluginBulkheads,
                             @Named(PLUGIN_EXECUTOR_NAMED) final ExecutorService executor) {
         super(pluginRegistry, accountUserApi, eventBus, paymentDao, tagUserApi, locker, executor);
         this.paymentMethodProcessor = paymentMethodProcessor;
@@ -112,6 +123,7 @@ public class PaymentProcessor extends ProcessorBase {
         this.autoPayoffRetryService = autoPayoffRetryService;
         this.clock = clock;
         this.paymentConfig = paymentConfig;
+        this.pluginBulkheads = pluginBulkheads;
         this.paymentPluginDispatcher = new PluginDispatcher<Payment>(executor);
         this.voidPluginDispatcher = new PluginDispatcher<Void>(executor);
     }
@@ -131,7 +143,26 @@ public class PaymentProcessor extends ProcessorBase {
 
 
     public List<Payment> getAccountPayments(final UUID accountId, final InternalTenantContext context) {
-        return getPayments(paymentDao.getPaymentsForAccount(accountId, context), context);
+        final List<PaymentModelDao> payments = paymentDao.getPaymentsForAccount(accountId, context);
+        if (payments == null || payments.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Load the attempts and refunds of all the account payments at once, rather than payment by payment
+        final ListMultimap<UUID, PaymentAttemptModelDao> attemptsPerPayment = ArrayListMultimap.<UUID, PaymentAttemptModelDao>create();
+        for (final PaymentAttemptModelDao attempt : paymentDao.getAttemptsForAccount(accountId, context)) {
+            attemptsPerPayment.put(attempt.getPaymentId(), attempt);
+        }
+        final ListMultimap<UUID, RefundModelDao> refundsPerPayment = ArrayListMultimap.<UUID, RefundModelDao>create();
+        for (final RefundModelDao refund : paymentDao.getRefundsForAccount(accountId, context)) {
+            refundsPerPayment.put(refund.getPaymentId(), refund);
+        }
+
+        final List<Payment> result = new ArrayList<Payment>(payments.size());
+        for (final PaymentModelDao cur : payments) {
+            result.add(new DefaultPayment(cur, attemptsPerPayment.get(cur.getId()), refundsPerPayment.get(cur.getId())));
+        }
+        return result;
     }
 
     private List<Payment> getPayments(final List<PaymentModelDao> payments, final InternalTenantContext context) {
@@ -197,71 +228,156 @@ public class PaymentProcessor extends ProcessorBase {
     public Payment createPayment(final Account account, final UUID invoiceId, @Nullable final BigDecimal inputAmount,
                                  final InternalCallContext context, final boolean isInstantPayment, final boolean isExternalPayment)
             throws PaymentApiException {
+        final PaymentPluginApi plugin = getPaymentProviderPlugin(account, invoiceId, context, isExternalPayment);
+        final UUID paymentMethodId = getPaymentMethodId(account, invoiceId, context, isExternalPayment);
+
+        try {
+            return paymentPluginDispatcher.dispatchWithAccountLock(pluginBulkheads.getBulkhead(plugin.getName()),
+                                                                   createPaymentCallable(account, invoiceId, inputAmount, plugin, paymentMethodId, context, isInstantPayment));
+        } catch (TimeoutException e) {
+            if (isInstantPayment) {
+                throw new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_TIMEOUT, account.getId(), invoiceId);
+            } else {
+                log.warn(String.format("Payment from Account %s, Invoice %s timedout", account.getId(), invoiceId));
+                // If we don't crash, plugin thread will complete (and set the correct status)
+                // If we crash before plugin thread completes, we may end up with a UNKNOWN Payment
+                // We would like to return an error so the Bus can retry but we are limited by Guava bug
+                // swallowing exception
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Same as a non instant createPayment, except that the caller doesn't wait for the plugin
+     *
+     * @return the future payment, which fails with the PaymentApiException of the payment, if any
+     */
+    public ListenableFuture<Payment> createPaymentAsync(final Account account, final UUID invoiceId, final InternalCallContext context)
+            throws PaymentApiException, TimeoutException {
+        final PaymentPluginApi plugin = getPaymentProviderPlugin(account, invoiceId, context, false);
+        final UUID paymentMethodId = getPaymentMethodId(account, invoiceId, context, false);
+
+        return paymentPluginDispatcher.dispatchWithAccountLockAsync(pluginBulkheads.getBulkhead(plugin.getName()),
+                                                                    createPaymentCallable(account, invoiceId, null, plugin, paymentMethodId, context, false));
+    }
+
+    /**
+     * Records the payment of an invoice which could not be handed to its plugin (e.g. because the queue of the plugin was full),
+     * so that it is retried as for any other plugin failure instead of being lost.
+     *
+     * @return the payment, in PLUGIN_FAILURE (or AUTO_PAY_OFF) state, or null if there is nothing to pay
+     */
+    public Payment createPaymentForPluginFailure(final Account account, final UUID invoiceId, final InternalCallContext context)
+            throws PaymentApiException {
+        final UUID paymentMethodId = getPaymentMethodId(account, invoiceId, context, false);
+
+        return new WithAccountLock<Payment>().processAccountWithLock(locker, account.getExternalKey(), new WithAccountLockCallback<Payment>() {
+            @Override
+            public Payment doOperation() throws PaymentApiException {
+                try {
+                    final Invoice invoice = invoicePaymentApi.getInvoice(invoiceId, context.toCallContext());
+                    if (invoice.isMigrationInvoice()) {
+                        log.error("Received invoice for payment that is a migration invoice - don't know how to handle those yet: {}", invoice);
+                        return null;
+                    }
+                    if (invoice.getBalance().compareTo(BigDecimal.ZERO) <= 0) {
+                        log.info("Skipping payment for invoice {} because it has been paid", invoiceId);
+                        return null;
+                    }
+
+                    final BigDecimal requestedAmount = invoice.getBalance().setScale(2, RoundingMode.HALF_UP);
+                    if (isAccountAutoPayOff(account.getId(), context)) {
+                        return processNewPaymentForAutoPayOffWithAccountLocked(paymentMethodId, account, invoice, requestedAmount, context);
+                    }
+
+                    final PaymentModelDao payment = new PaymentModelDao(account.getId(), invoice.getId(), paymentMethodId, requestedAmount, invoice.getCurrency(), clock.getUTCNow(), PaymentStatus.PLUGIN_FAILURE);
+                    final PaymentAttemptModelDao attempt = new PaymentAttemptModelDao(account.getId(), invoice.getId(), payment.getId(), PaymentStatus.PLUGIN_FAILURE, clock.getUTCNow(), requestedAmount);
+                    paymentDao.insertPaymentWithAttempt(payment, attempt, context);
+
+                    final PaymentStatus paymentStatus = scheduleRetryOnPluginFailure(payment.getId(), context);
+                    if (paymentStatus != PaymentStatus.PLUGIN_FAILURE) {
+                        paymentDao.updateStatusForPaymentWithAttempt(payment.getId(), paymentStatus, null, null, null, null, attempt.getId(), context);
+                    }
+                    log.warn(String.format("Payment %s for account %s and invoice %s could not be handed to the plugin, status is %s",
+                                           payment.getId(), account.getId(), invoiceId, paymentStatus));
+                    return new DefaultPayment(paymentDao.getPayment(payment.getId(), context), paymentDao.getAttemptsForPayment(payment.getId(), context),
+                                              Collections.<RefundModelDao>emptyList());
+                } catch (InvoiceApiException e) {
+                    throw new PaymentApiException(e);
+                }
+            }
+        });
+    }
+
+    private PaymentPluginApi getPaymentProviderPlugin(final Account account, final UUID invoiceId, final InternalCallContext context,
+                                                      final boolean isExternalPayment) throws PaymentApiException {
         // Use the special external payment plugin to handle external payments
-        final PaymentPluginApi plugin;
-        final UUID paymentMethodId;
         try {
             if (isExternalPayment) {
-                plugin = paymentMethodProcessor.getExternalPaymentProviderPlugin(account, context);
-                paymentMethodId = paymentMethodProcessor.getExternalPaymentMethod(account, context).getId();
+                return paymentMethodProcessor.getExternalPaymentProviderPlugin(account, context);
             } else {
-                plugin = getPaymentProviderPlugin(account, context);
-                paymentMethodId = account.getPaymentMethodId();
+                return getPaymentProviderPlugin(account, context);
             }
         } catch (PaymentApiException e) {
-            // This event will be caught by overdue to refresh the overdue state, if needed.
-            // Note that at this point, we don't know the exact invoice balance (see getAndValidatePaymentAmount() below).
-            // This means that events will be posted for null and zero dollar invoices (e.g. trials).
-            final PaymentErrorInternalEvent event = new DefaultPaymentErrorEvent(account.getId(), invoiceId, null,
-                                                                         ErrorCode.PAYMENT_NO_DEFAULT_PAYMENT_METHOD.toString(), context.getUserToken(),
-                                                                         context.getAccountRecordId(), context.getTenantRecordId());
-            postPaymentEvent(event, account.getId(), context);
+            postNoDefaultPaymentMethodEvent(account, invoiceId, context);
             throw e;
         }
+    }
 
+    private UUID getPaymentMethodId(final Account account, final UUID invoiceId, final InternalCallContext context,
+                                    final boolean isExternalPayment) throws PaymentApiException {
         try {
-            return paymentPluginDispatcher.dispatchWithAccountLock(new CallableWithAccountLock<Payment>(locker,
-                    account.getExternalKey(),
-                    new WithAccountLockCallback<Payment>() {
+            return isExternalPayment ? paymentMethodProcessor.getExternalPaymentMethod(account, context).getId() : account.getPaymentMethodId();
+        } catch (PaymentApiException e) {
+            postNoDefaultPaymentMethodEvent(account, invoiceId, context);
+            throw e;
+        }
+    }
 
-                @Override
-                public Payment doOperation() throws PaymentApiException {
+    private void postNoDefaultPaymentMethodEvent(final Account account, final UUID invoiceId, final InternalCallContext context) {
+        // This event will be caught by overdue to refresh the overdue state, if needed.
+        // Note that at this point, we don't know the exact invoice balance (see getAndValidatePaymentAmount() below).
+        // This means that events will be posted for null and zero dollar invoices (e.g. trials).
+        final PaymentErrorInternalEvent event = new DefaultPaymentErrorEvent(account.getId(), invoiceId, null,
+                                                                             ErrorCode.PAYMENT_NO_DEFAULT_PAYMENT_METHOD.toString(), context.getUserToken(),
+                                                                             context.getAccountRecordId(), context.getTenantRecordId());
+        postPaymentEvent(event, account.getId(), context);
+    }
 
+    private CallableWithAccountLock<Payment> createPaymentCallable(final Account account, final UUID invoiceId, @Nullable final BigDecimal inputAmount,
+                                                                   final PaymentPluginApi plugin, final UUID paymentMethodId,
+                                                                   final InternalCallContext context, final boolean isInstantPayment) {
+        return new CallableWithAccountLock<Payment>(locker,
+                account.getExternalKey(),
+                new WithAccountLockCallback<Payment>() {
 
-                    try {
-                        final Invoice invoice = invoicePaymentApi.getInvoice(invoiceId, context.toCallContext());
+            @Override
+            public Payment doOperation() throws PaymentApiException {
 
-                        if (invoice.isMigrationInvoice()) {
-                            log.error("Received invoice for payment that is a migration invoice - don't know how to handle those yet: {}", invoice);
-                            return null;
-                        }
 
-                        final boolean isAccountAutoPayOff = isAccountAutoPayOff(account.getId(), context);
-                        setUnsaneAccount_AUTO_PAY_OFFWithAccountLock(account.getId(), paymentMethodId, isAccountAutoPayOff, context, isInstantPayment);
+                try {
+                    final Invoice invoice = invoicePaymentApi.getInvoice(invoiceId, context.toCallContext());
 
-                        final BigDecimal requestedAmount = getAndValidatePaymentAmount(invoice, inputAmount, isInstantPayment);
-                        if (!isInstantPayment && isAccountAutoPayOff) {
-                            return processNewPaymentForAutoPayOffWithAccountLocked(paymentMethodId, account, invoice, requestedAmount, context);
-                        } else {
-                            return processNewPaymentWithAccountLocked(paymentMethodId, plugin, account, invoice, requestedAmount, isInstantPayment, context);
-                        }
-                    } catch (InvoiceApiException e) {
-                        throw new PaymentApiException(e);
+                    if (invoice.isMigrationInvoice()) {
+                        log.error("Received invoice for payment that is a migration invoice - don't know how to handle those yet: {}", invoice);
+                        return null;
                     }
+
+                    final boolean isAccountAutoPayOff = isAccountAutoPayOff(account.getId(), context);
+                    setUnsaneAccount_AUTO_PAY_OFFWithAccountLock(account.getId(), paymentMethodId, isAccountAutoPayOff, context, isInstantPayment);
+
+                    final BigDecimal requestedAmount = getAndValidatePaymentAmount(invoice, inputAmount, isInstantPayment);
+                    if (!isInstantPayment && isAccountAutoPayOff) {
+                        return processNewPaymentForAutoPayOffWithAccountLocked(paymentMethodId, account, invoice, requestedAmount, context);
+                    } else {
+                        return processNewPaymentWithAccountLocked(paymentMethodId, plugin, account, invoice, requestedAmount, isInstantPayment, context);
+                    }
+                } catch (InvoiceApiException e) {
+                    throw new PaymentApiException(e);
                 }
-            }));
-        } catch (TimeoutException e) {
-            if (isInstantPayment) {
-                throw new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_TIMEOUT, account.getId(), invoiceId);
-            } else {
-                log.warn(String.format("Payment from Account %s, Invoice %s timedout", account.getId(), invoiceId));
-                // If we don't crash, plugin thread will complete (and set the correct status)
-                // If we crash before plugin thread completes, we may end up with a UNKNOWN Payment
-                // We would like to return an error so the Bus can retry but we are limited by Guava bug
-                // swallowing exception
-                return null;
             }
-        }
+        });
     }
 
     private void setUnsaneAccount_AUTO_PAY_OFFWithAccountLock(final UUID accountId, final UUID paymentMethodId, final boolean isAccountAutoPayOff,
@@ -302,20 +418,22 @@ public class PaymentProcessor extends ProcessorBase {
 
 
     public void retryAutoPayOff(final UUID paymentId, final InternalCallContext context) {
-        retryFailedPaymentInternal(paymentId, context, PaymentStatus.AUTO_PAY_OFF);
+        retryFailedPaymentInternal(paymentId, context, autoPayoffRetryService, PaymentStatus.AUTO_PAY_OFF);
     }
 
     public void retryPluginFailure(final UUID paymentId, final InternalCallContext context) {
-        retryFailedPaymentInternal(paymentId, context, PaymentStatus.PLUGIN_FAILURE);
+        retryFailedPaymentInternal(paymentId, context, pluginFailureRetryService, PaymentStatus.PLUGIN_FAILURE);
     }
 
     public void retryFailedPayment(final UUID paymentId, final InternalCallContext context) {
-        retryFailedPaymentInternal(paymentId, context, PaymentStatus.PAYMENT_FAILURE);
+        retryFailedPaymentInternal(paymentId, context, failedPaymentRetryService, PaymentStatus.PAYMENT_FAILURE);
     }
 
 
-    private void retryFailedPaymentInternal(final UUID paymentId, final InternalCallContext context, final PaymentStatus... expectedPaymentStates) {
+    private void retryFailedPaymentInternal(final UUID paymentId, final InternalCallContext context, final RetryServiceScheduler retryServiceScheduler,
+                                            final PaymentStatus... expectedPaymentStates) {
 
+        PluginBulkhead bulkhead = null;
         try {
 
             final PaymentModelDao payment = paymentDao.getPayment(paymentId, context);
@@ -332,7 +450,8 @@ public class PaymentProcessor extends ProcessorBase {
             final Account account = accountInternalApi.getAccountById(payment.getAccountId(), context);
             final PaymentPluginApi plugin = getPaymentProviderPlugin(account, context);
 
-            voidPluginDispatcher.dispatchWithAccountLock(new CallableWithAccountLock<Void>(locker,
+            bulkhead = pluginBulkheads.getBulkhead(plugin.getName());
+            voidPluginDispatcher.dispatchWithAccountLock(bulkhead, new CallableWithAccountLock<Void>(locker,
                     account.getExternalKey(),
                     new WithAccountLockCallback<Void>() {
 
@@ -371,7 +490,15 @@ public class PaymentProcessor extends ProcessorBase {
         } catch (AccountApiException e) {
             log.error(String.format("Failed to retry payment for paymentId %s", paymentId), e);
         } catch (PaymentApiException e) {
-            log.info(String.format("Failed to retry payment for paymentId %s", paymentId));
+            if (e.getCode() == ErrorCode.PAYMENT_PLUGIN_UNAVAILABLE.getCode() && bulkhead != null) {
+                // Nothing was recorded for this retry, so it doesn't count towards the maximum number of attempts:
+                // try again once the plugin accepts calls
+                final DateTime nextRetryDate = bulkhead.getCircuitBreaker().getNextCallDate();
+                log.info(String.format("Plugin %s is unavailable, rescheduling retry for payment %s on %s", bulkhead.getPluginName(), paymentId, nextRetryDate));
+                retryServiceScheduler.scheduleRetry(paymentId, nextRetryDate);
+            } else {
+                log.info(String.format("Failed to retry payment for paymentId %s", paymentId));
+            }
         } catch (TimeoutException e) {
             log.warn(String.format("Retry for payment %s timedout", paymentId));
             // STEPH we should throw some exception so NotificationQ does not clear status and retries us
@@ -423,7 +550,7 @@ public class PaymentProcessor extends ProcessorBase {
         PaymentStatus paymentStatus;
         try {
 
-            final PaymentInfoPlugin paymentPluginInfo = plugin.processPayment(account.getExternalKey(), paymentInput.getId(), attemptInput.getRequestedAmount(), context.toCallContext());
+            final PaymentInfoPlugin paymentPluginInfo = processPaymentWithPlugin(plugin, account, paymentInput, attemptInput, context);
             switch (paymentPluginInfo.getStatus()) {
             case PROCESSED:
                 // Update Payment/PaymentAttempt status
@@ -493,6 +620,35 @@ public class PaymentProcessor extends ProcessorBase {
         return new DefaultPayment(payment, allAttempts, Collections.<RefundModelDao>emptyList());
     }
 
+    private PaymentInfoPlugin processPaymentWithPlugin(final PaymentPluginApi plugin, final Account account, final PaymentModelDao paymentInput,
+                                                       final PaymentAttemptModelDao attemptInput, final InternalCallContext context) throws PaymentPluginApiException {
+        final PluginBulkhead bulkhead = pluginBulkheads.getBulkhead(plugin.getName());
+        if (!bulkhead.getCircuitBreaker().allowRequest()) {
+            // The dispatcher already fails fast when the breaker is open: we only get here if the breaker opened, or
+            // let another trial call through, in the meantime. The payment will be retried as for any other plugin failure
+            throw new PaymentPluginApiException(ErrorCode.PAYMENT_PLUGIN_UNAVAILABLE.toString(),
+                                                String.format(ErrorCode.PAYMENT_PLUGIN_UNAVAILABLE.getFormat(), plugin.getName()));
+        }
+
+        // The outcome of the call is recorded in the breaker here only: a call slower than the plugin timeout
+        // counts as a failure, even though the caller may have already given up on it
+        final long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            final PaymentInfoPlugin result = plugin.processPayment(account.getExternalKey(), paymentInput.getId(), attemptInput.getRequestedAmount(), context.toCallContext());
+            success = true;
+            return result;
+        } finally {
+            final long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            bulkhead.recordLatency(latencyMs);
+            if (success && latencyMs <= bulkhead.getTimeoutMs()) {
+                bulkhead.getCircuitBreaker().recordSuccess();
+            } else {
+                bulkhead.getCircuitBreaker().recordFailure();
+            }
+        }
+    }
+
     private PaymentStatus scheduleRetryOnPluginFailure(final UUID paymentId, final InternalTenantContext context) {
         final List<PaymentAttemptModelDao> allAttempts = paymentDao.getAttemptsForPayment(paymentId, context);
         final int retryAttempt = getNumberAttemptsInState(paymentId, allAttempts, PaymentStatus.UNKNOWN, PaymentStatus.PLUGIN_FAILURE);
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010-2011 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.ErrorCode;
+import com.ning.billing.account.api.Account;
+import com.ning.billing.account.api.AccountApiException;
+import com.ning.billing.config.PaymentConfig;
+import com.ning.billing.invoice.api.Invoice;
+import com.ning.billing.invoice.api.InvoicePaymentApi;
+import com.ning.billing.payment.api.DefaultPaymentRunSummary;
+import com.ning.billing.payment.api.Payment;
+import com.ning.billing.payment.api.PaymentApiException;
+import com.ning.billing.payment.api.PaymentRunSummary;
+import com.ning.billing.payment.api.PaymentStatus;
+import com.ning.billing.util.callcontext.CallContext;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.svcapi.account.AccountInternalApi;
+
+import com.google.inject.Inject;
+
+/**
+ * Pays all the unpaid invoices of a tenant up to a given date (e.g. at the beginning of the month).
+ * <p/>
+ * The invoices are partitioned by account: accounts are paid concurrently, up to the number of payment run threads,
+ * while the invoices of an account are paid one at a time. The number of concurrent calls to each plugin is bounded by
+ * its bulkhead.
+ */
+public class PaymentRunProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentRunProcessor.class);
+
+    private static final String PAYMENT_RUN_THREAD_PREFIX = "Payment-run-th-";
+
+    private final PaymentProcessor paymentProcessor;
+    private final InvoicePaymentApi invoicePaymentApi;
+    private final AccountInternalApi accountInternalApi;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final PaymentConfig paymentConfig;
+
+    @Inject
+    public PaymentRunProcessor(final PaymentProcessor paymentProcessor,
+                               final InvoicePaymentApi invoicePaymentApi,
+                               final AccountInternalApi accountInternalApi,
+                               final InternalCallContextFactory internalCallContextFactory,
+                               final PaymentConfig paymentConfig) {
+        this.paymentProcessor = paymentProcessor;
+        this.invoicePaymentApi = invoicePaymentApi;
+        this.accountInternalApi = accountInternalApi;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.paymentConfig = paymentConfig;
+    }
+
+    public PaymentRunSummary runPayments(final LocalDate upToDate, final CallContext context) {
+        final long startTime = System.currentTimeMillis();
+
+        final Map<UUID, List<UUID>> invoiceIdsPerAccount = new LinkedHashMap<UUID, List<UUID>>();
+        int nbInvoices = 0;
+        for (final Invoice invoice : invoicePaymentApi.getUnpaidInvoicesUpToDate(upToDate, context)) {
+            if (invoiceIdsPerAccount.get(invoice.getAccountId()) == null) {
+                invoiceIdsPerAccount.put(invoice.getAccountId(), new ArrayList<UUID>());
+            }
+            invoiceIdsPerAccount.get(invoice.getAccountId()).add(invoice.getId());
+            nbInvoices++;
+        }
+
+        final AtomicInteger nbSuccessfulPayments = new AtomicInteger(0);
+        final AtomicInteger nbFailedPayments = new AtomicInteger(0);
+        final AtomicInteger nbSkippedInvoices = new AtomicInteger(0);
+
+        if (!invoiceIdsPerAccount.isEmpty()) {
+            final int nbThreads = Math.min(paymentConfig.getPaymentRunThreads(), invoiceIdsPerAccount.size());
+            final ExecutorService executor = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread th = new Thread(r);
+                    th.setName(PAYMENT_RUN_THREAD_PREFIX + th.getId());
+                    return th;
+                }
+            });
+
+            try {
+                final List<Future<Void>> futures = new ArrayList<Future<Void>>(invoiceIdsPerAccount.size());
+                for (final UUID accountId : invoiceIdsPerAccount.keySet()) {
+                    final List<UUID> invoiceIds = invoiceIdsPerAccount.get(accountId);
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            payAccountInvoices(accountId, invoiceIds, context, nbSuccessfulPayments, nbFailedPayments, nbSkippedInvoices);
+                            return null;
+                        }
+                    }));
+                }
+
+                for (final Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        log.error("Unexpected failure during payment run", e.getCause());
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.warn("Payment run interrupted");
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        final long durationMs = System.currentTimeMillis() - startTime;
+        final PaymentRunSummary summary = new DefaultPaymentRunSummary(upToDate, invoiceIdsPerAccount.size(), nbInvoices, nbSuccessfulPayments.get(),
+                                                                       nbFailedPayments.get(), nbSkippedInvoices.get(), durationMs);
+        log.info("Payment run up to {} completed in {} ms ({} invoices/s): {}",
+                 new Object[]{upToDate, durationMs, durationMs == 0 ? nbInvoices : nbInvoices * 1000L / durationMs, summary});
+        return summary;
+    }
+
+    private void payAccountInvoices(final UUID accountId, final List<UUID> invoiceIds, final CallContext context,
+                                    final AtomicInteger nbSuccessfulPayments, final AtomicInteger nbFailedPayments, final AtomicInteger nbSkippedInvoices) {
+        final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContext(accountId, context);
+        final Account account;
+        try {
+            account = accountInternalApi.getAccountById(accountId, internalContext);
+        } catch (AccountApiException e) {
+            log.error("Failed to retrieve account {} during payment run", accountId, e);
+            nbFailedPayments.addAndGet(invoiceIds.size());
+            return;
+        }
+
+        for (final UUID invoiceId : invoiceIds) {
+            try {
+                final Payment payment = paymentProcessor.createPayment(account, invoiceId, null, internalContext, false, false);
+                if (payment == null || payment.getPaymentStatus() == PaymentStatus.AUTO_PAY_OFF) {
+                    // Migration invoice, AUTO_PAY_OFF account, or the plugin timed out
+                    nbSkippedInvoices.incrementAndGet();
+                } else if (payment.getPaymentStatus() == PaymentStatus.SUCCESS) {
+                    nbSuccessfulPayments.incrementAndGet();
+                } else {
+                    nbFailedPayments.incrementAndGet();
+                }
+            } catch (PaymentApiException e) {
+                if (e.getCode() == ErrorCode.PAYMENT_NULL_INVOICE.getCode()) {
+                    // Paid in the meantime
+                    nbSkippedInvoices.incrementAndGet();
+                } else if (e.getCode() == ErrorCode.PAYMENT_PLUGIN_UNAVAILABLE.getCode()) {
+                    // Nothing was recorded, the invoice will be picked up by the next run
+                    nbSkippedInvoices.incrementAndGet();
+                } else {
+                    log.warn("Failed to pay invoice {} of account {} during payment run: {}", new Object[]{invoiceId, accountId, e.toString()});
+                    nbFailedPayments.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -389,4 +389,9 @@ public class AuditedPaymentDao implements PaymentDao {
     public List<PaymentAttemptModelDao> getAttemptsForPayment(final UUID paymentId, final InternalTenantContext context) {
         return paymentAttemptSqlDao.getPaymentAttempts(paymentId.toString(), context);
     }
+
+    @Override
+    public List<PaymentAttemptModelDao> getAttemptsForAccount(final UUID accountId, final InternalTenantContext context) {
+        return paymentAttemptSqlDao.getPaymentAttemptsForAccount(accountId.toString(), context);
+    }
 }
@@ -68,6 +68,10 @@ public interface PaymentAttemptSqlDao extends Transactional<PaymentAttemptSqlDao
     List<PaymentAttemptModelDao> getPaymentAttempts(@Bind("paymentId") final String paymentId,
                                                     @InternalTenantContextBinder final InternalTenantContext context);
 
+    @SqlQuery
+    List<PaymentAttemptModelDao> getPaymentAttemptsForAccount(@Bind("accountId") final String accountId,
+                                                              @InternalTenantContextBinder final InternalTenantContext context);
+
     @Override
     @SqlUpdate
     void insertHistoryFromTransaction(@PaymentAttemptHistoryBinder final EntityHistory<PaymentAttemptModelDao> payment,
@@ -47,6 +47,8 @@ public interface PaymentDao {
 
     public List<PaymentAttemptModelDao> getAttemptsForPayment(UUID paymentId, InternalTenantContext context);
 
+    public List<PaymentAttemptModelDao> getAttemptsForAccount(UUID accountId, InternalTenantContext context);
+
     public RefundModelDao insertRefund(RefundModelDao refundInfo, InternalCallContext context);
 
     public void updateRefundStatus(UUID refundId, RefundStatus status, InternalCallContext context);
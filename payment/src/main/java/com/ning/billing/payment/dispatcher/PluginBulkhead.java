@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.dispatcher;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Threads, queue, timeout and circuit breaker dedicated to a single payment plugin, so that a slow or failing plugin
+ * doesn't hold up the calls to the other ones.
+ */
+public class PluginBulkhead {
+
+    private static final String PLUGIN_THREAD_PREFIX = "Plugin-th-";
+    private static final String PLUGIN_TIMEOUT_THREAD_PREFIX = "Plugin-timeout-th-";
+    private static final int LATENCY_WINDOW_SIZE = 1024;
+
+    private final String pluginName;
+    private final ThreadPoolExecutor executor;
+    private final ListeningExecutorService listeningExecutor;
+    private final ScheduledExecutorService timeoutExecutor;
+    private final long timeoutMs;
+    private final PluginCircuitBreaker circuitBreaker;
+
+    // Latencies of the last plugin calls, in ms
+    private final long[] latencies = new long[LATENCY_WINDOW_SIZE];
+    private int nbLatencies = 0;
+    private int nextLatency = 0;
+
+    public PluginBulkhead(final String pluginName, final int nbThreads, final int queueSize, final long timeoutMs,
+                          final PluginCircuitBreaker circuitBreaker) {
+        this.pluginName = pluginName;
+        this.timeoutMs = timeoutMs;
+        this.circuitBreaker = circuitBreaker;
+        this.executor = new ThreadPoolExecutor(nbThreads, nbThreads, 0L, TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<Runnable>(queueSize),
+                                               new ThreadFactory() {
+                                                   private final AtomicInteger threadNb = new AtomicInteger(0);
+
+                                                   @Override
+                                                   public Thread newThread(final Runnable r) {
+                                                       return new Thread(r, PLUGIN_THREAD_PREFIX + pluginName + "-" + threadNb.incrementAndGet());
+                                                   }
+                                               });
+        this.listeningExecutor = MoreExecutors.listeningDecorator(executor);
+        this.timeoutExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, PLUGIN_TIMEOUT_THREAD_PREFIX + pluginName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @throws RejectedExecutionException if the queue of the plugin is full
+     */
+    public <T> ListenableFuture<T> submit(final Callable<T> task) throws RejectedExecutionException {
+        return listeningExecutor.submit(task);
+    }
+
+    /**
+     * Same as submit, but the returned future fails with a TimeoutException if the task doesn't complete within
+     * the plugin timeout. As with a synchronous call, the task itself keeps running on the plugin thread.
+     *
+     * @throws RejectedExecutionException if the queue of the plugin is full
+     */
+    public <T> ListenableFuture<T> submitWithTimeout(final Callable<T> task) throws RejectedExecutionException {
+        final ListenableFuture<T> future = submit(task);
+        final SettableFuture<T> result = SettableFuture.<T>create();
+        final ScheduledFuture<?> timeout = timeoutExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                result.setException(new TimeoutException("Call to payment plugin " + pluginName + " timed out after " + timeoutMs + " ms"));
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        Futures.addCallback(future, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(final T value) {
+                timeout.cancel(false);
+                result.set(value);
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                timeout.cancel(false);
+                result.setException(t);
+            }
+        });
+        return result;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        timeoutExecutor.shutdownNow();
+    }
+
+    public synchronized void recordLatency(final long latencyMs) {
+        latencies[nextLatency] = latencyMs;
+        nextLatency = (nextLatency + 1) % LATENCY_WINDOW_SIZE;
+        if (nbLatencies < LATENCY_WINDOW_SIZE) {
+            nbLatencies++;
+        }
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency, in ms, of the given percentile of the last plugin calls (0 if there was none)
+     */
+    public long getLatencyPercentile(final double percentile) {
+        final long[] sortedLatencies;
+        synchronized (this) {
+            sortedLatencies = Arrays.copyOf(latencies, nbLatencies);
+        }
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+
+        Arrays.sort(sortedLatencies);
+        final int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.min(Math.max(index, 0), sortedLatencies.length - 1)];
+    }
+
+    public String getPluginName() {
+        return pluginName;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public PluginCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public PluginCircuitBreaker.State getCircuitBreakerState() {
+        return circuitBreaker.getState();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+}
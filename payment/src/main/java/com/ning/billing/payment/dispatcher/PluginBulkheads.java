@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.dispatcher;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.ning.billing.config.PaymentConfig;
+import com.ning.billing.util.clock.Clock;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+
+/**
+ * Bulkheads of the payment plugins, created the first time each plugin is called, with the settings of that plugin.
+ */
+public class PluginBulkheads {
+
+    private final PaymentConfig config;
+    private final Clock clock;
+    private final ConcurrentMap<String, PluginBulkhead> bulkheads = new ConcurrentHashMap<String, PluginBulkhead>();
+
+    @Inject
+    public PluginBulkheads(final PaymentConfig config, final Clock clock) {
+        this.config = config;
+        this.clock = clock;
+    }
+
+    public PluginBulkhead getBulkhead(final String pluginName) {
+        final PluginBulkhead bulkhead = bulkheads.get(pluginName);
+        if (bulkhead != null) {
+            return bulkhead;
+        }
+
+        synchronized (bulkheads) {
+            if (bulkheads.get(pluginName) == null) {
+                final PluginCircuitBreaker circuitBreaker = new PluginCircuitBreaker(pluginName, clock, config.getPluginBreakerFailureThreshold(pluginName),
+                                                                                     config.getPluginBreakerOpenTime(pluginName).getMillis());
+                bulkheads.put(pluginName, new PluginBulkhead(pluginName, config.getPluginThreads(pluginName), config.getPluginQueueSize(pluginName),
+                                                             config.getPluginTimeout(pluginName).getMillis(), circuitBreaker));
+            }
+            return bulkheads.get(pluginName);
+        }
+    }
+
+    /**
+     * @return the bulkheads created so far, keyed by plugin name
+     */
+    public Map<String, PluginBulkhead> getBulkheads() {
+        return ImmutableMap.<String, PluginBulkhead>copyOf(bulkheads);
+    }
+
+    public void shutdown() {
+        synchronized (bulkheads) {
+            for (final PluginBulkhead bulkhead : bulkheads.values()) {
+                bulkhead.shutdown();
+            }
+            bulkheads.clear();
+        }
+    }
+}
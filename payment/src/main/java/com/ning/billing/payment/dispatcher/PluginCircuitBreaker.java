@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.dispatcher;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.util.clock.Clock;
+
+/**
+ * Tracks the failures of a payment plugin: after too many consecutive failures, the plugin is considered unavailable
+ * (OPEN) and calls are not let through until the open time has elapsed. A single call is then let through (HALF_OPEN),
+ * which closes the breaker if it succeeds or opens it again if it fails.
+ */
+public class PluginCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(PluginCircuitBreaker.class);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String pluginName;
+    private final Clock clock;
+    private final int failureThreshold;
+    private final long openTimeMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    // When OPEN, until when calls are rejected; when HALF_OPEN, when the trial call was let through
+    private DateTime stateDate = null;
+
+    public PluginCircuitBreaker(final String pluginName, final Clock clock, final int failureThreshold, final long openTimeMs) {
+        this.pluginName = pluginName;
+        this.clock = clock;
+        this.failureThreshold = failureThreshold;
+        this.openTimeMs = openTimeMs;
+    }
+
+    /**
+     * @return true if the plugin can be called, false to fail fast
+     */
+    public synchronized boolean allowRequest() {
+        final DateTime now = clock.getUTCNow();
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now.isBefore(stateDate)) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                stateDate = now;
+                return true;
+            case HALF_OPEN:
+                // Only one trial call at a time, unless the previous one never reported back
+                if (now.isBefore(stateDate.plus(openTimeMs))) {
+                    return false;
+                }
+                stateDate = now;
+                return true;
+            default:
+                throw new IllegalStateException("Unexpected state " + state);
+        }
+    }
+
+    /**
+     * @return true if calls are currently rejected
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && clock.getUTCNow().isBefore(stateDate);
+    }
+
+    /**
+     * Same as allowRequest, except that the trial call is not let through
+     *
+     * @return true if allowRequest would currently fail fast
+     */
+    public synchronized boolean isRejectingCalls() {
+        final DateTime now = clock.getUTCNow();
+        switch (state) {
+            case CLOSED:
+                return false;
+            case OPEN:
+                return now.isBefore(stateDate);
+            case HALF_OPEN:
+                return now.isBefore(stateDate.plus(openTimeMs));
+            default:
+                throw new IllegalStateException("Unexpected state " + state);
+        }
+    }
+
+    /**
+     * @return the date from which calls may be let through again (now, if they are not rejected)
+     */
+    public synchronized DateTime getNextCallDate() {
+        final DateTime now = clock.getUTCNow();
+        final DateTime nextCallDate;
+        switch (state) {
+            case OPEN:
+                nextCallDate = stateDate;
+                break;
+            case HALF_OPEN:
+                nextCallDate = stateDate.plus(openTimeMs);
+                break;
+            default:
+                nextCallDate = now;
+        }
+        return nextCallDate.isAfter(now) ? nextCallDate : now;
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Closing circuit breaker for payment plugin {}", pluginName);
+        }
+        state = State.CLOSED;
+        stateDate = null;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            log.warn("Opening circuit breaker for payment plugin {} after {} consecutive failures", pluginName, consecutiveFailures);
+            state = State.OPEN;
+            stateDate = clock.getUTCNow().plus(openTimeMs);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+}
@@ -19,6 +19,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -28,6 +29,8 @@ import org.slf4j.LoggerFactory;
 import com.ning.billing.ErrorCode;
 import com.ning.billing.payment.api.PaymentApiException;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 public class PluginDispatcher<T> {
 
     private static final Logger log = LoggerFactory.getLogger(PluginDispatcher.class);
@@ -53,16 +56,78 @@ public class PluginDispatcher<T> {
             final Future<T> future = executor.submit(task);
             return future.get(timeout, unit);
         } catch (ExecutionException e) {
-            if (e.getCause() instanceof PaymentApiException) {
-                throw (PaymentApiException) e.getCause();
-            } else {
-                throw new PaymentApiException(ErrorCode.PAYMENT_INTERNAL_ERROR, e.getMessage());
-            }
+            throw toPaymentApiException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PaymentApiException(ErrorCode.PAYMENT_INTERNAL_ERROR, e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the task on the threads of the plugin and waits for it, up to the plugin timeout.
+     * <p/>
+     * The outcome of the plugin call is recorded in the breaker by the task itself, once the call returns (a call
+     * slower than the timeout counts as a failure); only a call which never ran, because the queue was full, is
+     * recorded here.
+     *
+     * @throws PaymentApiException PAYMENT_PLUGIN_UNAVAILABLE if the circuit breaker of the plugin rejects calls: the
+     *                             task is not run at all, so that the caller can retry later without having taken
+     *                             the account lock or recorded anything
+     */
+    public T dispatchWithAccountLock(final PluginBulkhead bulkhead, final Callable<T> task)
+            throws PaymentApiException, TimeoutException {
+        checkPluginAvailable(bulkhead);
+
+        final Future<T> future = submit(bulkhead, task, false);
+        try {
+            return future.get(bulkhead.getTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw toPaymentApiException(e);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new PaymentApiException(ErrorCode.PAYMENT_INTERNAL_ERROR, e.getMessage());
         }
     }
 
+    /**
+     * Runs the task on the threads of the plugin, without waiting for it.
+     *
+     * @return the future result of the task, which fails with the PaymentApiException thrown by the task, if any,
+     *         or with a TimeoutException if the task doesn't complete within the plugin timeout
+     * @throws PaymentApiException PAYMENT_PLUGIN_UNAVAILABLE if the circuit breaker of the plugin rejects calls (the
+     *                             task is not run)
+     * @throws TimeoutException    if the queue of the plugin is full
+     */
+    public ListenableFuture<T> dispatchWithAccountLockAsync(final PluginBulkhead bulkhead, final Callable<T> task)
+            throws PaymentApiException, TimeoutException {
+        checkPluginAvailable(bulkhead);
+
+        return submit(bulkhead, task, true);
+    }
+
+    private void checkPluginAvailable(final PluginBulkhead bulkhead) throws PaymentApiException {
+        if (bulkhead.getCircuitBreaker().isRejectingCalls()) {
+            throw new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_UNAVAILABLE, bulkhead.getPluginName());
+        }
+    }
+
+    private ListenableFuture<T> submit(final PluginBulkhead bulkhead, final Callable<T> task, final boolean withTimeout) throws TimeoutException {
+        try {
+            return withTimeout ? bulkhead.<T>submitWithTimeout(task) : bulkhead.<T>submit(task);
+        } catch (RejectedExecutionException e) {
+            // The plugin doesn't keep up, don't make the caller wait any longer
+            bulkhead.getCircuitBreaker().recordFailure();
+            log.warn("Queue for payment plugin {} is full, rejecting call", bulkhead.getPluginName());
+            throw new TimeoutException("Queue for payment plugin " + bulkhead.getPluginName() + " is full");
+        }
+    }
+
+    private PaymentApiException toPaymentApiException(final ExecutionException e) {
+        if (e.getCause() instanceof PaymentApiException) {
+            return (PaymentApiException) e.getCause();
+        } else {
+            return new PaymentApiException(ErrorCode.PAYMENT_INTERNAL_ERROR, e.getMessage());
+        }
+    }
 
 }
@@ -26,6 +26,7 @@ import com.ning.billing.payment.api.PaymentApi;
 import com.ning.billing.payment.api.PaymentService;
 import com.ning.billing.payment.bus.InvoiceHandler;
 import com.ning.billing.payment.bus.TagHandler;
+import com.ning.billing.payment.dispatcher.PluginBulkheads;
 import com.ning.billing.payment.retry.AutoPayRetryService;
 import com.ning.billing.payment.retry.FailedPaymentRetryService;
 import com.ning.billing.payment.retry.PluginFailureRetryService;
@@ -46,6 +47,7 @@ public class DefaultPaymentService implements PaymentService {
     private final FailedPaymentRetryService failedRetryService;
     private final PluginFailureRetryService timedoutRetryService;
     private final AutoPayRetryService autoPayoffRetryService;
+    private final PluginBulkheads pluginBulkheads;
 
     @Inject
     public DefaultPaymentService(final InvoiceHandler invoiceHandler,
@@ -53,7 +55,8 @@ public class DefaultPaymentService implements PaymentService {
             final PaymentApi api, final InternalBus eventBus,
             final FailedPaymentRetryService failedRetryService,
             final PluginFailureRetryService timedoutRetryService,
-            final AutoPayRetryService autoPayoffRetryService) {
+            final AutoPayRetryService autoPayoffRetryService,
+            final PluginBulkheads pluginBulkheads) {
         this.invoiceHandler = invoiceHandler;
         this.tagHandler = tagHandler;
         this.eventBus = eventBus;
@@ -61,6 +64,7 @@ public class DefaultPaymentService implements PaymentService {
         this.failedRetryService = failedRetryService;
         this.timedoutRetryService = timedoutRetryService;
         this.autoPayoffRetryService = autoPayoffRetryService;
+        this.pluginBulkheads = pluginBulkheads;
     }
 
     @Override
@@ -97,6 +101,7 @@ public class DefaultPaymentService implements PaymentService {
         failedRetryService.stop();
         timedoutRetryService.stop();
         autoPayoffRetryService.stop();
+        pluginBulkheads.shutdown();
     }
 
     @Override
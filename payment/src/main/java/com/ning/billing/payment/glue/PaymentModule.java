@@ -33,9 +33,11 @@ import com.ning.billing.payment.bus.InvoiceHandler;
 import com.ning.billing.payment.bus.TagHandler;
 import com.ning.billing.payment.core.PaymentMethodProcessor;
 import com.ning.billing.payment.core.PaymentProcessor;
+import com.ning.billing.payment.core.PaymentRunProcessor;
 import com.ning.billing.payment.core.RefundProcessor;
 import com.ning.billing.payment.dao.AuditedPaymentDao;
 import com.ning.billing.payment.dao.PaymentDao;
+import com.ning.billing.payment.dispatcher.PluginBulkheads;
 import com.ning.billing.payment.provider.PaymentProviderPluginRegistry;
 import com.ning.billing.payment.retry.AutoPayRetryService;
 import com.ning.billing.payment.retry.AutoPayRetryService.AutoPayRetryServiceScheduler;
@@ -96,7 +98,9 @@ public class PaymentModule extends AbstractModule {
             }
         });
         bind(ExecutorService.class).annotatedWith(Names.named(PLUGIN_EXECUTOR_NAMED)).toInstance(pluginExecutorService);
+        bind(PluginBulkheads.class).asEagerSingleton();
         bind(PaymentProcessor.class).asEagerSingleton();
+        bind(PaymentRunProcessor.class).asEagerSingleton();
         bind(RefundProcessor.class).asEagerSingleton();
         bind(PaymentMethodProcessor.class).asEagerSingleton();
     }
@@ -42,6 +42,8 @@ import com.ning.billing.payment.api.Payment.PaymentAttempt;
 import com.ning.billing.payment.api.PaymentApiException;
 import com.ning.billing.payment.api.PaymentStatus;
 import com.ning.billing.payment.core.PaymentProcessor;
+import com.ning.billing.payment.dispatcher.PluginBulkheads;
+import com.ning.billing.payment.dispatcher.PluginCircuitBreaker;
 import com.ning.billing.payment.glue.DefaultPaymentService;
 import com.ning.billing.payment.glue.PaymentTestModuleWithMocks;
 import com.ning.billing.payment.provider.MockPaymentProviderPlugin;
@@ -78,6 +80,8 @@ public class TestRetryService extends PaymentTestSuite {
     private FailedPaymentRetryService retryService;
     @Inject
     private PluginFailureRetryService pluginRetryService;
+    @Inject
+    private PluginBulkheads pluginBulkheads;
 
     @Inject
     private ClockMock clock;
@@ -142,6 +146,85 @@ public class TestRetryService extends PaymentTestSuite {
         testSchedulesRetryInternal(paymentConfig.getPaymentRetryDays().size() + 1, FailureType.PAYMENT_FAILURE);
     }
 
+    @Test(groups = "fast")
+    public void testPluginFailureRecordedWithoutPluginCallIsRetried() throws Exception {
+        final Account account = testHelper.createTestAccount("yiyi.gmail.com", true);
+        final Invoice invoice = testHelper.createTestInvoice(account, clock.getUTCToday(), Currency.USD, callContext);
+        final BigDecimal amount = new BigDecimal("10.00");
+        final LocalDate startDate = clock.getUTCToday();
+        invoice.addInvoiceItem(new MockRecurringInvoiceItem(invoice.getId(),
+                                                            account.getId(),
+                                                            UUID.randomUUID(),
+                                                            UUID.randomUUID(),
+                                                            "test plan", "test phase",
+                                                            startDate,
+                                                            startDate.plusMonths(1),
+                                                            amount,
+                                                            new BigDecimal("1.0"),
+                                                            Currency.USD));
+
+        // As when the queue of the plugin is full: the payment is recorded without calling the plugin
+        final Payment failedPayment = paymentProcessor.createPaymentForPluginFailure(account, invoice.getId(), internalCallContext);
+        assertEquals(failedPayment.getPaymentStatus(), PaymentStatus.PLUGIN_FAILURE);
+        assertEquals(failedPayment.getAmount().compareTo(amount), 0);
+
+        clock.addDays(1);
+        await().atMost(3, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return getPaymentForInvoice(invoice.getId()).getPaymentStatus() == PaymentStatus.SUCCESS;
+            }
+        });
+        assertEquals(getPaymentForInvoice(invoice.getId()).getAttempts().size(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testRetryIsRescheduledWhilePluginIsUnavailable() throws Exception {
+        final Account account = testHelper.createTestAccount("yiyi.gmail.com", true);
+        final Invoice invoice = testHelper.createTestInvoice(account, clock.getUTCToday(), Currency.USD, callContext);
+        final BigDecimal amount = new BigDecimal("10.00");
+        final LocalDate startDate = clock.getUTCToday();
+        invoice.addInvoiceItem(new MockRecurringInvoiceItem(invoice.getId(),
+                                                            account.getId(),
+                                                            UUID.randomUUID(),
+                                                            UUID.randomUUID(),
+                                                            "test plan", "test phase",
+                                                            startDate,
+                                                            startDate.plusMonths(1),
+                                                            amount,
+                                                            new BigDecimal("1.0"),
+                                                            Currency.USD));
+
+        final Payment failedPayment = paymentProcessor.createPaymentForPluginFailure(account, invoice.getId(), internalCallContext);
+        assertEquals(failedPayment.getAttempts().size(), 1);
+
+        final String pluginName = mockPaymentProviderPlugin.getName();
+        final PluginCircuitBreaker circuitBreaker = pluginBulkheads.getBulkhead(pluginName).getCircuitBreaker();
+        try {
+            for (int i = 0; i < paymentConfig.getPluginBreakerFailureThreshold(pluginName); i++) {
+                circuitBreaker.recordFailure();
+            }
+            assertTrue(circuitBreaker.isRejectingCalls());
+
+            // The retry fails fast: no new attempt is recorded, so it doesn't count towards the maximum number of retries
+            paymentProcessor.retryPluginFailure(failedPayment.getId(), internalCallContext);
+            final Payment payment = getPaymentForInvoice(invoice.getId());
+            assertEquals(payment.getPaymentStatus(), PaymentStatus.PLUGIN_FAILURE);
+            assertEquals(payment.getAttempts().size(), 1);
+        } finally {
+            circuitBreaker.recordSuccess();
+        }
+
+        clock.addDays(1);
+        await().atMost(3, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return getPaymentForInvoice(invoice.getId()).getPaymentStatus() == PaymentStatus.SUCCESS;
+            }
+        });
+        assertEquals(getPaymentForInvoice(invoice.getId()).getAttempts().size(), 2);
+    }
+
     private void testSchedulesRetryInternal(final int maxTries, final FailureType failureType) throws Exception {
 
         final Account account = testHelper.createTestAccount("yiyi.gmail.com", true);
@@ -23,6 +23,7 @@ import static org.testng.Assert.fail;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -43,12 +44,14 @@ import com.ning.billing.invoice.api.Invoice;
 import com.ning.billing.invoice.api.InvoicePaymentApi;
 import com.ning.billing.mock.glue.MockClockModule;
 import com.ning.billing.mock.glue.MockJunctionModule;
+import com.ning.billing.payment.MockInvoice;
 import com.ning.billing.payment.MockRecurringInvoiceItem;
 import com.ning.billing.payment.PaymentTestSuite;
 import com.ning.billing.payment.TestHelper;
 import com.ning.billing.payment.api.Payment.PaymentAttempt;
 import com.ning.billing.payment.glue.PaymentTestModuleWithMocks;
 import com.ning.billing.payment.provider.DefaultNoOpPaymentMethodPlugin;
+import com.ning.billing.util.callcontext.TenantContext;
 import com.ning.billing.util.clock.Clock;
 import com.ning.billing.util.glue.CallContextModule;
 import com.ning.billing.util.svcapi.account.AccountInternalApi;
@@ -172,6 +175,42 @@ public class TestPaymentApi extends PaymentTestSuite {
         }
     }
 
+    @Test(groups = "fast")
+    public void testPaymentRun() throws Exception {
+        final LocalDate now = clock.getUTCToday();
+
+        final List<Invoice> invoices = new ArrayList<Invoice>();
+        for (int i = 0; i < 3; i++) {
+            final Invoice invoice = new MockInvoice(account.getId(), now, now, Currency.USD);
+            invoice.addInvoiceItem(new MockRecurringInvoiceItem(invoice.getId(), account.getId(),
+                                                                UUID.randomUUID(),
+                                                                UUID.randomUUID(),
+                                                                "test plan", "test phase",
+                                                                now,
+                                                                now.plusMonths(1),
+                                                                new BigDecimal("10.0"),
+                                                                new BigDecimal("1.0"),
+                                                                Currency.USD));
+            Mockito.when(invoicePaymentApi.getInvoice(Mockito.eq(invoice.getId()), Mockito.<TenantContext>any())).thenReturn(invoice);
+            invoices.add(invoice);
+        }
+        Mockito.when(invoicePaymentApi.getUnpaidInvoicesUpToDate(Mockito.eq(now), Mockito.<TenantContext>any())).thenReturn(invoices);
+
+        final PaymentRunSummary summary = paymentApi.runPayments(now, callContext);
+        assertEquals(summary.getUpToDate(), now);
+        assertEquals(summary.getNbAccounts(), 1);
+        assertEquals(summary.getNbInvoices(), 3);
+        assertEquals(summary.getNbSuccessfulPayments(), 3);
+        assertEquals(summary.getNbFailedPayments(), 0);
+        assertEquals(summary.getNbSkippedInvoices(), 0);
+
+        for (final Invoice invoice : invoices) {
+            final List<Payment> payments = paymentApi.getInvoicePayments(invoice.getId(), callContext);
+            assertEquals(payments.size(), 1);
+            assertEquals(payments.get(0).getPaymentStatus(), PaymentStatus.SUCCESS);
+        }
+    }
+
     @Test(groups = "fast")
     public void testPaymentMethods() throws Exception {
         List<PaymentMethod> methods = paymentApi.getPaymentMethods(account, false, callContext);
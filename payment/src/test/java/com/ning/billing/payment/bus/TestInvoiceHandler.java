@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.payment.bus;
+
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.ErrorCode;
+import com.ning.billing.account.api.Account;
+import com.ning.billing.payment.PaymentTestSuite;
+import com.ning.billing.payment.api.Payment;
+import com.ning.billing.payment.api.PaymentApiException;
+import com.ning.billing.payment.core.PaymentProcessor;
+import com.ning.billing.util.callcontext.CallOrigin;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalCallContextFactory;
+import com.ning.billing.util.callcontext.UserType;
+import com.ning.billing.util.events.InvoiceCreationInternalEvent;
+import com.ning.billing.util.svcapi.account.AccountInternalApi;
+
+import com.google.common.util.concurrent.Futures;
+
+public class TestInvoiceHandler extends PaymentTestSuite {
+
+    private final UUID accountId = UUID.randomUUID();
+    private final UUID invoiceId = UUID.randomUUID();
+
+    private Account account;
+    private InvoiceCreationInternalEvent event;
+    private PaymentProcessor paymentProcessor;
+    private InvoiceHandler invoiceHandler;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        account = Mockito.mock(Account.class);
+        Mockito.when(account.getId()).thenReturn(accountId);
+
+        event = Mockito.mock(InvoiceCreationInternalEvent.class);
+        Mockito.when(event.getAccountId()).thenReturn(accountId);
+        Mockito.when(event.getInvoiceId()).thenReturn(invoiceId);
+        Mockito.when(event.getTenantRecordId()).thenReturn(internalCallContext.getTenantRecordId());
+        Mockito.when(event.getAccountRecordId()).thenReturn(internalCallContext.getAccountRecordId());
+
+        final AccountInternalApi accountApi = Mockito.mock(AccountInternalApi.class);
+        Mockito.when(accountApi.getAccountById(accountId, internalCallContext)).thenReturn(account);
+
+        final InternalCallContextFactory internalCallContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(internalCallContextFactory.createInternalCallContext(Mockito.<Long>any(), Mockito.<Long>any(), Mockito.anyString(),
+                                                                          Mockito.<CallOrigin>any(), Mockito.<UserType>any(), Mockito.<UUID>any()))
+               .thenReturn(internalCallContext);
+
+        paymentProcessor = Mockito.mock(PaymentProcessor.class);
+        invoiceHandler = new InvoiceHandler(accountApi, paymentProcessor, internalCallContextFactory);
+    }
+
+    @Test(groups = "fast")
+    public void testFullPluginQueueRecordsPluginFailure() throws Exception {
+        Mockito.when(paymentProcessor.createPaymentAsync(account, invoiceId, internalCallContext))
+               .thenThrow(new TimeoutException("Queue for payment plugin test-plugin is full"));
+
+        invoiceHandler.processInvoiceEvent(event);
+
+        // The payment must not be lost: it is recorded so that the plugin failure retry service picks it up
+        Mockito.verify(paymentProcessor).createPaymentForPluginFailure(account, invoiceId, internalCallContext);
+    }
+
+    @Test(groups = "fast")
+    public void testUnavailablePluginRecordsPluginFailure() throws Exception {
+        Mockito.when(paymentProcessor.createPaymentAsync(account, invoiceId, internalCallContext))
+               .thenThrow(new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_UNAVAILABLE, "test-plugin"));
+
+        invoiceHandler.processInvoiceEvent(event);
+
+        Mockito.verify(paymentProcessor).createPaymentForPluginFailure(account, invoiceId, internalCallContext);
+    }
+
+    @Test(groups = "fast")
+    public void testPluginTimeoutLeavesPaymentToPluginThread() throws Exception {
+        Mockito.when(paymentProcessor.createPaymentAsync(account, invoiceId, internalCallContext))
+               .thenReturn(Futures.<Payment>immediateFailedFuture(new TimeoutException("Call to payment plugin test-plugin timed out")));
+
+        invoiceHandler.processInvoiceEvent(event);
+
+        // The payment was handed to the plugin, which will set its final status
+        Mockito.verify(paymentProcessor, Mockito.never()).createPaymentForPluginFailure(Mockito.<Account>any(), Mockito.<UUID>any(),
+                                                                                        Mockito.<InternalCallContext>any());
+    }
+}
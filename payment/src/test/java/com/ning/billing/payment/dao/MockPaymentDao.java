@@ -118,6 +118,20 @@ public class MockPaymentDao implements PaymentDao {
         return result;
     }
 
+    @Override
+    public List<PaymentAttemptModelDao> getAttemptsForAccount(final UUID accountId, final InternalTenantContext context) {
+        final List<PaymentAttemptModelDao> result = new ArrayList<PaymentAttemptModelDao>();
+        synchronized (this) {
+            for (final PaymentAttemptModelDao cur : attempts.values()) {
+                final PaymentModelDao payment = payments.get(cur.getPaymentId());
+                if (payment != null && payment.getAccountId().equals(accountId)) {
+                    result.add(cur);
+                }
+            }
+        }
+        return result;
+    }
+
     private final List<PaymentMethodModelDao> paymentMethods = new LinkedList<PaymentMethodModelDao>();
 
     @Override
@@ -42,6 +42,7 @@ import com.ning.billing.util.clock.DefaultClock;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 public class TestPaymentDao extends PaymentTestSuiteWithEmbeddedDB {
@@ -212,6 +213,34 @@ public class TestPaymentDao extends PaymentTestSuiteWithEmbeddedDB {
 
     }
 
+    @Test(groups = "slow")
+    public void testAttemptsForAccount() {
+        final UUID accountId = UUID.randomUUID();
+        final UUID otherAccountId = UUID.randomUUID();
+        final UUID paymentMethodId = UUID.randomUUID();
+        final BigDecimal amount = new BigDecimal(13);
+        final Currency currency = Currency.USD;
+
+        final PaymentModelDao firstPayment = new PaymentModelDao(accountId, UUID.randomUUID(), paymentMethodId, amount, currency, clock.getUTCNow());
+        final PaymentAttemptModelDao firstAttempt = new PaymentAttemptModelDao(accountId, firstPayment.getInvoiceId(), firstPayment.getId(), clock.getUTCNow(), amount);
+        paymentDao.insertPaymentWithAttempt(firstPayment, firstAttempt, internalCallContext);
+
+        final PaymentModelDao secondPayment = new PaymentModelDao(accountId, UUID.randomUUID(), paymentMethodId, amount, currency, clock.getUTCNow());
+        final PaymentAttemptModelDao secondAttempt = new PaymentAttemptModelDao(accountId, secondPayment.getInvoiceId(), secondPayment.getId(), clock.getUTCNow(), amount);
+        paymentDao.insertPaymentWithAttempt(secondPayment, secondAttempt, internalCallContext);
+
+        final PaymentModelDao otherPayment = new PaymentModelDao(otherAccountId, UUID.randomUUID(), paymentMethodId, amount, currency, clock.getUTCNow());
+        final PaymentAttemptModelDao otherAttempt = new PaymentAttemptModelDao(otherAccountId, otherPayment.getInvoiceId(), otherPayment.getId(), clock.getUTCNow(), amount);
+        paymentDao.insertPaymentWithAttempt(otherPayment, otherAttempt, internalCallContext);
+
+        final List<PaymentAttemptModelDao> attempts = paymentDao.getAttemptsForAccount(accountId, internalCallContext);
+        assertEquals(attempts.size(), 2);
+        for (final PaymentAttemptModelDao attempt : attempts) {
+            assertEquals(attempt.getAccountId(), accountId);
+            assertTrue(attempt.getId().equals(firstAttempt.getId()) || attempt.getId().equals(secondAttempt.getId()));
+        }
+    }
+
     @Test(groups = "slow")
     public void testNewAttempt() {
         final UUID accountId = UUID.randomUUID();
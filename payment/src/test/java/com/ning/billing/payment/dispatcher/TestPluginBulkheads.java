@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.dispatcher;
+
+import java.util.Properties;
+
+import org.skife.config.ConfigurationObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.config.PaymentConfig;
+import com.ning.billing.payment.PaymentTestSuite;
+import com.ning.billing.util.clock.ClockMock;
+
+public class TestPluginBulkheads extends PaymentTestSuite {
+
+    private PluginBulkheads bulkheads;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("killbill.payment.plugin.timeout", "10s");
+        properties.setProperty("killbill.payment.plugin.slow-plugin.timeout", "2m");
+        properties.setProperty("killbill.payment.plugin.slow-plugin.breaker.failures", "20");
+        final PaymentConfig config = new ConfigurationObjectFactory(properties).build(PaymentConfig.class);
+        bulkheads = new PluginBulkheads(config, new ClockMock());
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() throws Exception {
+        bulkheads.shutdown();
+    }
+
+    @Test(groups = "fast")
+    public void testSettingsPerPlugin() throws Exception {
+        final PluginBulkhead slowPlugin = bulkheads.getBulkhead("slow-plugin");
+        Assert.assertEquals(slowPlugin.getTimeoutMs(), 120000L);
+        for (int i = 0; i < 19; i++) {
+            slowPlugin.getCircuitBreaker().recordFailure();
+        }
+        Assert.assertEquals(slowPlugin.getCircuitBreaker().getState(), PluginCircuitBreaker.State.CLOSED);
+
+        // Plugins without their own settings use the global ones
+        final PluginBulkhead otherPlugin = bulkheads.getBulkhead("other-plugin");
+        Assert.assertEquals(otherPlugin.getTimeoutMs(), 10000L);
+        for (int i = 0; i < 5; i++) {
+            otherPlugin.getCircuitBreaker().recordFailure();
+        }
+        Assert.assertEquals(otherPlugin.getCircuitBreaker().getState(), PluginCircuitBreaker.State.OPEN);
+    }
+}
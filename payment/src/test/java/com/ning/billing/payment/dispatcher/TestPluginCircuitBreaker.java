@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.payment.dispatcher;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.payment.PaymentTestSuite;
+import com.ning.billing.util.clock.ClockMock;
+
+public class TestPluginCircuitBreaker extends PaymentTestSuite {
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long OPEN_TIME_MS = 60000L;
+
+    private ClockMock clock;
+    private PluginCircuitBreaker circuitBreaker;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        clock = new ClockMock();
+        circuitBreaker = new PluginCircuitBreaker("test-plugin", clock, FAILURE_THRESHOLD, OPEN_TIME_MS);
+    }
+
+    @Test(groups = "fast")
+    public void testOpensAfterConsecutiveFailures() throws Exception {
+        for (int i = 0; i < FAILURE_THRESHOLD - 1; i++) {
+            Assert.assertTrue(circuitBreaker.allowRequest());
+            circuitBreaker.recordFailure();
+        }
+        Assert.assertEquals(circuitBreaker.getState(), PluginCircuitBreaker.State.CLOSED);
+
+        // A success resets the count
+        circuitBreaker.recordSuccess();
+        Assert.assertEquals(circuitBreaker.getConsecutiveFailures(), 0);
+
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            circuitBreaker.recordFailure();
+        }
+        Assert.assertEquals(circuitBreaker.getState(), PluginCircuitBreaker.State.OPEN);
+        Assert.assertTrue(circuitBreaker.isOpen());
+        Assert.assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test(groups = "fast")
+    public void testHalfOpenTrialCall() throws Exception {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            circuitBreaker.recordFailure();
+        }
+        Assert.assertFalse(circuitBreaker.allowRequest());
+
+        // After the open time, a single trial call is let through
+        clock.addDeltaFromReality(OPEN_TIME_MS);
+        Assert.assertTrue(circuitBreaker.allowRequest());
+        Assert.assertEquals(circuitBreaker.getState(), PluginCircuitBreaker.State.HALF_OPEN);
+        Assert.assertFalse(circuitBreaker.allowRequest());
+
+        // A failed trial opens it again
+        circuitBreaker.recordFailure();
+        Assert.assertEquals(circuitBreaker.getState(), PluginCircuitBreaker.State.OPEN);
+        Assert.assertFalse(circuitBreaker.allowRequest());
+
+        // A successful trial closes it
+        clock.addDeltaFromReality(OPEN_TIME_MS);
+        Assert.assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.recordSuccess();
+        Assert.assertEquals(circuitBreaker.getState(), PluginCircuitBreaker.State.CLOSED);
+        Assert.assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test(groups = "fast")
+    public void testRejectingCallsDoesNotLetTrialThrough() throws Exception {
+        Assert.assertFalse(circuitBreaker.isRejectingCalls());
+        Assert.assertFalse(circuitBreaker.getNextCallDate().isAfter(clock.getUTCNow()));
+
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            circuitBreaker.recordFailure();
+        }
+        Assert.assertTrue(circuitBreaker.isRejectingCalls());
+        Assert.assertTrue(circuitBreaker.getNextCallDate().isAfter(clock.getUTCNow().plus(OPEN_TIME_MS / 2)));
+
+        // Once the open time has elapsed, checking doesn't use up the trial call
+        clock.addDeltaFromReality(OPEN_TIME_MS);
+        Assert.assertFalse(circuitBreaker.isRejectingCalls());
+        Assert.assertEquals(circuitBreaker.getState(), PluginCircuitBreaker.State.OPEN);
+        Assert.assertTrue(circuitBreaker.allowRequest());
+
+        // While the trial call is in flight, other calls are rejected
+        Assert.assertTrue(circuitBreaker.isRejectingCalls());
+        Assert.assertTrue(circuitBreaker.getNextCallDate().isAfter(clock.getUTCNow().plus(OPEN_TIME_MS / 2)));
+    }
+}
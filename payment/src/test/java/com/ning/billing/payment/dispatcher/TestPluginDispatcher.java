@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.payment.dispatcher;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.ErrorCode;
+import com.ning.billing.payment.PaymentTestSuite;
+import com.ning.billing.payment.api.PaymentApiException;
+import com.ning.billing.util.clock.ClockMock;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class TestPluginDispatcher extends PaymentTestSuite {
+
+    private static final long TIMEOUT_MS = 200L;
+
+    private CountDownLatch pluginLatch;
+    private ExecutorService executor;
+    private PluginBulkhead bulkhead;
+    private PluginDispatcher<String> dispatcher;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        pluginLatch = new CountDownLatch(1);
+        // One plugin thread and a single slot in the queue
+        bulkhead = new PluginBulkhead("test-plugin", 1, 1, TIMEOUT_MS, new PluginCircuitBreaker("test-plugin", new ClockMock(), 3, 60000L));
+        executor = Executors.newSingleThreadExecutor();
+        dispatcher = new PluginDispatcher<String>(executor);
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() throws Exception {
+        pluginLatch.countDown();
+        bulkhead.shutdown();
+        executor.shutdown();
+    }
+
+    @Test(groups = "fast")
+    public void testQueueRejection() throws Exception {
+        final ListenableFuture<String> running = dispatcher.dispatchWithAccountLockAsync(bulkhead, blockingTask("running"));
+        final ListenableFuture<String> queued = dispatcher.dispatchWithAccountLockAsync(bulkhead, blockingTask("queued"));
+
+        try {
+            dispatcher.dispatchWithAccountLockAsync(bulkhead, blockingTask("rejected"));
+            Assert.fail("The queue of the plugin should be full");
+        } catch (TimeoutException e) {
+            // Expected
+        }
+        // The rejected call never ran, so the dispatcher records it
+        Assert.assertEquals(bulkhead.getCircuitBreaker().getConsecutiveFailures(), 1);
+
+        pluginLatch.countDown();
+        Assert.assertEquals(running.get(5, TimeUnit.SECONDS), "running");
+        Assert.assertEquals(queued.get(5, TimeUnit.SECONDS), "queued");
+    }
+
+    @Test(groups = "fast")
+    public void testAsyncTimeout() throws Exception {
+        final ListenableFuture<String> future = dispatcher.dispatchWithAccountLockAsync(bulkhead, blockingTask("slow"));
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("The call should have timed out");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        // The outcome of the call is recorded by the task itself, once the plugin returns
+        Assert.assertEquals(bulkhead.getCircuitBreaker().getConsecutiveFailures(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testAsyncSuccess() throws Exception {
+        pluginLatch.countDown();
+        final ListenableFuture<String> future = dispatcher.dispatchWithAccountLockAsync(bulkhead, blockingTask("fast"));
+        Assert.assertEquals(future.get(5, TimeUnit.SECONDS), "fast");
+    }
+
+    @Test(groups = "fast")
+    public void testSyncTimeoutIsNotRecordedTwice() throws Exception {
+        try {
+            dispatcher.dispatchWithAccountLock(bulkhead, blockingTask("slow"));
+            Assert.fail("The call should have timed out");
+        } catch (TimeoutException e) {
+            // Expected
+        }
+        Assert.assertEquals(bulkhead.getCircuitBreaker().getConsecutiveFailures(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testFailFastWhenBreakerIsOpen() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            bulkhead.getCircuitBreaker().recordFailure();
+        }
+
+        final AtomicBoolean called = new AtomicBoolean(false);
+        final Callable<String> task = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                called.set(true);
+                return "called";
+            }
+        };
+        try {
+            dispatcher.dispatchWithAccountLock(bulkhead, task);
+            Assert.fail("The breaker of the plugin is open");
+        } catch (PaymentApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.PAYMENT_PLUGIN_UNAVAILABLE.getCode());
+        }
+        try {
+            dispatcher.dispatchWithAccountLockAsync(bulkhead, task);
+            Assert.fail("The breaker of the plugin is open");
+        } catch (PaymentApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.PAYMENT_PLUGIN_UNAVAILABLE.getCode());
+        }
+
+        // The task (which takes the account lock and records the payment) never ran
+        Assert.assertFalse(called.get());
+        Assert.assertEquals(bulkhead.getCircuitBreaker().getConsecutiveFailures(), 3);
+    }
+
+    private Callable<String> blockingTask(final String result) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                pluginLatch.await();
+                return result;
+            }
+        };
+    }
+}
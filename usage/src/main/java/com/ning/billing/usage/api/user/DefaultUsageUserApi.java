@@ -16,6 +16,12 @@
 
 package com.ning.billing.usage.api.user;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -24,6 +30,8 @@ import org.joda.time.DateTime;
 
 import com.ning.billing.entitlement.api.user.EntitlementUserApiException;
 import com.ning.billing.entitlement.api.user.SubscriptionBundle;
+import com.ning.billing.usage.api.RolledUpUsageSample;
+import com.ning.billing.usage.api.UsageSample;
 import com.ning.billing.usage.api.UsageUserApi;
 import com.ning.billing.usage.dao.RolledUpUsageDao;
 import com.ning.billing.usage.timeline.TimelineEventHandler;
@@ -77,6 +85,45 @@ public class DefaultUsageUserApi implements UsageUserApi {
         rolledUpUsageDao.record(sourceName, DEFAULT_EVENT_TYPE, metricName, startDate, endDate, value, createInternalCallContext(bundleId, context));
     }
 
+    @Override
+    public void recordUsage(final List<UsageSample> samples, final CallContext context) throws EntitlementUserApiException {
+        // Group the samples by bundle and timestamp, values for the same metric at the same time add up
+        final Map<UUID, Map<DateTime, Map<String, Object>>> samplesByBundle = new LinkedHashMap<UUID, Map<DateTime, Map<String, Object>>>();
+        for (final UsageSample sample : samples) {
+            if (samplesByBundle.get(sample.getBundleId()) == null) {
+                samplesByBundle.put(sample.getBundleId(), new TreeMap<DateTime, Map<String, Object>>());
+            }
+            final Map<DateTime, Map<String, Object>> samplesByTimestamp = samplesByBundle.get(sample.getBundleId());
+            if (samplesByTimestamp.get(sample.getTimestamp()) == null) {
+                samplesByTimestamp.put(sample.getTimestamp(), new HashMap<String, Object>());
+            }
+            final Map<String, Object> values = samplesByTimestamp.get(sample.getTimestamp());
+            final Long previousValue = (Long) values.get(sample.getMetricName());
+            values.put(sample.getMetricName(), previousValue == null ? sample.getValue() : previousValue + sample.getValue());
+        }
+
+        for (final UUID bundleId : samplesByBundle.keySet()) {
+            final String sourceName = getSourceNameFromBundleId(bundleId);
+            timelineEventHandler.record(sourceName, DEFAULT_EVENT_TYPE, samplesByBundle.get(bundleId), createInternalCallContext(bundleId, context));
+        }
+    }
+
+    @Override
+    public void recordRolledUpUsage(final List<RolledUpUsageSample> samples, final CallContext context) throws EntitlementUserApiException {
+        final Map<UUID, List<RolledUpUsageSample>> samplesByBundle = new LinkedHashMap<UUID, List<RolledUpUsageSample>>();
+        for (final RolledUpUsageSample sample : samples) {
+            if (samplesByBundle.get(sample.getBundleId()) == null) {
+                samplesByBundle.put(sample.getBundleId(), new ArrayList<RolledUpUsageSample>());
+            }
+            samplesByBundle.get(sample.getBundleId()).add(sample);
+        }
+
+        for (final UUID bundleId : samplesByBundle.keySet()) {
+            final String sourceName = getSourceNameFromBundleId(bundleId);
+            rolledUpUsageDao.record(sourceName, DEFAULT_EVENT_TYPE, samplesByBundle.get(bundleId), createInternalCallContext(bundleId, context));
+        }
+    }
+
     private InternalCallContext createInternalCallContext(final UUID bundleId, final CallContext context) throws EntitlementUserApiException {
         // Retrieve the bundle to get the account id for the internal call context
         // API_FIX
@@ -16,12 +16,19 @@
 
 package com.ning.billing.usage.dao;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.inject.Inject;
 
 import org.joda.time.DateTime;
 import org.skife.jdbi.v2.Transaction;
 import org.skife.jdbi.v2.TransactionStatus;
 
+import com.ning.billing.usage.api.RolledUpUsageSample;
 import com.ning.billing.usage.timeline.persistent.TimelineSqlDao;
 import com.ning.billing.util.callcontext.InternalCallContext;
 
@@ -42,31 +49,84 @@ public class DefaultRolledUpUsageDao implements RolledUpUsageDao {
             public Void inTransaction(final RolledUpUsageSqlDao transactional, final TransactionStatus status) throws Exception {
                 final TimelineSqlDao timelineSqlDao = transactional.become(TimelineSqlDao.class);
 
-                // Create the source if it doesn't exist
-                Integer sourceId = timelineSqlDao.getSourceId(source, context);
-                if (sourceId == null) {
-                    timelineSqlDao.addSource(source, context);
-                    sourceId = timelineSqlDao.getSourceId(source, context);
-                }
+                final int sourceId = getOrAddSource(timelineSqlDao, source, context);
+                final int categoryId = getOrAddEventCategory(timelineSqlDao, eventType, context);
+                final int metricId = getOrAddMetric(timelineSqlDao, categoryId, metricName, context);
 
-                // Create the category if it doesn't exist
-                Integer categoryId = timelineSqlDao.getEventCategoryId(eventType, context);
-                if (categoryId == null) {
-                    timelineSqlDao.addEventCategory(eventType, context);
-                    categoryId = timelineSqlDao.getEventCategoryId(eventType, context);
-                }
+                transactional.record(sourceId, metricId, startDate.toDate(), endDate.toDate(), value, context);
 
-                // Create the metric if it doesn't exist
-                Integer metricId = timelineSqlDao.getMetricId(categoryId, metricName, context);
-                if (metricId == null) {
-                    timelineSqlDao.addMetric(categoryId, metricName, context);
-                    metricId = timelineSqlDao.getMetricId(categoryId, metricName, context);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void record(final String source, final String eventType, final List<RolledUpUsageSample> samples,
+                       final InternalCallContext context) {
+        if (samples.isEmpty()) {
+            return;
+        }
+
+        rolledUpUsageSqlDao.inTransaction(new Transaction<Void, RolledUpUsageSqlDao>() {
+            @Override
+            public Void inTransaction(final RolledUpUsageSqlDao transactional, final TransactionStatus status) throws Exception {
+                final TimelineSqlDao timelineSqlDao = transactional.become(TimelineSqlDao.class);
+
+                final int sourceId = getOrAddSource(timelineSqlDao, source, context);
+                final int categoryId = getOrAddEventCategory(timelineSqlDao, eventType, context);
+
+                final Map<String, Integer> metricIdsByName = new HashMap<String, Integer>();
+                final List<Integer> metricIds = new ArrayList<Integer>(samples.size());
+                final List<Date> startTimes = new ArrayList<Date>(samples.size());
+                final List<Date> endTimes = new ArrayList<Date>(samples.size());
+                final List<Long> values = new ArrayList<Long>(samples.size());
+                for (final RolledUpUsageSample sample : samples) {
+                    Integer metricId = metricIdsByName.get(sample.getMetricName());
+                    if (metricId == null) {
+                        metricId = getOrAddMetric(timelineSqlDao, categoryId, sample.getMetricName(), context);
+                        metricIdsByName.put(sample.getMetricName(), metricId);
+                    }
+
+                    metricIds.add(metricId);
+                    startTimes.add(sample.getStartDate().toDate());
+                    endTimes.add(sample.getEndDate().toDate());
+                    values.add(sample.getValue());
                 }
 
-                transactional.record(sourceId, metricId, startDate.toDate(), endDate.toDate(), value, context);
+                transactional.recordBatch(sourceId, metricIds.iterator(), startTimes.iterator(), endTimes.iterator(), values.iterator(), context);
 
                 return null;
             }
         });
     }
+
+    private int getOrAddSource(final TimelineSqlDao timelineSqlDao, final String source, final InternalCallContext context) {
+        // Create the source if it doesn't exist
+        Integer sourceId = timelineSqlDao.getSourceId(source, context);
+        if (sourceId == null) {
+            timelineSqlDao.addSource(source, context);
+            sourceId = timelineSqlDao.getSourceId(source, context);
+        }
+        return sourceId;
+    }
+
+    private int getOrAddEventCategory(final TimelineSqlDao timelineSqlDao, final String eventType, final InternalCallContext context) {
+        // Create the category if it doesn't exist
+        Integer categoryId = timelineSqlDao.getEventCategoryId(eventType, context);
+        if (categoryId == null) {
+            timelineSqlDao.addEventCategory(eventType, context);
+            categoryId = timelineSqlDao.getEventCategoryId(eventType, context);
+        }
+        return categoryId;
+    }
+
+    private int getOrAddMetric(final TimelineSqlDao timelineSqlDao, final int categoryId, final String metricName, final InternalCallContext context) {
+        // Create the metric if it doesn't exist
+        Integer metricId = timelineSqlDao.getMetricId(categoryId, metricName, context);
+        if (metricId == null) {
+            timelineSqlDao.addMetric(categoryId, metricName, context);
+            metricId = timelineSqlDao.getMetricId(categoryId, metricName, context);
+        }
+        return metricId;
+    }
 }
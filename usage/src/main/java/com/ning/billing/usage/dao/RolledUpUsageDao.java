@@ -16,8 +16,11 @@
 
 package com.ning.billing.usage.dao;
 
+import java.util.List;
+
 import org.joda.time.DateTime;
 
+import com.ning.billing.usage.api.RolledUpUsageSample;
 import com.ning.billing.util.callcontext.InternalCallContext;
 
 /**
@@ -28,4 +31,10 @@ public interface RolledUpUsageDao {
 
     public void record(final String sourceName, final String eventType, final String metricName, final DateTime startDate,
                        final DateTime endDate, final long value, final InternalCallContext context);
+
+    /**
+     * Record a batch of rolled-up usage values for a given source, resolving each metric once.
+     */
+    public void record(final String sourceName, final String eventType, final List<RolledUpUsageSample> samples,
+                       final InternalCallContext context);
 }
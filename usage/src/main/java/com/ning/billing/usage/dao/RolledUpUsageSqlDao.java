@@ -17,11 +17,14 @@
 package com.ning.billing.usage.dao;
 
 import java.util.Date;
+import java.util.Iterator;
 
 import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 import org.skife.jdbi.v2.sqlobject.mixins.Transmogrifier;
+import org.skife.jdbi.v2.sqlobject.customizers.BatchChunkSize;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.ExternalizedSqlViaStringTemplate3;
 
 import com.ning.billing.util.callcontext.InternalCallContext;
@@ -37,4 +40,13 @@ public interface RolledUpUsageSqlDao extends Transactional<RolledUpUsageSqlDao>,
                        @Bind("endTime") final Date endTime,
                        @Bind("value") final long value,
                        @InternalTenantContextBinder final InternalCallContext context);
+
+    @SqlBatch
+    @BatchChunkSize(1000)
+    public void recordBatch(@Bind("sourceId") final int sourceId,
+                            @Bind("metricId") final Iterator<Integer> metricIds,
+                            @Bind("startTime") final Iterator<Date> startTimes,
+                            @Bind("endTime") final Iterator<Date> endTimes,
+                            @Bind("value") final Iterator<Long> values,
+                            @InternalTenantContextBinder final InternalCallContext context);
 }
@@ -26,6 +26,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -95,9 +96,10 @@ public class TimelineEventHandler {
     // A TimelineSourceEventAccumulator records attributes for a specific host and event type.
     // This cache maps sourceId -> categoryId -> accumulator
     //
-    // TODO: There are still timing windows in the use of accumulators.  Enumerate them and
-    // either fix them or prove they are benign
-    private final Map<Integer, SourceAccumulatorsAndUpdateDate> accumulators = new ConcurrentHashMap<Integer, SourceAccumulatorsAndUpdateDate>();
+    // Accumulators are created without locking the handler, and samples are added under the lock of their accumulator only.
+    // When purged, a source is marked as such before its accumulators are closed, and closed accumulators reject samples:
+    // threads racing with the purge retry with a new accumulator instead of adding samples which would never be saved.
+    private final ConcurrentMap<Integer, SourceAccumulatorsAndUpdateDate> accumulators = new ConcurrentHashMap<Integer, SourceAccumulatorsAndUpdateDate>();
 
     private final UsageConfig config;
     private final TimelineDao timelineDAO;
@@ -164,38 +166,31 @@ public class TimelineEventHandler {
     }
 
     public synchronized void purgeOldSourcesAndAccumulators(final DateTime purgeIfBeforeDate) {
-        final List<Integer> oldSourceIds = new ArrayList<Integer>();
         for (final Map.Entry<Integer, SourceAccumulatorsAndUpdateDate> entry : accumulators.entrySet()) {
             final int sourceId = entry.getKey();
             final SourceAccumulatorsAndUpdateDate accumulatorsAndDate = entry.getValue();
             final DateTime lastUpdatedDate = accumulatorsAndDate.getLastUpdateDate();
             if (lastUpdatedDate.isBefore(purgeIfBeforeDate)) {
-                oldSourceIds.add(sourceId);
+                // Mark the source first, so that accumulators added concurrently are either seen below or discarded by their creator
+                accumulatorsAndDate.markPurged();
+                accumulators.remove(sourceId, accumulatorsAndDate);
                 purgedAccumsBecauseSourceNotUpdated.incrementAndGet();
                 for (final TimelineSourceEventAccumulator categoryAccumulator : accumulatorsAndDate.getCategoryAccumulators().values()) {
-                    categoryAccumulator.extractAndQueueTimelineChunks();
+                    categoryAccumulator.extractAndQueueTimelineChunksAndClose();
                 }
             } else {
-                final List<Integer> categoryIdsToPurge = new ArrayList<Integer>();
-                final Map<Integer, TimelineSourceEventAccumulator> categoryMap = accumulatorsAndDate.getCategoryAccumulators();
+                final ConcurrentMap<Integer, TimelineSourceEventAccumulator> categoryMap = accumulatorsAndDate.getCategoryAccumulators();
                 for (final Map.Entry<Integer, TimelineSourceEventAccumulator> eventEntry : categoryMap.entrySet()) {
                     final int categoryId = eventEntry.getKey();
                     final TimelineSourceEventAccumulator categoryAccumulator = eventEntry.getValue();
                     final DateTime latestTime = categoryAccumulator.getLatestSampleAddTime();
-                    if (latestTime != null && latestTime.isBefore(purgeIfBeforeDate)) {
+                    if (latestTime != null && latestTime.isBefore(purgeIfBeforeDate) && categoryMap.remove(categoryId, categoryAccumulator)) {
                         purgedAccumsBecauseCategoryNotUpdated.incrementAndGet();
-                        categoryAccumulator.extractAndQueueTimelineChunks();
-                        categoryIdsToPurge.add(categoryId);
+                        categoryAccumulator.extractAndQueueTimelineChunksAndClose();
                     }
                 }
-                for (final int categoryId : categoryIdsToPurge) {
-                    categoryMap.remove(categoryId);
-                }
             }
         }
-        for (final int sourceIdToPurge : oldSourceIds) {
-            accumulators.remove(sourceIdToPurge);
-        }
     }
 
     /**
@@ -240,27 +235,99 @@ public class TimelineEventHandler {
         }
     }
 
+    /**
+     * Record a batch of samples for a given source. The source, category and metric ids are resolved once for the whole
+     * batch and the samples are saved locally in a single write.
+     *
+     * @param sourceName         name of the source
+     * @param eventType          event category
+     * @param samplesByTimestamp samples to record, by event timestamp
+     * @param context            the call context
+     */
+    public void record(final String sourceName, final String eventType, final Map<DateTime, Map<String, Object>> samplesByTimestamp,
+                       final InternalCallContext context) {
+        if (shuttingDown.get()) {
+            eventsReceivedAfterShuttingDown.addAndGet(samplesByTimestamp.size());
+            return;
+        }
+        try {
+            handledEventCount.addAndGet(samplesByTimestamp.size());
+
+            // Find the sourceId and the eventCategoryId
+            final int sourceId = timelineDAO.getOrAddSource(sourceName, context);
+            final int eventCategoryId = timelineDAO.getOrAddEventCategory(eventType, context);
+
+            // Extract and parse samples, looking up each metric once
+            final Map<String, Integer> metricIds = new HashMap<String, Integer>();
+            final List<SourceSamplesForTimestamp> sourceSamplesList = new ArrayList<SourceSamplesForTimestamp>(samplesByTimestamp.size());
+            for (final DateTime eventTimestamp : samplesByTimestamp.keySet()) {
+                final Map<Integer, ScalarSample> scalarSamples = new LinkedHashMap<Integer, ScalarSample>();
+                for (final Map.Entry<String, Object> sample : samplesByTimestamp.get(eventTimestamp).entrySet()) {
+                    Integer metricId = metricIds.get(sample.getKey());
+                    if (metricId == null) {
+                        metricId = timelineDAO.getOrAddMetric(sourceId, eventCategoryId, sample.getKey(), context);
+                        metricIds.put(sample.getKey(), metricId);
+                    }
+                    scalarSamples.put(metricId, ScalarSample.fromObject(sample.getValue()));
+                }
+
+                if (scalarSamples.isEmpty()) {
+                    eventsDiscarded.incrementAndGet();
+                } else {
+                    sourceSamplesList.add(new SourceSamplesForTimestamp(sourceId, eventType, eventTimestamp, scalarSamples));
+                }
+            }
+
+            if (sourceSamplesList.isEmpty()) {
+                return;
+            }
+            if (!replaying.get()) {
+                // Start by saving locally the samples
+                backingBuffer.append(sourceSamplesList);
+            }
+            // Then add them to the in-memory accumulators
+            for (final SourceSamplesForTimestamp sourceSamples : sourceSamplesList) {
+                processSamples(sourceSamples, context);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public TimelineSourceEventAccumulator getOrAddSourceEventAccumulator(final int sourceId, final int categoryId, final DateTime firstSampleTime) {
         return this.getOrAddSourceEventAccumulator(sourceId, categoryId, firstSampleTime, (int) config.getTimelineLength().getMillis());
     }
 
-    public synchronized TimelineSourceEventAccumulator getOrAddSourceEventAccumulator(final int sourceId, final int categoryId, final DateTime firstSampleTime, final int timelineLengthMillis) {
-        SourceAccumulatorsAndUpdateDate sourceAccumulatorsAndUpdateDate = accumulators.get(sourceId);
-        if (sourceAccumulatorsAndUpdateDate == null) {
-            addedSourceEventAccumulatorMapCount.incrementAndGet();
-            sourceAccumulatorsAndUpdateDate = new SourceAccumulatorsAndUpdateDate(new HashMap<Integer, TimelineSourceEventAccumulator>(), new DateTime());
-            accumulators.put(sourceId, sourceAccumulatorsAndUpdateDate);
-        }
-        sourceAccumulatorsAndUpdateDate.markUpdated();
-        final Map<Integer, TimelineSourceEventAccumulator> hostCategoryAccumulators = sourceAccumulatorsAndUpdateDate.getCategoryAccumulators();
-        TimelineSourceEventAccumulator accumulator = hostCategoryAccumulators.get(categoryId);
-        if (accumulator == null) {
-            addedSourceEventAccumulatorCount.incrementAndGet();
-            accumulator = new TimelineSourceEventAccumulator(timelineDAO, timelineCoder, sampleCoder, backgroundWriter, sourceId, categoryId, firstSampleTime, timelineLengthMillis);
-            hostCategoryAccumulators.put(categoryId, accumulator);
-            log.debug("Created new Timeline for sourceId [{}] and category [{}]", sourceId, categoryId);
+    public TimelineSourceEventAccumulator getOrAddSourceEventAccumulator(final int sourceId, final int categoryId, final DateTime firstSampleTime, final int timelineLengthMillis) {
+        while (true) {
+            SourceAccumulatorsAndUpdateDate sourceAccumulatorsAndUpdateDate = accumulators.get(sourceId);
+            if (sourceAccumulatorsAndUpdateDate == null) {
+                final SourceAccumulatorsAndUpdateDate newSourceAccumulatorsAndUpdateDate = new SourceAccumulatorsAndUpdateDate(new ConcurrentHashMap<Integer, TimelineSourceEventAccumulator>(), new DateTime());
+                sourceAccumulatorsAndUpdateDate = accumulators.putIfAbsent(sourceId, newSourceAccumulatorsAndUpdateDate);
+                if (sourceAccumulatorsAndUpdateDate == null) {
+                    addedSourceEventAccumulatorMapCount.incrementAndGet();
+                    sourceAccumulatorsAndUpdateDate = newSourceAccumulatorsAndUpdateDate;
+                }
+            }
+            sourceAccumulatorsAndUpdateDate.markUpdated();
+            final ConcurrentMap<Integer, TimelineSourceEventAccumulator> hostCategoryAccumulators = sourceAccumulatorsAndUpdateDate.getCategoryAccumulators();
+            TimelineSourceEventAccumulator accumulator = hostCategoryAccumulators.get(categoryId);
+            if (accumulator == null) {
+                final TimelineSourceEventAccumulator newAccumulator = new TimelineSourceEventAccumulator(timelineDAO, timelineCoder, sampleCoder, backgroundWriter, sourceId, categoryId, firstSampleTime, timelineLengthMillis);
+                accumulator = hostCategoryAccumulators.putIfAbsent(categoryId, newAccumulator);
+                if (accumulator == null) {
+                    addedSourceEventAccumulatorCount.incrementAndGet();
+                    accumulator = newAccumulator;
+                    log.debug("Created new Timeline for sourceId [{}] and category [{}]", sourceId, categoryId);
+                }
+            }
+
+            // If the source was purged in the meantime, the accumulator may never be saved: start over with a new source
+            if (!sourceAccumulatorsAndUpdateDate.isPurged()) {
+                return accumulator;
+            }
+            accumulators.remove(sourceId, sourceAccumulatorsAndUpdateDate);
         }
-        return accumulator;
     }
 
     @VisibleForTesting
@@ -269,8 +336,10 @@ public class TimelineEventHandler {
         final String category = hostSamples.getCategory();
         final int categoryId = timelineDAO.getEventCategoryId(category, context);
         final DateTime timestamp = hostSamples.getTimestamp();
-        final TimelineSourceEventAccumulator accumulator = getOrAddSourceEventAccumulator(sourceId, categoryId, timestamp);
-        accumulator.addSourceSamples(hostSamples);
+        // The accumulator is closed if it was purged concurrently
+        while (!getOrAddSourceEventAccumulator(sourceId, categoryId, timestamp).addSourceSamples(hostSamples)) {
+            log.debug("Timeline for sourceId [{}] and category [{}] was purged, retrying", sourceId, categoryId);
+        }
     }
 
     public Collection<? extends TimelineChunk> getInMemoryTimelineChunks(final Integer sourceId, @Nullable final DateTime filterStartTime,
@@ -283,7 +352,7 @@ public class TimelineEventHandler {
         return getInMemoryTimelineChunks(sourceId, ImmutableList.<Integer>of(metricId), filterStartTime, filterEndTime);
     }
 
-    public synchronized Collection<? extends TimelineChunk> getInMemoryTimelineChunks(final Integer sourceId, final List<Integer> metricIds,
+    public Collection<? extends TimelineChunk> getInMemoryTimelineChunks(final Integer sourceId, final List<Integer> metricIds,
                                                                                       @Nullable final DateTime filterStartTime, @Nullable final DateTime filterEndTime) throws IOException, ExecutionException {
         getInMemoryChunksCallCount.incrementAndGet();
         // Check first if there is an in-memory accumulator for this host
@@ -304,28 +373,31 @@ public class TimelineEventHandler {
                     samplesBySourceName.add(chunk);
                 }
             }
-            final List<DateTime> accumulatorTimes = accumulator.getTimes();
-            if (accumulatorTimes.size() == 0) {
-                continue;
-            }
-            final DateTime accumulatorStartTime = accumulator.getStartTime();
-            final DateTime accumulatorEndTime = accumulator.getEndTime();
+            // Copy the in-memory samples while no sample is being added to that accumulator
+            synchronized (accumulator) {
+                final List<DateTime> accumulatorTimes = accumulator.getTimes();
+                if (accumulatorTimes.size() == 0) {
+                    continue;
+                }
+                final DateTime accumulatorStartTime = accumulator.getStartTime();
+                final DateTime accumulatorEndTime = accumulator.getEndTime();
 
-            // Check if the time filters apply
-            if ((filterStartTime != null && accumulatorEndTime.isBefore(filterStartTime)) || (filterEndTime != null && accumulatorStartTime.isAfter(filterEndTime))) {
-                // Ignore this accumulator
-                continue;
-            }
+                // Check if the time filters apply
+                if ((filterStartTime != null && accumulatorEndTime.isBefore(filterStartTime)) || (filterEndTime != null && accumulatorStartTime.isAfter(filterEndTime))) {
+                    // Ignore this accumulator
+                    continue;
+                }
 
-            // This accumulator is in the right time range, now return only the sample kinds specified
-            final byte[] timeBytes = timelineCoder.compressDateTimes(accumulatorTimes);
-            for (final TimelineChunkAccumulator chunkAccumulator : accumulator.getTimelines().values()) {
-                if (metricIds.contains(chunkAccumulator.getMetricId())) {
-                    // Extract the timeline for this chunk by copying it and reading encoded bytes
-                    accumulatorDeepCopyCount.incrementAndGet();
-                    final TimelineChunkAccumulator chunkAccumulatorCopy = chunkAccumulator.deepCopy();
-                    final TimelineChunk timelineChunk = chunkAccumulatorCopy.extractTimelineChunkAndReset(accumulatorStartTime, accumulatorEndTime, timeBytes);
-                    samplesBySourceName.add(timelineChunk);
+                // This accumulator is in the right time range, now return only the sample kinds specified
+                final byte[] timeBytes = timelineCoder.compressDateTimes(accumulatorTimes);
+                for (final TimelineChunkAccumulator chunkAccumulator : accumulator.getTimelines().values()) {
+                    if (metricIds.contains(chunkAccumulator.getMetricId())) {
+                        // Extract the timeline for this chunk by copying it and reading encoded bytes
+                        accumulatorDeepCopyCount.incrementAndGet();
+                        final TimelineChunkAccumulator chunkAccumulatorCopy = chunkAccumulator.deepCopy();
+                        final TimelineChunk timelineChunk = chunkAccumulatorCopy.extractTimelineChunkAndReset(accumulatorStartTime, accumulatorEndTime, timeBytes);
+                        samplesBySourceName.add(timelineChunk);
+                    }
                 }
             }
         }
@@ -483,15 +555,16 @@ public class TimelineEventHandler {
     // We use the lastUpdateDate to purge sources and their accumulators from the map
     private static class SourceAccumulatorsAndUpdateDate {
 
-        private final Map<Integer, TimelineSourceEventAccumulator> categoryAccumulators;
-        private DateTime lastUpdateDate;
+        private final ConcurrentMap<Integer, TimelineSourceEventAccumulator> categoryAccumulators;
+        private volatile DateTime lastUpdateDate;
+        private volatile boolean purged = false;
 
-        public SourceAccumulatorsAndUpdateDate(final Map<Integer, TimelineSourceEventAccumulator> categoryAccumulators, final DateTime lastUpdateDate) {
+        public SourceAccumulatorsAndUpdateDate(final ConcurrentMap<Integer, TimelineSourceEventAccumulator> categoryAccumulators, final DateTime lastUpdateDate) {
             this.categoryAccumulators = categoryAccumulators;
             this.lastUpdateDate = lastUpdateDate;
         }
 
-        public Map<Integer, TimelineSourceEventAccumulator> getCategoryAccumulators() {
+        public ConcurrentMap<Integer, TimelineSourceEventAccumulator> getCategoryAccumulators() {
             return categoryAccumulators;
         }
 
@@ -502,6 +575,14 @@ public class TimelineEventHandler {
         public void markUpdated() {
             lastUpdateDate = new DateTime();
         }
+
+        public boolean isPurged() {
+            return purged;
+        }
+
+        public void markPurged() {
+            purged = true;
+        }
     }
 
     @VisibleForTesting
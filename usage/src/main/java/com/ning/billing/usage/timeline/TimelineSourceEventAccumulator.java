@@ -90,6 +90,8 @@ public class TimelineSourceEventAccumulator {
     private DateTime latestSampleAddTime;
     private long sampleSequenceNumber = 0;
     private int sampleCount = 0;
+    // Set once the accumulator has been removed from the TimelineEventHandler
+    private boolean closed = false;
 
     /**
      * Maps the sample kind id to the accumulator for that sample kind
@@ -124,9 +126,19 @@ public class TimelineSourceEventAccumulator {
         this(timelineDAO, timelineCoder, sampleCoder, new BackgroundDBChunkWriter(timelineDAO, null, true, internalCallContextFactory), sourceId, eventTypeId, firstSampleTime, Integer.MAX_VALUE);
     }
 
+    /**
+     * Add samples to this accumulator. Only this accumulator is locked, so that samples for different sources and
+     * categories can be added concurrently.
+     *
+     * @param samples the samples to add
+     * @return false if the accumulator has been closed, in which case the samples need to be added to a new accumulator
+     */
     @SuppressWarnings("unchecked")
-    // TODO - we can probably do better than synchronize the whole method
-    public synchronized void addSourceSamples(final SourceSamplesForTimestamp samples) {
+    public synchronized boolean addSourceSamples(final SourceSamplesForTimestamp samples) {
+        if (closed) {
+            return false;
+        }
+
         final DateTime timestamp = samples.getTimestamp();
 
         if (chunkEndTime != null && chunkEndTime.isBefore(timestamp)) {
@@ -143,7 +155,7 @@ public class TimelineSourceEventAccumulator {
         } else if (!timestamp.isAfter(endTime)) {
             log.warn("Adding samples for host {}, timestamp {} is not after the end time {}; ignored",
                      new Object[]{sourceId, dateFormatter.print(timestamp), dateFormatter.print(endTime)});
-            return;
+            return true;
         }
         sampleSequenceNumber++;
         latestSampleAddTime = new DateTime();
@@ -184,6 +196,7 @@ public class TimelineSourceEventAccumulator {
         if (checkEveryAccess) {
             checkSampleCounts(sampleCount);
         }
+        return true;
     }
 
     private void addPlaceholders(final TimelineChunkAccumulator timeline, int countToAdd) {
@@ -221,6 +234,18 @@ public class TimelineSourceEventAccumulator {
         }
     }
 
+    /**
+     * Queue the chunks of the samples added so far, and reject the samples added from now on.
+     */
+    public synchronized void extractAndQueueTimelineChunksAndClose() {
+        extractAndQueueTimelineChunks();
+        closed = true;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
     public synchronized void markPendingChunkMapConsumed(final long pendingChunkMapId) {
         final PendingChunkMap pendingChunkMap = pendingChunkMaps.size() > 0 ? pendingChunkMaps.get(0) : null;
         if (pendingChunkMap == null) {
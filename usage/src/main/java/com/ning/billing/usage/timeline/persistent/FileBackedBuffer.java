@@ -17,6 +17,7 @@
 package com.ning.billing.usage.timeline.persistent;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -26,6 +27,8 @@ import com.ning.billing.usage.timeline.sources.SourceSamplesForTimestamp;
 
 import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 import com.fasterxml.util.membuf.MemBuffersForBytes;
@@ -41,6 +44,8 @@ public class FileBackedBuffer {
 
     private static final SmileFactory smileFactory = new SmileFactory();
     private static final ObjectMapper smileObjectMapper = new ObjectMapper(smileFactory);
+    // Used for batches, to flush the generator once per batch instead of once per sample
+    private static final ObjectWriter smileBatchWriter = smileObjectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
 
     static {
         // Disable all magic for now as we don't write the Smile header (we share the same smileGenerator
@@ -87,6 +92,28 @@ public class FileBackedBuffer {
         }
     }
 
+    /**
+     * Append a batch of samples, in a single write
+     *
+     * @param sourceSamplesForTimestamps samples to append
+     * @return true if the samples were backed up
+     */
+    public boolean append(final List<SourceSamplesForTimestamp> sourceSamplesForTimestamps) {
+        try {
+            synchronized (recyclingMonitor) {
+                for (final SourceSamplesForTimestamp sourceSamplesForTimestamp : sourceSamplesForTimestamps) {
+                    smileBatchWriter.writeValue(smileGenerator, sourceSamplesForTimestamp);
+                }
+                smileGenerator.flush();
+                samplesforTimestampWritten.addAndGet(sourceSamplesForTimestamps.size());
+                return true;
+            }
+        } catch (IOException e) {
+            log.warn("Unable to backup samples", e);
+            return false;
+        }
+    }
+
     /**
      * Discard in-memory and on-disk data
      */
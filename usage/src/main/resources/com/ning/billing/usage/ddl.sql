@@ -1,3 +1,4 @@
+drop table if exists sources;
 create table sources (
   record_id int(11) unsigned not null auto_increment
 , bundle_id char(36) default null
@@ -13,6 +14,7 @@ create table sources (
 ) engine = innodb default charset = latin1;
 create index sources_tenant_account_record_id on sources(tenant_record_id, account_record_id);
 
+drop table if exists event_categories;
 create table event_categories (
   record_id integer not null auto_increment
 , event_category varchar(256) not null
@@ -22,6 +24,7 @@ create table event_categories (
 ) engine = innodb default charset = latin1;
 create index event_categories_tenant_record_id on event_categories(tenant_record_id);
 
+drop table if exists metrics;
 create table metrics (
   record_id int(11) unsigned not null auto_increment
 , event_category_id integer not null
@@ -32,6 +35,7 @@ create table metrics (
 ) engine = innodb default charset = latin1;
 create index metrics_tenant_record_id on metrics(tenant_record_id);
 
+drop table if exists timeline_chunks;
 create table timeline_chunks (
   record_id bigint not null auto_increment
 , source_id integer not null
@@ -49,6 +53,7 @@ create table timeline_chunks (
 , index valid_agg_host_start_time (not_valid, aggregation_level, source_id, metric_id, start_time)
 ) engine = innodb default charset = latin1;
 
+drop table if exists last_start_times;
 create table last_start_times (
   time_inserted int not null primary key
 , start_times mediumtext not null
@@ -57,6 +62,7 @@ create table last_start_times (
 insert ignore into timeline_chunks(record_id, source_id, metric_id, sample_count, start_time, end_time, in_row_samples, blob_samples)
                            values (0, 0, 0, 0, 0, 0, null, null);
 
+drop table if exists timeline_rolled_up_chunk;
 create table timeline_rolled_up_chunk (
   record_id bigint not null auto_increment
 , source_id integer not null
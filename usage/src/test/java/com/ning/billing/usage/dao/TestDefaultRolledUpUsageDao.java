@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.usage.dao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.KillbillTestSuiteWithEmbeddedDB;
+import com.ning.billing.usage.UsageTestSuiteWithEmbeddedDB;
+import com.ning.billing.usage.api.RolledUpUsageSample;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestDefaultRolledUpUsageDao extends UsageTestSuiteWithEmbeddedDB {
+
+    private static final String SOURCE = UUID.randomUUID().toString();
+    private static final String EVENT_TYPE = "meter";
+
+    private final DateTime startDate = new DateTime(2012, 5, 1, 0, 0, 0, 0, DateTimeZone.UTC);
+    private final DateTime endDate = new DateTime(2012, 6, 1, 0, 0, 0, 0, DateTimeZone.UTC);
+
+    private IDBI dbi;
+    private RolledUpUsageDao dao;
+
+    @BeforeMethod(groups = "slow")
+    public void setUp() throws Exception {
+        dbi = KillbillTestSuiteWithEmbeddedDB.getMysqlTestingHelper().getDBI();
+        dao = new DefaultRolledUpUsageDao(dbi.onDemand(RolledUpUsageSqlDao.class));
+    }
+
+    @Test(groups = "slow")
+    public void testRecord() throws Exception {
+        dao.record(SOURCE, EVENT_TYPE, "bandwidth", startDate, endDate, 12L, internalCallContext);
+
+        final List<Map<String, Object>> chunks = getRolledUpChunks();
+        Assert.assertEquals(chunks.size(), 1);
+        checkChunk(chunks.get(0), getMetricId("bandwidth"), 12L);
+    }
+
+    @Test(groups = "slow")
+    public void testRecordBatch() throws Exception {
+        dao.record(SOURCE, EVENT_TYPE, ImmutableList.<RolledUpUsageSample>of(new RolledUpUsageSample(null, "bandwidth", startDate, endDate, 12L),
+                                                                             new RolledUpUsageSample(null, "storage", startDate, endDate, 7L),
+                                                                             new RolledUpUsageSample(null, "bandwidth", endDate, endDate.plusMonths(1), 5L)),
+                   internalCallContext);
+
+        final List<Map<String, Object>> chunks = getRolledUpChunks();
+        Assert.assertEquals(chunks.size(), 3);
+        final int bandwidthId = getMetricId("bandwidth");
+        final int storageId = getMetricId("storage");
+        Assert.assertTrue(bandwidthId != storageId);
+        checkChunk(chunks.get(0), bandwidthId, 12L);
+        checkChunk(chunks.get(1), storageId, 7L);
+        Assert.assertEquals(((Number) chunks.get(2).get("metric_id")).intValue(), bandwidthId);
+        Assert.assertEquals(new LocalDate(chunks.get(2).get("start_time"), DateTimeZone.UTC), endDate.toLocalDate());
+        Assert.assertEquals(((Number) chunks.get(2).get("value")).longValue(), 5L);
+
+        // The source and each metric are only created once
+        Assert.assertEquals(count("select count(*) from sources"), 1);
+        Assert.assertEquals(count("select count(*) from metrics"), 2);
+
+        // A second batch reuses them
+        dao.record(SOURCE, EVENT_TYPE, ImmutableList.<RolledUpUsageSample>of(new RolledUpUsageSample(null, "storage", endDate, endDate.plusMonths(1), 3L)),
+                   internalCallContext);
+        Assert.assertEquals(getRolledUpChunks().size(), 4);
+        Assert.assertEquals(count("select count(*) from sources"), 1);
+        Assert.assertEquals(count("select count(*) from metrics"), 2);
+    }
+
+    @Test(groups = "slow")
+    public void testRecordEmptyBatch() throws Exception {
+        dao.record(SOURCE, EVENT_TYPE, ImmutableList.<RolledUpUsageSample>of(), internalCallContext);
+
+        Assert.assertEquals(getRolledUpChunks().size(), 0);
+        Assert.assertEquals(count("select count(*) from sources"), 0);
+    }
+
+    private void checkChunk(final Map<String, Object> chunk, final int metricId, final long value) {
+        Assert.assertEquals(((Number) chunk.get("metric_id")).intValue(), metricId);
+        Assert.assertEquals(new LocalDate(chunk.get("start_time"), DateTimeZone.UTC), startDate.toLocalDate());
+        Assert.assertEquals(new LocalDate(chunk.get("end_time"), DateTimeZone.UTC), endDate.toLocalDate());
+        Assert.assertEquals(((Number) chunk.get("value")).longValue(), value);
+        Assert.assertEquals(((Number) chunk.get("account_record_id")).longValue(), (long) internalCallContext.getAccountRecordId());
+        Assert.assertEquals(((Number) chunk.get("tenant_record_id")).longValue(), (long) internalCallContext.getTenantRecordId());
+    }
+
+    private List<Map<String, Object>> getRolledUpChunks() {
+        return dbi.withHandle(new HandleCallback<List<Map<String, Object>>>() {
+            @Override
+            public List<Map<String, Object>> withHandle(final Handle handle) throws Exception {
+                return handle.select("select metric_id, start_time, end_time, value, account_record_id, tenant_record_id " +
+                                     "from timeline_rolled_up_chunk order by record_id");
+            }
+        });
+    }
+
+    private int getMetricId(final String metricName) {
+        return dbi.withHandle(new HandleCallback<Integer>() {
+            @Override
+            public Integer withHandle(final Handle handle) throws Exception {
+                return ((Number) handle.select("select record_id from metrics where metric = ?", metricName).get(0).get("record_id")).intValue();
+            }
+        });
+    }
+
+    private int count(final String query) {
+        return dbi.withHandle(new HandleCallback<Integer>() {
+            @Override
+            public Integer withHandle(final Handle handle) throws Exception {
+                return ((Number) handle.select(query).get(0).values().iterator().next()).intValue();
+            }
+        });
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2010-2011 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.usage.timeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.joda.time.DateTime;
+import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.config.UsageConfig;
+import com.ning.billing.usage.UsageTestSuite;
+import com.ning.billing.usage.timeline.codec.DefaultSampleCoder;
+import com.ning.billing.usage.timeline.persistent.FileBackedBuffer;
+import com.ning.billing.usage.timeline.persistent.TimelineDao;
+import com.ning.billing.usage.timeline.samples.SampleOpcode;
+import com.ning.billing.usage.timeline.samples.ScalarSample;
+import com.ning.billing.usage.timeline.shutdown.ShutdownSaveMode;
+import com.ning.billing.usage.timeline.sources.SourceSamplesForTimestamp;
+import com.ning.billing.usage.timeline.times.DefaultTimelineCoder;
+import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalTenantContext;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TestTimelineEventHandler extends UsageTestSuite {
+
+    private static final int NB_THREADS = 8;
+    private static final int NB_SAMPLES_PER_THREAD = 1000;
+
+    private UsageConfig config;
+    private TimelineDao dao;
+    private TimelineEventHandler handler;
+    private InternalTenantContext context;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        config = Mockito.mock(UsageConfig.class);
+        Mockito.when(config.getShutdownSaveMode()).thenReturn(ShutdownSaveMode.SAVE_ALL_TIMELINES.name());
+        Mockito.when(config.getTimelineLength()).thenReturn(new TimeSpan("10d"));
+
+        // Category ids are the category names
+        dao = Mockito.mock(TimelineDao.class);
+        for (int i = 0; i < NB_THREADS; i++) {
+            Mockito.when(dao.getEventCategoryId(Mockito.eq(String.valueOf(i)), Mockito.<InternalTenantContext>any())).thenReturn(i);
+        }
+
+        // Chunks are queued, but never written
+        final BackgroundDBChunkWriter backgroundWriter = new BackgroundDBChunkWriter(dao, null, false, null);
+        handler = new TimelineEventHandler(config, dao, new DefaultTimelineCoder(), new DefaultSampleCoder(), backgroundWriter, null);
+        context = Mockito.mock(InternalTenantContext.class);
+    }
+
+    @Test(groups = "fast")
+    public void testConcurrentRecording() throws Exception {
+        final DateTime startTime = new DateTime();
+
+        // Each thread records its own category, for one of two sources
+        final ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < NB_THREADS; i++) {
+                final int categoryId = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int j = 0; j < NB_SAMPLES_PER_THREAD; j++) {
+                            handler.processSamples(createSamples(categoryId % 2, categoryId, startTime.plusMillis(j)), context);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(handler.getAddedSourceEventAccumulatorMapCount(), 2);
+        Assert.assertEquals(handler.getAddedSourceEventAccumulatorCount(), NB_THREADS);
+        Assert.assertEquals(handler.getAccumulators().size(), NB_THREADS);
+        for (final TimelineSourceEventAccumulator accumulator : handler.getAccumulators()) {
+            Assert.assertEquals(accumulator.getSourceId(), accumulator.getEventCategoryId() % 2);
+            Assert.assertEquals(accumulator.getTimes().size(), NB_SAMPLES_PER_THREAD);
+            Assert.assertTrue(accumulator.checkSampleCounts(NB_SAMPLES_PER_THREAD));
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testRecordingAfterPurge() throws Exception {
+        final DateTime startTime = new DateTime();
+        handler.processSamples(createSamples(1, 0, startTime), context);
+        final TimelineSourceEventAccumulator purgedAccumulator = handler.getAccumulators().iterator().next();
+
+        handler.purgeOldSourcesAndAccumulators(new DateTime().plusDays(1));
+        Assert.assertEquals(handler.getAccumulators().size(), 0);
+        Assert.assertEquals(handler.getPurgedAccumsBecauseSourceNotUpdated(), 1);
+        Assert.assertTrue(purgedAccumulator.isClosed());
+        Assert.assertEquals(purgedAccumulator.getPendingTimelineChunks().size(), 1);
+
+        // A closed accumulator rejects samples, which go to a new accumulator
+        Assert.assertFalse(purgedAccumulator.addSourceSamples(createSamples(1, 0, startTime.plusMillis(1))));
+        handler.processSamples(createSamples(1, 0, startTime.plusMillis(2)), context);
+        Assert.assertEquals(handler.getAddedSourceEventAccumulatorCount(), 2);
+        Assert.assertEquals(handler.getAccumulators().size(), 1);
+        Assert.assertEquals(handler.getAccumulators().iterator().next().getTimes().size(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testBatchRecording() throws Exception {
+        final InternalCallContext callContext = Mockito.mock(InternalCallContext.class);
+        Mockito.when(dao.getOrAddSource("source", callContext)).thenReturn(1);
+        Mockito.when(dao.getOrAddEventCategory("0", callContext)).thenReturn(0);
+        Mockito.when(dao.getOrAddMetric(1, 0, "metricA", callContext)).thenReturn(10);
+        Mockito.when(dao.getOrAddMetric(1, 0, "metricB", callContext)).thenReturn(11);
+
+        final FileBackedBuffer backingBuffer = Mockito.mock(FileBackedBuffer.class);
+        final BackgroundDBChunkWriter backgroundWriter = new BackgroundDBChunkWriter(dao, null, false, null);
+        final TimelineEventHandler batchHandler = new TimelineEventHandler(config, dao, new DefaultTimelineCoder(), new DefaultSampleCoder(),
+                                                                           backgroundWriter, backingBuffer);
+
+        final DateTime startTime = new DateTime();
+        final Map<DateTime, Map<String, Object>> samplesByTimestamp = new TreeMap<DateTime, Map<String, Object>>();
+        for (int i = 0; i < NB_SAMPLES_PER_THREAD; i++) {
+            samplesByTimestamp.put(startTime.plusMillis(i), ImmutableMap.<String, Object>of("metricA", (long) i, "metricB", 1L));
+        }
+        batchHandler.record("source", "0", samplesByTimestamp, callContext);
+
+        // Ids are resolved once for the whole batch, which is saved in a single write
+        Mockito.verify(dao, Mockito.times(1)).getOrAddSource("source", callContext);
+        Mockito.verify(dao, Mockito.times(1)).getOrAddEventCategory("0", callContext);
+        Mockito.verify(dao, Mockito.times(1)).getOrAddMetric(1, 0, "metricA", callContext);
+        Mockito.verify(dao, Mockito.times(1)).getOrAddMetric(1, 0, "metricB", callContext);
+        Mockito.verify(backingBuffer, Mockito.times(1)).append(Mockito.<List<SourceSamplesForTimestamp>>any());
+        Mockito.verify(backingBuffer, Mockito.never()).append(Mockito.<SourceSamplesForTimestamp>any());
+
+        Assert.assertEquals(batchHandler.getAccumulators().size(), 1);
+        final TimelineSourceEventAccumulator accumulator = batchHandler.getAccumulators().iterator().next();
+        Assert.assertEquals(accumulator.getSourceId(), 1);
+        Assert.assertEquals(accumulator.getTimes().size(), NB_SAMPLES_PER_THREAD);
+        Assert.assertTrue(accumulator.checkSampleCounts(NB_SAMPLES_PER_THREAD));
+    }
+
+    private SourceSamplesForTimestamp createSamples(final int sourceId, final int categoryId, final DateTime timestamp) {
+        return new SourceSamplesForTimestamp(sourceId, String.valueOf(categoryId), timestamp,
+                                             ImmutableMap.<Integer, ScalarSample>of(1, new ScalarSample<Long>(SampleOpcode.LONG, 10L)));
+    }
+}
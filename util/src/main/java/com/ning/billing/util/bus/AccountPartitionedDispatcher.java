@@ -0,0 +1,234 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.bus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ning.billing.util.bus.dao.BusEventEntry;
+
+/**
+ * Dispatches claimed bus events on a fixed set of single-threaded lanes, picked by hashing the account record id:
+ * events for a given account are handled in order, while events for different accounts are handled in parallel.
+ * Subscribers must be annotated with @AllowConcurrentEvents, otherwise the EventBus serializes them across lanes.
+ * <p/>
+ * The dispatch does not wait for the events to be handled: each lane reports its results to the handler once the
+ * events of an account have been dispatched. An event which fails to be dispatched is reported as failed and is not
+ * retried, so that it does not hold up the following events of its account.
+ * <p/>
+ * Events are handled in the order they are submitted: callers must submit the events of an account in order, and
+ * keep the events claimed while they are in flight (see getInFlightEntryIds).
+ */
+class AccountPartitionedDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountPartitionedDispatcher.class);
+
+    private static final long TERMINATION_TIMEOUT_SEC = 15;
+
+    public interface BusEventEntryHandler {
+
+        // Throws if the entry cannot be dispatched
+        public void dispatch(BusEventEntry entry);
+
+        // Called from the lane once all the entries of an account have been handled
+        public void onCompletion(List<Long> dispatchedEntryIds, List<Long> failedEntryIds);
+
+        // Called from dispatch if the entries of an account could not be submitted to their lane
+        public void onRejection(List<Long> rejectedEntryIds);
+    }
+
+    private final int nbLanes;
+    private final int laneQueueSize;
+    private final List<ThreadPoolExecutor> lanes;
+    // Entries submitted to a lane and not completed yet, so that they don't get dispatched twice if claimed again meanwhile
+    private final Set<Long> inFlightEntryIds;
+
+    public AccountPartitionedDispatcher(final int nbLanes, final int laneQueueSize) {
+        this.nbLanes = nbLanes;
+        this.laneQueueSize = laneQueueSize;
+        this.lanes = new ArrayList<ThreadPoolExecutor>(nbLanes);
+        this.inFlightEntryIds = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    }
+
+    public synchronized void start() {
+        for (int i = 0; i < nbLanes; i++) {
+            final int laneNb = i;
+            lanes.add(new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                                             new ArrayBlockingQueue<Runnable>(laneQueueSize),
+                                             new ThreadFactory() {
+                                                 @Override
+                                                 public Thread newThread(final Runnable r) {
+                                                     return new Thread(new ThreadGroup(DefaultBusService.EVENT_BUS_GROUP_NAME),
+                                                                       r,
+                                                                       DefaultBusService.EVENT_BUS_TH_NAME + "-lane-" + laneNb);
+                                                 }
+                                             },
+                                             new RejectedExecutionHandler() {
+                                                 @Override
+                                                 public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+                                                     // Lane is full: make the polling thread wait, which throttles the claims
+                                                     if (executor.isShutdown()) {
+                                                         throw new RejectedExecutionException("Bus lane " + laneNb + " has been shut down");
+                                                     }
+                                                     try {
+                                                         executor.getQueue().put(r);
+                                                     } catch (InterruptedException e) {
+                                                         Thread.currentThread().interrupt();
+                                                         throw new RejectedExecutionException("Interrupted while waiting on bus lane " + laneNb);
+                                                     }
+                                                 }
+                                             }));
+        }
+        log.info(String.format("Bus dispatcher started with %d lanes", nbLanes));
+    }
+
+    public synchronized void stop() {
+        for (final ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (final ThreadPoolExecutor lane : lanes) {
+                if (!lane.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                    log.warn("Bus dispatcher lane did not terminate, {} events left", lane.getQueue().size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Bus dispatcher stop sequence has been interrupted");
+        } finally {
+            lanes.clear();
+        }
+    }
+
+    /**
+     * Submits the events to their lanes, without waiting for them to be handled
+     *
+     * @param entries the claimed entries, in the order they should be dispatched
+     * @param handler the handler doing the actual dispatch, and notified of the results
+     * @return the number of entries which were submitted
+     */
+    public int dispatch(final List<BusEventEntry> entries, final BusEventEntryHandler handler) {
+        final Map<Long, List<BusEventEntry>> entriesPerAccount = new LinkedHashMap<Long, List<BusEventEntry>>();
+        for (final BusEventEntry cur : entries) {
+            if (!inFlightEntryIds.add(cur.getId())) {
+                continue;
+            }
+            if (entriesPerAccount.get(cur.getAccountRecordId()) == null) {
+                entriesPerAccount.put(cur.getAccountRecordId(), new LinkedList<BusEventEntry>());
+            }
+            entriesPerAccount.get(cur.getAccountRecordId()).add(cur);
+        }
+
+        int nbSubmitted = 0;
+        for (final Long accountRecordId : entriesPerAccount.keySet()) {
+            final List<BusEventEntry> accountEntries = entriesPerAccount.get(accountRecordId);
+            final ThreadPoolExecutor lane = getLane(accountRecordId);
+            if (lane == null) {
+                dispatchInOrder(accountEntries, handler);
+                nbSubmitted += accountEntries.size();
+                continue;
+            }
+
+            try {
+                lane.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatchInOrder(accountEntries, handler);
+                    }
+                });
+                nbSubmitted += accountEntries.size();
+            } catch (RejectedExecutionException e) {
+                releaseInFlight(accountEntries);
+                log.warn("Failed to submit bus events for accountRecordId " + accountRecordId + ", they will be retried", e);
+                final List<Long> rejectedEntryIds = new ArrayList<Long>(accountEntries.size());
+                for (final BusEventEntry cur : accountEntries) {
+                    rejectedEntryIds.add(cur.getId());
+                }
+                handler.onRejection(rejectedEntryIds);
+            }
+        }
+        return nbSubmitted;
+    }
+
+    /**
+     * @return the ids of the entries submitted to a lane and not completed yet
+     */
+    public List<Long> getInFlightEntryIds() {
+        return new ArrayList<Long>(inFlightEntryIds);
+    }
+
+    public List<Integer> getLaneQueueDepths() {
+        final List<Integer> depths = new ArrayList<Integer>(nbLanes);
+        synchronized (this) {
+            for (final ThreadPoolExecutor lane : lanes) {
+                depths.add(lane.getQueue().size());
+            }
+        }
+        return depths;
+    }
+
+    private void dispatchInOrder(final List<BusEventEntry> accountEntries, final BusEventEntryHandler handler) {
+        final List<Long> dispatchedEntryIds = new ArrayList<Long>(accountEntries.size());
+        final List<Long> failedEntryIds = new LinkedList<Long>();
+        try {
+            for (final BusEventEntry cur : accountEntries) {
+                try {
+                    handler.dispatch(cur);
+                    dispatchedEntryIds.add(cur.getId());
+                } catch (RuntimeException e) {
+                    log.warn(String.format("Failed to dispatch bus event %d for accountRecordId %s, it won't be retried",
+                                           cur.getId(), cur.getAccountRecordId()), e);
+                    failedEntryIds.add(cur.getId());
+                }
+            }
+            handler.onCompletion(dispatchedEntryIds, failedEntryIds);
+        } catch (RuntimeException e) {
+            log.warn("Failed to complete bus events for accountRecordId " + accountEntries.get(0).getAccountRecordId() + ", they will be retried", e);
+        } finally {
+            releaseInFlight(accountEntries);
+        }
+    }
+
+    private void releaseInFlight(final List<BusEventEntry> accountEntries) {
+        for (final BusEventEntry cur : accountEntries) {
+            inFlightEntryIds.remove(cur.getId());
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getLane(final Long accountRecordId) {
+        if (lanes.size() == 0) {
+            return null;
+        }
+        final long hash = (accountRecordId == null) ? 0 : accountRecordId;
+        return lanes.get((int) Math.abs(hash % lanes.size()));
+    }
+}
@@ -30,4 +30,16 @@ public interface PersistentBusConfig extends PersistentQueueConfig {
     @Config("killbill.billing.util.persistent.bus.nbThreads")
     @Default("3")
     public int getNbThreads();
+
+    @Config("killbill.billing.util.persistent.bus.claimed")
+    @Default("10")
+    public int getMaxClaimedEvents();
+
+    @Config("killbill.billing.util.persistent.bus.dispatch.nbLanes")
+    @Default("4")
+    public int getNbDispatchLanes();
+
+    @Config("killbill.billing.util.persistent.bus.dispatch.laneQueueSize")
+    @Default("100")
+    public int getDispatchLaneQueueSize();
 }
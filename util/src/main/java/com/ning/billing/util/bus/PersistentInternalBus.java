@@ -19,8 +19,11 @@ package com.ning.billing.util.bus;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.skife.jdbi.v2.IDBI;
 import org.skife.jdbi.v2.Transaction;
@@ -47,16 +50,24 @@ import com.google.inject.Inject;
 public class PersistentInternalBus extends PersistentQueueBase implements InternalBus {
 
     private static final long DELTA_IN_PROCESSING_TIME_MS = 1000L * 60L * 5L; // 5 minutes
-    private static final int MAX_BUS_EVENTS = 1;
+    // Renew the claims of the queued events a few times per claim, so that a slow renewal doesn't let them expire
+    private static final long CLAIM_RENEWAL_INTERVAL_MS = DELTA_IN_PROCESSING_TIME_MS / 3;
 
     private static final Logger log = LoggerFactory.getLogger(PersistentInternalBus.class);
 
     private final PersistentBusSqlDao dao;
 
     private final EventBusDelegate eventBusDelegate;
+    private final AccountPartitionedDispatcher dispatcher;
     private final Clock clock;
     private final String hostname;
+    private final int maxClaimedEvents;
     private final InternalCallContextFactory internalCallContextFactory;
+    // Claims and submissions to the lanes are done under this monitor, so that the events of an account are
+    // submitted in the order they were claimed, whichever polling thread claimed them
+    private final Object dispatchMonitor = new Object();
+
+    private ScheduledExecutorService claimRenewalThread;
 
     private static final class EventBusDelegate extends EventBus {
 
@@ -92,60 +103,130 @@ public class PersistentInternalBus extends PersistentQueueBase implements Intern
         this.dao = dbi.onDemand(PersistentBusSqlDao.class);
         this.clock = clock;
         this.eventBusDelegate = new EventBusDelegate("Killbill EventBus");
+        this.dispatcher = new AccountPartitionedDispatcher(config.getNbDispatchLanes(), config.getDispatchLaneQueueSize());
         this.hostname = Hostname.get();
+        this.maxClaimedEvents = config.getMaxClaimedEvents();
         this.internalCallContextFactory = internalCallContextFactory;
     }
 
     @Override
     public void start() {
+        dispatcher.start();
+        claimRenewalThread = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread th = new Thread(new ThreadGroup(DefaultBusService.EVENT_BUS_GROUP_NAME),
+                                             r,
+                                             DefaultBusService.EVENT_BUS_TH_NAME + "-claim-renewal");
+                th.setDaemon(true);
+                return th;
+            }
+        });
+        claimRenewalThread.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    renewClaims();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to renew the claims of the bus events in flight", e);
+                }
+            }
+        }, CLAIM_RENEWAL_INTERVAL_MS, CLAIM_RENEWAL_INTERVAL_MS, TimeUnit.MILLISECONDS);
         startQueue();
     }
 
     @Override
     public void stop() {
         stopQueue();
+        dispatcher.stop();
+        if (claimRenewalThread != null) {
+            claimRenewalThread.shutdownNow();
+            claimRenewalThread = null;
+        }
     }
 
     @Override
     public int doProcessEvents() {
 
         // TODO API_FIX Retrieving and clearing bus events is not done per tenant so pass default INTERNAL_TENANT_RECORD_ID; not sure this is something we want to do anyway ?
-        final InternalCallContext context = internalCallContextFactory.createInternalCallContext(InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID, null, "PersistentBus", CallOrigin.INTERNAL, UserType.SYSTEM, null);
-        final List<BusEventEntry> events = getNextBusEvent(context);
-        if (events.size() == 0) {
-            return 0;
+        final InternalCallContext context = createInternalCallContext();
+        synchronized (dispatchMonitor) {
+            final List<BusEventEntry> events = getNextBusEvent(context);
+            if (events.size() == 0) {
+                return 0;
+            }
+
+            return dispatchBusEvents(events, context);
         }
+    }
+
+    private int dispatchBusEvents(final List<BusEventEntry> events, final InternalCallContext context) {
+        return dispatcher.dispatch(events, new AccountPartitionedDispatcher.BusEventEntryHandler() {
+            @Override
+            public void dispatch(final BusEventEntry cur) {
+                final String jsonWithAccountAndTenantRecorId = tweakJsonToIncludeAccountAndTenantRecordId(cur.getBusEventJson(), cur.getAccountRecordId(), cur.getTenantRecordId());
+                final BusInternalEvent evt = deserializeEvent(cur.getBusEventClass(), jsonWithAccountAndTenantRecorId);
+                if (evt == null) {
+                    throw new IllegalStateException("Unable to deserialize bus event " + cur.getId() + " of class " + cur.getBusEventClass());
+                }
+                // STEPH exception handling is done by GUAVA-- logged a bug Issue-780
+                eventBusDelegate.post(evt);
+            }
 
-        int result = 0;
-        for (final BusEventEntry cur : events) {
-            final String jsonWithAccountAndTenantRecorId = tweakJsonToIncludeAccountAndTenantRecordId(cur.getBusEventJson(), cur.getAccountRecordId(), cur.getTenantRecordId());
-            final BusInternalEvent evt = deserializeEvent(cur.getBusEventClass(), jsonWithAccountAndTenantRecorId);
-            result++;
-            // STEPH exception handling is done by GUAVA-- logged a bug Issue-780
-            eventBusDelegate.post(evt);
-            final InternalCallContext rehydratedContext = internalCallContextFactory.createInternalCallContext(cur.getTenantRecordId(), cur.getAccountRecordId(), context);
-            dao.clearBusEvent(cur.getId(), hostname, rehydratedContext);
+            @Override
+            public void onCompletion(final List<Long> dispatchedEntryIds, final List<Long> failedEntryIds) {
+                if (dispatchedEntryIds.size() > 0 && dao.clearBusEvents(dispatchedEntryIds, hostname, context) != dispatchedEntryIds.size()) {
+                    log.warn("Lost the claim of some of the bus events {} before clearing them, they may have been dispatched twice", dispatchedEntryIds);
+                }
+                if (failedEntryIds.size() > 0 && dao.failBusEvents(failedEntryIds, hostname, context) != failedEntryIds.size()) {
+                    log.warn("Lost the claim of some of the bus events {} before failing them", failedEntryIds);
+                }
+            }
+
+            @Override
+            public void onRejection(final List<Long> rejectedEntryIds) {
+                // Make them available again right away: as we still hold the dispatch monitor, they will be claimed
+                // again before the following events of their account
+                dao.releaseBusEventClaims(rejectedEntryIds, hostname, context);
+            }
+        });
+    }
+
+    // Keep the events submitted to the lanes claimed until they are handled, so that other nodes don't claim them again
+    private void renewClaims() {
+        final List<Long> inFlightEntryIds = dispatcher.getInFlightEntryIds();
+        if (inFlightEntryIds.size() == 0) {
+            return;
         }
-        return result;
+
+        final Date nextAvailable = clock.getUTCNow().plus(DELTA_IN_PROCESSING_TIME_MS).toDate();
+        dao.renewBusEventClaims(inFlightEntryIds, hostname, nextAvailable, createInternalCallContext());
+    }
+
+    private InternalCallContext createInternalCallContext() {
+        return internalCallContextFactory.createInternalCallContext(InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID, null, "PersistentBus", CallOrigin.INTERNAL, UserType.SYSTEM, null);
+    }
+
+    public List<Integer> getDispatchLaneQueueDepths() {
+        return dispatcher.getLaneQueueDepths();
     }
 
     private List<BusEventEntry> getNextBusEvent(final InternalCallContext context) {
         final Date now = clock.getUTCNow().toDate();
         final Date nextAvailable = clock.getUTCNow().plus(DELTA_IN_PROCESSING_TIME_MS).toDate();
+        final String claimToken = UUID.randomUUID().toString();
 
-        final BusEventEntry input = dao.getNextBusEventEntry(MAX_BUS_EVENTS, hostname, now, context);
-        if (input == null) {
+        // Claim a batch of events in one statement, and read back the ones we won
+        final int claimed = dao.claimBusEvents(maxClaimedEvents, hostname, claimToken, nextAvailable, now, context);
+        if (claimed == 0) {
             return Collections.emptyList();
         }
 
-        // We need to re-hydrate the context with the record ids from the BusEventEntry
-        final InternalCallContext rehydratedContext = internalCallContextFactory.createInternalCallContext(input.getTenantRecordId(), input.getAccountRecordId(), context);
-        final boolean claimed = (dao.claimBusEvent(hostname, nextAvailable, input.getId(), now, rehydratedContext) == 1);
-        if (claimed) {
-            dao.insertClaimedHistory(hostname, now, input.getId(), rehydratedContext);
-            return Collections.singletonList(input);
+        final List<BusEventEntry> claimedEntries = dao.getClaimedBusEvents(hostname, claimToken, context);
+        if (claimedEntries.size() > 0) {
+            dao.insertClaimedHistory(hostname, now, claimedEntries);
         }
-        return Collections.emptyList();
+        return claimedEntries;
     }
 
     @Override
@@ -168,6 +249,7 @@ public class PersistentInternalBus extends PersistentQueueBase implements Intern
                 return null;
             }
         });
+        wakeUpProcessingThreads();
     }
 
     @Override
@@ -175,6 +257,8 @@ public class PersistentInternalBus extends PersistentQueueBase implements Intern
             throws EventBusException {
         final PersistentBusSqlDao transactional = transmogrifier.become(PersistentBusSqlDao.class);
         postFromTransaction(event, context, transactional);
+        // The enclosing transaction may not be committed yet, but the processing threads will keep polling at a short interval
+        wakeUpProcessingThreads();
     }
 
     private void postFromTransaction(final BusInternalEvent event, final InternalCallContext context, final PersistentBusSqlDao transactional) {
@@ -19,12 +19,14 @@ package com.ning.billing.util.bus.dao;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.List;
 
 import org.joda.time.DateTime;
 import org.skife.jdbi.v2.SQLStatement;
 import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.Binder;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
@@ -32,6 +34,7 @@ import org.skife.jdbi.v2.sqlobject.mixins.CloseMe;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.ExternalizedSqlViaStringTemplate3;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
@@ -43,25 +46,41 @@ import com.ning.billing.util.queue.PersistentQueueEntryLifecycle.PersistentQueue
 @ExternalizedSqlViaStringTemplate3()
 public interface PersistentBusSqlDao extends Transactional<PersistentBusSqlDao>, CloseMe {
 
+    @SqlUpdate
+    public int claimBusEvents(@Bind("max") int max,
+                              @Bind("owner") String owner,
+                              @Bind("claimToken") String claimToken,
+                              @Bind("nextAvailable") Date nextAvailable,
+                              @Bind("now") Date now,
+                              @InternalTenantContextBinder final InternalCallContext context);
+
     @SqlQuery
     @Mapper(PersistentBusSqlMapper.class)
-    public BusEventEntry getNextBusEventEntry(@Bind("max") int max,
-                                              @Bind("owner") String owner,
-                                              @Bind("now") Date now,
-                                              @InternalTenantContextBinder final InternalTenantContext context);
+    public List<BusEventEntry> getClaimedBusEvents(@Bind("owner") String owner,
+                                                   @Bind("claimToken") String claimToken,
+                                                   @InternalTenantContextBinder final InternalTenantContext context);
 
     @SqlUpdate
-    public int claimBusEvent(@Bind("owner") String owner,
-                             @Bind("nextAvailable") Date nextAvailable,
-                             @Bind("recordId") Long id,
-                             @Bind("now") Date now,
-                             @InternalTenantContextBinder final InternalCallContext context);
+    public int renewBusEventClaims(@BindIn("recordIds") List<Long> ids,
+                                   @Bind("owner") String owner,
+                                   @Bind("nextAvailable") Date nextAvailable,
+                                   @InternalTenantContextBinder final InternalCallContext context);
 
     @SqlUpdate
-    public void clearBusEvent(@Bind("recordId") Long id,
+    public int releaseBusEventClaims(@BindIn("recordIds") List<Long> ids,
+                                     @Bind("owner") String owner,
+                                     @InternalTenantContextBinder final InternalCallContext context);
+
+    @SqlUpdate
+    public int clearBusEvents(@BindIn("recordIds") List<Long> ids,
                               @Bind("owner") String owner,
                               @InternalTenantContextBinder final InternalCallContext context);
 
+    @SqlUpdate
+    public int failBusEvents(@BindIn("recordIds") List<Long> ids,
+                             @Bind("owner") String owner,
+                             @InternalTenantContextBinder final InternalCallContext context);
+
     @SqlUpdate
     public void removeBusEventsById(@Bind("recordId") Long id,
                                     @InternalTenantContextBinder final InternalCallContext context);
@@ -70,11 +89,10 @@ public interface PersistentBusSqlDao extends Transactional<PersistentBusSqlDao>,
     public void insertBusEvent(@Bind(binder = PersistentBusSqlBinder.class) BusEventEntry evt,
                                @InternalTenantContextBinder final InternalCallContext context);
 
-    @SqlUpdate
+    @SqlBatch
     public void insertClaimedHistory(@Bind("ownerId") String owner,
                                      @Bind("claimedDate") Date claimedDate,
-                                     @Bind("busEventId") long id,
-                                     @InternalTenantContextBinder final InternalCallContext context);
+                                     @Bind(binder = PersistentBusClaimedHistoryBinder.class) List<BusEventEntry> claimedEntries);
 
     public static class PersistentBusSqlBinder extends BinderBase implements Binder<Bind, BusEventEntry> {
 
@@ -90,6 +108,17 @@ public interface PersistentBusSqlDao extends Transactional<PersistentBusSqlDao>,
         }
     }
 
+    // The account and tenant record ids vary from one claimed entry to another, so they are bound from the entry itself
+    public static class PersistentBusClaimedHistoryBinder extends BinderBase implements Binder<Bind, BusEventEntry> {
+
+        @Override
+        public void bind(@SuppressWarnings("rawtypes") final SQLStatement stmt, final Bind bind, final BusEventEntry evt) {
+            stmt.bind("busEventId", evt.getId());
+            stmt.bind("accountRecordId", evt.getAccountRecordId());
+            stmt.bind("tenantRecordId", evt.getTenantRecordId());
+        }
+    }
+
     public static class PersistentBusSqlMapper extends MapperBase implements ResultSetMapper<BusEventEntry> {
 
         @Override
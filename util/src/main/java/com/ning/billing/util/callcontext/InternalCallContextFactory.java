@@ -33,20 +33,38 @@ import com.ning.billing.util.dao.ObjectType;
 import com.ning.billing.util.dao.TableName;
 
 import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 
 public class InternalCallContextFactory {
 
     public static final long INTERNAL_TENANT_RECORD_ID = 0L;
 
+    // Record ids never change once assigned and rows holding an id (accounts, tenants, ...) are never deleted, so a
+    // cached mapping can't become stale: only hits are cached, misses always go to the database
+    private static final long MAX_CACHED_OBJECT_RECORD_IDS = 50000L;
+    private static final long MAX_CACHED_TENANT_RECORD_IDS = 1000L;
+
     private final IDBI dbi;
     private final CallContextSqlDao callContextSqlDao;
     private final Clock clock;
+    private final Cache<ObjectKey, RecordIds> objectRecordIdsCache;
+    private final Cache<UUID, Long> tenantRecordIdCache;
 
     @Inject
     public InternalCallContextFactory(final IDBI dbi, final Clock clock) {
         this.dbi = dbi;
         this.callContextSqlDao = dbi.onDemand(CallContextSqlDao.class);
         this.clock = clock;
+        this.objectRecordIdsCache = CacheBuilder.newBuilder()
+                                                .maximumSize(MAX_CACHED_OBJECT_RECORD_IDS)
+                                                .recordStats()
+                                                .build();
+        this.tenantRecordIdCache = CacheBuilder.newBuilder()
+                                               .maximumSize(MAX_CACHED_TENANT_RECORD_IDS)
+                                               .recordStats()
+                                               .build();
     }
 
     /**
@@ -145,9 +163,8 @@ public class InternalCallContextFactory {
                                                          final CallOrigin callOrigin, final UserType userType, @Nullable final UUID userToken,
                                                          @Nullable final String reasonCode, @Nullable final String comment, final DateTime createdDate,
                                                          final DateTime updatedDate) {
-        final Long tenantRecordId = retrieveTenantRecordIdFromObject(objectId, objectType);
-        final Long accountRecordId = retrieveAccountRecordIdFromObject(objectId, objectType);
-        return createInternalCallContext(tenantRecordId, accountRecordId, userName, callOrigin, userType, userToken,
+        final RecordIds recordIds = retrieveRecordIdsFromObject(objectId, objectType);
+        return createInternalCallContext(recordIds.getTenantRecordId(), recordIds.getAccountRecordId(), userName, callOrigin, userType, userToken,
                                          reasonCode, comment, createdDate, updatedDate);
     }
 
@@ -210,79 +227,142 @@ public class InternalCallContextFactory {
                                        context.getCreatedDate(), context.getUpdatedDate());
     }
 
+    public CacheStats getObjectRecordIdsCacheStats() {
+        return objectRecordIdsCache.stats();
+    }
+
+    public CacheStats getTenantRecordIdCacheStats() {
+        return tenantRecordIdCache.stats();
+    }
+
     private Long getTenantRecordId(final TenantContext context) {
         // Default to single default tenant (e.g. single tenant mode)
         if (context.getTenantId() == null) {
             return INTERNAL_TENANT_RECORD_ID;
-        } else {
-            return callContextSqlDao.getTenantRecordId(context.getTenantId().toString());
         }
-    }
 
-    private Long retrieveAccountRecordIdFromObject(final UUID objectId, final ObjectType objectType) {
-        final Long accountRecordId;
+        final Long cachedTenantRecordId = tenantRecordIdCache.getIfPresent(context.getTenantId());
+        if (cachedTenantRecordId != null) {
+            return cachedTenantRecordId;
+        }
 
+        final Long tenantRecordId = callContextSqlDao.getTenantRecordId(context.getTenantId().toString());
+        // Don't cache misses, the tenant may not have been created yet
+        if (tenantRecordId != null) {
+            tenantRecordIdCache.put(context.getTenantId(), tenantRecordId);
+        }
+        return tenantRecordId;
+    }
+
+    private RecordIds retrieveRecordIdsFromObject(final UUID objectId, final ObjectType objectType) {
         final TableName tableName = TableName.fromObjectType(objectType);
-        if (tableName != null) {
-            accountRecordId = dbi.withHandle(new HandleCallback<Long>() {
-                @Override
-                public Long withHandle(final Handle handle) throws Exception {
-                    final String columnName;
-                    if (TableName.TAG_DEFINITIONS.equals(tableName) || TableName.TAG_DEFINITION_HISTORY.equals(tableName)) {
-                        // Not tied to an account
-                        return null;
-                    } else if (TableName.ACCOUNT.equals(tableName) || TableName.ACCOUNT_HISTORY.equals(tableName)) {
-                        // Lookup the record_id directly
-                        columnName = "record_id";
-                    } else {
-                        // The table should have an account_record_id column
-                        columnName = "account_record_id";
-                    }
-
-                    final List<Map<String, Object>> values = handle.select(String.format("select %s from %s where id = ?;", columnName, tableName.getTableName()), objectId.toString());
-                    if (values.size() == 0) {
-                        return null;
-                    } else {
-                        return (Long) values.get(0).get(columnName);
-                    }
+        if (tableName == null) {
+            return RecordIds.NOT_FOUND;
+        }
+
+        final ObjectKey key = new ObjectKey(objectId, objectType);
+        final RecordIds cachedRecordIds = objectRecordIdsCache.getIfPresent(key);
+        if (cachedRecordIds != null) {
+            return cachedRecordIds;
+        }
+
+        final RecordIds recordIds = dbi.withHandle(new HandleCallback<RecordIds>() {
+            @Override
+            public RecordIds withHandle(final Handle handle) throws Exception {
+                final String tenantColumnName;
+                if (TableName.TENANT.equals(tableName)) {
+                    // Lookup the record_id directly
+                    tenantColumnName = "record_id";
+                } else {
+                    // The table should have an tenant_record_id column
+                    tenantColumnName = "tenant_record_id";
+                }
+
+                final String accountColumnName;
+                if (TableName.TAG_DEFINITIONS.equals(tableName) || TableName.TAG_DEFINITION_HISTORY.equals(tableName) || TableName.TENANT.equals(tableName)) {
+                    // Not tied to an account
+                    accountColumnName = null;
+                } else if (TableName.ACCOUNT.equals(tableName) || TableName.ACCOUNT_HISTORY.equals(tableName)) {
+                    // Lookup the record_id directly
+                    accountColumnName = "record_id";
+                } else {
+                    // The table should have an account_record_id column
+                    accountColumnName = "account_record_id";
+                }
+
+                final String query;
+                if (accountColumnName == null) {
+                    query = String.format("select %s as tenant_record_id from %s where id = ?;", tenantColumnName, tableName.getTableName());
+                } else {
+                    query = String.format("select %s as tenant_record_id, %s as account_record_id from %s where id = ?;", tenantColumnName, accountColumnName, tableName.getTableName());
                 }
-            });
-        } else {
-            accountRecordId = null;
+
+                final List<Map<String, Object>> values = handle.select(query, objectId.toString());
+                if (values.size() == 0) {
+                    return null;
+                } else {
+                    return new RecordIds((Long) values.get(0).get("tenant_record_id"), (Long) values.get(0).get("account_record_id"));
+                }
+            }
+        });
+
+        // Don't cache misses, the object may not have been created yet
+        if (recordIds == null) {
+            return RecordIds.NOT_FOUND;
         }
-        return accountRecordId;
+        objectRecordIdsCache.put(key, recordIds);
+        return recordIds;
     }
 
-    private Long retrieveTenantRecordIdFromObject(final UUID objectId, final ObjectType objectType) {
-        final Long tenantRecordId;
+    private static final class ObjectKey {
 
-        final TableName tableName = TableName.fromObjectType(objectType);
-        if (tableName != null) {
-            tenantRecordId = dbi.withHandle(new HandleCallback<Long>() {
-                @Override
-                public Long withHandle(final Handle handle) throws Exception {
-                    final String columnName;
-                    if (TableName.TENANT.equals(tableName)) {
-                        // Lookup the record_id directly
-                        columnName = "record_id";
-                    } else {
-                        // The table should have an tenant_record_id column
-                        columnName = "tenant_record_id";
-                    }
-
-                    final List<Map<String, Object>> values = handle.select(String.format("select %s from %s where id = ?;", columnName, tableName.getTableName()), objectId.toString());
-                    if (values.size() == 0) {
-                        return null;
-                    } else {
-                        return (Long) values.get(0).get(columnName);
-                    }
-                }
-            });
-        } else {
-            tenantRecordId = null;
+        private final UUID objectId;
+        private final ObjectType objectType;
+
+        private ObjectKey(final UUID objectId, final ObjectType objectType) {
+            this.objectId = objectId;
+            this.objectType = objectType;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final ObjectKey objectKey = (ObjectKey) o;
+            return objectId.equals(objectKey.objectId) && objectType == objectKey.objectType;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = objectId.hashCode();
+            result = 31 * result + objectType.hashCode();
+            return result;
         }
-        return tenantRecordId;
     }
 
+    private static final class RecordIds {
+
+        private static final RecordIds NOT_FOUND = new RecordIds(null, null);
+
+        private final Long tenantRecordId;
+        private final Long accountRecordId;
+
+        private RecordIds(@Nullable final Long tenantRecordId, @Nullable final Long accountRecordId) {
+            this.tenantRecordId = tenantRecordId;
+            this.accountRecordId = accountRecordId;
+        }
 
+        public Long getTenantRecordId() {
+            return tenantRecordId;
+        }
+
+        public Long getAccountRecordId() {
+            return accountRecordId;
+        }
+    }
 }
@@ -16,13 +16,16 @@
 
 package com.ning.billing.util.config;
 
+import java.io.Serializable;
 import java.net.URI;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public abstract class ValidatingConfig<Context> {
+public abstract class ValidatingConfig<Context> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     /**
      * All must implement validation
      *
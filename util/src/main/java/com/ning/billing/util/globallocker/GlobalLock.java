@@ -17,5 +17,14 @@
 package com.ning.billing.util.globallocker;
 
 public interface GlobalLock {
+
     public void release();
+
+    /**
+     * Make sure the lock is still held, before doing the writes it guards. This is best effort: the lock may still
+     * be lost right after this check, as the writes themselves are not conditioned on holding it.
+     *
+     * @throws LockFailedException if the lock has been lost meanwhile
+     */
+    public void checkHeld() throws LockFailedException;
 }
@@ -24,6 +24,7 @@ public interface GlobalLocker {
 
     public enum LockerType {
         ACCOUNT_FOR_INVOICE_PAYMENTS,
-        ACCOUNT_FOR_ANALYTICS
+        ACCOUNT_FOR_ANALYTICS,
+        OVERDUE_SWEEP
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.globallocker;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+
+public interface GlobalLockerConfig {
+
+    @Config("killbill.billing.util.globallocker.type")
+    @Description("GlobalLocker implementation: LEASE (lease rows in the global_locks table) or MYSQL (GET_LOCK, holds a connection while locked)")
+    @Default("LEASE")
+    public String getGlobalLockerType();
+
+    @Config("killbill.billing.util.globallocker.leaseTimeSec")
+    @Description("How long a lock is leased for, after which it can be taken over if the owner did not release it")
+    @Default("300")
+    public int getLeaseTimeSec();
+
+    @Config("killbill.billing.util.globallocker.waitTimeMs")
+    @Description("How long each try waits for the lock to become available")
+    @Default("10000")
+    public long getWaitTimeMs();
+
+    @Config("killbill.billing.util.globallocker.minBackoffMs")
+    @Description("Initial delay between two attempts at acquiring a busy lock")
+    @Default("20")
+    public long getMinBackoffMs();
+
+    @Config("killbill.billing.util.globallocker.maxBackoffMs")
+    @Description("Maximum delay between two attempts at acquiring a busy lock")
+    @Default("1000")
+    public long getMaxBackoffMs();
+
+    @Config("killbill.billing.util.globallocker.nbStripes")
+    @Description("Number of in-memory locks used to serialize lock requests from this node")
+    @Default("1024")
+    public int getNbStripes();
+}
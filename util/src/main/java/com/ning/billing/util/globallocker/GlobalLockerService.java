@@ -0,0 +1,48 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.globallocker;
+
+import com.ning.billing.lifecycle.KillbillService;
+import com.ning.billing.lifecycle.LifecycleHandlerType;
+import com.ning.billing.lifecycle.LifecycleHandlerType.LifecycleLevel;
+
+import com.google.inject.Inject;
+
+public class GlobalLockerService implements KillbillService {
+
+    public static final String GLOBAL_LOCKER_SERVICE = "global-locker-service";
+
+    private final GlobalLocker locker;
+
+    @Inject
+    public GlobalLockerService(final GlobalLocker locker) {
+        this.locker = locker;
+    }
+
+    @Override
+    public String getName() {
+        return GLOBAL_LOCKER_SERVICE;
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.SHUTDOWN)
+    public void stop() {
+        // Only the lease locker has background work
+        if (locker instanceof LeaseGlobalLocker) {
+            ((LeaseGlobalLocker) locker).stop();
+        }
+    }
+}
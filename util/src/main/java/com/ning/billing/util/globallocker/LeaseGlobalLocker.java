@@ -0,0 +1,302 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.globallocker;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.skife.jdbi.v2.IDBI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+
+/**
+ * GlobalLocker backed by leases in the global_locks table.
+ * <p/>
+ * Unlike MySqlGlobalLocker, no connection is held while the lock is held: acquiring and releasing a lock
+ * are single statements. Held leases are renewed in the background, so a lock is only taken over once its
+ * owner stopped renewing it (e.g. the node died). Each acquisition bumps the generation of the lock: a stale
+ * owner cannot renew nor release the lock of the new one, and fails its checkHeld() calls. Note that the
+ * writes guarded by the lock don't check the generation, so checkHeld() narrows the window during which a
+ * stale owner may still write, it does not close it.
+ * <p/>
+ * Requests from the same node are first serialized in memory, so that only one thread per node competes
+ * for a given lock in the database. Locks are re-entrant for the thread holding them, and must be released
+ * by that same thread.
+ */
+public class LeaseGlobalLocker implements GlobalLocker {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaseGlobalLocker.class);
+
+    private final LeaseGlobalLockerDao dao;
+    private final GlobalLockerConfig config;
+    private final String ownerId;
+    private final ReentrantLock[] stripes;
+    private final Map<String, LeaseGlobalLock> heldLocks = new ConcurrentHashMap<String, LeaseGlobalLock>();
+    private final Random random = new Random();
+    private final ScheduledExecutorService heartbeatExecutor;
+
+    private final AtomicLong nbAcquisitions = new AtomicLong();
+    private final AtomicLong nbContendedAcquisitions = new AtomicLong();
+    private final AtomicLong nbFailedAcquisitions = new AtomicLong();
+    private final AtomicLong totalWaitTimeMs = new AtomicLong();
+
+    @Inject
+    public LeaseGlobalLocker(final IDBI dbi, final GlobalLockerConfig config) {
+        this.dao = dbi.onDemand(LeaseGlobalLockerDao.class);
+        this.config = config;
+        // Needs to fit in global_locks.owner_id
+        this.ownerId = UUID.randomUUID().toString();
+        this.stripes = new ReentrantLock[config.getNbStripes()];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+
+        this.heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "LeaseGlobalLocker-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Renew a few times per lease, so that a slow renewal doesn't let the lease expire
+        final long heartbeatIntervalMs = TimeUnit.SECONDS.toMillis(config.getLeaseTimeSec()) / 3;
+        heartbeatExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                renewLeases();
+            }
+        }, heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public GlobalLock lockWithNumberOfTries(final LockerType service, final String lockKey, final int retry) {
+        final String lockName = getLockName(service, lockKey);
+        final long ini = System.currentTimeMillis();
+
+        int tries_left = retry;
+        while (tries_left-- > 0) {
+            final GlobalLock lock = lock(lockName);
+            if (lock != null) {
+                final long waitTimeMs = System.currentTimeMillis() - ini;
+                nbAcquisitions.incrementAndGet();
+                totalWaitTimeMs.addAndGet(waitTimeMs);
+                return lock;
+            }
+        }
+
+        nbFailedAcquisitions.incrementAndGet();
+        totalWaitTimeMs.addAndGet(System.currentTimeMillis() - ini);
+        logger.error(String.format("Failed to acquire lock %s for service %s after %d retry", lockKey, service, retry));
+        throw new LockFailedException();
+    }
+
+    private GlobalLock lock(final String lockName) {
+        final ReentrantLock stripe = getStripe(lockName);
+        final long ini = System.currentTimeMillis();
+        try {
+            if (!stripe.tryLock(config.getWaitTimeMs(), TimeUnit.MILLISECONDS)) {
+                nbContendedAcquisitions.incrementAndGet();
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        // We own the stripe: if the lock is held by this node, it is held by us
+        final LeaseGlobalLock heldLock = heldLocks.get(lockName);
+        if (heldLock != null) {
+            heldLock.incrementHoldCount();
+            return heldLock;
+        }
+
+        boolean contended = false;
+        long backoffMs = config.getMinBackoffMs();
+        while (true) {
+            final Long generation = acquireLease(lockName);
+            if (generation != null) {
+                if (contended) {
+                    nbContendedAcquisitions.incrementAndGet();
+                }
+                final LeaseGlobalLock lock = new LeaseGlobalLock(lockName, generation, stripe);
+                heldLocks.put(lockName, lock);
+                return lock;
+            }
+
+            contended = true;
+            final long remainingWaitTimeMs = config.getWaitTimeMs() - (System.currentTimeMillis() - ini);
+            if (remainingWaitTimeMs <= 0) {
+                stripe.unlock();
+                return null;
+            }
+
+            try {
+                // Add some jitter, so that nodes waiting on the same lock don't retry in lockstep
+                final long sleepTimeMs = backoffMs + (long) (random.nextDouble() * backoffMs / 2);
+                Thread.sleep(Math.min(sleepTimeMs, remainingWaitTimeMs));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stripe.unlock();
+                return null;
+            }
+            backoffMs = Math.min(backoffMs * 2, config.getMaxBackoffMs());
+        }
+    }
+
+    private Long acquireLease(final String lockName) {
+        if (dao.createLease(lockName, ownerId, config.getLeaseTimeSec()) == 1 ||
+            dao.takeLease(lockName, ownerId, config.getLeaseTimeSec()) == 1) {
+            return dao.getGeneration(lockName, ownerId);
+        }
+        return null;
+    }
+
+    private void renewLeases() {
+        for (final LeaseGlobalLock lock : heldLocks.values()) {
+            try {
+                if (lock.isLost()) {
+                    continue;
+                }
+                if (dao.renewLease(lock.lockName, ownerId, lock.generation, config.getLeaseTimeSec()) != 1 &&
+                    heldLocks.get(lock.lockName) == lock) {
+                    lock.markLost();
+                }
+            } catch (RuntimeException e) {
+                // The lease may still be renewed by the next heartbeat
+                logger.warn(String.format("Failed to renew lease for lock %s", lock.lockName), e);
+            }
+        }
+    }
+
+    /**
+     * Stop renewing the held leases
+     */
+    public void stop() {
+        heartbeatExecutor.shutdownNow();
+    }
+
+    @Override
+    public Boolean isFree(final LockerType service, final String lockKey) {
+        final String lockName = getLockName(service, lockKey);
+        return !heldLocks.containsKey(lockName) && dao.countActiveLeases(lockName) == 0;
+    }
+
+    public long getNbAcquisitions() {
+        return nbAcquisitions.get();
+    }
+
+    public long getNbContendedAcquisitions() {
+        return nbContendedAcquisitions.get();
+    }
+
+    public long getNbFailedAcquisitions() {
+        return nbFailedAcquisitions.get();
+    }
+
+    public double getAverageWaitTimeMs() {
+        final long nbAttempts = nbAcquisitions.get() + nbFailedAcquisitions.get();
+        return nbAttempts == 0 ? 0.0 : (double) totalWaitTimeMs.get() / nbAttempts;
+    }
+
+    private ReentrantLock getStripe(final String lockName) {
+        return stripes[Math.abs(lockName.hashCode() % stripes.length)];
+    }
+
+    private String getLockName(final LockerType service, final String lockKey) {
+        final StringBuilder tmp = new StringBuilder()
+                .append(service.toString())
+                .append("-")
+                .append(lockKey);
+        return tmp.toString();
+    }
+
+    public final class LeaseGlobalLock implements GlobalLock {
+
+        private final String lockName;
+        private final long generation;
+        private final ReentrantLock stripe;
+        // Only accessed by the thread owning the stripe
+        private int holdCount;
+        private volatile boolean lost;
+
+        private LeaseGlobalLock(final String lockName, final long generation, final ReentrantLock stripe) {
+            this.lockName = lockName;
+            this.generation = generation;
+            this.stripe = stripe;
+            this.holdCount = 1;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        private void incrementHoldCount() {
+            holdCount++;
+        }
+
+        private boolean isLost() {
+            return lost;
+        }
+
+        private void markLost() {
+            lost = true;
+            logger.error(String.format("Lease for lock %s with generation %d has expired or been taken over", lockName, generation));
+        }
+
+        @Override
+        public void checkHeld() throws LockFailedException {
+            if (!lost && dao.countHeldLeases(lockName, ownerId, generation) != 1) {
+                markLost();
+            }
+            if (lost) {
+                throw new LockFailedException();
+            }
+        }
+
+        @Override
+        public void release() {
+            // The stripe can only be unlocked by the thread which locked it: check before releasing the lease
+            if (!stripe.isHeldByCurrentThread()) {
+                throw new IllegalStateException(String.format("Lock %s can only be released by the thread which acquired it", lockName));
+            }
+
+            try {
+                if (--holdCount > 0) {
+                    return;
+                }
+
+                heldLocks.remove(lockName);
+                if (dao.releaseLease(lockName, ownerId, generation) != 1) {
+                    logger.warn(String.format("Lock %s with generation %d had already been taken over when released", lockName, generation));
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+}
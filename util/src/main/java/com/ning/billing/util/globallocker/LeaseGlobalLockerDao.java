@@ -0,0 +1,51 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.globallocker;
+
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+
+// Lease times are computed by the database, so that nodes don't need synchronized clocks
+public interface LeaseGlobalLockerDao {
+
+    @SqlUpdate("insert ignore into global_locks (lock_name, owner_id, lease_expiration, generation) " +
+               "values (:lockName, :ownerId, DATE_ADD(NOW(), INTERVAL :leaseTimeSec SECOND), 1);")
+    public int createLease(@Bind("lockName") final String lockName, @Bind("ownerId") final String ownerId, @Bind("leaseTimeSec") final int leaseTimeSec);
+
+    @SqlUpdate("update global_locks set owner_id = :ownerId, lease_expiration = DATE_ADD(NOW(), INTERVAL :leaseTimeSec SECOND), generation = generation + 1 " +
+               "where lock_name = :lockName and (owner_id is null or lease_expiration <= NOW());")
+    public int takeLease(@Bind("lockName") final String lockName, @Bind("ownerId") final String ownerId, @Bind("leaseTimeSec") final int leaseTimeSec);
+
+    @SqlQuery("select generation from global_locks where lock_name = :lockName and owner_id = :ownerId;")
+    public Long getGeneration(@Bind("lockName") final String lockName, @Bind("ownerId") final String ownerId);
+
+    @SqlUpdate("update global_locks set lease_expiration = DATE_ADD(NOW(), INTERVAL :leaseTimeSec SECOND) " +
+               "where lock_name = :lockName and owner_id = :ownerId and generation = :generation and lease_expiration > NOW();")
+    public int renewLease(@Bind("lockName") final String lockName, @Bind("ownerId") final String ownerId,
+                          @Bind("generation") final long generation, @Bind("leaseTimeSec") final int leaseTimeSec);
+
+    @SqlQuery("select count(*) from global_locks where lock_name = :lockName and owner_id = :ownerId and generation = :generation and lease_expiration > NOW();")
+    public int countHeldLeases(@Bind("lockName") final String lockName, @Bind("ownerId") final String ownerId, @Bind("generation") final long generation);
+
+    @SqlUpdate("update global_locks set owner_id = null, lease_expiration = null " +
+               "where lock_name = :lockName and owner_id = :ownerId and generation = :generation;")
+    public int releaseLease(@Bind("lockName") final String lockName, @Bind("ownerId") final String ownerId, @Bind("generation") final long generation);
+
+    @SqlQuery("select count(*) from global_locks where lock_name = :lockName and owner_id is not null and lease_expiration > NOW();")
+    public int countActiveLeases(@Bind("lockName") final String lockName);
+}
@@ -73,6 +73,14 @@ public class MySqlGlobalLocker implements GlobalLocker {
                         h.close();
                     }
                 }
+
+                @Override
+                public void checkHeld() throws LockFailedException {
+                    // The lock is tied to the connection, it is only lost if the connection was
+                    if (!dao.isHeldByCurrentConnection(lockName)) {
+                        throw new LockFailedException();
+                    }
+                }
             };
         } else {
             // Make sure to close the handle if we couldn't obtain the lock (otherwise we would leak connections)
@@ -34,6 +34,9 @@ public interface MySqlGlobalLockerDao {
     @SqlQuery("Select RELEASE_LOCK(:lockName);")
     public Boolean releaseLock(@Bind("lockName") final String lockName);
 
+    @SqlQuery("Select IS_USED_LOCK(:lockName) = CONNECTION_ID();")
+    public Boolean isHeldByCurrentConnection(@Bind("lockName") final String lockName);
+
     @SqlQuery("Select IS_FREE_LOCK(:lockName);")
     public Boolean isFree(@Bind("lockName") final String lockName);
 
@@ -16,14 +16,59 @@
 
 package com.ning.billing.util.glue;
 
+import org.skife.config.ConfigurationObjectFactory;
+
 import com.ning.billing.util.globallocker.GlobalLocker;
+import com.ning.billing.util.globallocker.GlobalLockerConfig;
+import com.ning.billing.util.globallocker.LeaseGlobalLocker;
 import com.ning.billing.util.globallocker.MySqlGlobalLocker;
 
 import com.google.inject.AbstractModule;
 
 public class GlobalLockerModule extends AbstractModule {
+
+    private final GlobalLockerType type;
+
+    public GlobalLockerModule() {
+        this(GlobalLockerType.valueOf(buildGlobalLockerConfig().getGlobalLockerType()));
+    }
+
+    public GlobalLockerModule(final GlobalLockerType type) {
+        super();
+        this.type = type;
+    }
+
+    public enum GlobalLockerType {
+        // MySQL GET_LOCK, holds a connection while locked
+        MYSQL,
+        // Lease rows in the global_locks table, no connection held while locked
+        LEASE
+    }
+
     @Override
     protected void configure() {
-        bind(GlobalLocker.class).to(MySqlGlobalLocker.class).asEagerSingleton();
+        switch (type) {
+            case MYSQL:
+                bind(GlobalLocker.class).to(MySqlGlobalLocker.class).asEagerSingleton();
+                break;
+            case LEASE:
+                configureLeaseGlobalLocker();
+                break;
+            default:
+                throw new RuntimeException("Unrecognized GlobalLocker type " + type);
+        }
+    }
+
+    protected void configureGlobalLockerConfig() {
+        bind(GlobalLockerConfig.class).toInstance(buildGlobalLockerConfig());
+    }
+
+    private static GlobalLockerConfig buildGlobalLockerConfig() {
+        return new ConfigurationObjectFactory(System.getProperties()).build(GlobalLockerConfig.class);
+    }
+
+    private void configureLeaseGlobalLocker() {
+        configureGlobalLockerConfig();
+        bind(GlobalLocker.class).to(LeaseGlobalLocker.class).asEagerSingleton();
     }
 }
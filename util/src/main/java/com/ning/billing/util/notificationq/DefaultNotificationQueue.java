@@ -18,6 +18,7 @@ package com.ning.billing.util.notificationq;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -45,6 +46,7 @@ public class DefaultNotificationQueue extends NotificationQueueBase {
 
     private final NotificationSqlDao dao;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final int maxClaimedNotifications;
 
     public DefaultNotificationQueue(final IDBI dbi, final Clock clock, final String svcName, final String queueName,
                                     final NotificationQueueHandler handler, final NotificationConfig config,
@@ -52,6 +54,7 @@ public class DefaultNotificationQueue extends NotificationQueueBase {
         super(clock, svcName, queueName, handler, config);
         this.dao = dbi.onDemand(NotificationSqlDao.class);
         this.internalCallContextFactory = internalCallContextFactory;
+        this.maxClaimedNotifications = config.getMaxClaimedNotifications();
     }
 
     @Override
@@ -98,6 +101,28 @@ public class DefaultNotificationQueue extends NotificationQueueBase {
         recordFutureNotificationInternal(futureNotificationTime, accountId, notificationKey, transactionalNotificationDao, context);
     }
 
+    @Override
+    public void recordFutureNotificationsFromTransaction(final Transmogrifier transactionalDao,
+                                                         final DateTime futureNotificationTime,
+                                                         final UUID accountId,
+                                                         final List<NotificationKey> notificationKeys,
+                                                         final InternalCallContext context) throws IOException {
+        if (notificationKeys.size() == 0) {
+            return;
+        }
+
+        final List<Notification> notifications = new ArrayList<Notification>(notificationKeys.size());
+        for (final NotificationKey notificationKey : notificationKeys) {
+            final String json = objectMapper.writeValueAsString(notificationKey);
+            notifications.add(new DefaultNotification(getFullQName(), getHostname(), notificationKey.getClass().getName(), json,
+                                                      accountId, futureNotificationTime, context.getAccountRecordId(), context.getTenantRecordId()));
+        }
+        transactionalDao.become(NotificationSqlDao.class).insertNotification(notifications, context);
+        if (!futureNotificationTime.isAfter(getClock().getUTCNow())) {
+            wakeUpProcessingThreads();
+        }
+    }
+
     private void recordFutureNotificationInternal(final DateTime futureNotificationTime,
                                                   final UUID accountId,
                                                   final NotificationKey notificationKey,
@@ -107,6 +132,9 @@ public class DefaultNotificationQueue extends NotificationQueueBase {
         final Notification notification = new DefaultNotification(getFullQName(), getHostname(), notificationKey.getClass().getName(), json,
                                                                   accountId, futureNotificationTime, context.getAccountRecordId(), context.getTenantRecordId());
         thisDao.insertNotification(notification, context);
+        if (!futureNotificationTime.isAfter(getClock().getUTCNow())) {
+            wakeUpProcessingThreads();
+        }
     }
 
     private void clearNotification(final Notification cleared, final InternalCallContext context) {
@@ -116,27 +144,18 @@ public class DefaultNotificationQueue extends NotificationQueueBase {
     private List<Notification> getReadyNotifications(final InternalCallContext context) {
         final Date now = getClock().getUTCNow().toDate();
         final Date nextAvailable = getClock().getUTCNow().plus(CLAIM_TIME_MS).toDate();
-        final List<Notification> input = dao.getReadyNotifications(now, getHostname(), CLAIM_TIME_MS, getFullQName(), context);
-
-        final List<Notification> claimedNotifications = new ArrayList<Notification>();
-        for (final Notification cur : input) {
-            logDebug("about to claim notification %s,  key = %s for time %s",
-                     cur.getId(), cur.getNotificationKey(), cur.getEffectiveDate());
-
-            final boolean claimed = (dao.claimNotification(getHostname(), nextAvailable, cur.getId().toString(), now, context) == 1);
-            logDebug("claimed notification %s, key = %s for time %s result = %s",
-                     cur.getId(), cur.getNotificationKey(), cur.getEffectiveDate(), claimed);
+        final String claimToken = UUID.randomUUID().toString();
 
-            if (claimed) {
-                claimedNotifications.add(cur);
-                dao.insertClaimedHistory(getHostname(), now, cur.getId().toString(), context);
-            }
+        // Claim the ready notifications in one statement, and read back the ones we won
+        final int claimed = dao.claimNotifications(getHostname(), claimToken, nextAvailable, now, maxClaimedNotifications, getFullQName(), context);
+        logDebug("claimed %d notifications with token %s", claimed, claimToken);
+        if (claimed == 0) {
+            return Collections.emptyList();
         }
 
-        for (final Notification cur : claimedNotifications) {
-            if (cur.getOwner() != null && !cur.getOwner().equals(getHostname())) {
-                log.warn("NotificationQueue {} stealing notification {} from {}", new Object[]{getFullQName(), cur, cur.getOwner()});
-            }
+        final List<Notification> claimedNotifications = dao.getClaimedNotifications(getHostname(), claimToken, context);
+        if (claimedNotifications.size() > 0) {
+            dao.insertClaimedHistories(getHostname(), now, claimedNotifications);
         }
 
         return claimedNotifications;
@@ -54,6 +54,20 @@ public interface NotificationQueue extends QueueLifecycle {
                                                         final InternalCallContext context)
             throws IOException;
 
+    /**
+     * Record from within a transaction, in a single batch, the need to be called back when the notifications are ready
+     *
+     * @param transactionalDao       the transactionalDao
+     * @param futureNotificationTime the time at which the notifications are ready
+     * @param notificationKeys       the key for each notification
+     */
+    public void recordFutureNotificationsFromTransaction(final Transmogrifier transactionalDao,
+                                                         final DateTime futureNotificationTime,
+                                                         final UUID accountId,
+                                                         final List<NotificationKey> notificationKeys,
+                                                         final InternalCallContext context)
+            throws IOException;
+
     /**
      * Remove all notifications associated with this key
      */
@@ -27,6 +27,7 @@ import org.skife.jdbi.v2.SQLStatement;
 import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.Binder;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
@@ -50,14 +51,6 @@ public interface NotificationSqlDao extends Transactional<NotificationSqlDao>, C
     //
     // APIs for event notifications
     //
-    @SqlQuery
-    @Mapper(NotificationSqlMapper.class)
-    public List<Notification> getReadyNotifications(@Bind("now") Date now,
-                                                    @Bind("owner") String owner,
-                                                    @Bind("max") int max,
-                                                    @Bind("queueName") String queueName,
-                                                    @InternalTenantContextBinder final InternalTenantContext context);
-
     @SqlQuery
     @Mapper(NotificationSqlMapper.class)
     public List<Notification> getNotificationForAccountAndDate(@Bind("accountId") final String accountId,
@@ -69,11 +62,19 @@ public interface NotificationSqlDao extends Transactional<NotificationSqlDao>, C
                                    @InternalTenantContextBinder final InternalTenantContext context);
 
     @SqlUpdate
-    public int claimNotification(@Bind("owner") String owner,
-                                 @Bind("nextAvailable") Date nextAvailable,
-                                 @Bind("id") String id,
-                                 @Bind("now") Date now,
-                                 @InternalTenantContextBinder final InternalCallContext context);
+    public int claimNotifications(@Bind("owner") String owner,
+                                  @Bind("claimToken") String claimToken,
+                                  @Bind("nextAvailable") Date nextAvailable,
+                                  @Bind("now") Date now,
+                                  @Bind("max") int max,
+                                  @Bind("queueName") String queueName,
+                                  @InternalTenantContextBinder final InternalCallContext context);
+
+    @SqlQuery
+    @Mapper(NotificationSqlMapper.class)
+    public List<Notification> getClaimedNotifications(@Bind("owner") String owner,
+                                                      @Bind("claimToken") String claimToken,
+                                                      @InternalTenantContextBinder final InternalTenantContext context);
 
     @SqlUpdate
     public void clearNotification(@Bind("id") String id,
@@ -88,11 +89,14 @@ public interface NotificationSqlDao extends Transactional<NotificationSqlDao>, C
     public void insertNotification(@Bind(binder = NotificationSqlDaoBinder.class) Notification evt,
                                    @InternalTenantContextBinder final InternalCallContext context);
 
-    @SqlUpdate
-    public void insertClaimedHistory(@Bind("ownerId") String ownerId,
-                                     @Bind("claimedDate") Date claimedDate,
-                                     @Bind("notificationId") String notificationId,
-                                     @InternalTenantContextBinder final InternalCallContext context);
+    @SqlBatch(transactional = false)
+    public void insertNotification(@Bind(binder = NotificationSqlDaoBinder.class) List<Notification> evts,
+                                   @InternalTenantContextBinder final InternalCallContext context);
+
+    @SqlBatch
+    public void insertClaimedHistories(@Bind("ownerId") String ownerId,
+                                       @Bind("claimedDate") Date claimedDate,
+                                       @Bind(binder = ClaimedNotificationBinder.class) List<Notification> claimedNotifications);
 
     public static class NotificationSqlDaoBinder extends BinderBase implements Binder<Bind, Notification> {
 
@@ -112,6 +116,17 @@ public interface NotificationSqlDao extends Transactional<NotificationSqlDao>, C
         }
     }
 
+    // The account and tenant record ids vary from one claimed notification to another, so they are bound from the notification itself
+    public static class ClaimedNotificationBinder extends BinderBase implements Binder<Bind, Notification> {
+
+        @Override
+        public void bind(@SuppressWarnings("rawtypes") final SQLStatement stmt, final Bind bind, final Notification evt) {
+            stmt.bind("notificationId", evt.getId().toString());
+            stmt.bind("accountRecordId", evt.getAccountRecordId());
+            stmt.bind("tenantRecordId", evt.getTenantRecordId());
+        }
+    }
+
     public static class NotificationSqlMapper extends MapperBase implements ResultSetMapper<Notification> {
 
         @Override
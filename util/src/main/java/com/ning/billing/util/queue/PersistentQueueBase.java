@@ -18,6 +18,7 @@ package com.ning.billing.util.queue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +33,9 @@ public abstract class PersistentQueueBase implements QueueLifecycle {
 
     private static final long waitTimeoutMs = 15L * 1000L; // 15 seconds
 
+    // First back-off step after an empty poll; the configured sleep time is the upper bound
+    private static final long MIN_SLEEP_TIME_MS = 10L;
+
     private final int nbThreads;
     private final Executor executor;
     private final String svcName;
@@ -39,8 +43,18 @@ public abstract class PersistentQueueBase implements QueueLifecycle {
     private boolean isProcessingEvents;
     private int curActiveThreads;
 
+    // Local wake-up signal, raised when work is posted from this node
+    private final Object wakeUpMonitor = new Object();
+    private long nbWakeUpRequests;
+    private long lastWakeUpRequestNanos;
+
+    private final AtomicLong nbPolls = new AtomicLong();
+    private final AtomicLong nbEmptyPolls = new AtomicLong();
+    private final AtomicLong nbWakeUps = new AtomicLong();
+    private final AtomicLong totalWakeUpLatencyNanos = new AtomicLong();
+
     protected final ObjectMapper objectMapper;
-    
+
     public PersistentQueueBase(final String svcName, final Executor executor, final int nbThreads, final PersistentQueueConfig config) {
         this.executor = executor;
         this.nbThreads = nbThreads;
@@ -80,6 +94,7 @@ public abstract class PersistentQueueBase implements QueueLifecycle {
                     doneInitialization.countDown();
 
                     try {
+                        long curSleepTimeMs = 0;
                         while (true) {
 
                             synchronized (thePersistentQ) {
@@ -89,15 +104,30 @@ public abstract class PersistentQueueBase implements QueueLifecycle {
                                 }
                             }
 
+                            final long seenWakeUpRequests = getNbWakeUpRequests();
+                            int nbProcessedEvents = 0;
                             try {
-                                doProcessEvents();
+                                nbProcessedEvents = doProcessEvents();
                             } catch (Exception e) {
                                 log.warn(String.format("%s: Thread  %s  [%d] got an exception, catching and moving on...",
                                                        svcName,
                                                        Thread.currentThread().getName(),
                                                        Thread.currentThread().getId()), e);
                             }
-                            sleepALittle();
+
+                            nbPolls.incrementAndGet();
+                            if (nbProcessedEvents > 0) {
+                                // There may be more work pending, poll again right away
+                                curSleepTimeMs = 0;
+                                continue;
+                            }
+
+                            nbEmptyPolls.incrementAndGet();
+                            curSleepTimeMs = (curSleepTimeMs == 0) ? Math.min(MIN_SLEEP_TIME_MS, sleepTimeMs) : Math.min(curSleepTimeMs * 2, sleepTimeMs);
+                            if (sleepALittle(seenWakeUpRequests, curSleepTimeMs)) {
+                                // Start backing off again from the bottom, the work may not have been committed yet
+                                curSleepTimeMs = 0;
+                            }
                         }
                     } catch (InterruptedException e) {
                         log.info(String.format("%s: Thread %s got interrupted, exting... ", svcName, Thread.currentThread().getName()));
@@ -112,8 +142,22 @@ public abstract class PersistentQueueBase implements QueueLifecycle {
                     }
                 }
 
-                private void sleepALittle() throws InterruptedException {
-                    Thread.sleep(sleepTimeMs);
+                // Returns true if we were woken up by a local signal before the sleep time elapsed
+                private boolean sleepALittle(final long seenWakeUpRequests, final long curSleepTimeMs) throws InterruptedException {
+                    final long ini = System.currentTimeMillis();
+                    synchronized (wakeUpMonitor) {
+                        long remainingSleepTimeMs = curSleepTimeMs;
+                        while (nbWakeUpRequests == seenWakeUpRequests && remainingSleepTimeMs > 0) {
+                            wakeUpMonitor.wait(remainingSleepTimeMs);
+                            remainingSleepTimeMs = curSleepTimeMs - (System.currentTimeMillis() - ini);
+                        }
+                        if (nbWakeUpRequests == seenWakeUpRequests) {
+                            return false;
+                        }
+                        nbWakeUps.incrementAndGet();
+                        totalWakeUpLatencyNanos.addAndGet(System.nanoTime() - lastWakeUpRequestNanos);
+                        return true;
+                    }
                 }
             });
         }
@@ -137,6 +181,8 @@ public abstract class PersistentQueueBase implements QueueLifecycle {
         try {
             synchronized (this) {
                 isProcessingEvents = false;
+                // Don't let the threads finish their sleep before noticing
+                wakeUpProcessingThreads();
                 final long ini = System.currentTimeMillis();
                 long remainingWaitTimeMs = waitTimeoutMs;
                 while (curActiveThreads > 0 && remainingWaitTimeMs > 0) {
@@ -158,6 +204,46 @@ public abstract class PersistentQueueBase implements QueueLifecycle {
         }
     }
     
+    /**
+     * Wakes up the processing threads so they poll right away, instead of waiting for their current sleep to elapse.
+     * Should be called when new work has been posted from this node.
+     */
+    protected void wakeUpProcessingThreads() {
+        synchronized (wakeUpMonitor) {
+            nbWakeUpRequests++;
+            lastWakeUpRequestNanos = System.nanoTime();
+            wakeUpMonitor.notifyAll();
+        }
+    }
+
+    private long getNbWakeUpRequests() {
+        synchronized (wakeUpMonitor) {
+            return nbWakeUpRequests;
+        }
+    }
+
+    public long getNbPolls() {
+        return nbPolls.get();
+    }
+
+    public long getNbEmptyPolls() {
+        return nbEmptyPolls.get();
+    }
+
+    public double getEmptyPollRatio() {
+        final long polls = nbPolls.get();
+        return polls == 0 ? 0.0 : (double) nbEmptyPolls.get() / polls;
+    }
+
+    public long getNbWakeUps() {
+        return nbWakeUps.get();
+    }
+
+    public double getAverageWakeUpLatencyMs() {
+        final long wakeUps = nbWakeUps.get();
+        return wakeUps == 0 ? 0.0 : (double) TimeUnit.NANOSECONDS.toMicros(totalWakeUpLatencyNanos.get()) / 1000.0 / wakeUps;
+    }
+
     protected <T> T deserializeEvent(final String className, final String json) {
         try {
             final Class<?> claz = Class.forName(className);
@@ -24,7 +24,8 @@ public interface PersistentQueueEntryLifecycle {
         AVAILABLE,
         IN_PROCESSING,
         PROCESSED,
-        REMOVED
+        REMOVED,
+        FAILED
     }
 
     public Long getTenantRecordId();
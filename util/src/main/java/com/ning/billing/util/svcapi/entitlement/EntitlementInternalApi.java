@@ -16,6 +16,7 @@
 package com.ning.billing.util.svcapi.entitlement;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.LocalDate;
@@ -34,6 +35,11 @@ public interface EntitlementInternalApi {
 
     public List<Subscription> getSubscriptionsForBundle(final UUID bundleId, final InternalTenantContext context);
 
+    /**
+     * @return the subscriptions of all the bundles of the account, keyed by bundle id
+     */
+    public Map<UUID, List<Subscription>> getSubscriptionsForAccount(final UUID accountId, final InternalTenantContext context);
+
     public Subscription getBaseSubscription(final UUID bundleId, final InternalTenantContext context) throws EntitlementUserApiException;
 
     public Subscription getSubscriptionFromId(final UUID id, final InternalTenantContext context) throws EntitlementUserApiException;
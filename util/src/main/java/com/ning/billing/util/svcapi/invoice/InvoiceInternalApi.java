@@ -18,6 +18,7 @@ package com.ning.billing.util.svcapi.invoice;
 
 import java.math.BigDecimal;
 import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.LocalDate;
@@ -35,4 +36,11 @@ public interface InvoiceInternalApi {
     public Collection<Invoice> getInvoicesByAccountId(UUID accountId, InternalTenantContext context);
 
     public BigDecimal getAccountBalance(UUID accountId, InternalTenantContext context);
+
+    /**
+     * @param upToDate the latest invoice date to consider
+     * @return the accounts, across all tenants, having at least one unpaid invoice dated on or before upToDate, with the
+     *         date of their oldest unpaid invoice
+     */
+    public Map<UUID, LocalDate> getOldestUnpaidInvoiceDatePerAccountUpToDate(LocalDate upToDate);
 }
@@ -15,6 +15,7 @@
  */
 package com.ning.billing.util.svcapi.tag;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -53,6 +54,11 @@ public class DefaultTagInternalApi implements TagInternalApi {
         return tagDao.loadEntities(objectId, objectType, context);
     }
 
+    @Override
+    public List<UUID> getObjectIdsWithTag(final UUID tagDefinitionId, final Collection<UUID> objectIds, final InternalTenantContext context) {
+        return tagDao.getObjectIdsWithTag(tagDefinitionId, objectIds, context);
+    }
+
     @Override
     public void addTag(UUID objectId, ObjectType objectType,
             UUID tagDefinitionId, InternalCallContext context)
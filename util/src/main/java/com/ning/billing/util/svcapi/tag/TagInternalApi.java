@@ -16,6 +16,7 @@
 
 package com.ning.billing.util.svcapi.tag;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -41,6 +42,16 @@ public interface TagInternalApi {
      */
     public Map<String, Tag> getTags(UUID objectId, ObjectType objectType, InternalTenantContext context);
 
+    /**
+     * Return, among the given objects, the ones which carry a given tag
+     *
+     * @param tagDefinitionId the tag definition id
+     * @param objectIds       the object ids to look at
+     * @param context         call context
+     * @return the ids of the objects with that tag
+     */
+    public List<UUID> getObjectIdsWithTag(UUID tagDefinitionId, Collection<UUID> objectIds, InternalTenantContext context);
+
     public void addTag(UUID objectId, ObjectType objectType, UUID tagDefinitionId, InternalCallContext context) throws TagApiException;
 
     public void removeTag(UUID objectId, ObjectType objectType, UUID tagDefinitionId, InternalCallContext context) throws TagApiException;
@@ -16,7 +16,9 @@
 
 package com.ning.billing.util.tag.dao;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -197,6 +199,19 @@ public class AuditedTagDao extends AuditedCollectionDaoBase<Tag, Tag> implements
         }
     }
 
+    @Override
+    public List<UUID> getObjectIdsWithTag(final UUID tagDefinitionId, final Collection<UUID> objectIds, final InternalTenantContext context) {
+        if (objectIds.isEmpty()) {
+            return new ArrayList<UUID>();
+        }
+
+        final List<String> objectIdStrings = new ArrayList<String>(objectIds.size());
+        for (final UUID objectId : objectIds) {
+            objectIdStrings.add(objectId.toString());
+        }
+        return tagSqlDao.getObjectIdsWithTag(tagDefinitionId.toString(), objectIdStrings, context);
+    }
+
     @Override
     protected TableName getTableName(final InternalTenantContext context) {
         return TableName.TAG_HISTORY;
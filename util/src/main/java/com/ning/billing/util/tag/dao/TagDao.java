@@ -16,10 +16,13 @@
 
 package com.ning.billing.util.tag.dao;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 import com.ning.billing.util.api.TagApiException;
 import com.ning.billing.util.callcontext.InternalCallContext;
+import com.ning.billing.util.callcontext.InternalTenantContext;
 import com.ning.billing.util.dao.AuditedCollectionDao;
 import com.ning.billing.util.dao.ObjectType;
 import com.ning.billing.util.tag.Tag;
@@ -29,4 +32,6 @@ public interface TagDao extends AuditedCollectionDao<Tag> {
     void insertTag(UUID objectId, ObjectType objectType, UUID tagDefinition, InternalCallContext context) throws TagApiException;
 
     void deleteTag(UUID objectId, ObjectType objectType, UUID tagDefinition, InternalCallContext context) throws TagApiException;
+
+    List<UUID> getObjectIdsWithTag(UUID tagDefinitionId, Collection<UUID> objectIds, InternalTenantContext context);
 }
@@ -18,6 +18,7 @@ package com.ning.billing.util.tag.dao;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.UUID;
 
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.SqlBatch;
@@ -27,6 +28,7 @@ import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 import org.skife.jdbi.v2.sqlobject.mixins.Transmogrifier;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.ExternalizedSqlViaStringTemplate3;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 import com.ning.billing.util.callcontext.InternalCallContext;
 import com.ning.billing.util.callcontext.InternalTenantContext;
@@ -34,6 +36,7 @@ import com.ning.billing.util.callcontext.InternalTenantContextBinder;
 import com.ning.billing.util.dao.EntityHistory;
 import com.ning.billing.util.dao.ObjectType;
 import com.ning.billing.util.dao.ObjectTypeBinder;
+import com.ning.billing.util.dao.UuidMapper;
 import com.ning.billing.util.entity.collection.dao.UpdatableEntityCollectionSqlDao;
 import com.ning.billing.util.tag.Tag;
 
@@ -87,4 +90,10 @@ public interface TagSqlDao extends UpdatableEntityCollectionSqlDao<Tag>, Transac
                        @Bind("objectId") final String objectId,
                        @ObjectTypeBinder final ObjectType objectType,
                        @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlQuery
+    @RegisterMapper(UuidMapper.class)
+    public List<UUID> getObjectIdsWithTag(@Bind("tagDefinitionId") final String tagDefinitionId,
+                                          @BindIn("objectIds") final Collection<String> objectIds,
+                                          @InternalTenantContextBinder final InternalTenantContext context);
 }
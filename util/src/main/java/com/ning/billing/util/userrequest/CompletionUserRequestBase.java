@@ -15,6 +15,7 @@
  */
 package com.ning.billing.util.userrequest;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
@@ -43,7 +44,7 @@ public abstract class CompletionUserRequestBase implements CompletionUserRequest
 
 
     public CompletionUserRequestBase(final UUID userToken) {
-        this.events = new LinkedList<BusInternalEvent>();
+        this.events = Collections.synchronizedList(new LinkedList<BusInternalEvent>());
         this.userToken = userToken;
         this.isCompleted = false;
     }
@@ -126,6 +126,7 @@ CREATE TABLE notifications (
     processing_owner char(50) DEFAULT NULL,
     processing_available_date datetime DEFAULT NULL,
     processing_state varchar(14) DEFAULT 'AVAILABLE',
+    processing_claim_token char(36) DEFAULT NULL,
     account_record_id int(11) unsigned default null,
     tenant_record_id int(11) unsigned default null,
     PRIMARY KEY(record_id)
@@ -134,6 +135,7 @@ CREATE UNIQUE INDEX notifications_id ON notifications(id);
 CREATE INDEX  `idx_comp_where` ON notifications (`effective_date`, `queue_name`, `processing_state`,`processing_owner`,`processing_available_date`);
 CREATE INDEX  `idx_update` ON notifications (`processing_state`,`processing_owner`,`processing_available_date`);
 CREATE INDEX  `idx_get_ready` ON notifications (`effective_date`,`created_date`,`id`);
+CREATE INDEX  `idx_claim_token` ON notifications (`processing_claim_token`);
 CREATE INDEX notifications_tenant_account_record_id ON notifications(tenant_record_id, account_record_id);
 
 DROP TABLE IF EXISTS claimed_notifications;
@@ -177,11 +179,13 @@ CREATE TABLE bus_events (
     processing_owner char(50) DEFAULT NULL,
     processing_available_date datetime DEFAULT NULL,
     processing_state varchar(14) DEFAULT 'AVAILABLE',
+    processing_claim_token char(36) DEFAULT NULL,
     account_record_id int(11) unsigned default null,
     tenant_record_id int(11) unsigned default null,
     PRIMARY KEY(record_id)
 ) ENGINE=innodb;
 CREATE INDEX  `idx_bus_where` ON bus_events (`processing_state`,`processing_owner`,`processing_available_date`);
+CREATE INDEX  `idx_bus_claim_token` ON bus_events (`processing_claim_token`);
 CREATE INDEX bus_events_tenant_account_record_id ON bus_events(tenant_record_id, account_record_id);
 
 DROP TABLE IF EXISTS claimed_bus_events;
@@ -195,3 +199,14 @@ CREATE TABLE claimed_bus_events (
     PRIMARY KEY(record_id)
 ) ENGINE=innodb;
 CREATE INDEX claimed_bus_events_tenant_account_record_id ON claimed_bus_events(tenant_record_id, account_record_id);
+
+DROP TABLE IF EXISTS global_locks;
+CREATE TABLE global_locks (
+    record_id int(11) unsigned NOT NULL AUTO_INCREMENT,
+    lock_name varchar(128) NOT NULL,
+    owner_id varchar(64) DEFAULT NULL,
+    lease_expiration datetime DEFAULT NULL,
+    generation bigint unsigned NOT NULL DEFAULT 0,
+    PRIMARY KEY(record_id)
+) ENGINE=innodb;
+CREATE UNIQUE INDEX global_locks_lock_name ON global_locks(lock_name);
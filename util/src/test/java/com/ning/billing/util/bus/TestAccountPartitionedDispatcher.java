@@ -0,0 +1,259 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.util.bus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.util.UtilTestSuite;
+import com.ning.billing.util.bus.dao.BusEventEntry;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+public class TestAccountPartitionedDispatcher extends UtilTestSuite {
+
+    private static final long WAIT_TIMEOUT_MS = 10000;
+
+    private AccountPartitionedDispatcher dispatcher;
+
+    private static class RecordingHandler implements AccountPartitionedDispatcher.BusEventEntryHandler {
+
+        private final List<Long> handledEntryIds = new ArrayList<Long>();
+        private final List<Long> dispatchedEntryIds = new ArrayList<Long>();
+        private final List<Long> failedEntryIds = new ArrayList<Long>();
+        private final List<Long> rejectedEntryIds = new ArrayList<Long>();
+
+        @Override
+        public void dispatch(final BusEventEntry entry) {
+            synchronized (this) {
+                handledEntryIds.add(entry.getId());
+            }
+        }
+
+        @Override
+        public synchronized void onCompletion(final List<Long> dispatchedEntryIds, final List<Long> failedEntryIds) {
+            this.dispatchedEntryIds.addAll(dispatchedEntryIds);
+            this.failedEntryIds.addAll(failedEntryIds);
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void onRejection(final List<Long> rejectedEntryIds) {
+            this.rejectedEntryIds.addAll(rejectedEntryIds);
+        }
+
+        public synchronized void waitForCompletion(final int nbEntries) throws InterruptedException {
+            final long ini = System.currentTimeMillis();
+            while (dispatchedEntryIds.size() + failedEntryIds.size() < nbEntries && System.currentTimeMillis() - ini < WAIT_TIMEOUT_MS) {
+                wait(100);
+            }
+            Assert.assertEquals(dispatchedEntryIds.size() + failedEntryIds.size(), nbEntries);
+        }
+    }
+
+    public static final class AccountEvent {
+
+        private final Long accountRecordId;
+
+        public AccountEvent(final Long accountRecordId) {
+            this.accountRecordId = accountRecordId;
+        }
+
+        public Long getAccountRecordId() {
+            return accountRecordId;
+        }
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testOrderingWithinAccount() throws Exception {
+        dispatcher = new AccountPartitionedDispatcher(4, 10);
+        dispatcher.start();
+
+        final RecordingHandler handler = new RecordingHandler() {
+            @Override
+            public void dispatch(final BusEventEntry entry) {
+                try {
+                    Thread.sleep(entry.getId() % 3);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.dispatch(entry);
+            }
+        };
+
+        // Two consecutive batches, interleaving two accounts
+        final List<BusEventEntry> firstBatch = new ArrayList<BusEventEntry>();
+        final List<BusEventEntry> secondBatch = new ArrayList<BusEventEntry>();
+        for (long i = 1; i <= 20; i++) {
+            (i <= 10 ? firstBatch : secondBatch).add(createEntry(i, i % 2 == 0 ? 12L : 13L));
+        }
+        Assert.assertEquals(dispatcher.dispatch(firstBatch, handler), 10);
+        Assert.assertEquals(dispatcher.dispatch(secondBatch, handler), 10);
+        handler.waitForCompletion(20);
+
+        final List<Long> evenEntryIds = new ArrayList<Long>();
+        final List<Long> oddEntryIds = new ArrayList<Long>();
+        synchronized (handler) {
+            for (final Long cur : handler.handledEntryIds) {
+                (cur % 2 == 0 ? evenEntryIds : oddEntryIds).add(cur);
+            }
+            Assert.assertEquals(handler.failedEntryIds.size(), 0);
+        }
+        Assert.assertEquals(evenEntryIds, ImmutableList.<Long>of(2L, 4L, 6L, 8L, 10L, 12L, 14L, 16L, 18L, 20L));
+        Assert.assertEquals(oddEntryIds, ImmutableList.<Long>of(1L, 3L, 5L, 7L, 9L, 11L, 13L, 15L, 17L, 19L));
+    }
+
+    @Test(groups = "fast")
+    public void testConcurrencyAcrossAccounts() throws Exception {
+        dispatcher = new AccountPartitionedDispatcher(2, 10);
+        dispatcher.start();
+
+        // The handler of the first account only returns once the event of the second account has been handled
+        final CountDownLatch redispatchChecked = new CountDownLatch(1);
+        final CountDownLatch secondAccountHandled = new CountDownLatch(1);
+        final AtomicBoolean firstAccountReleased = new AtomicBoolean(false);
+        final EventBus eventBus = new EventBus("TestAccountPartitionedDispatcher");
+        eventBus.register(new Object() {
+            @AllowConcurrentEvents
+            @Subscribe
+            public void handleAccountEvent(final AccountEvent event) throws InterruptedException {
+                if (event.getAccountRecordId() == 0L) {
+                    firstAccountReleased.set(secondAccountHandled.await(WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+                } else {
+                    redispatchChecked.await(WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    secondAccountHandled.countDown();
+                }
+            }
+        });
+
+        final RecordingHandler handler = new RecordingHandler() {
+            @Override
+            public void dispatch(final BusEventEntry entry) {
+                eventBus.post(new AccountEvent(entry.getAccountRecordId()));
+                super.dispatch(entry);
+            }
+        };
+
+        final List<BusEventEntry> batch = ImmutableList.<BusEventEntry>of(createEntry(1L, 0L), createEntry(2L, 1L));
+        Assert.assertEquals(dispatcher.dispatch(batch, handler), 2);
+        // Entries still being handled are not dispatched again if claimed again meanwhile
+        Assert.assertEquals(dispatcher.dispatch(ImmutableList.<BusEventEntry>of(createEntry(1L, 0L)), handler), 0);
+        redispatchChecked.countDown();
+
+        handler.waitForCompletion(2);
+        Assert.assertTrue(firstAccountReleased.get());
+        synchronized (handler) {
+            Assert.assertEquals(handler.handledEntryIds.size(), 2);
+            Assert.assertEquals(handler.failedEntryIds.size(), 0);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testPoisonEntry() throws Exception {
+        dispatcher = new AccountPartitionedDispatcher(2, 10);
+        dispatcher.start();
+
+        final RecordingHandler handler = new RecordingHandler() {
+            @Override
+            public void dispatch(final BusEventEntry entry) {
+                if (entry.getId() == 2L) {
+                    throw new IllegalStateException("Unable to deserialize bus event " + entry.getId());
+                }
+                super.dispatch(entry);
+            }
+        };
+
+        Assert.assertEquals(dispatcher.dispatch(ImmutableList.<BusEventEntry>of(createEntry(1L, 7L), createEntry(2L, 7L), createEntry(3L, 7L)), handler), 3);
+        handler.waitForCompletion(3);
+        // The account is not blocked by the failed entry
+        Assert.assertEquals(dispatcher.dispatch(ImmutableList.<BusEventEntry>of(createEntry(4L, 7L)), handler), 1);
+        handler.waitForCompletion(4);
+
+        synchronized (handler) {
+            Assert.assertEquals(handler.handledEntryIds, ImmutableList.<Long>of(1L, 3L, 4L));
+            Assert.assertEquals(handler.dispatchedEntryIds, ImmutableList.<Long>of(1L, 3L, 4L));
+            Assert.assertEquals(handler.failedEntryIds, ImmutableList.<Long>of(2L));
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testRejectedEntries() throws Exception {
+        dispatcher = new AccountPartitionedDispatcher(1, 1);
+        dispatcher.start();
+
+        final CountDownLatch laneBlocked = new CountDownLatch(1);
+        final CountDownLatch laneReleased = new CountDownLatch(1);
+        final RecordingHandler handler = new RecordingHandler() {
+            @Override
+            public void dispatch(final BusEventEntry entry) {
+                if (entry.getId() == 1L) {
+                    laneBlocked.countDown();
+                    try {
+                        laneReleased.await(WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.dispatch(entry);
+            }
+        };
+
+        // Block the lane, then fill its queue
+        Assert.assertEquals(dispatcher.dispatch(ImmutableList.<BusEventEntry>of(createEntry(1L, 5L)), handler), 1);
+        Assert.assertTrue(laneBlocked.await(WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(dispatcher.dispatch(ImmutableList.<BusEventEntry>of(createEntry(2L, 5L)), handler), 1);
+        Assert.assertEquals(dispatcher.getInFlightEntryIds().size(), 2);
+
+        // An interrupted submission on a full lane is rejected, and reported as such
+        Thread.currentThread().interrupt();
+        try {
+            Assert.assertEquals(dispatcher.dispatch(ImmutableList.<BusEventEntry>of(createEntry(3L, 5L), createEntry(4L, 5L)), handler), 0);
+        } finally {
+            Assert.assertTrue(Thread.interrupted());
+        }
+        synchronized (handler) {
+            Assert.assertEquals(handler.rejectedEntryIds, ImmutableList.<Long>of(3L, 4L));
+        }
+        Assert.assertEquals(dispatcher.getInFlightEntryIds().size(), 2);
+
+        laneReleased.countDown();
+        handler.waitForCompletion(2);
+        Assert.assertEquals(dispatcher.getInFlightEntryIds().size(), 0);
+    }
+
+    private BusEventEntry createEntry(final long id, final Long accountRecordId) {
+        return new BusEventEntry(id, "test", "test", null, null, AccountEvent.class.getName(), "{}", accountRecordId, 1L);
+    }
+}
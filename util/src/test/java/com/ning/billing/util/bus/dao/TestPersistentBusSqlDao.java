@@ -0,0 +1,227 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.util.bus.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.util.IntegerMapper;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeSuite;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import com.ning.billing.KillbillTestSuiteWithEmbeddedDB;
+import com.ning.billing.dbi.MysqlTestingHelper;
+import com.ning.billing.util.UtilTestSuiteWithEmbeddedDB;
+import com.ning.billing.util.bus.dao.PersistentBusSqlDao.PersistentBusSqlMapper;
+import com.ning.billing.util.queue.PersistentQueueEntryLifecycle.PersistentQueueEntryLifecycleState;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+
+import static org.testng.Assert.assertEquals;
+
+@Guice(modules = TestPersistentBusSqlDao.TestPersistentBusSqlDaoModule.class)
+public class TestPersistentBusSqlDao extends UtilTestSuiteWithEmbeddedDB {
+
+    private static final String hostname = "Yop";
+
+    @Inject
+    private IDBI dbi;
+
+    private PersistentBusSqlDao dao;
+
+    @BeforeSuite(groups = "slow")
+    public void setup() {
+        dao = dbi.onDemand(PersistentBusSqlDao.class);
+    }
+
+    @BeforeMethod(groups = "slow")
+    public void cleanupDb() {
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute("delete from bus_events");
+                handle.execute("delete from claimed_bus_events");
+                return null;
+            }
+        });
+    }
+
+    @Test(groups = "slow")
+    public void testClaimBusEvents() {
+        final String ownerId = UUID.randomUUID().toString();
+        for (int i = 0; i < 3; i++) {
+            dao.insertBusEvent(new BusEventEntry(hostname, String.class.getName(), "{}", internalCallContext.getAccountRecordId(),
+                                                 internalCallContext.getTenantRecordId()), internalCallContext);
+        }
+
+        final DateTime now = new DateTime();
+        final DateTime nextAvailable = now.plusMinutes(5);
+
+        // Only claim part of the available events
+        final String claimToken = UUID.randomUUID().toString();
+        assertEquals(dao.claimBusEvents(2, ownerId, claimToken, nextAvailable.toDate(), now.toDate(), internalCallContext), 2);
+
+        final List<BusEventEntry> claimedEntries = dao.getClaimedBusEvents(ownerId, claimToken, internalCallContext);
+        assertEquals(claimedEntries.size(), 2);
+        for (final BusEventEntry cur : claimedEntries) {
+            assertEquals(cur.getOwner(), ownerId);
+            assertEquals(cur.getProcessingState(), PersistentQueueEntryLifecycleState.IN_PROCESSING);
+            assertEquals(cur.getAccountRecordId(), internalCallContext.getAccountRecordId());
+        }
+
+        dao.insertClaimedHistory(ownerId, now.toDate(), claimedEntries);
+        assertEquals(countRows("claimed_bus_events"), 2);
+
+        // A second claim only gets what's left, a claim with the same token by another owner gets nothing
+        final String otherClaimToken = UUID.randomUUID().toString();
+        assertEquals(dao.claimBusEvents(2, ownerId, otherClaimToken, nextAvailable.toDate(), now.toDate(), internalCallContext), 1);
+        assertEquals(dao.getClaimedBusEvents(ownerId, otherClaimToken, internalCallContext).size(), 1);
+        assertEquals(dao.getClaimedBusEvents(UUID.randomUUID().toString(), claimToken, internalCallContext).size(), 0);
+        assertEquals(dao.claimBusEvents(2, ownerId, UUID.randomUUID().toString(), nextAvailable.toDate(), now.toDate(), internalCallContext), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testClearBusEventsOnlyClearsOwnedEvents() {
+        final String ownerId = UUID.randomUUID().toString();
+        final String otherOwnerId = UUID.randomUUID().toString();
+        for (int i = 0; i < 2; i++) {
+            dao.insertBusEvent(new BusEventEntry(hostname, String.class.getName(), "{}", internalCallContext.getAccountRecordId(),
+                                                 internalCallContext.getTenantRecordId()), internalCallContext);
+        }
+
+        final DateTime now = new DateTime();
+        final String claimToken = UUID.randomUUID().toString();
+        assertEquals(dao.claimBusEvents(2, ownerId, claimToken, now.minusMinutes(1).toDate(), now.toDate(), internalCallContext), 2);
+        final List<BusEventEntry> claimedEntries = dao.getClaimedBusEvents(ownerId, claimToken, internalCallContext);
+        final List<Long> claimedIds = new ArrayList<Long>();
+        for (final BusEventEntry cur : claimedEntries) {
+            claimedIds.add(cur.getId());
+        }
+
+        // The claim has expired: another node re-claims the events
+        final String otherClaimToken = UUID.randomUUID().toString();
+        assertEquals(dao.claimBusEvents(2, otherOwnerId, otherClaimToken, now.plusMinutes(5).toDate(), now.toDate(), internalCallContext), 2);
+
+        // The first owner can't clear them anymore
+        dao.clearBusEvents(claimedIds, ownerId, internalCallContext);
+        for (final BusEventEntry cur : fetchBusEvents()) {
+            assertEquals(cur.getOwner(), otherOwnerId);
+            assertEquals(cur.getProcessingState(), PersistentQueueEntryLifecycleState.IN_PROCESSING);
+        }
+
+        // The new owner can
+        dao.clearBusEvents(claimedIds, otherOwnerId, internalCallContext);
+        for (final BusEventEntry cur : fetchBusEvents()) {
+            assertEquals(cur.getProcessingState(), PersistentQueueEntryLifecycleState.PROCESSED);
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testFailedBusEventsAreNotClaimedAgain() {
+        final String ownerId = UUID.randomUUID().toString();
+        dao.insertBusEvent(new BusEventEntry(hostname, String.class.getName(), "{}", internalCallContext.getAccountRecordId(),
+                                             internalCallContext.getTenantRecordId()), internalCallContext);
+
+        final DateTime now = new DateTime();
+        final String claimToken = UUID.randomUUID().toString();
+        assertEquals(dao.claimBusEvents(1, ownerId, claimToken, now.minusMinutes(1).toDate(), now.toDate(), internalCallContext), 1);
+        final Long failedId = dao.getClaimedBusEvents(ownerId, claimToken, internalCallContext).get(0).getId();
+
+        // Only the owner can fail it
+        dao.failBusEvents(ImmutableList.<Long>of(failedId), UUID.randomUUID().toString(), internalCallContext);
+        assertEquals(fetchBusEvents().get(0).getProcessingState(), PersistentQueueEntryLifecycleState.IN_PROCESSING);
+        dao.failBusEvents(ImmutableList.<Long>of(failedId), ownerId, internalCallContext);
+        assertEquals(fetchBusEvents().get(0).getProcessingState(), PersistentQueueEntryLifecycleState.FAILED);
+
+        // Even though its claim has expired, it is not picked up again
+        assertEquals(dao.claimBusEvents(1, ownerId, UUID.randomUUID().toString(), now.plusMinutes(5).toDate(), now.toDate(), internalCallContext), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testRenewAndReleaseBusEventClaims() {
+        final String ownerId = UUID.randomUUID().toString();
+        for (int i = 0; i < 2; i++) {
+            dao.insertBusEvent(new BusEventEntry(hostname, String.class.getName(), "{}", internalCallContext.getAccountRecordId(),
+                                                 internalCallContext.getTenantRecordId()), internalCallContext);
+        }
+
+        final DateTime now = new DateTime();
+        final String claimToken = UUID.randomUUID().toString();
+        assertEquals(dao.claimBusEvents(2, ownerId, claimToken, now.minusMinutes(1).toDate(), now.toDate(), internalCallContext), 2);
+        final List<Long> claimedIds = new ArrayList<Long>();
+        for (final BusEventEntry cur : dao.getClaimedBusEvents(ownerId, claimToken, internalCallContext)) {
+            claimedIds.add(cur.getId());
+        }
+
+        // Only the owner can renew the claims: once renewed, they can't be claimed by another node anymore
+        assertEquals(dao.renewBusEventClaims(claimedIds, UUID.randomUUID().toString(), now.plusMinutes(5).toDate(), internalCallContext), 0);
+        assertEquals(dao.renewBusEventClaims(claimedIds, ownerId, now.plusMinutes(5).toDate(), internalCallContext), 2);
+        assertEquals(dao.claimBusEvents(2, UUID.randomUUID().toString(), UUID.randomUUID().toString(), now.plusMinutes(5).toDate(), now.toDate(), internalCallContext), 0);
+
+        // Only the owner can release them: once released, they can be claimed right away
+        assertEquals(dao.releaseBusEventClaims(claimedIds, UUID.randomUUID().toString(), internalCallContext), 0);
+        assertEquals(dao.releaseBusEventClaims(claimedIds, ownerId, internalCallContext), 2);
+        for (final BusEventEntry cur : fetchBusEvents()) {
+            assertEquals(cur.getProcessingState(), PersistentQueueEntryLifecycleState.AVAILABLE);
+        }
+        assertEquals(dao.claimBusEvents(2, UUID.randomUUID().toString(), UUID.randomUUID().toString(), now.plusMinutes(5).toDate(), now.toDate(), internalCallContext), 2);
+
+        // Clearing reports the events it cleared
+        assertEquals(dao.clearBusEvents(claimedIds, ownerId, internalCallContext), 0);
+    }
+
+    private List<BusEventEntry> fetchBusEvents() {
+        return dbi.withHandle(new HandleCallback<List<BusEventEntry>>() {
+            @Override
+            public List<BusEventEntry> withHandle(final Handle handle) throws Exception {
+                return handle.createQuery("select * from bus_events order by record_id asc")
+                             .map(new PersistentBusSqlMapper())
+                             .list();
+            }
+        });
+    }
+
+    private int countRows(final String tableName) {
+        return dbi.withHandle(new HandleCallback<Integer>() {
+            @Override
+            public Integer withHandle(final Handle handle) throws Exception {
+                return handle.createQuery("select count(*) from " + tableName).map(IntegerMapper.FIRST).first();
+            }
+        });
+    }
+
+    public static class TestPersistentBusSqlDaoModule extends AbstractModule {
+
+        @Override
+        protected void configure() {
+            final MysqlTestingHelper helper = KillbillTestSuiteWithEmbeddedDB.getMysqlTestingHelper();
+            bind(MysqlTestingHelper.class).toInstance(helper);
+            final IDBI dbi = helper.getDBI();
+            bind(IDBI.class).toInstance(dbi);
+        }
+    }
+}
@@ -94,6 +94,65 @@ public class TestInternalCallContextFactory extends UtilTestSuiteWithEmbeddedDB
         verifyInternalCallContext(context);
     }
 
+    @Test(groups = "slow")
+    public void testRecordIdsCacheHitAndMiss() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final Long accountRecordId = 19384013L;
+
+        // Misses are not cached, the account may not have been created yet
+        Assert.assertNull(internalCallContextFactory.createInternalCallContext(accountId, ObjectType.ACCOUNT, callContext).getAccountRecordId());
+        Assert.assertEquals(internalCallContextFactory.getObjectRecordIdsCacheStats().missCount(), 1);
+
+        getMysqlTestingHelper().getDBI().withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute("insert into accounts (record_id, id, email, name, first_name_length, is_notified_for_invoices, created_date, created_by, updated_date, updated_by) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                        accountRecordId, accountId.toString(), "yo@t.com", "toto", 4, false, new Date(), "i", new Date(), "j");
+                return null;
+            }
+        });
+
+        Assert.assertEquals(internalCallContextFactory.createInternalCallContext(accountId, ObjectType.ACCOUNT, callContext).getAccountRecordId(), accountRecordId);
+        Assert.assertEquals(internalCallContextFactory.getObjectRecordIdsCacheStats().missCount(), 2);
+        Assert.assertEquals(internalCallContextFactory.getObjectRecordIdsCacheStats().hitCount(), 0);
+
+        // The next lookup doesn't go to the database anymore
+        getMysqlTestingHelper().getDBI().withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute("delete from accounts where id = ?", accountId.toString());
+                return null;
+            }
+        });
+        Assert.assertEquals(internalCallContextFactory.createInternalCallContext(accountId, ObjectType.ACCOUNT, callContext).getAccountRecordId(), accountRecordId);
+        Assert.assertEquals(internalCallContextFactory.getObjectRecordIdsCacheStats().missCount(), 2);
+        Assert.assertEquals(internalCallContextFactory.getObjectRecordIdsCacheStats().hitCount(), 1);
+    }
+
+    @Test(groups = "slow")
+    public void testTenantRecordIdCacheHitAndMiss() throws Exception {
+        final UUID tenantId = UUID.randomUUID();
+        final TenantContext tenantContext = new DefaultTenantContext(tenantId);
+
+        // Misses are not cached, the tenant may not have been created yet
+        Assert.assertNull(internalCallContextFactory.createInternalTenantContext(tenantContext).getTenantRecordId());
+        Assert.assertEquals(internalCallContextFactory.getTenantRecordIdCacheStats().missCount(), 1);
+
+        final Long tenantRecordId = getMysqlTestingHelper().getDBI().withHandle(new HandleCallback<Long>() {
+            @Override
+            public Long withHandle(final Handle handle) throws Exception {
+                handle.execute("insert into tenants (id) values (?)", tenantId.toString());
+                return (Long) handle.select("select record_id from tenants where id = ?", tenantId.toString()).get(0).get("record_id");
+            }
+        });
+
+        Assert.assertEquals(internalCallContextFactory.createInternalTenantContext(tenantContext).getTenantRecordId(), tenantRecordId);
+        Assert.assertEquals(internalCallContextFactory.getTenantRecordIdCacheStats().missCount(), 2);
+        Assert.assertEquals(internalCallContextFactory.createInternalTenantContext(tenantContext).getTenantRecordId(), tenantRecordId);
+        Assert.assertEquals(internalCallContextFactory.getTenantRecordIdCacheStats().missCount(), 2);
+        Assert.assertEquals(internalCallContextFactory.getTenantRecordIdCacheStats().hitCount(), 1);
+    }
+
     private void verifyInternalCallContext(final InternalCallContext context) {
         Assert.assertEquals(context.getCallOrigin(), callContext.getCallOrigin());
         Assert.assertEquals(context.getComment(), callContext.getComment());
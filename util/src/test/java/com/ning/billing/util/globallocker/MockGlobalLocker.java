@@ -24,6 +24,10 @@ public class MockGlobalLocker implements GlobalLocker {
             @Override
             public void release() {
             }
+
+            @Override
+            public void checkHeld() {
+            }
         };
     }
 
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.ning.billing.util.globallocker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.skife.config.ConfigurationObjectFactory;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import com.ning.billing.KillbillTestSuiteWithEmbeddedDB;
+import com.ning.billing.dbi.MysqlTestingHelper;
+import com.ning.billing.util.UtilTestSuiteWithEmbeddedDB;
+import com.ning.billing.util.globallocker.GlobalLocker.LockerType;
+import com.ning.billing.util.globallocker.LeaseGlobalLocker.LeaseGlobalLock;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+
+@Guice(modules = TestLeaseGlobalLocker.TestLeaseGlobalLockerModule.class)
+public class TestLeaseGlobalLocker extends UtilTestSuiteWithEmbeddedDB {
+
+    @Inject
+    private IDBI dbi;
+
+    private final List<LeaseGlobalLocker> lockers = new ArrayList<LeaseGlobalLocker>();
+
+    @AfterMethod(groups = "slow")
+    public void tearDown() {
+        for (final LeaseGlobalLocker locker : lockers) {
+            locker.stop();
+        }
+        lockers.clear();
+    }
+
+    @Test(groups = "slow")
+    public void testSimpleLocking() throws Exception {
+        final String lockName = UUID.randomUUID().toString();
+
+        final LeaseGlobalLocker locker = createLocker();
+        final GlobalLock lock = locker.lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName, 3);
+        Assert.assertEquals(locker.isFree(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName), Boolean.FALSE);
+
+        // Another node cannot get it
+        final LeaseGlobalLocker otherLocker = createLocker();
+        Assert.assertEquals(otherLocker.isFree(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName), Boolean.FALSE);
+        boolean gotException = false;
+        try {
+            otherLocker.lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName, 1);
+        } catch (LockFailedException e) {
+            gotException = true;
+        }
+        Assert.assertTrue(gotException);
+
+        // Another thread on the same node cannot get it either
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Boolean gotExceptionFromOtherThread = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    try {
+                        locker.lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName, 1);
+                        return false;
+                    } catch (LockFailedException e) {
+                        return true;
+                    }
+                }
+            }).get();
+            Assert.assertTrue(gotExceptionFromOtherThread);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        lock.release();
+
+        Assert.assertEquals(locker.isFree(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName), Boolean.TRUE);
+        final GlobalLock otherLock = otherLocker.lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName, 1);
+        // Each acquisition gets a new generation
+        Assert.assertTrue(((LeaseGlobalLock) otherLock).getGeneration() > ((LeaseGlobalLock) lock).getGeneration());
+        otherLock.release();
+    }
+
+    @Test(groups = "slow")
+    public void testReentrantLocking() {
+        final String lockName = UUID.randomUUID().toString();
+
+        final LeaseGlobalLocker locker = createLocker();
+        final GlobalLock lock = locker.lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName, 1);
+        final GlobalLock reentrantLock = locker.lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName, 1);
+
+        reentrantLock.release();
+        Assert.assertEquals(locker.isFree(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName), Boolean.FALSE);
+
+        lock.release();
+        Assert.assertEquals(locker.isFree(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName), Boolean.TRUE);
+    }
+
+    @Test(groups = "slow")
+    public void testLeaseIsRenewedWhileHeld() throws Exception {
+        final String lockName = UUID.randomUUID().toString();
+
+        final LeaseGlobalLocker locker = createLocker(3);
+        final GlobalLock lock = locker.lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName, 1);
+
+        // Hold it longer than the lease time: the heartbeat keeps it from being taken over
+        Thread.sleep(4500);
+        lock.checkHeld();
+        boolean gotException = false;
+        try {
+            createLocker(3).lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName, 1);
+        } catch (LockFailedException e) {
+            gotException = true;
+        }
+        Assert.assertTrue(gotException);
+
+        lock.release();
+        Assert.assertEquals(locker.isFree(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName), Boolean.TRUE);
+    }
+
+    @Test(groups = "slow")
+    public void testLostLeaseFailsHolder() {
+        final String lockName = UUID.randomUUID().toString();
+
+        final LeaseGlobalLocker locker = createLocker(300);
+        final GlobalLock lock = locker.lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName, 1);
+        lock.checkHeld();
+
+        // Another node takes it over, e.g. after we stalled for longer than the lease time
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute("update global_locks set owner_id = ?, generation = generation + 1 where lock_name = ?",
+                               UUID.randomUUID().toString(), LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS.toString() + "-" + lockName);
+                return null;
+            }
+        });
+
+        boolean gotException = false;
+        try {
+            lock.checkHeld();
+        } catch (LockFailedException e) {
+            gotException = true;
+        }
+        Assert.assertTrue(gotException);
+
+        // Releasing doesn't free the lock of the new owner
+        lock.release();
+        Assert.assertEquals(locker.isFree(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName), Boolean.FALSE);
+    }
+
+    @Test(groups = "slow")
+    public void testReleaseFromAnotherThread() throws Exception {
+        final String lockName = UUID.randomUUID().toString();
+
+        final LeaseGlobalLocker locker = createLocker();
+        final GlobalLock lock = locker.lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName, 1);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Boolean gotExceptionFromOtherThread = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    try {
+                        lock.release();
+                        return false;
+                    } catch (IllegalStateException e) {
+                        return true;
+                    }
+                }
+            }).get();
+            Assert.assertTrue(gotExceptionFromOtherThread);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The lock is still held, and can be released by its owner
+        lock.checkHeld();
+        Assert.assertEquals(locker.isFree(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName), Boolean.FALSE);
+        lock.release();
+        Assert.assertEquals(locker.isFree(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS, lockName), Boolean.TRUE);
+    }
+
+    private LeaseGlobalLocker createLocker() {
+        return createLocker(300);
+    }
+
+    private LeaseGlobalLocker createLocker(final int leaseTimeSec) {
+        final Properties properties = new Properties();
+        properties.setProperty("killbill.billing.util.globallocker.waitTimeMs", "500");
+        properties.setProperty("killbill.billing.util.globallocker.leaseTimeSec", String.valueOf(leaseTimeSec));
+        final GlobalLockerConfig config = new ConfigurationObjectFactory(properties).build(GlobalLockerConfig.class);
+        final LeaseGlobalLocker locker = new LeaseGlobalLocker(dbi, config);
+        lockers.add(locker);
+        return locker;
+    }
+
+    public static final class TestLeaseGlobalLockerModule extends AbstractModule {
+
+        @Override
+        protected void configure() {
+            final MysqlTestingHelper helper = KillbillTestSuiteWithEmbeddedDB.getMysqlTestingHelper();
+            bind(MysqlTestingHelper.class).toInstance(helper);
+            final IDBI dbi = helper.getDBI();
+            bind(IDBI.class).toInstance(dbi);
+        }
+    }
+}
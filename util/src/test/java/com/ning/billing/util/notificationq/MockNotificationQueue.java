@@ -70,6 +70,14 @@ public class MockNotificationQueue extends NotificationQueueBase implements Noti
         recordFutureNotification(futureNotificationTime, accountId, notificationKey, context);
     }
 
+    @Override
+    public void recordFutureNotificationsFromTransaction(final Transmogrifier transactionalDao, final DateTime futureNotificationTime,
+                                                         final UUID accountId, final List<NotificationKey> notificationKeys, final InternalCallContext context) throws IOException {
+        for (final NotificationKey notificationKey : notificationKeys) {
+            recordFutureNotification(futureNotificationTime, accountId, notificationKey, context);
+        }
+    }
+
     public List<Notification> getPendingEvents() {
         final List<Notification> result = new ArrayList<Notification>();
 
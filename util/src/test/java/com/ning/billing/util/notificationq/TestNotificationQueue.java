@@ -16,7 +16,9 @@
 
 package com.ning.billing.util.notificationq;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.UUID;
@@ -187,6 +189,65 @@ public class TestNotificationQueue extends UtilTestSuiteWithEmbeddedDB {
         Assert.assertTrue(expectedNotifications.get(notificationKey));
     }
 
+    @Test(groups = "slow")
+    public void testBatchedNotifications() throws Exception {
+        final Map<NotificationKey, Boolean> expectedNotifications = new TreeMap<NotificationKey, Boolean>();
+
+        final DefaultNotificationQueue queue = new DefaultNotificationQueue(dbi, clock, "test-svc", "batch",
+                                                                            new NotificationQueueHandler() {
+                                                                                @Override
+                                                                                public void handleReadyNotification(final NotificationKey notificationKey, final DateTime eventDateTime, final Long accountRecordId, final Long tenantRecordId) {
+                                                                                    synchronized (expectedNotifications) {
+                                                                                        expectedNotifications.put(notificationKey, Boolean.TRUE);
+                                                                                        expectedNotifications.notify();
+                                                                                    }
+                                                                                }
+                                                                            },
+                                                                            getNotificationConfig(false, 100, 10, 10000),
+                                                                            new InternalCallContextFactory(dbi, clock));
+
+        queue.startQueue();
+
+        final UUID key = UUID.randomUUID();
+        final DummyObject obj = new DummyObject("foo", key);
+        final DateTime readyTime = new DateTime().plusMillis(2000);
+        final List<NotificationKey> notificationKeys = new ArrayList<NotificationKey>();
+        for (int i = 0; i < 3; i++) {
+            final NotificationKey notificationKey = new TestNotificationKey(key.toString() + "-" + i);
+            notificationKeys.add(notificationKey);
+            expectedNotifications.put(notificationKey, Boolean.FALSE);
+        }
+
+        // Insert all the notifications in a single batch
+        dao.inTransaction(new Transaction<Void, DummySqlTest>() {
+            @Override
+            public Void inTransaction(final DummySqlTest transactional,
+                                      final TransactionStatus status) throws Exception {
+
+                transactional.insertDummy(obj);
+                queue.recordFutureNotificationsFromTransaction(transactional, readyTime, accountId, notificationKeys, internalCallContext);
+                return null;
+            }
+        });
+
+        // Move time in the future after the notifications effectiveDate
+        ((ClockMock) clock).setDeltaFromReality(3000);
+
+        await().atMost(1, MINUTES).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                synchronized (expectedNotifications) {
+                    return !expectedNotifications.values().contains(Boolean.FALSE);
+                }
+            }
+        });
+
+        queue.stopQueue();
+        for (final NotificationKey notificationKey : notificationKeys) {
+            Assert.assertTrue(expectedNotifications.get(notificationKey));
+        }
+    }
+
     @Test(groups = "slow")
     public void testManyNotifications() throws InterruptedException {
         final Map<NotificationKey, Boolean> expectedNotifications = new TreeMap<NotificationKey, Boolean>();
@@ -289,6 +350,11 @@ public class TestNotificationQueue extends UtilTestSuiteWithEmbeddedDB {
                 return false;
             }
 
+            @Override
+            public int getMaxClaimedNotifications() {
+                return 100;
+            }
+
             @Override
             public long getSleepTimeMs() {
                 return 10;
@@ -374,6 +440,11 @@ public class TestNotificationQueue extends UtilTestSuiteWithEmbeddedDB {
                 return off;
             }
 
+            @Override
+            public int getMaxClaimedNotifications() {
+                return 100;
+            }
+
             @Override
             public long getSleepTimeMs() {
                 return sleepTime;
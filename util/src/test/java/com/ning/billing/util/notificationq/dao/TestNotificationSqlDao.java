@@ -86,11 +86,8 @@ public class TestNotificationSqlDao extends UtilTestSuiteWithEmbeddedDB {
 
         Thread.sleep(1000);
         final DateTime now = new DateTime();
-        final List<Notification> notifications = dao.getReadyNotifications(now.toDate(), hostname, 3, "testBasic", internalCallContext);
-        assertNotNull(notifications);
-        assertEquals(notifications.size(), 1);
-
-        Notification notification = notifications.get(0);
+        Notification notification = fetchNotification(notif.getId().toString());
+        assertNotNull(notification);
         assertEquals(notification.getNotificationKey(), notificationKey);
         validateDate(notification.getEffectiveDate(), effDt);
         assertEquals(notification.getOwner(), null);
@@ -98,9 +95,10 @@ public class TestNotificationSqlDao extends UtilTestSuiteWithEmbeddedDB {
         assertEquals(notification.getNextAvailableDate(), null);
 
         final DateTime nextAvailable = now.plusMinutes(5);
-        final int res = dao.claimNotification(ownerId, nextAvailable.toDate(), notification.getId().toString(), now.toDate(), internalCallContext);
+        final String claimToken = UUID.randomUUID().toString();
+        final int res = dao.claimNotifications(ownerId, claimToken, nextAvailable.toDate(), now.toDate(), 3, "testBasic", internalCallContext);
         assertEquals(res, 1);
-        dao.insertClaimedHistory(ownerId, now.toDate(), notification.getId().toString(), internalCallContext);
+        dao.insertClaimedHistories(ownerId, now.toDate(), dao.getClaimedNotifications(ownerId, claimToken, internalCallContext));
 
         notification = fetchNotification(notification.getId().toString());
         assertEquals(notification.getNotificationKey(), notificationKey);
@@ -145,6 +143,76 @@ public class TestNotificationSqlDao extends UtilTestSuiteWithEmbeddedDB {
         }
     }
 
+    @Test(groups = "slow")
+    public void testClaimNotifications() throws InterruptedException {
+        final String ownerId = UUID.randomUUID().toString();
+        final String queueName = "testClaimNotifications";
+
+        final DateTime effDt = new DateTime();
+        for (int i = 0; i < 3; i++) {
+            final String notificationKey = UUID.randomUUID().toString();
+            final Notification notif = new DefaultNotification(queueName, hostname, notificationKey.getClass().getName(), notificationKey, accountId, effDt,
+                                                               null, internalCallContext.getTenantRecordId());
+            dao.insertNotification(notif, internalCallContext);
+        }
+
+        Thread.sleep(1000);
+        final DateTime now = new DateTime();
+        final DateTime nextAvailable = now.plusMinutes(5);
+
+        // Only claim part of the ready notifications
+        final String claimToken = UUID.randomUUID().toString();
+        final int claimed = dao.claimNotifications(ownerId, claimToken, nextAvailable.toDate(), now.toDate(), 2, queueName, internalCallContext);
+        assertEquals(claimed, 2);
+
+        final List<Notification> claimedNotifications = dao.getClaimedNotifications(ownerId, claimToken, internalCallContext);
+        assertEquals(claimedNotifications.size(), 2);
+        for (final Notification cur : claimedNotifications) {
+            assertEquals(cur.getOwner(), ownerId);
+            assertEquals(cur.getProcessingState(), PersistentQueueEntryLifecycleState.IN_PROCESSING);
+            validateDate(cur.getNextAvailableDate(), nextAvailable);
+        }
+        dao.insertClaimedHistories(ownerId, now.toDate(), claimedNotifications);
+
+        // A second claim only gets what's left
+        final String otherClaimToken = UUID.randomUUID().toString();
+        assertEquals(dao.claimNotifications(ownerId, otherClaimToken, nextAvailable.toDate(), now.toDate(), 2, queueName, internalCallContext), 1);
+        assertEquals(dao.getClaimedNotifications(ownerId, otherClaimToken, internalCallContext).size(), 1);
+        assertEquals(dao.claimNotifications(ownerId, UUID.randomUUID().toString(), nextAvailable.toDate(), now.toDate(), 2, queueName, internalCallContext), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testClaimExpiredNotifications() throws InterruptedException {
+        final String ownerId = UUID.randomUUID().toString();
+        final String otherOwnerId = UUID.randomUUID().toString();
+        final String queueName = "testClaimExpiredNotifications";
+
+        final DateTime effDt = new DateTime();
+        for (int i = 0; i < 2; i++) {
+            final String notificationKey = UUID.randomUUID().toString();
+            final Notification notif = new DefaultNotification(queueName, hostname, notificationKey.getClass().getName(), notificationKey, accountId, effDt,
+                                                               null, internalCallContext.getTenantRecordId());
+            dao.insertNotification(notif, internalCallContext);
+        }
+
+        Thread.sleep(1000);
+        final DateTime now = new DateTime();
+
+        // One claim is still valid, the other one has expired
+        assertEquals(dao.claimNotifications(ownerId, UUID.randomUUID().toString(), now.plusMinutes(5).toDate(), now.toDate(), 1, queueName, internalCallContext), 1);
+        final String expiredClaimToken = UUID.randomUUID().toString();
+        assertEquals(dao.claimNotifications(ownerId, expiredClaimToken, now.minusMinutes(5).toDate(), now.toDate(), 1, queueName, internalCallContext), 1);
+        final Notification expiredNotification = dao.getClaimedNotifications(ownerId, expiredClaimToken, internalCallContext).get(0);
+
+        // Only the expired one can be claimed by another owner
+        final String claimToken = UUID.randomUUID().toString();
+        assertEquals(dao.claimNotifications(otherOwnerId, claimToken, now.plusMinutes(5).toDate(), now.toDate(), 3, queueName, internalCallContext), 1);
+        final List<Notification> claimedNotifications = dao.getClaimedNotifications(otherOwnerId, claimToken, internalCallContext);
+        assertEquals(claimedNotifications.size(), 1);
+        assertEquals(claimedNotifications.get(0).getId(), expiredNotification.getId());
+        assertEquals(claimedNotifications.get(0).getOwner(), otherOwnerId);
+    }
+
     private Notification fetchNotification(final String notificationId) {
         return dbi.withHandle(new HandleCallback<Notification>() {
             @Override
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010-2012 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.ning.billing.util.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ning.billing.config.PersistentQueueConfig;
+import com.ning.billing.util.UtilTestSuite;
+
+public class TestPersistentQueueBase extends UtilTestSuite {
+
+    private static final long WAIT_TIMEOUT_MS = 10000;
+
+    private ExecutorService executor;
+    private MockQueue queue;
+
+    private static final class MockQueue extends PersistentQueueBase {
+
+        // Index of the polls which find some work
+        private final List<Integer> pollsWithWork;
+        private final List<Long> pollTimesMs = new ArrayList<Long>();
+
+        public MockQueue(final ExecutorService executor, final long sleepTimeMs, final List<Integer> pollsWithWork) {
+            super("MockQueue", executor, 1, new PersistentQueueConfig() {
+                @Override
+                public long getSleepTimeMs() {
+                    return sleepTimeMs;
+                }
+            });
+            this.pollsWithWork = pollsWithWork;
+        }
+
+        @Override
+        public int doProcessEvents() {
+            synchronized (pollTimesMs) {
+                pollTimesMs.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+                pollTimesMs.notifyAll();
+                return pollsWithWork.contains(pollTimesMs.size() - 1) ? 1 : 0;
+            }
+        }
+
+        public void wakeUp() {
+            wakeUpProcessingThreads();
+        }
+
+        public List<Long> waitForPolls(final int nbPolls) throws InterruptedException {
+            final long ini = System.currentTimeMillis();
+            synchronized (pollTimesMs) {
+                while (pollTimesMs.size() < nbPolls && System.currentTimeMillis() - ini < WAIT_TIMEOUT_MS) {
+                    pollTimesMs.wait(100);
+                }
+                Assert.assertTrue(pollTimesMs.size() >= nbPolls, "Only got " + pollTimesMs.size() + " polls");
+                return new ArrayList<Long>(pollTimesMs);
+            }
+        }
+    }
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() throws Exception {
+        if (queue != null) {
+            queue.stopQueue();
+        }
+        executor.shutdownNow();
+    }
+
+    @Test(groups = "fast")
+    public void testBackOffGrowsOnEmptyPolls() throws Exception {
+        queue = new MockQueue(executor, 320, new ArrayList<Integer>());
+        queue.startQueue();
+
+        // Sleeps of 10, 20, 40, 80, 160 then 320 ms (capped)
+        final List<Long> pollTimesMs = queue.waitForPolls(9);
+        final List<Long> sleepTimesMs = getSleepTimes(pollTimesMs);
+        Assert.assertTrue(sleepTimesMs.get(0) < 100, "First sleep was " + sleepTimesMs.get(0));
+        for (int i = 1; i < 5; i++) {
+            Assert.assertTrue(sleepTimesMs.get(i) >= sleepTimesMs.get(i - 1), "Sleep times didn't grow: " + sleepTimesMs);
+        }
+        Assert.assertTrue(sleepTimesMs.get(5) >= 300, "Sleep times didn't grow: " + sleepTimesMs);
+        Assert.assertTrue(sleepTimesMs.get(7) < 320 + 200, "Sleep time wasn't capped: " + sleepTimesMs);
+        Assert.assertEquals(queue.getNbPolls(), queue.getNbEmptyPolls());
+    }
+
+    @Test(groups = "fast")
+    public void testBackOffResetsOnWork() throws Exception {
+        // The 7th poll, after a 320 ms sleep, finds some work
+        final List<Integer> pollsWithWork = new ArrayList<Integer>();
+        pollsWithWork.add(6);
+        queue = new MockQueue(executor, 640, pollsWithWork);
+        queue.startQueue();
+
+        final List<Long> sleepTimesMs = getSleepTimes(queue.waitForPolls(9));
+        Assert.assertTrue(sleepTimesMs.get(5) >= 300, "Sleep times didn't grow: " + sleepTimesMs);
+        // Poll again right away after some work, then back-off from the bottom
+        Assert.assertTrue(sleepTimesMs.get(6) < 100, "Didn't poll right away after some work: " + sleepTimesMs);
+        Assert.assertTrue(sleepTimesMs.get(7) < 100, "Back-off wasn't reset: " + sleepTimesMs);
+    }
+
+    @Test(groups = "fast")
+    public void testWakeUpCutsSleepShort() throws Exception {
+        queue = new MockQueue(executor, 60000, new ArrayList<Integer>());
+        queue.startQueue();
+
+        // After the 8th poll, the thread sleeps 1280 ms
+        final List<Long> pollTimesMs = queue.waitForPolls(8);
+        Thread.sleep(50);
+        final long wakeUpTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        queue.wakeUp();
+
+        final List<Long> pollTimesAfterWakeUpMs = queue.waitForPolls(pollTimesMs.size() + 1);
+        final long nextPollTimeMs = pollTimesAfterWakeUpMs.get(pollTimesMs.size());
+        Assert.assertTrue(nextPollTimeMs - wakeUpTimeMs < 500, "Wake-up took " + (nextPollTimeMs - wakeUpTimeMs) + " ms");
+        Assert.assertEquals(queue.getNbWakeUps(), 1);
+    }
+
+    private List<Long> getSleepTimes(final List<Long> pollTimesMs) {
+        final List<Long> sleepTimesMs = new ArrayList<Long>();
+        for (int i = 1; i < pollTimesMs.size(); i++) {
+            sleepTimesMs.add(pollTimesMs.get(i) - pollTimesMs.get(i - 1));
+        }
+        return sleepTimesMs;
+    }
+}
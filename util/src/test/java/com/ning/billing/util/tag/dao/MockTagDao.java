@@ -17,6 +17,7 @@
 package com.ning.billing.util.tag.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -116,4 +117,15 @@ public class MockTagDao implements TagDao {
             }
         }
     }
+
+    @Override
+    public List<UUID> getObjectIdsWithTag(final UUID tagDefinitionId, final Collection<UUID> objectIds, final InternalTenantContext context) {
+        final List<UUID> result = new ArrayList<UUID>();
+        for (final UUID objectId : objectIds) {
+            if (getMap(tagStore.get(objectId)).containsKey(tagDefinitionId.toString())) {
+                result.add(objectId);
+            }
+        }
+        return result;
+    }
 }